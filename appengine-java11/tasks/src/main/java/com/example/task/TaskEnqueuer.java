@@ -0,0 +1,299 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.task;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.tasks.v2.CloudTasksClient;
+import com.google.cloud.tasks.v2.CreateTaskRequest;
+import com.google.cloud.tasks.v2.Task;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enqueues tasks asynchronously through a long-lived {@link CloudTasksClient}, keeping up to
+ * {@code maxInFlight} createTask calls outstanding at a time. {@link #enqueue} blocks while the
+ * window is full, so a producer cannot run ahead of the queue.
+ *
+ * <p>Named tasks are enqueued at most once: a name that is still being enqueued returns the pending
+ * result, and a task that the queue already holds counts as a duplicate. Calls that fail with
+ * UNAVAILABLE, RESOURCE_EXHAUSTED or DEADLINE_EXCEEDED are retried after a jittered, exponentially
+ * growing delay. If a retry finds that its named task already exists, an earlier attempt created
+ * it before its response was lost, so the task counts as enqueued. A retried task without a name
+ * can be created twice, so name tasks that must be enqueued exactly once.
+ */
+public class TaskEnqueuer implements AutoCloseable {
+  private final CloudTasksClient client;
+  private final int maxInFlight;
+  private final int maxAttempts;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+
+  private final Semaphore inFlight;
+  // Named tasks being enqueued; each is removed once its call completes.
+  private final ConcurrentMap<String, ApiFuture<Task>> byName = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService retries =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "task-enqueuer-retries");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final AtomicLong retried = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  public TaskEnqueuer(CloudTasksClient client, int maxInFlight) {
+    this(client, maxInFlight, 5, Duration.ofMillis(100), Duration.ofSeconds(10));
+  }
+
+  public TaskEnqueuer(
+      CloudTasksClient client,
+      int maxInFlight,
+      int maxAttempts,
+      Duration initialBackoff,
+      Duration maxBackoff) {
+    if (maxInFlight <= 0 || maxAttempts <= 0) {
+      throw new IllegalArgumentException("maxInFlight and maxAttempts must be positive");
+    }
+    this.client = client;
+    this.maxInFlight = maxInFlight;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = maxBackoff;
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  // Enqueues a task, waiting while maxInFlight calls are outstanding. The future completes with
+  // the created task, or with the error of the last attempt. When the named task already existed,
+  // the queue does not return it, so the future completes with the requested task instead.
+  public ApiFuture<Task> enqueue(String queuePath, Task task) throws InterruptedException {
+    SettableApiFuture<Task> result = SettableApiFuture.create();
+    if (!task.getName().isEmpty()) {
+      ApiFuture<Task> earlier = byName.putIfAbsent(task.getName(), result);
+      if (earlier != null) {
+        duplicates.incrementAndGet();
+        return earlier;
+      }
+    }
+
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      byName.remove(task.getName(), result);
+      throw e;
+    }
+    CreateTaskRequest request =
+        CreateTaskRequest.newBuilder().setParent(queuePath).setTask(task).build();
+    attempt(request, 1, System.nanoTime(), result);
+    return result;
+  }
+
+  private void attempt(
+      CreateTaskRequest request, int attempt, long startNanos, SettableApiFuture<Task> result) {
+    ApiFuture<Task> response;
+    try {
+      response = client.createTaskCallable().futureCall(request);
+    } catch (RuntimeException e) {
+      // The call failed before it was sent, for example because the client is closed.
+      response = ApiFutures.immediateFailedFuture(e);
+    }
+    ApiFutures.addCallback(
+        response,
+        new ApiFutureCallback<Task>() {
+          @Override
+          public void onSuccess(Task task) {
+            enqueued(request, startNanos, result, task);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof AlreadyExistsException && attempt > 1) {
+              // An earlier attempt created the task, but its response was lost.
+              enqueued(request, startNanos, result, request.getTask());
+            } else if (t instanceof AlreadyExistsException) {
+              // An earlier call, or an earlier run, already created the named task.
+              duplicates.incrementAndGet();
+              complete(request, result);
+              result.set(request.getTask());
+            } else if (attempt < maxAttempts && isRetryable(t)) {
+              retried.incrementAndGet();
+              retries.schedule(
+                  () -> attempt(request, attempt + 1, startNanos, result),
+                  backoffMillis(attempt),
+                  TimeUnit.MILLISECONDS);
+            } else {
+              failed.incrementAndGet();
+              // A later call may enqueue the task again.
+              complete(request, result);
+              result.setException(t);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  // Records a task that the queue now holds, with its latency from the first attempt.
+  private void enqueued(
+      CreateTaskRequest request, long startNanos, SettableApiFuture<Task> result, Task task) {
+    long latency = System.nanoTime() - startNanos;
+    enqueued.incrementAndGet();
+    totalLatencyNanos.addAndGet(latency);
+    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    complete(request, result);
+    result.set(task);
+  }
+
+  // Frees the window slot and the name of a task whose call is over. The queue itself rejects a
+  // name enqueued again later, which then counts as a duplicate.
+  private void complete(CreateTaskRequest request, SettableApiFuture<Task> result) {
+    byName.remove(request.getTask().getName(), result);
+    inFlight.release();
+  }
+
+  private static boolean isRetryable(Throwable t) {
+    if (!(t instanceof ApiException)) {
+      return false;
+    }
+    StatusCode.Code code = ((ApiException) t).getStatusCode().getCode();
+    return code == StatusCode.Code.UNAVAILABLE
+        || code == StatusCode.Code.RESOURCE_EXHAUSTED
+        || code == StatusCode.Code.DEADLINE_EXCEEDED;
+  }
+
+  // A random delay of up to initialBackoff * 2^(attempt - 1), capped at maxBackoff, so that
+  // tasks that failed together do not retry together.
+  private long backoffMillis(int attempt) {
+    long ceiling = initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+    ceiling = Math.min(Math.max(ceiling, 1), maxBackoff.toMillis());
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  // Waits until every enqueued task has completed.
+  public void flush() throws InterruptedException {
+    inFlight.acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+  }
+
+  public Metrics getMetrics() {
+    long count = enqueued.get();
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return new Metrics(
+        count,
+        failed.get(),
+        duplicates.get(),
+        retried.get(),
+        count == 0 ? 0 : totalLatencyNanos.get() / count / 1_000_000.0,
+        maxLatencyNanos.get() / 1_000_000.0,
+        seconds == 0 ? 0 : count / seconds);
+  }
+
+  // Waits for outstanding tasks. The client is not closed, so that it can be reused.
+  @Override
+  public void close() throws InterruptedException {
+    flush();
+    retries.shutdown();
+  }
+
+  /** Enqueue counts, latency from the first attempt to the result, and throughput. */
+  public static class Metrics {
+    private final long enqueued;
+    private final long failed;
+    private final long duplicates;
+    private final long retries;
+    private final double meanLatencyMillis;
+    private final double maxLatencyMillis;
+    private final double tasksPerSecond;
+
+    Metrics(
+        long enqueued,
+        long failed,
+        long duplicates,
+        long retries,
+        double meanLatencyMillis,
+        double maxLatencyMillis,
+        double tasksPerSecond) {
+      this.enqueued = enqueued;
+      this.failed = failed;
+      this.duplicates = duplicates;
+      this.retries = retries;
+      this.meanLatencyMillis = meanLatencyMillis;
+      this.maxLatencyMillis = maxLatencyMillis;
+      this.tasksPerSecond = tasksPerSecond;
+    }
+
+    public long getEnqueued() {
+      return enqueued;
+    }
+
+    public long getFailed() {
+      return failed;
+    }
+
+    public long getDuplicates() {
+      return duplicates;
+    }
+
+    public long getRetries() {
+      return retries;
+    }
+
+    public double getMeanLatencyMillis() {
+      return meanLatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+      return maxLatencyMillis;
+    }
+
+    public double getTasksPerSecond() {
+      return tasksPerSecond;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "enqueued=%d failed=%d duplicates=%d retries=%d meanLatency=%.1fms maxLatency=%.1fms"
+              + " throughput=%.1f tasks/s",
+          enqueued,
+          failed,
+          duplicates,
+          retries,
+          meanLatencyMillis,
+          maxLatencyMillis,
+          tasksPerSecond);
+    }
+  }
+}
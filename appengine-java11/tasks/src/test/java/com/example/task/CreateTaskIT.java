@@ -21,6 +21,7 @@ import static org.junit.Assert.assertNotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -70,4 +71,15 @@ public class CreateTaskIT {
     String got = bout.toString();
     assertThat(got).contains("Task created:");
   }
+
+  @Test
+  public void testCreateTasks() throws Exception {
+    String projectId = System.getenv("GOOGLE_CLOUD_PROJECT");
+    String queueName = System.getenv("QUEUE_ID");
+    String location = System.getenv("LOCATION_ID");
+
+    CreateTasks.createTasks(projectId, queueName, location, Arrays.asList("hello", "bonjour"));
+    String got = bout.toString();
+    assertThat(got).contains("Tasks created: enqueued=2 failed=0");
+  }
 }
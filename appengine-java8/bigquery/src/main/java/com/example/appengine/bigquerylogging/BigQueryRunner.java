@@ -27,15 +27,9 @@ import com.google.cloud.bigquery.JobInfo;
 import com.google.cloud.bigquery.QueryJobConfiguration;
 import com.google.cloud.bigquery.TableResult;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
-import com.google.cloud.monitoring.v3.MetricServiceClient.ListMetricDescriptorsPagedResponse;
-import com.google.cloud.monitoring.v3.MetricServiceClient.ListTimeSeriesPagedResponse;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-import com.google.monitoring.v3.CreateMetricDescriptorRequest;
 import com.google.monitoring.v3.CreateTimeSeriesRequest;
-import com.google.monitoring.v3.ListMetricDescriptorsRequest;
-import com.google.monitoring.v3.ListTimeSeriesRequest;
 import com.google.monitoring.v3.Point;
 import com.google.monitoring.v3.TimeInterval;
 import com.google.monitoring.v3.TimeSeries;
@@ -43,15 +37,17 @@ import com.google.monitoring.v3.TypedValue;
 import com.google.protobuf.util.Timestamps;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 public class BigQueryRunner {
-  private static final String CUSTOM_METRIC_FILTER =
-      "metric.type = starts_with(\"custom.googleapis.com/\")";
+  // The home page shows this many of the most recent runs for each metric.
+  private static final int MAX_POINTS_PER_SERIES = 1000;
+  private static final Duration SUMMARY_REFRESH_INTERVAL = Duration.ofMinutes(1);
   private static BigQueryRunner instance;
 
   private static final MetricDescriptor QUERY_DURATION_METRIC =
@@ -76,11 +72,11 @@ public class BigQueryRunner {
       ImmutableSet.of(QUERY_DURATION_METRIC, ROWS_RETURNED_METRIC);
 
   private static TableResult mostRecentRunResult;
-  private static Set<String> existingMetrics = Sets.newHashSet();
 
   private final MetricServiceClient client;
   private final BigQuery bigquery;
   private final String projectName;
+  private final MetricSummaryService summaryService;
   private PrintStream os;
 
   // Retrieve a singleton instance
@@ -103,6 +99,15 @@ public class BigQueryRunner {
     this.os = os;
     this.projectName = String.format("projects/%s", ServiceOptions.getDefaultProjectId());
     this.bigquery = bigquery;
+    this.summaryService =
+        new MetricSummaryService(
+            client,
+            projectName,
+            REQUIRED_METRICS,
+            MAX_POINTS_PER_SERIES,
+            SUMMARY_REFRESH_INTERVAL,
+            Clock.systemUTC(),
+            os);
   }
 
   public static TableResult getMostRecentRunResult() {
@@ -160,9 +165,11 @@ public class BigQueryRunner {
             .addAllTimeSeries(timeSeriesList)
             .build();
 
-    createMetricsIfNeeded();
+    summaryService.ensureMetricsExist();
     client.createTimeSeries(request);
     os.println("Done writing metrics.");
+    // Show this run on the next page view, rather than after the refresh interval.
+    summaryService.invalidate();
 
     mostRecentRunResult = result;
   }
@@ -186,73 +193,6 @@ public class BigQueryRunner {
   }
 
   public List<TimeSeriesSummary<?>> getTimeSeriesValues() {
-    List<TimeSeriesSummary<?>> summaries = Lists.newArrayList();
-    createMetricsIfNeeded();
-    for (MetricDescriptor metric : REQUIRED_METRICS) {
-      ListTimeSeriesRequest listTimeSeriesRequest =
-          ListTimeSeriesRequest.newBuilder()
-              .setName(projectName)
-              .setFilter(String.format("metric.type = \"%s\"", metric.getType()))
-              .setInterval(
-                  TimeInterval.newBuilder()
-                      .setStartTime(
-                          Timestamps.subtract(
-                              Timestamps.fromMillis(System.currentTimeMillis()),
-                              com.google.protobuf.Duration.newBuilder()
-                                  .setSeconds(60L * 60L * 24L * 30L) //  30 days ago
-                                  .build()))
-                      .setEndTime(Timestamps.fromMillis(System.currentTimeMillis()))
-                      .build())
-              .build();
-      try {
-        ListTimeSeriesPagedResponse listTimeSeriesResponse =
-            client.listTimeSeries(listTimeSeriesRequest);
-        ArrayList<TimeSeries> timeSeries = Lists.newArrayList(listTimeSeriesResponse.iterateAll());
-        summaries.addAll(
-            timeSeries
-                .stream()
-                .map(TimeSeriesSummary::fromTimeSeries)
-                .collect(Collectors.toList()));
-      } catch (RuntimeException ex) {
-        os.println("MetricDescriptors not yet synced. Please try again in a moment.");
-      }
-    }
-    return summaries;
-  }
-
-  private void createMetricsIfNeeded() {
-    // If all required metrics already exist, no need to make service calls.
-    if (REQUIRED_METRICS
-        .stream()
-        .map(MetricDescriptor::getDisplayName)
-        .allMatch(existingMetrics::contains)) {
-      return;
-    }
-    ListMetricDescriptorsRequest listMetricsRequest =
-        ListMetricDescriptorsRequest.newBuilder()
-            .setName(projectName)
-            .setFilter(CUSTOM_METRIC_FILTER)
-            .build();
-    ListMetricDescriptorsPagedResponse listMetricsResponse =
-        client.listMetricDescriptors(listMetricsRequest);
-
-    for (MetricDescriptor existingMetric : listMetricsResponse.iterateAll()) {
-      existingMetrics.add(existingMetric.getDisplayName());
-    }
-
-    REQUIRED_METRICS
-        .stream()
-        .filter(metric -> !existingMetrics.contains(metric.getDisplayName()))
-        .forEach(this::createMetric);
-  }
-
-  private void createMetric(MetricDescriptor newMetric) {
-    CreateMetricDescriptorRequest request =
-        CreateMetricDescriptorRequest.newBuilder()
-            .setName(projectName)
-            .setMetricDescriptor(newMetric)
-            .build();
-
-    client.createMetricDescriptor(request);
+    return summaryService.getSummaries();
   }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.bigquerylogging;
+
+import com.google.api.MetricDescriptor;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.monitoring.v3.CreateMetricDescriptorRequest;
+import com.google.monitoring.v3.ListMetricDescriptorsRequest;
+import com.google.monitoring.v3.ListTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Serves summaries of the sample's custom metrics from memory, so a page view does not list the
+ * metric descriptors and read 30 days of points from Cloud Monitoring every time.
+ *
+ * <p>Once the metric descriptors are known to exist, they are not listed again. Each time series
+ * keeps its most recent points, up to a fixed number, ordered by end time. At most once per
+ * refresh interval a page view asks {@code listTimeSeries} only for the points written since the
+ * previous fetch, and the summaries are rebuilt only when those bring something new. While one
+ * request refreshes, the others are served the summaries they would have seen before.
+ */
+public class MetricSummaryService {
+  // How far back the summaries look.
+  static final Duration WINDOW = Duration.ofDays(30);
+  // A point can show up in listTimeSeries a little after its end time, so each fetch also reads
+  // this much before the previous one ended. Points seen twice are kept once.
+  static final Duration FETCH_OVERLAP = Duration.ofMinutes(5);
+
+  private static final String CUSTOM_METRIC_FILTER =
+      "metric.type = starts_with(\"custom.googleapis.com/\")";
+
+  private final MetricServiceClient client;
+  private final String projectName;
+  private final Set<MetricDescriptor> metrics;
+  private final String timeSeriesFilter;
+  private final int maxPointsPerSeries;
+  private final Duration refreshInterval;
+  private final Clock clock;
+  private final PrintStream os;
+
+  private final Set<String> existingMetrics = ConcurrentHashMap.newKeySet();
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  // Guarded by refreshLock. Keyed by the time series without its points.
+  private final Map<TimeSeries, Series> series = new HashMap<>();
+  private Instant lastFetchEnd;
+  private boolean changed;
+  private volatile Instant nextRefresh = Instant.MIN;
+  private volatile List<TimeSeriesSummary<?>> summaries;
+
+  /**
+   * Creates a service for {@code metrics} in {@code projectName}.
+   *
+   * @param maxPointsPerSeries how many of the most recent points to keep for each time series
+   * @param refreshInterval how long summaries are served before new points are fetched
+   */
+  public MetricSummaryService(
+      MetricServiceClient client,
+      String projectName,
+      Set<MetricDescriptor> metrics,
+      int maxPointsPerSeries,
+      Duration refreshInterval,
+      Clock clock,
+      PrintStream os) {
+    this.client = client;
+    this.projectName = projectName;
+    this.metrics = metrics;
+    this.timeSeriesFilter =
+        metrics
+            .stream()
+            .map(metric -> "\"" + metric.getType() + "\"")
+            .collect(Collectors.joining(", ", "metric.type = one_of(", ")"));
+    this.maxPointsPerSeries = maxPointsPerSeries;
+    this.refreshInterval = refreshInterval;
+    this.clock = clock;
+    this.os = os;
+  }
+
+  /** Creates any of the metric descriptors that do not exist yet. */
+  public void ensureMetricsExist() {
+    // Once all the metrics are known to exist, no need to make service calls.
+    if (allMetricsExist()) {
+      return;
+    }
+    synchronized (existingMetrics) {
+      if (allMetricsExist()) {
+        return;
+      }
+      ListMetricDescriptorsRequest listMetricsRequest =
+          ListMetricDescriptorsRequest.newBuilder()
+              .setName(projectName)
+              .setFilter(CUSTOM_METRIC_FILTER)
+              .build();
+      for (MetricDescriptor existingMetric :
+          client.listMetricDescriptors(listMetricsRequest).iterateAll()) {
+        existingMetrics.add(existingMetric.getType());
+      }
+
+      for (MetricDescriptor metric : metrics) {
+        if (!existingMetrics.contains(metric.getType())) {
+          client.createMetricDescriptor(
+              CreateMetricDescriptorRequest.newBuilder()
+                  .setName(projectName)
+                  .setMetricDescriptor(metric)
+                  .build());
+          existingMetrics.add(metric.getType());
+        }
+      }
+    }
+  }
+
+  private boolean allMetricsExist() {
+    return metrics.stream().map(MetricDescriptor::getType).allMatch(existingMetrics::contains);
+  }
+
+  /** Makes the next call to {@link #getSummaries} fetch new points, such as those just written. */
+  public void invalidate() {
+    nextRefresh = Instant.MIN;
+  }
+
+  /** Returns a summary of each time series of the metrics, ordered by metric type. */
+  public List<TimeSeriesSummary<?>> getSummaries() {
+    List<TimeSeriesSummary<?>> current = summaries;
+    if (current != null) {
+      if (clock.instant().isBefore(nextRefresh)) {
+        return current;
+      }
+      if (!refreshLock.tryLock()) {
+        // Another request is fetching new points; do not wait for it.
+        return current;
+      }
+    } else {
+      refreshLock.lock();
+    }
+    try {
+      if (summaries == null || !clock.instant().isBefore(nextRefresh)) {
+        refresh();
+      }
+      return summaries;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void refresh() {
+    Instant now = clock.instant();
+    Instant start = lastFetchEnd == null ? now.minus(WINDOW) : lastFetchEnd.minus(FETCH_OVERLAP);
+    ListTimeSeriesRequest request =
+        ListTimeSeriesRequest.newBuilder()
+            .setName(projectName)
+            .setFilter(timeSeriesFilter)
+            .setInterval(
+                TimeInterval.newBuilder()
+                    .setStartTime(toTimestamp(start))
+                    .setEndTime(toTimestamp(now))
+                    .build())
+            .build();
+    try {
+      ensureMetricsExist();
+      for (TimeSeries timeSeries : client.listTimeSeries(request).iterateAll()) {
+        Series points =
+            series.computeIfAbsent(
+                timeSeries.toBuilder().clearPoints().build(),
+                key -> new Series(key, maxPointsPerSeries));
+        for (Point point : timeSeries.getPointsList()) {
+          changed |= points.add(point);
+        }
+      }
+    } catch (RuntimeException ex) {
+      // Try again on the next page view. Points already added are not added twice.
+      os.println("MetricDescriptors not yet synced. Please try again in a moment.");
+      if (summaries == null) {
+        summaries = Collections.emptyList();
+      }
+      return;
+    }
+    lastFetchEnd = now;
+
+    Timestamp oldest = toTimestamp(now.minus(WINDOW));
+    for (Series points : series.values()) {
+      changed |= points.removeBefore(oldest);
+    }
+    if (changed || summaries == null) {
+      summaries = summarize();
+      changed = false;
+    }
+    nextRefresh = now.plus(refreshInterval);
+  }
+
+  private List<TimeSeriesSummary<?>> summarize() {
+    List<TimeSeriesSummary<?>> result = new ArrayList<>();
+    series
+        .values()
+        .stream()
+        .filter(points -> !points.isEmpty())
+        .sorted(Comparator.comparing(Series::getName))
+        .map(Series::summarize)
+        .filter(summary -> summary != null)
+        .forEach(result::add);
+    return Collections.unmodifiableList(result);
+  }
+
+  private static Timestamp toTimestamp(Instant instant) {
+    return Timestamp.newBuilder()
+        .setSeconds(instant.getEpochSecond())
+        .setNanos(instant.getNano())
+        .build();
+  }
+
+  /** The most recent points of one time series, by end time. */
+  private static final class Series {
+    private final TimeSeries timeSeries;
+    private final int maxPoints;
+    private final NavigableMap<Timestamp, Point> points = new TreeMap<>(Timestamps.comparator());
+
+    Series(TimeSeries timeSeries, int maxPoints) {
+      this.timeSeries = timeSeries;
+      this.maxPoints = maxPoints;
+    }
+
+    String getName() {
+      return timeSeries.getMetric().getType();
+    }
+
+    boolean isEmpty() {
+      return points.isEmpty();
+    }
+
+    // Returns whether the point is new and recent enough to keep.
+    boolean add(Point point) {
+      Timestamp endTime = point.getInterval().getEndTime();
+      if (points.putIfAbsent(endTime, point) != null) {
+        return false;
+      }
+      if (points.size() > maxPoints) {
+        return !points.pollFirstEntry().getKey().equals(endTime);
+      }
+      return true;
+    }
+
+    // Returns whether any point ended before oldest.
+    boolean removeBefore(Timestamp oldest) {
+      NavigableMap<Timestamp, Point> expired = points.headMap(oldest, false);
+      if (expired.isEmpty()) {
+        return false;
+      }
+      expired.clear();
+      return true;
+    }
+
+    TimeSeriesSummary<?> summarize() {
+      return TimeSeriesSummary.fromOrderedPoints(
+          getName(), timeSeries.getValueType(), new ArrayList<>(points.values()));
+    }
+  }
+}
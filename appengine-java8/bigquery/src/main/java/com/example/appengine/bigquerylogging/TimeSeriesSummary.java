@@ -16,6 +16,7 @@
 
 package com.example.appengine.bigquerylogging;
 
+import com.google.api.MetricDescriptor.ValueType;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 import com.google.monitoring.v3.Point;
@@ -33,27 +34,41 @@ public abstract class TimeSeriesSummary<T> {
   List<T> values;
 
   public static TimeSeriesSummary<?> fromTimeSeries(TimeSeries timeSeries) {
-    switch (timeSeries.getValueType()) {
+    Point max =
+        Collections.max(
+            timeSeries.getPointsList(),
+            Comparator.comparingLong(p -> p.getInterval().getEndTime().getSeconds()));
+    return fromPoints(
+        timeSeries.getMetric().getType(),
+        timeSeries.getValueType(),
+        timeSeries.getPointsList(),
+        max);
+  }
+
+  /**
+   * Summarizes points that are already ordered by end time, so the most recent one is the last
+   * and there is no need to search for it.
+   */
+  static TimeSeriesSummary<?> fromOrderedPoints(
+      String name, ValueType valueType, List<Point> points) {
+    return fromPoints(name, valueType, points, points.get(points.size() - 1));
+  }
+
+  private static TimeSeriesSummary<?> fromPoints(
+      String name, ValueType valueType, List<Point> points, Point mostRecent) {
+    switch (valueType) {
       case STRING:
-        return new StringTimeSeriesSummary(timeSeries);
+        return new StringTimeSeriesSummary(name, points, mostRecent);
       case INT64:
-        return new Int64TimeSeriesSummary(timeSeries);
+        return new Int64TimeSeriesSummary(name, points, mostRecent);
       default:
         return null;
     }
   }
 
-  private TimeSeriesSummary(TimeSeries timeSeries) {
-    name = timeSeries.getMetric().getType();
-  }
-
-  Point getMostRecentPoint(TimeSeries timeSeries) {
-    Point max =
-        Collections.max(
-            timeSeries.getPointsList(),
-            Comparator.comparingLong(p -> p.getInterval().getEndTime().getSeconds()));
-    mostRecentRunTime = max.getInterval().getEndTime();
-    return max;
+  private TimeSeriesSummary(String name, Point mostRecent) {
+    this.name = name;
+    mostRecentRunTime = mostRecent.getInterval().getEndTime();
   }
 
   public String getName() {
@@ -75,42 +90,38 @@ public abstract class TimeSeriesSummary<T> {
   public abstract T getAverage();
 
   public static class StringTimeSeriesSummary extends TimeSeriesSummary<String> {
-    private StringTimeSeriesSummary(TimeSeries timeSeries) {
-      super(timeSeries);
-      Point max = getMostRecentPoint(timeSeries);
-      if (max == null) {
-        return;
-      }
-      mostRecentValue = max.getValue().getStringValue();
+    private final String average;
+
+    private StringTimeSeriesSummary(String name, List<Point> points, Point mostRecent) {
+      super(name, mostRecent);
+      mostRecentValue = mostRecent.getValue().getStringValue();
       values =
           Lists.newArrayList(
-              Collections2.transform(
-                  timeSeries.getPointsList(), point -> point.getValue().getStringValue()));
+              Collections2.transform(points, point -> point.getValue().getStringValue()));
+      average = values.stream().collect(Collectors.joining(","));
     }
 
     @Override
     public String getAverage() {
-      return values.stream().collect(Collectors.joining(","));
+      return average;
     }
   }
 
   public static class Int64TimeSeriesSummary extends TimeSeriesSummary<Long> {
-    private Int64TimeSeriesSummary(TimeSeries timeSeries) {
-      super(timeSeries);
-      Point max = getMostRecentPoint(timeSeries);
-      if (max == null) {
-        return;
-      }
-      mostRecentValue = max.getValue().getInt64Value();
+    private final Long average;
+
+    private Int64TimeSeriesSummary(String name, List<Point> points, Point mostRecent) {
+      super(name, mostRecent);
+      mostRecentValue = mostRecent.getValue().getInt64Value();
       values =
           Lists.newArrayList(
-              Collections2.transform(
-                  timeSeries.getPointsList(), point -> point.getValue().getInt64Value()));
+              Collections2.transform(points, point -> point.getValue().getInt64Value()));
+      average = values.stream().collect(Collectors.averagingLong(Long::longValue)).longValue();
     }
 
     @Override
     public Long getAverage() {
-      return values.stream().collect(Collectors.averagingLong(Long::longValue)).longValue();
+      return average;
     }
   }
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.bigquerylogging;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.Metric;
+import com.google.api.MetricDescriptor;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.cloud.monitoring.v3.MetricServiceClient.ListMetricDescriptorsPagedResponse;
+import com.google.cloud.monitoring.v3.MetricServiceClient.ListTimeSeriesPagedResponse;
+import com.google.cloud.monitoring.v3.stub.MetricServiceStub;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.v3.CreateMetricDescriptorRequest;
+import com.google.monitoring.v3.ListMetricDescriptorsRequest;
+import com.google.monitoring.v3.ListTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.util.Timestamps;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link MetricSummaryService} with a mocked Cloud Monitoring API.
+ */
+@RunWith(JUnit4.class)
+public class MetricSummaryServiceTest {
+  private static final MetricDescriptor DURATION_METRIC = metric("duration");
+  private static final MetricDescriptor ROWS_METRIC = metric("rows");
+  private static final Set<MetricDescriptor> METRICS =
+      ImmutableSet.of(DURATION_METRIC, ROWS_METRIC);
+  private static final Duration REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+  @Mock
+  private MetricServiceStub metricsServiceStub;
+  @Mock
+  private UnaryCallable<ListMetricDescriptorsRequest, ListMetricDescriptorsPagedResponse>
+      listMetricsCallable;
+  @Mock
+  private ListMetricDescriptorsPagedResponse listMetricsResponse;
+  @Mock
+  private UnaryCallable<CreateMetricDescriptorRequest, MetricDescriptor> createMetricCallable;
+  @Mock
+  private UnaryCallable<ListTimeSeriesRequest, ListTimeSeriesPagedResponse> listTimeSeriesCallable;
+
+  @Captor
+  private ArgumentCaptor<ListTimeSeriesRequest> listTimeSeriesRequests;
+
+  private ByteArrayOutputStream bout;
+  private MetricServiceClient client;
+  private FakeClock clock;
+  // The points Cloud Monitoring has, with one time series per point.
+  private final List<TimeSeries> written = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.openMocks(this);
+    bout = new ByteArrayOutputStream();
+    client = MetricServiceClient.create(metricsServiceStub);
+    clock = new FakeClock(Instant.parse("2026-03-01T12:00:00Z"));
+
+    when(metricsServiceStub.listMetricDescriptorsPagedCallable()).thenReturn(listMetricsCallable);
+    when(listMetricsCallable.call(any(ListMetricDescriptorsRequest.class)))
+        .thenReturn(listMetricsResponse);
+    when(listMetricsResponse.iterateAll()).thenReturn(Collections.singletonList(ROWS_METRIC));
+    when(metricsServiceStub.createMetricDescriptorCallable()).thenReturn(createMetricCallable);
+
+    when(metricsServiceStub.listTimeSeriesPagedCallable()).thenReturn(listTimeSeriesCallable);
+    when(listTimeSeriesCallable.call(any(ListTimeSeriesRequest.class)))
+        .thenAnswer(invocation -> listTimeSeries(invocation.getArgument(0)));
+  }
+
+  private MetricSummaryService newService(int maxPointsPerSeries) {
+    return new MetricSummaryService(
+        client,
+        "projects/test",
+        METRICS,
+        maxPointsPerSeries,
+        REFRESH_INTERVAL,
+        clock,
+        new PrintStream(bout));
+  }
+
+  @Test
+  public void ensureMetricsExist_createsMissingDescriptorsOnce() {
+    MetricSummaryService service = newService(10);
+
+    service.ensureMetricsExist();
+    service.ensureMetricsExist();
+    service.getSummaries();
+
+    verify(listMetricsCallable).call(any(ListMetricDescriptorsRequest.class));
+    ArgumentCaptor<CreateMetricDescriptorRequest> created =
+        ArgumentCaptor.forClass(CreateMetricDescriptorRequest.class);
+    verify(createMetricCallable).call(created.capture());
+    assertThat(created.getValue().getMetricDescriptor()).isEqualTo(DURATION_METRIC);
+  }
+
+  @Test
+  public void getSummaries_fetchesOnlyNewPointsOncePerInterval() {
+    MetricSummaryService service = newService(10);
+    write(DURATION_METRIC, clock.instant().minus(Duration.ofDays(40)), 1);
+    write(DURATION_METRIC, clock.instant().minus(Duration.ofDays(2)), 10);
+    write(ROWS_METRIC, clock.instant().minus(Duration.ofDays(2)), 5);
+
+    List<TimeSeriesSummary<?>> first = service.getSummaries();
+    assertThat(first).hasSize(2);
+    assertThat(first.get(0).getName()).isEqualTo(DURATION_METRIC.getType());
+    assertThat(first.get(0).getValues()).containsExactly(10L);
+    assertThat(first.get(1).getName()).isEqualTo(ROWS_METRIC.getType());
+
+    // Within the refresh interval, views are served from memory.
+    clock.advance(Duration.ofSeconds(30));
+    write(DURATION_METRIC, clock.instant(), 20);
+    assertThat(service.getSummaries()).isSameInstanceAs(first);
+    verify(listTimeSeriesCallable).call(any(ListTimeSeriesRequest.class));
+
+    // Afterwards, only points since the last fetch are read, and each is kept once.
+    Instant firstFetchEnd = clock.instant().minus(Duration.ofSeconds(30));
+    clock.advance(REFRESH_INTERVAL);
+    write(DURATION_METRIC, clock.instant(), 30);
+    List<TimeSeriesSummary<?>> second = service.getSummaries();
+    verify(listTimeSeriesCallable, times(2)).call(listTimeSeriesRequests.capture());
+    TimeInterval fetched = listTimeSeriesRequests.getValue().getInterval();
+    assertThat(Timestamps.toMillis(fetched.getStartTime()))
+        .isEqualTo(firstFetchEnd.minus(MetricSummaryService.FETCH_OVERLAP).toEpochMilli());
+    assertThat(second.get(0).getValues()).containsExactly(10L, 20L, 30L).inOrder();
+    assertThat(second.get(0).getMostRecentValue()).isEqualTo(30L);
+    assertThat(second.get(0).getAverage()).isEqualTo(20L);
+    assertThat(second.get(1).getValues()).containsExactly(5L);
+  }
+
+  @Test
+  public void getSummaries_keepsPointsThatShowUpLate() {
+    MetricSummaryService service = newService(10);
+    write(DURATION_METRIC, clock.instant().minus(Duration.ofMinutes(1)), 10);
+    service.getSummaries();
+
+    // Written before the first fetch ended, but only visible after it.
+    write(DURATION_METRIC, clock.instant().minus(Duration.ofSeconds(1)), 20);
+    clock.advance(REFRESH_INTERVAL);
+
+    TimeSeriesSummary<?> summary = service.getSummaries().get(0);
+    assertThat(summary.getValues()).containsExactly(10L, 20L).inOrder();
+    assertThat(summary.getMostRecentValue()).isEqualTo(20L);
+  }
+
+  @Test
+  public void getSummaries_keepsMostRecentPointsOfEachSeries() {
+    MetricSummaryService service = newService(3);
+    for (int i = 1; i <= 5; i++) {
+      write(DURATION_METRIC, clock.instant().minus(Duration.ofHours(6 - i)), i);
+    }
+
+    TimeSeriesSummary<?> summary = service.getSummaries().get(0);
+
+    assertThat(summary.getValues()).containsExactly(3L, 4L, 5L).inOrder();
+    assertThat(summary.getMostRecentValue()).isEqualTo(5L);
+    Instant mostRecent = clock.instant().minus(Duration.ofHours(1));
+    assertThat(summary.getMostRecentRunTime())
+        .isEqualTo(Timestamps.fromMillis(mostRecent.toEpochMilli()));
+    assertThat(summary.getAverage()).isEqualTo(4L);
+  }
+
+  @Test
+  public void invalidate_fetchesNewPointsOnNextView() {
+    MetricSummaryService service = newService(10);
+    service.getSummaries();
+    assertThat(service.getSummaries()).isEmpty();
+
+    clock.advance(Duration.ofSeconds(1));
+    write(ROWS_METRIC, clock.instant(), 7);
+    service.invalidate();
+
+    assertThat(service.getSummaries().get(0).getValues()).containsExactly(7L);
+    verify(listTimeSeriesCallable, times(2)).call(any(ListTimeSeriesRequest.class));
+  }
+
+  @Test
+  public void getSummaries_retriesAfterError() {
+    MetricSummaryService service = newService(10);
+    write(ROWS_METRIC, clock.instant(), 7);
+    doThrow(new IllegalStateException("Not synced"))
+        .doAnswer(invocation -> listTimeSeries(invocation.getArgument(0)))
+        .when(listTimeSeriesCallable)
+        .call(any(ListTimeSeriesRequest.class));
+
+    assertThat(service.getSummaries()).isEmpty();
+    assertThat(bout.toString()).contains("MetricDescriptors not yet synced.");
+
+    assertThat(service.getSummaries().get(0).getValues()).containsExactly(7L);
+  }
+
+  private static MetricDescriptor metric(String name) {
+    return MetricDescriptor.newBuilder()
+        .setName("custom.googleapis.com/" + name)
+        .setType("custom.googleapis.com/" + name)
+        .setDisplayName(name)
+        .setMetricKind(MetricDescriptor.MetricKind.GAUGE)
+        .setValueType(MetricDescriptor.ValueType.INT64)
+        .build();
+  }
+
+  private void write(MetricDescriptor metric, Instant endTime, long value) {
+    written.add(
+        TimeSeries.newBuilder()
+            .setMetric(Metric.newBuilder().setType(metric.getType()))
+            .setMetricKind(metric.getMetricKind())
+            .setValueType(metric.getValueType())
+            .addPoints(
+                Point.newBuilder()
+                    .setInterval(
+                        TimeInterval.newBuilder()
+                            .setEndTime(Timestamps.fromMillis(endTime.toEpochMilli())))
+                    .setValue(TypedValue.newBuilder().setInt64Value(value)))
+            .build());
+  }
+
+  // Returns the written points that ended within the request's interval, newest first.
+  private ListTimeSeriesPagedResponse listTimeSeries(ListTimeSeriesRequest request) {
+    List<TimeSeries> result = new ArrayList<>();
+    for (TimeSeries timeSeries : written) {
+      long endTime = Timestamps.toMillis(timeSeries.getPoints(0).getInterval().getEndTime());
+      if (endTime >= Timestamps.toMillis(request.getInterval().getStartTime())
+          && endTime <= Timestamps.toMillis(request.getInterval().getEndTime())) {
+        result.add(0, timeSeries);
+      }
+    }
+    ListTimeSeriesPagedResponse response = mock(ListTimeSeriesPagedResponse.class);
+    when(response.iterateAll()).thenReturn(result);
+    return response;
+  }
+
+  private static final class FakeClock extends Clock {
+    private Instant now;
+
+    FakeClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.solutions.flexenv.backend;
+
+import com.google.cloud.solutions.flexenv.common.LogEntry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LogBuffer keeps the most recent user event logs in a fixed-size ring
+ * buffer, so that the memory used by a servlet instance does not grow with
+ * chat traffic. When the buffer is full, the oldest entry is overwritten.
+ * Entries arrive on the Firebase event thread, which must not be blocked,
+ * so the buffer counts the overwritten entries instead of waiting for room.
+ */
+public class LogBuffer {
+  private final LogEntry[] entries;
+  // Index of the slot the next entry is written to.
+  private int next;
+  private int size;
+  private long dropped;
+
+  public LogBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    entries = new LogEntry[capacity];
+  }
+
+  public synchronized void add(LogEntry entry) {
+    if (size == entries.length) {
+      dropped++;
+    } else {
+      size++;
+    }
+    entries[next] = entry;
+    next = (next + 1) % entries.length;
+  }
+
+  /*
+   * Returns the buffered entries, from the oldest to the newest.
+   */
+  public synchronized List<LogEntry> snapshot() {
+    List<LogEntry> result = new ArrayList<>(size);
+    int first = (next - size + entries.length) % entries.length;
+    for (int i = 0; i < size; i++) {
+      result.add(entries[(first + i) % entries.length]);
+    }
+    return result;
+  }
+
+  /*
+   * Returns the number of entries overwritten because the buffer was full.
+   */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+}
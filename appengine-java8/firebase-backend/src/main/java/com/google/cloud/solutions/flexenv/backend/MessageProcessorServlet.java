@@ -29,9 +29,7 @@ import com.google.firebase.database.Transaction;
 import java.io.IOException;
 import java.lang.Override;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServlet;
@@ -68,7 +66,8 @@ public class MessageProcessorServlet extends HttpServlet {
   private int purgeInterval;
   private MessagePurger purger;
 
-  private ConcurrentLinkedQueue<LogEntry> logs;
+  // The most recent user event logs received by this servlet instance.
+  private LogBuffer logs;
 
   @Override
   public void init(ServletConfig config) {
@@ -77,8 +76,10 @@ public class MessageProcessorServlet extends HttpServlet {
     channels = config.getInitParameter("channels");
     purgeLogs = Integer.parseInt(config.getInitParameter("purgeLogs"));
     purgeInterval = Integer.parseInt(config.getInitParameter("purgeInterval"));
+    // The number of user event logs kept in memory, "purgeLogs" if not set.
+    String maxLogs = config.getInitParameter("maxLogs");
 
-    logs = new ConcurrentLinkedQueue<LogEntry>();
+    logs = new LogBuffer(maxLogs == null ? purgeLogs : Integer.parseInt(maxLogs));
     generateUniqueId();
 
     localLog.info("Credential file : " + credential);
@@ -188,15 +189,15 @@ public class MessageProcessorServlet extends HttpServlet {
    * (non-Javadoc)
    * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, 
    * javax.servlet.http.HttpServletResponse)
-   * Just printing all user event logs stored in memory of this servlet instance.
+   * Just printing the user event logs stored in memory of this servlet instance.
    */
   @Override
   public void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     resp.setContentType("text/plain");
     resp.getWriter().println("Inbox : " + inbox);
+    resp.getWriter().println("Dropped : " + logs.getDropped());
 
-    for (Iterator<LogEntry> iter = logs.iterator(); iter.hasNext();) {
-      LogEntry entry = (LogEntry) iter.next();
+    for (LogEntry entry : logs.snapshot()) {
       resp.getWriter().println(new Date(entry.getTimeLong()).toString() + "(id=" + entry.getTag()
           + ")" +  " : " + entry.getLog());
     }
@@ -16,75 +16,153 @@
 
 package com.google.cloud.solutions.flexenv.backend;
 
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 import java.lang.Override;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 
 /**
  * MessagePurger is responsible for purging messages pushed under
- * registered parent keys. If the number of entries exceeds "maxLogs",
- * the excess entries are purged. It checks each registered 
- * parent key under regular interval, "purgeInterval".
+ * registered parent keys. Only the newest "purgeLogs" entries of each
+ * parent key are kept. Each parent key is watched through a query limited
+ * to its newest entries, so an entry is expired when the query reports that
+ * it was pushed out, without reading the branch again. Expired entries are
+ * deleted with a single multi-path update every "purgeInterval".
  *
  * @author teppeiy
  */
 public class MessagePurger extends Thread {
   private static Logger logger = Logger.getLogger(MessagePurger.class.getName());
 
+  // The most entries deleted by a single multi-path update.
+  private static final int MAX_BATCH_SIZE = 500;
+  // The number of old entries read at a time when a branch is registered.
+  private static final int PAGE_SIZE = 100;
+
   private DatabaseReference firebase;
   private int purgeInterval;
   private int purgeLogs;
-  private ConcurrentLinkedQueue<String> branches;
+  // Paths of the entries to delete with the next update.
+  private ConcurrentLinkedQueue<String> expired;
 
   public MessagePurger(DatabaseReference firebase, int purgeInterval, int purgeLogs) {
     this.setDaemon(true);
     this.firebase = firebase;
     this.purgeInterval = purgeInterval;
     this.purgeLogs = purgeLogs;
-    branches = new ConcurrentLinkedQueue<>();
+    expired = new ConcurrentLinkedQueue<>();
   }
 
-  public void registerBranch(String branchKey) {
-    branches.add(branchKey);
+  public void registerBranch(final String branchKey) {
+    Query newest = firebase.child(branchKey).orderByKey().limitToLast(purgeLogs);
+    // An entry that leaves the query was pushed out by a newer one, or was
+    // already deleted. Deleting it again is harmless.
+    newest.addChildEventListener(new ChildEventListener() {
+      @Override
+      public void onChildRemoved(DataSnapshot snapshot) {
+        expired.add(branchKey + "/" + snapshot.getKey());
+      }
+
+      @Override
+      public void onCancelled(DatabaseError error) {
+        logger.warning(error.getDetails());
+      }
+
+      @Override
+      public void onChildAdded(DataSnapshot snapshot, String prevKey) {}
+
+      @Override
+      public void onChildChanged(DataSnapshot snapshot, String prevKey) {}
+
+      @Override
+      public void onChildMoved(DataSnapshot snapshot, String prevKey) {}
+    });
+    // Entries older than the query when the branch is registered are never
+    // reported by it, so they are purged once, a page at a time.
+    newest.addListenerForSingleValueEvent(new ValueEventListener() {
+      @Override
+      public void onDataChange(DataSnapshot snapshot) {
+        if (snapshot.getChildrenCount() == purgeLogs) {
+          purgeOlderThan(branchKey, snapshot.getChildren().iterator().next().getKey(), null);
+        }
+      }
+
+      @Override
+      public void onCancelled(DatabaseError error) {
+        logger.warning(error.getDetails());
+      }
+    });
+  }
+
+  /*
+   * Expires the entries of a branch with keys before "oldestKept", reading
+   * them in pages that start at "cursor", the last key of the previous page.
+   * startAt includes the cursor itself, which was handled with that page.
+   */
+  private void purgeOlderThan(
+      final String branchKey, final String oldestKept, final String cursor) {
+    Query page = firebase.child(branchKey).orderByKey();
+    if (cursor != null) {
+      page = page.startAt(cursor);
+    }
+    page.endAt(oldestKept).limitToFirst(PAGE_SIZE).addListenerForSingleValueEvent(
+        new ValueEventListener() {
+          @Override
+          public void onDataChange(DataSnapshot snapshot) {
+            String last = null;
+            for (DataSnapshot child : snapshot.getChildren()) {
+              last = child.getKey();
+              if (!last.equals(oldestKept) && !last.equals(cursor)) {
+                expired.add(branchKey + "/" + last);
+              }
+            }
+            if (snapshot.getChildrenCount() == PAGE_SIZE && !oldestKept.equals(last)) {
+              purgeOlderThan(branchKey, oldestKept, last);
+            }
+          }
+
+          @Override
+          public void onCancelled(DatabaseError error) {
+            logger.warning(error.getDetails());
+          }
+        });
   }
 
   public void run() {
     while (true) {
       try {
         Thread.sleep(purgeInterval);
-
-        Iterator<String> iter = branches.iterator();
-        while (iter.hasNext()) {
-          final String branchKey = (String) iter.next();
-          // Query to check whether entries exceed "maxLogs".
-          Query query = firebase.child(branchKey).orderByKey().limitToFirst(purgeLogs);
-          query.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-              // If entries are less than "maxLogs", do nothing.
-              if (snapshot.getChildrenCount() == purgeLogs) {
-                for (DataSnapshot child : snapshot.getChildren()) {
-                  firebase.child(branchKey + "/" + child.getKey()).removeValue();
-                }
-              }
-            }
-
-            @Override
-            public void onCancelled(DatabaseError error) {
-              logger.warning(error.getDetails());
-            }
-          });
-        }
+        flush();
       } catch (InterruptedException ie) {
         logger.warning(ie.getMessage());
+        flush();
         break;
       }
     }
   }
+
+  /*
+   * Deletes the expired entries. Each batch is sent as one multi-path update,
+   * with a null value for every path to delete.
+   */
+  private void flush() {
+    Map<String, Object> updates = new HashMap<>();
+    for (String path = expired.poll(); path != null; path = expired.poll()) {
+      updates.put(path, null);
+      if (updates.size() == MAX_BATCH_SIZE) {
+        firebase.updateChildren(updates);
+        updates = new HashMap<>();
+      }
+    }
+    if (!updates.isEmpty()) {
+      firebase.updateChildren(updates);
+    }
+  }
 }
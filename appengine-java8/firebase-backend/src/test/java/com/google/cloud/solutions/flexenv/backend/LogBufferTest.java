@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.solutions.flexenv.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.solutions.flexenv.common.LogEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link LogBuffer}.
+ */
+@RunWith(JUnit4.class)
+public class LogBufferTest {
+
+  private static List<String> logs(LogBuffer buffer) {
+    List<String> logs = new ArrayList<>();
+    for (LogEntry entry : buffer.snapshot()) {
+      logs.add(entry.getLog());
+    }
+    return logs;
+  }
+
+  private static void add(LogBuffer buffer, int from, int to) {
+    for (int i = from; i < to; i++) {
+      buffer.add(new LogEntry("tag", "log " + i));
+    }
+  }
+
+  @Test
+  public void snapshot_emptyBuffer() {
+    LogBuffer buffer = new LogBuffer(3);
+
+    assertTrue(buffer.snapshot().isEmpty());
+    assertEquals(0, buffer.getDropped());
+  }
+
+  @Test
+  public void snapshot_returnsEntriesFromOldestToNewest() {
+    LogBuffer buffer = new LogBuffer(3);
+    add(buffer, 0, 2);
+
+    assertEquals(Arrays.asList("log 0", "log 1"), logs(buffer));
+    assertEquals(0, buffer.getDropped());
+  }
+
+  @Test
+  public void add_fullBufferOverwritesOldestEntries() {
+    LogBuffer buffer = new LogBuffer(3);
+    add(buffer, 0, 3);
+    assertEquals(Arrays.asList("log 0", "log 1", "log 2"), logs(buffer));
+    assertEquals(0, buffer.getDropped());
+
+    add(buffer, 3, 5);
+
+    // The oldest entries are gone, and the rest still come out in order across the wrap.
+    assertEquals(Arrays.asList("log 2", "log 3", "log 4"), logs(buffer));
+    assertEquals(2, buffer.getDropped());
+  }
+
+  @Test
+  public void add_wrapsAroundManyTimes() {
+    LogBuffer buffer = new LogBuffer(3);
+    add(buffer, 0, 10);
+
+    assertEquals(Arrays.asList("log 7", "log 8", "log 9"), logs(buffer));
+    assertEquals(7, buffer.getDropped());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_rejectsEmptyCapacity() {
+    new LogBuffer(0);
+  }
+}
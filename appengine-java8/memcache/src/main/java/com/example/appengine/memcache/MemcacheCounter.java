@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.memcache;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A counter kept in memcache that many requests can increment at once without contending.
+ *
+ * <p>Increments are added to a striped {@link LongAdder} on this instance, which never blocks.
+ * Once per flush interval, the request that notices the interval is over publishes everything
+ * added since the last flush with a single atomic {@link MemcacheService#increment}. Other
+ * requests carry on adding while it does.
+ *
+ * <p>{@link #estimate} returns the last value seen in memcache plus what this instance has added
+ * since, so each instance sees its own increments at once and those of other instances within a
+ * flush interval. If memcache evicts the key, the count starts again from what is published next.
+ */
+public final class MemcacheCounter {
+  private static final Logger logger = Logger.getLogger(MemcacheCounter.class.getName());
+
+  private final MemcacheService memcache;
+  private final String key;
+  private final long flushIntervalNanos;
+  // Added since the last flush started.
+  private final LongAdder pending = new LongAdder();
+  // Held only by flushes, to move a delta between pending, inFlight and published.
+  private final StampedLock lock = new StampedLock();
+  // Guarded by lock.
+  private long published;
+  private long inFlight;
+  // Lets one request at a time flush, without making others wait.
+  private final AtomicBoolean flushing = new AtomicBoolean();
+  private volatile long nextFlushNanos;
+  private final LongAdder flushes = new LongAdder();
+
+  /**
+   * Creates a counter for {@code key}.
+   *
+   * @param flushIntervalMillis how often increments are published to memcache
+   */
+  public MemcacheCounter(MemcacheService memcache, String key, long flushIntervalMillis) {
+    this.memcache = memcache;
+    this.key = key;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    this.nextFlushNanos = System.nanoTime();
+  }
+
+  /** Adds one to the counter. */
+  public void increment() {
+    add(1);
+  }
+
+  /** Adds {@code delta} to the counter, and publishes it if the flush interval is over. */
+  public void add(long delta) {
+    pending.add(delta);
+    maybeFlush();
+  }
+
+  /**
+   * Returns the counter's value as far as this instance knows it. Never counts an increment of
+   * this instance twice or drops one, even while a flush is publishing it.
+   */
+  public long estimate() {
+    maybeFlush();
+    // A flush moves a delta from pending to inFlight, and from inFlight to published, under the
+    // lock; a read that overlaps either move is retried.
+    long stamp = lock.tryOptimisticRead();
+    long value = published + inFlight + pending.sum();
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        value = published + inFlight + pending.sum();
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Publishes what was added since the last flush and reads back the value in memcache. If
+   * memcache fails, the increments stay pending for the next flush.
+   */
+  public synchronized void flush() {
+    long delta;
+    long stamp = lock.writeLock();
+    try {
+      // Not sumThenReset, which can drop an add that lands between its sum and its reset.
+      // Subtracting what was summed leaves every concurrent add in pending.
+      delta = pending.sum();
+      pending.add(-delta);
+      inFlight += delta;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+
+    Long value = null;
+    try {
+      value = delta == 0 ? (Long) memcache.get(key) : memcache.increment(key, delta, 0L);
+      if (value == null && delta == 0) {
+        // Nobody has published yet, or memcache evicted the key.
+        value = 0L;
+      }
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Cannot publish counter " + key, e);
+    }
+
+    stamp = lock.writeLock();
+    try {
+      inFlight -= delta;
+      if (value != null) {
+        published = value;
+      } else {
+        pending.add(delta);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    flushes.increment();
+  }
+
+  /** Returns how many times the counter has called memcache. */
+  long flushCount() {
+    return flushes.sum();
+  }
+
+  private void maybeFlush() {
+    if (System.nanoTime() - nextFlushNanos < 0 || !flushing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      nextFlushNanos = System.nanoTime() + flushIntervalNanos;
+      flush();
+    } finally {
+      flushing.set(false);
+    }
+  }
+}
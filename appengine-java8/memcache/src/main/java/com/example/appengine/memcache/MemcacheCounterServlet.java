@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.memcache;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Counts requests like {@link MemcacheConcurrentServlet}, but through a {@link MemcacheCounter},
+ * so concurrent requests never retry or sleep and memcache sees one increment per second from each
+ * instance.
+ */
+@SuppressWarnings("serial")
+// With @WebServlet annotation the webapp/WEB-INF/web.xml is no longer required.
+@WebServlet(
+    name = "MemcacheCounter",
+    description = "Memcache: Counter",
+    urlPatterns = "/memcache/counter")
+public class MemcacheCounterServlet extends HttpServlet {
+  private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+  private MemcacheCounter counter;
+
+  @Override
+  public void init() throws ServletException {
+    counter =
+        new MemcacheCounter(
+            MemcacheServiceFactory.getMemcacheService(), "count-counter", FLUSH_INTERVAL_MILLIS);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp)
+      throws IOException, ServletException {
+    String path = req.getRequestURI();
+    if (path.startsWith("/favicon.ico")) {
+      return; // ignore the request for favicon.ico
+    }
+
+    counter.increment();
+    resp.setContentType("text/plain");
+    resp.getWriter().print("Value is about " + counter.estimate() + "\n");
+  }
+
+  @Override
+  public void destroy() {
+    // Publish what this instance counted before it goes away.
+    counter.flush();
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.memcache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link MemcacheCounter} against the local memcache service.
+ */
+@RunWith(JUnit4.class)
+public class MemcacheCounterTest {
+  private static final Logger logger = Logger.getLogger(MemcacheCounterTest.class.getName());
+  private static final String KEY = "count-test";
+  private static final int REQUESTS = 200;
+  private static final int INCREMENTS_PER_REQUEST = 500;
+  // Compare-and-set loops are slow under contention, so the baseline makes fewer increments.
+  private static final int CAS_INCREMENTS_PER_REQUEST = 10;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalMemcacheServiceTestConfig());
+
+  private MemcacheService memcache;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    memcache = MemcacheServiceFactory.getMemcacheService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void concurrentRequests_countEveryIncrementWithFewMemcacheCalls() throws Exception {
+    MemcacheCounter counter = new MemcacheCounter(memcache, KEY, 10);
+
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    long counterNanos = runConcurrently(REQUESTS, () -> {
+      long last = 0;
+      for (int i = 0; i < INCREMENTS_PER_REQUEST; i++) {
+        counter.increment();
+        long estimate = counter.estimate();
+        // This instance's increments are counted at once, and never go away.
+        if (estimate < last + 1) {
+          failure.compareAndSet(null, new AssertionError(estimate + " after " + last));
+        }
+        last = estimate;
+      }
+    });
+    assertThat(failure.get()).isNull();
+
+    long total = (long) REQUESTS * INCREMENTS_PER_REQUEST;
+    assertThat(counter.estimate()).isEqualTo(total);
+    counter.flush();
+    assertThat(memcache.get(KEY)).isEqualTo(total);
+    assertThat(counter.estimate()).isEqualTo(total);
+    // Far fewer calls than a get and a compare-and-set per increment.
+    assertThat(counter.flushCount()).isLessThan(total / 20);
+
+    // As many requests, each incrementing with a compare-and-set loop.
+    long casTotal = (long) REQUESTS * CAS_INCREMENTS_PER_REQUEST;
+    long casNanos = runConcurrently(REQUESTS, () -> {
+      for (int i = 0; i < CAS_INCREMENTS_PER_REQUEST; i++) {
+        casIncrement("cas-" + KEY);
+      }
+    });
+    assertThat(memcache.get("cas-" + KEY)).isEqualTo(casTotal);
+    double counterRate = total * 1e9 / counterNanos;
+    double casRate = casTotal * 1e9 / casNanos;
+    logger.info(String.format(
+        "%d increments in %d memcache calls: %.0f increments/s, compare-and-set: %.0f/s",
+        total, counter.flushCount(), counterRate, casRate));
+    assertThat(counterRate).isGreaterThan(casRate);
+  }
+
+  /** Adds one to {@code key}, retrying until no other request changed it in between. */
+  private void casIncrement(String key) {
+    while (true) {
+      IdentifiableValue value = memcache.getIdentifiable(key);
+      if (value == null
+          ? memcache.put(key, 1L, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT)
+          : memcache.putIfUntouched(key, value, (Long) value.getValue() + 1)) {
+        return;
+      }
+    }
+  }
+
+  @Test
+  public void instances_seeEachOthersIncrementsAfterFlush() throws Exception {
+    MemcacheCounter first = new MemcacheCounter(memcache, KEY, 60_000);
+    MemcacheCounter second = new MemcacheCounter(memcache, KEY, 60_000);
+
+    // The first call of each counter flushes; later ones wait for the interval.
+    first.add(5);
+    second.add(7);
+    first.add(3);
+    assertThat(first.estimate()).isEqualTo(8);
+    assertThat(second.estimate()).isEqualTo(12);
+
+    first.flush();
+    second.flush();
+    first.flush();
+    assertThat(first.estimate()).isEqualTo(15);
+    assertThat(second.estimate()).isEqualTo(15);
+  }
+
+  /**
+   * Runs {@code request} on that many threads at once, each with the test's API environment, and
+   * returns the nanoseconds until all of them are done.
+   */
+  private static long runConcurrently(int threads, Runnable request) throws InterruptedException {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        try {
+          start.await();
+          request.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          ApiProxy.clearEnvironmentForCurrentThread();
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    return System.nanoTime() - startNanos;
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.taskqueue;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueConstants;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leases tasks with a tag from a pull queue and processes them on a pool of threads.
+ *
+ * <p>One coordinating thread does all the calls to the queue. It leases tasks in batches, as many
+ * as keep every worker busy with a batch waiting, and deletes the tasks that were processed in
+ * batches too. A task that is still running when half its lease is gone has its lease extended,
+ * so no other worker leases it in the meantime. A task whose processing fails is given back to the
+ * queue at once, to be leased again.
+ *
+ * <p>{@link #drain} runs until the queue has no more tasks with the tag, in the calling thread;
+ * {@link #start} keeps leasing in the background until {@link #stop}.
+ */
+public final class PullTaskWorker {
+  private static final Logger log = Logger.getLogger(PullTaskWorker.class.getName());
+
+  /** Processes one leased task. Throwing leaves the task in the queue. */
+  public interface TaskProcessor {
+    void process(TaskHandle task) throws Exception;
+  }
+
+  /** Counts of what the worker did. */
+  public static final class Stats {
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder leaseCalls = new LongAdder();
+    private final LongAdder deleteCalls = new LongAdder();
+    private final LongAdder leaseExtensions = new LongAdder();
+
+    /** Returns how many tasks were processed and deleted. */
+    public long getProcessed() {
+      return processed.sum();
+    }
+
+    /** Returns how many times processing a task failed. */
+    public long getFailed() {
+      return failed.sum();
+    }
+
+    /** Returns how many times tasks were leased. */
+    public long getLeaseCalls() {
+      return leaseCalls.sum();
+    }
+
+    /** Returns how many times tasks were deleted. */
+    public long getDeleteCalls() {
+      return deleteCalls.sum();
+    }
+
+    /** Returns how many times the lease of a running task was extended. */
+    public long getLeaseExtensions() {
+      return leaseExtensions.sum();
+    }
+  }
+
+  /**
+   * A task being processed. Its worker sets {@code succeeded} before handing it back through a
+   * queue; only the coordinating thread touches the other fields.
+   */
+  private static final class LeasedTask {
+    private final TaskHandle leased;
+    // The handle with the latest lease; the queue only accepts changes to that one.
+    private TaskHandle current;
+    private long leaseEndNanos;
+    private boolean succeeded;
+
+    private LeasedTask(TaskHandle leased, long leaseEndNanos) {
+      this.leased = leased;
+      this.current = leased;
+      this.leaseEndNanos = leaseEndNanos;
+    }
+  }
+
+  private final Queue queue;
+  private final String tag;
+  private final TaskProcessor processor;
+  private final ThreadFactory threadFactory;
+  private final Stats stats = new Stats();
+  private int threads = 10;
+  private int batchSize = 100;
+  private long leaseSeconds = 60;
+  private long pollMillis = 1000;
+  private volatile boolean stopped;
+  private Thread coordinator;
+
+  /**
+   * Creates a worker for the tasks with {@code tag} in {@code queue}.
+   *
+   * @param threadFactory makes the worker's threads; on App Engine, {@code
+   *     ThreadManager.currentRequestThreadFactory()} for {@link #drain} within a request, or
+   *     {@code ThreadManager.backgroundThreadFactory()} for {@link #start} on manual scaling
+   */
+  public PullTaskWorker(
+      Queue queue, String tag, TaskProcessor processor, ThreadFactory threadFactory) {
+    this.queue = queue;
+    this.tag = tag;
+    this.processor = processor;
+    this.threadFactory = threadFactory;
+  }
+
+  /** Sets how many tasks are processed at once. */
+  public PullTaskWorker withThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  /** Sets the most tasks leased or deleted in one call. */
+  public PullTaskWorker withBatchSize(int batchSize) {
+    if (batchSize < 1 || batchSize > QueueConstants.maxLeaseCount()) {
+      throw new IllegalArgumentException(
+          "Batch size must be 1 to " + QueueConstants.maxLeaseCount());
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /** Sets how long tasks are leased for, and extended by while they run. */
+  public PullTaskWorker withLeaseSeconds(long leaseSeconds) {
+    this.leaseSeconds = leaseSeconds;
+    return this;
+  }
+
+  /** Sets how long {@link #start} waits before leasing again from an empty queue. */
+  public PullTaskWorker withPollMillis(long pollMillis) {
+    this.pollMillis = pollMillis;
+    return this;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  /**
+   * Adds tasks to a queue, as many in each call as the queue takes.
+   *
+   * @return the handles of the added tasks
+   */
+  public static List<TaskHandle> addAll(Queue queue, List<TaskOptions> tasks) {
+    List<TaskHandle> added = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); i += QueueConstants.maxTasksPerAdd()) {
+      added.addAll(
+          queue.add(tasks.subList(i, Math.min(tasks.size(), i + QueueConstants.maxTasksPerAdd()))));
+    }
+    return added;
+  }
+
+  /** Processes tasks until the queue has none left with the tag, and returns what was done. */
+  public Stats drain() throws InterruptedException {
+    run(true);
+    return stats;
+  }
+
+  /** Starts processing tasks in the background. */
+  public synchronized void start() {
+    if (coordinator != null) {
+      throw new IllegalStateException("Already started");
+    }
+    coordinator = threadFactory.newThread(() -> {
+      try {
+        run(false);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    coordinator.start();
+  }
+
+  /** Stops leasing tasks and waits for those being processed. */
+  public synchronized void stop() throws InterruptedException {
+    stopped = true;
+    if (coordinator != null) {
+      coordinator.join();
+    }
+  }
+
+  private void run(boolean untilEmpty) throws InterruptedException {
+    long leaseNanos = TimeUnit.SECONDS.toNanos(leaseSeconds);
+    // Often enough to extend every lease before it runs out.
+    long tickMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(leaseNanos) / 4);
+    Map<String, LeasedTask> running = new HashMap<>();
+    BlockingQueue<LeasedTask> completed = new LinkedBlockingQueue<>();
+    List<LeasedTask> toDelete = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads, threadFactory);
+    try {
+      long pollNanos = TimeUnit.MILLISECONDS.toNanos(pollMillis);
+      boolean empty = false;
+      long nextLeaseNanos = System.nanoTime();
+      long releasedNanos = nextLeaseNanos - pollNanos;
+      while (!stopped && !(untilEmpty && empty && running.isEmpty())) {
+        // Once the workers are down to their last tasks, lease as many again, so none of them
+        // waits for a lease call and each call leases a batch.
+        boolean leasedSome = false;
+        if (running.size() <= threads
+            && (running.isEmpty() || System.nanoTime() - nextLeaseNanos >= 0)) {
+          List<TaskHandle> leased = lease(Math.min(batchSize, 2 * threads - running.size()));
+          long now = System.nanoTime();
+          for (TaskHandle handle : leased) {
+            LeasedTask task = new LeasedTask(handle, now + leaseNanos);
+            running.put(handle.getName(), task);
+            pool.execute(() -> process(task, completed));
+          }
+          leasedSome = !leased.isEmpty();
+          // A task given back less than a poll interval ago may not be leasable yet.
+          empty = !leasedSome && now - releasedNanos >= pollNanos;
+          // After finding the queue empty, wait a poll interval before asking again, unless the
+          // workers run out of tasks.
+          nextLeaseNanos = leasedSome ? now : now + pollNanos;
+        }
+
+        long waitMillis = leasedSome ? 0 : running.isEmpty() ? pollMillis : tickMillis;
+        if (collect(completed, waitMillis, running, toDelete)) {
+          // A failed task is back in the queue.
+          empty = false;
+          releasedNanos = System.nanoTime();
+        }
+        maybeDelete(toDelete, running, leaseNanos);
+        extendLeases(running, leaseNanos);
+      }
+
+      // Let the tasks already leased finish, keeping their leases.
+      while (!running.isEmpty()) {
+        collect(completed, tickMillis, running, toDelete);
+        maybeDelete(toDelete, running, leaseNanos);
+        extendLeases(running, leaseNanos);
+      }
+      delete(toDelete);
+    } finally {
+      pool.shutdown();
+      // Request threads must end before their request does.
+      pool.awaitTermination(leaseSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Waits up to {@code waitMillis} for a task to complete, then handles all that have. Returns
+   * whether any failed.
+   */
+  private boolean collect(BlockingQueue<LeasedTask> completed, long waitMillis,
+      Map<String, LeasedTask> running, List<LeasedTask> toDelete) throws InterruptedException {
+    boolean failed = false;
+    LeasedTask done = completed.poll(waitMillis, TimeUnit.MILLISECONDS);
+    for (; done != null; done = completed.poll()) {
+      running.remove(done.leased.getName());
+      if (done.succeeded) {
+        toDelete.add(done);
+      } else {
+        release(done);
+        failed = true;
+      }
+    }
+    return failed;
+  }
+
+  private List<TaskHandle> lease(int count) {
+    stats.leaseCalls.increment();
+    // Lease only tasks tagged with the worker's tag.
+    return queue.leaseTasksByTag(leaseSeconds, TimeUnit.SECONDS, count, tag);
+  }
+
+  private void process(LeasedTask task, BlockingQueue<LeasedTask> completed) {
+    try {
+      processor.process(task.leased);
+      task.succeeded = true;
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Cannot process task " + task.leased.getName(), e);
+    } finally {
+      // The queue hands the task, and the field written above, to the coordinating thread.
+      completed.add(task);
+    }
+  }
+
+  /**
+   * Deletes the processed tasks once there is a batch of them, or nothing else is running, or
+   * before one of them could be leased again.
+   */
+  private void maybeDelete(
+      List<LeasedTask> toDelete, Map<String, LeasedTask> running, long leaseNanos) {
+    if (toDelete.size() >= batchSize
+        || (!toDelete.isEmpty() && running.isEmpty())
+        || toDelete.stream().anyMatch(task -> leaseEndsSoon(task, leaseNanos))) {
+      delete(toDelete);
+    }
+  }
+
+  private void delete(List<LeasedTask> tasks) {
+    for (int i = 0; i < tasks.size(); i += batchSize) {
+      List<TaskHandle> handles = new ArrayList<>();
+      for (LeasedTask task : tasks.subList(i, Math.min(tasks.size(), i + batchSize))) {
+        handles.add(task.current);
+      }
+      stats.deleteCalls.increment();
+      queue.deleteTask(handles);
+      stats.processed.add(handles.size());
+    }
+    tasks.clear();
+  }
+
+  /** Gives a failed task back to the queue, so it can be leased again right away. */
+  private void release(LeasedTask task) {
+    stats.failed.increment();
+    try {
+      queue.modifyTaskLease(task.current, 0, TimeUnit.SECONDS);
+    } catch (RuntimeException e) {
+      // The task is leased again once its lease runs out.
+      log.log(Level.WARNING, "Cannot release task " + task.leased.getName(), e);
+    }
+  }
+
+  /** Whether half the lease of {@code task} is gone. */
+  private static boolean leaseEndsSoon(LeasedTask task, long leaseNanos) {
+    return task.leaseEndNanos - System.nanoTime() <= leaseNanos / 2;
+  }
+
+  private void extendLeases(Map<String, LeasedTask> running, long leaseNanos) {
+    for (LeasedTask task : running.values()) {
+      if (!leaseEndsSoon(task, leaseNanos)) {
+        continue;
+      }
+      try {
+        task.current = queue.modifyTaskLease(task.current, leaseSeconds, TimeUnit.SECONDS);
+        task.leaseEndNanos = System.nanoTime() + leaseNanos;
+        stats.leaseExtensions.increment();
+      } catch (RuntimeException e) {
+        // Another worker may get the task too; processing must tolerate that anyway.
+        log.log(Level.WARNING, "Cannot extend the lease of task " + task.leased.getName(), e);
+      }
+    }
+  }
+}
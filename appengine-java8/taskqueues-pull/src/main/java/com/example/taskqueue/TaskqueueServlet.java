@@ -16,11 +16,13 @@
 
 package com.example.taskqueue;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -45,15 +47,15 @@ public class TaskqueueServlet extends HttpServlet {
   private static final Logger log = Logger.getLogger(TaskqueueServlet.class.getName());
   private static final int numberOfTasksToAdd = 100;
   private static final int numberOfTasksToLease = 100;
-  private static boolean useTaggedTasks = true;
-  private static String output;
-  private static String message;
+  private static final int numberOfWorkerThreads = 10;
+  private static final boolean useTaggedTasks = true;
 
   // Process the http POST of the form
   @Override
   public void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws IOException, ServletException {
-    if (req.getParameter("addTask") != null) {
+    String message;
+    if (req.getParameter("addTask") != null || req.getParameter("addTaskBatch") != null) {
       String content = req.getParameter("content");
       String output =
           String.format(
@@ -65,7 +67,19 @@ public class TaskqueueServlet extends HttpServlet {
       // [START get_queue]
       Queue q = QueueFactory.getQueue("pull-queue");
       // [END get_queue]
-      if (!useTaggedTasks) {
+      if (req.getParameter("addTaskBatch") != null) {
+        // [START add_tasks_in_batches]
+        List<TaskOptions> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfTasksToAdd; i++) {
+          tasks.add(
+              TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+                  .payload(content.toString())
+                  .tag("process".getBytes()));
+        }
+        // Add the tasks with as few calls as possible, rather than one call per task.
+        PullTaskWorker.addAll(q, tasks);
+        // [END add_tasks_in_batches]
+      } else if (!useTaggedTasks) {
         for (int i = 0; i < numberOfTasksToAdd; i++) {
           // [START add_task]
           q.add(
@@ -90,13 +104,34 @@ public class TaskqueueServlet extends HttpServlet {
         throw new ServletException("ServletException error: ", e);
       }
     } else {
-      if (req.getParameter("leaseTask") != null) {
-        output = String.format("Pulling %d Tasks from the Task Queue", numberOfTasksToLease);
+      if (req.getParameter("leaseTask") != null
+          || req.getParameter("leaseTaskWithWorker") != null) {
+        String output =
+            String.format("Pulling %d Tasks from the Task Queue", numberOfTasksToLease);
         log.info(output.toString());
 
         // Pull tasks from the Task Queue and process them
         Queue q = QueueFactory.getQueue("pull-queue");
-        if (!useTaggedTasks) {
+        if (req.getParameter("leaseTaskWithWorker") != null) {
+          // [START lease_tasks_with_worker]
+          // Lease only tasks tagged with "process", and process them on several threads.
+          PullTaskWorker worker =
+              new PullTaskWorker(
+                      q,
+                      "process",
+                      TaskqueueServlet::processTask,
+                      ThreadManager.currentRequestThreadFactory())
+                  .withThreads(numberOfWorkerThreads)
+                  .withBatchSize(numberOfTasksToLease);
+          try {
+            PullTaskWorker.Stats stats = worker.drain();
+            message = processedMessage(stats.getProcessed());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while processing tasks", e);
+          }
+          // [END lease_tasks_with_worker]
+        } else if (!useTaggedTasks) {
           // [START lease_tasks]
           List<TaskHandle> tasks = q.leaseTasks(3600, TimeUnit.SECONDS, numberOfTasksToLease);
           // [END lease_tasks]
@@ -120,28 +155,30 @@ public class TaskqueueServlet extends HttpServlet {
 
   //Method to process and delete tasks
   private static String processTasks(List<TaskHandle> tasks, Queue q) {
-    String payload;
     int numberOfDeletedTasks = 0;
     for (TaskHandle task : tasks) {
-      payload = new String(task.getPayload());
-      output =
-          String.format(
-              "Processing: taskName='%s'  payload='%s'",
-              task.getName().toString(), payload.toString());
-      log.info(output.toString());
-      output = String.format("Deleting taskName='%s'", task.getName().toString());
-      log.info(output.toString());
+      processTask(task);
+      log.info(String.format("Deleting taskName='%s'", task.getName().toString()));
       // [START delete_task]
       q.deleteTask(task);
       // [END delete_task]
       numberOfDeletedTasks++;
     }
+    return processedMessage(numberOfDeletedTasks);
+  }
+
+  private static void processTask(TaskHandle task) {
+    String payload = new String(task.getPayload());
+    log.info(
+        String.format(
+            "Processing: taskName='%s'  payload='%s'", task.getName().toString(), payload));
+  }
+
+  private static String processedMessage(long numberOfDeletedTasks) {
     if (numberOfDeletedTasks > 0) {
-      message =
-          "Processed and deleted " + numberOfTasksToLease + " tasks from the " + " task queue.";
+      return "Processed and deleted " + numberOfDeletedTasks + " tasks from the task queue.";
     } else {
-      message = "Task Queue has no tasks available for lease.";
+      return "Task Queue has no tasks available for lease.";
     }
-    return message;
   }
 }
@@ -29,11 +29,13 @@
 <form action="/taskqueues/queue" method="post">
     <div>
         <textarea name="content" placeholder="Enter a task payload" rows="3" cols="60"></textarea></div>
-    <div><input type="submit" name="addTask" value="Add Tasks to the Task Queue"/></div>
+    <div><input type="submit" name="addTask" value="Add Tasks to the Task Queue"/>
+        <input type="submit" name="addTaskBatch" value="Add Tasks in Batches"/></div>
 </form>
 <br>
 <form action="/taskqueues/queue" method="post">
-    <div><input type="submit" name="leaseTask" value="Lease, Process, and Delete Tasks"/></div>
+    <div><input type="submit" name="leaseTask" value="Lease, Process, and Delete Tasks"/>
+        <input type="submit" name="leaseTaskWithWorker" value="Process Tasks with a Worker"/></div>
 </form>
 <br>
 <div>
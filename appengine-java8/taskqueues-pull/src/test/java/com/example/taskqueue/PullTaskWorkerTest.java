@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.taskqueue;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link PullTaskWorker} against the local task queue service.
+ */
+@RunWith(JUnit4.class)
+public class PullTaskWorkerTest {
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(
+          new LocalTaskQueueTestConfig().setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml"));
+
+  private Queue queue;
+  private ThreadFactory threadFactory;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    queue = QueueFactory.getQueue("pull-queue");
+    // Threads that can call App Engine APIs, like those of ThreadManager on App Engine.
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    threadFactory =
+        runnable ->
+            new Thread(
+                () -> {
+                  ApiProxy.setEnvironmentForCurrentThread(environment);
+                  runnable.run();
+                });
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private void addTasks(String tag, int count) {
+    List<TaskOptions> tasks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      tasks.add(
+          TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+              .payload(tag + " " + i)
+              .tag(tag));
+    }
+    assertThat(PullTaskWorker.addAll(queue, tasks)).hasSize(count);
+  }
+
+  private int countTasks() {
+    return LocalTaskQueueTestConfig.getLocalTaskQueue()
+        .getQueueStateInfo()
+        .get(queue.getQueueName())
+        .getCountTasks();
+  }
+
+  @Test
+  public void drain_processesEveryTaggedTaskConcurrentlyInBatches() throws Exception {
+    addTasks("process", 250);
+    addTasks("other", 5);
+    Map<String, Integer> processed = new ConcurrentHashMap<>();
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+
+    PullTaskWorker.Stats stats =
+        new PullTaskWorker(
+                queue,
+                "process",
+                task -> {
+                  maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                  Thread.sleep(5);
+                  processed.merge(new String(task.getPayload()), 1, Integer::sum);
+                  concurrent.decrementAndGet();
+                },
+                threadFactory)
+            .withThreads(8)
+            .withBatchSize(50)
+            .drain();
+
+    assertThat(processed).hasSize(250);
+    // Each task was processed once.
+    assertThat(new HashSet<>(processed.values())).containsExactly(1);
+    assertThat(maxConcurrent.get()).isGreaterThan(1);
+    assertThat(stats.getProcessed()).isEqualTo(250);
+    // Far fewer calls than one lease and one delete per task.
+    assertThat(stats.getLeaseCalls()).isLessThan(50L);
+    assertThat(stats.getDeleteCalls()).isLessThan(50L);
+    // Only the tasks with another tag are left.
+    assertThat(countTasks()).isEqualTo(5);
+  }
+
+  @Test
+  public void drain_retriesFailedTasks() throws Exception {
+    addTasks("process", 20);
+    Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    PullTaskWorker.Stats stats =
+        new PullTaskWorker(
+                queue,
+                "process",
+                task -> {
+                  String payload = new String(task.getPayload());
+                  if (attempts.merge(payload, 1, Integer::sum) == 1 && payload.endsWith("7")) {
+                    throw new IllegalStateException("First attempt fails");
+                  }
+                },
+                threadFactory)
+            .withThreads(4)
+            .withPollMillis(10)
+            .drain();
+
+    assertThat(stats.getFailed()).isEqualTo(2);
+    assertThat(stats.getProcessed()).isEqualTo(20);
+    assertThat(attempts.get("process 7")).isEqualTo(2);
+    assertThat(attempts.get("process 17")).isEqualTo(2);
+    assertThat(countTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void slowTasks_keepTheirLease() throws Exception {
+    addTasks("process", 3);
+    Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    // Two workers: if a lease ran out, the second would lease and process the task again.
+    PullTaskWorker.Stats stats =
+        new PullTaskWorker(
+                queue,
+                "process",
+                task -> {
+                  attempts.merge(new String(task.getPayload()), 1, Integer::sum);
+                  Thread.sleep(2500);
+                },
+                threadFactory)
+            .withThreads(2)
+            .withLeaseSeconds(1)
+            .withPollMillis(10)
+            .drain();
+
+    assertThat(attempts.values()).containsExactly(1, 1, 1);
+    assertThat(stats.getLeaseExtensions()).isAtLeast(3L);
+    assertThat(stats.getProcessed()).isEqualTo(3);
+    assertThat(countTasks()).isEqualTo(0);
+  }
+
+  @Test
+  public void start_processesTasksAddedLater() throws Exception {
+    AtomicInteger processed = new AtomicInteger();
+    PullTaskWorker worker =
+        new PullTaskWorker(queue, "process", task -> processed.incrementAndGet(), threadFactory)
+            .withPollMillis(10);
+    worker.start();
+    addTasks("process", 30);
+    for (int i = 0; i < 500 && worker.getStats().getProcessed() < 30; i++) {
+      Thread.sleep(10);
+    }
+    worker.stop();
+
+    assertThat(processed.get()).isEqualTo(30);
+    assertThat(worker.getStats().getProcessed()).isEqualTo(30);
+    assertThat(countTasks()).isEqualTo(0);
+  }
+}
@@ -36,12 +36,17 @@ import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.StreamingOptions;
 import org.apache.beam.sdk.options.Validation;
 import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.WithTimestamps;
 import org.apache.beam.sdk.transforms.windowing.FixedWindows;
 import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.Row;
 import org.apache.beam.sdk.values.TypeDescriptor;
+import org.apache.beam.sdk.values.TypeDescriptors;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
@@ -68,8 +73,32 @@ public class StreamingBeamSql {
     String getOutputTable();
 
     void setOutputTable(String value);
+
+    @Description("How to aggregate page scores per window: SQL runs the Beam SQL query, "
+        + "COMBINER uses a CombineFn with a compact accumulator.")
+    @Default.Enum("SQL")
+    AggregationMode getAggregationMode();
+
+    void setAggregationMode(AggregationMode value);
+  }
+
+  /**
+   * Both modes produce rows with the {@code SUMMARY_SCHEMA} fields. The COMBINER mode only
+   * shuffles a (count, sum, min, max) accumulator per url and bundle instead of full rows.
+   */
+  public enum AggregationMode {
+    SQL,
+    COMBINER
   }
 
+  static final Schema SUMMARY_SCHEMA = Schema.builder()
+      .addStringField("url")
+      .addInt64Field("num_reviews")
+      .addDoubleField("score")
+      .addDateTimeField("first_date")
+      .addDateTimeField("last_date")
+      .build();
+
   @DefaultCoder(AvroCoder.class)
   private static class PageReviewMessage {
     @Nullable
@@ -116,17 +145,8 @@ public class StreamingBeamSql {
             .of((row) -> row.getDateTime("processing_time").toInstant()))
         .apply("Fixed-size windows", Window.into(FixedWindows.of(Duration.standardMinutes(1))))
 
-        // Apply a SQL query for every window of elements.
-        .apply("Run Beam SQL query", SqlTransform.query(
-            "SELECT "
-                + "  url, "
-                + "  COUNT(page_score) AS num_reviews, "
-                + "  AVG(page_score) AS score, "
-                + "  MIN(processing_time) AS first_date, "
-                + "  MAX(processing_time) AS last_date "
-                + "FROM PCOLLECTION "
-                + "GROUP BY url"
-        ))
+        // Aggregate the page scores for every window of elements.
+        .apply("Summarize page scores", summarizePageScores(options.getAggregationMode()))
 
         // Convert the SQL Rows into BigQuery TableRows and write them to BigQuery.
         .apply("Convert to BigQuery TableRow", MapElements.into(TypeDescriptor.of(TableRow.class))
@@ -156,4 +176,101 @@ public class StreamingBeamSql {
     // For a Dataflow Flex Template, do NOT waitUntilFinish().
     pipeline.run();
   }
+
+  static PTransform<? super PCollection<Row>, PCollection<Row>> summarizePageScores(
+      AggregationMode mode) {
+    switch (mode) {
+      case COMBINER:
+        return new CombinePageScores();
+      case SQL:
+      default:
+        return SqlTransform.query(
+            "SELECT "
+                + "  url, "
+                + "  COUNT(page_score) AS num_reviews, "
+                + "  AVG(page_score) AS score, "
+                + "  MIN(processing_time) AS first_date, "
+                + "  MAX(processing_time) AS last_date "
+                + "FROM PCOLLECTION "
+                + "GROUP BY url");
+    }
+  }
+
+  /** Computes the same summary as the SQL query with a lifted {@link PageScoreSummaryFn}. */
+  static class CombinePageScores extends PTransform<PCollection<Row>, PCollection<Row>> {
+    @Override
+    public PCollection<Row> expand(PCollection<Row> rows) {
+      return rows
+          // Only the url and the accumulator inputs are kept, so the combiner lifting
+          // before the shuffle never sees more than it needs.
+          .apply("Key by url", MapElements
+              .into(TypeDescriptors.kvs(
+                  TypeDescriptors.strings(),
+                  TypeDescriptors.kvs(TypeDescriptors.doubles(), TypeDescriptors.longs())))
+              .via(row -> KV.of(row.getString("url"), KV.of(
+                  row.getDouble("page_score"),
+                  row.getDateTime("processing_time").getMillis()))))
+          .apply("Combine per url", Combine.perKey(new PageScoreSummaryFn()))
+          .apply("Convert to summary rows", MapElements.into(TypeDescriptor.of(Row.class))
+              .via(kv -> kv.getValue().toRow(kv.getKey())))
+          .setRowSchema(SUMMARY_SCHEMA);
+    }
+  }
+
+  /**
+   * Accumulator for {@link PageScoreSummaryFn}. It has a fixed size no matter how many
+   * reviews a url gets in a window.
+   */
+  @DefaultCoder(AvroCoder.class)
+  static class PageScoreSummary {
+    long count = 0;
+    double sum = 0.0;
+    long firstMillis = Long.MAX_VALUE;
+    long lastMillis = Long.MIN_VALUE;
+
+    Row toRow(String url) {
+      return Row.withSchema(SUMMARY_SCHEMA).addValues(
+          url,
+          count,
+          sum / count,
+          new Instant(firstMillis),
+          new Instant(lastMillis)
+      ).build();
+    }
+  }
+
+  /** Combines (page_score, processing_time) pairs into count, sum, min and max. */
+  static class PageScoreSummaryFn
+      extends Combine.CombineFn<KV<Double, Long>, PageScoreSummary, PageScoreSummary> {
+    @Override
+    public PageScoreSummary createAccumulator() {
+      return new PageScoreSummary();
+    }
+
+    @Override
+    public PageScoreSummary addInput(PageScoreSummary summary, KV<Double, Long> input) {
+      summary.count++;
+      summary.sum += input.getKey();
+      summary.firstMillis = Math.min(summary.firstMillis, input.getValue());
+      summary.lastMillis = Math.max(summary.lastMillis, input.getValue());
+      return summary;
+    }
+
+    @Override
+    public PageScoreSummary mergeAccumulators(Iterable<PageScoreSummary> summaries) {
+      var merged = createAccumulator();
+      for (var summary : summaries) {
+        merged.count += summary.count;
+        merged.sum += summary.sum;
+        merged.firstMillis = Math.min(merged.firstMillis, summary.firstMillis);
+        merged.lastMillis = Math.max(merged.lastMillis, summary.lastMillis);
+      }
+      return merged;
+    }
+
+    @Override
+    public PageScoreSummary extractOutput(PageScoreSummary summary) {
+      return summary;
+    }
+  }
 }
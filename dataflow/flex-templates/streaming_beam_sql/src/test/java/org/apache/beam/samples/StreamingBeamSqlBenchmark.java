@@ -0,0 +1,150 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.beam.samples;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.beam.runners.direct.DirectOptions;
+import org.apache.beam.samples.StreamingBeamSql.AggregationMode;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.io.GenerateSequence;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.runners.TransformHierarchy;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.WithTimestamps;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptor;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+/**
+ * Compares how long the SQL and COMBINER aggregation modes take to summarize the same reviews on
+ * the DirectRunner, and how many bytes each feeds into its GroupByKey, encoded with the coder of
+ * the GroupByKey input. That is what a runner shuffles when it does not lift the combine; a runner
+ * that lifts it shuffles per-bundle accumulators instead. Run it with
+ * {@code java -cp ... StreamingBeamSqlBenchmark [reviews] [urls] [iterations]}; the first
+ * iterations warm up the JVM.
+ */
+public final class StreamingBeamSqlBenchmark {
+  private static final String SHUFFLE_BYTES = "shuffleBytes";
+
+  public static void main(String[] args) {
+    long reviews = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+    int urls = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    System.out.println("mode          ms  reviews/s  shuffle MB  bytes/review");
+    for (int i = 0; i < iterations; i++) {
+      for (AggregationMode mode : AggregationMode.values()) {
+        long[] result = run(mode, reviews, urls);
+        long millis = result[0];
+        long shuffleBytes = result[1];
+        System.out.format("%-8s %7d %10.0f %11.1f %13.1f%n", mode, millis,
+            reviews * 1000.0 / millis, shuffleBytes / 1e6, (double) shuffleBytes / reviews);
+      }
+    }
+  }
+
+  /** Returns the run time in milliseconds and the encoded bytes fed into GroupByKeys. */
+  private static long[] run(AggregationMode mode, long reviews, int urls) {
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    options.setBlockOnRun(true);
+    // Measure the aggregation, not the DirectRunner's checks of every element.
+    options.setEnforceImmutability(false);
+    options.setEnforceEncodability(false);
+
+    Pipeline pipeline = Pipeline.create(options);
+    pipeline
+        .apply(GenerateSequence.from(0).to(reviews))
+        .apply(MapElements.into(TypeDescriptor.of(Row.class))
+            .via(i -> Row.withSchema(StreamingBeamSqlTest.REVIEW_SCHEMA).addValues(
+                "https://example.com/" + (i % urls),
+                i % 3 == 0 ? 0.0 : 1.0,
+                // Spread the reviews over ten one-minute windows.
+                new Instant(i % 600 * 1000)).build()))
+        .setRowSchema(StreamingBeamSqlTest.REVIEW_SCHEMA)
+        .apply(WithTimestamps.of(row -> row.getDateTime("processing_time").toInstant()))
+        .apply(Window.into(FixedWindows.of(Duration.standardMinutes(1))))
+        .apply(StreamingBeamSql.summarizePageScores(mode));
+    countGroupByKeyInputs(pipeline);
+
+    long start = System.nanoTime();
+    PipelineResult result = pipeline.run();
+    result.waitUntilFinish();
+    long millis = (System.nanoTime() - start) / 1_000_000;
+
+    long shuffleBytes = 0;
+    for (MetricResult<Long> counter : result.metrics().queryMetrics(MetricsFilter.builder()
+        .addNameFilter(MetricNameFilter.named(StreamingBeamSqlBenchmark.class, SHUFFLE_BYTES))
+        .build()).getCounters()) {
+      shuffleBytes += counter.getAttempted();
+    }
+    return new long[] {millis, shuffleBytes};
+  }
+
+  /**
+   * Adds a {@link CountBytesFn} on the input of every GroupByKey. The counter reads the input
+   * next to the GroupByKey, so it stays in place when the runner replaces the transforms around
+   * the GroupByKey, such as a lifted Combine.
+   */
+  private static void countGroupByKeyInputs(Pipeline pipeline) {
+    List<PCollection<?>> inputs = new ArrayList<>();
+    pipeline.traverseTopologically(new Pipeline.PipelineVisitor.Defaults() {
+      @Override
+      public void visitPrimitiveTransform(TransformHierarchy.Node node) {
+        if (node.getTransform() instanceof GroupByKey) {
+          inputs.addAll(node.getInputs().values());
+        }
+      }
+    });
+    for (PCollection<?> input : inputs) {
+      countBytes(input);
+    }
+  }
+
+  private static <T> void countBytes(PCollection<T> input) {
+    input.apply("Count " + input.getName() + " bytes",
+        ParDo.of(new CountBytesFn<>(input.getCoder())));
+  }
+
+  /** Adds the encoded size of every element to the {@code shuffleBytes} counter. */
+  private static class CountBytesFn<T> extends DoFn<T, Void> {
+    private final Coder<T> coder;
+    private final Counter bytes = Metrics.counter(StreamingBeamSqlBenchmark.class, SHUFFLE_BYTES);
+
+    CountBytesFn(Coder<T> coder) {
+      this.coder = coder;
+    }
+
+    @ProcessElement
+    public void processElement(@Element T element) throws Exception {
+      bytes.inc(CoderUtils.encodeToByteArray(coder, element).length);
+    }
+  }
+}
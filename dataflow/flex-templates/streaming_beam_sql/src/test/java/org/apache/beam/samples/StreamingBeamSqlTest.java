@@ -0,0 +1,94 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.beam.samples;
+
+import java.util.List;
+import org.apache.beam.samples.StreamingBeamSql.AggregationMode;
+import org.apache.beam.sdk.coders.RowCoder;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that the SQL and COMBINER aggregation modes summarize page scores the same way. */
+@RunWith(JUnit4.class)
+public class StreamingBeamSqlTest {
+  static final Schema REVIEW_SCHEMA = Schema.builder()
+      .addStringField("url")
+      .addDoubleField("page_score")
+      .addDateTimeField("processing_time")
+      .build();
+
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  @Test
+  public void sqlAndCombinerAgree() {
+    // Two windows of one minute. The last review falls into the second window.
+    List<TimestampedValue<Row>> reviews = List.of(
+        review("https://beam.apache.org/", 1.0, 0),
+        review("https://beam.apache.org/", 0.0, 10),
+        review("https://beam.apache.org/", 1.0, 20),
+        review("https://cloud.google.com/", 0.0, 5),
+        review("https://cloud.google.com/", 1.0, 70));
+    List<String> expected = List.of(
+        "https://beam.apache.org/ 3 0.666667 1970-01-01T00:00:00.000Z"
+            + " 1970-01-01T00:00:20.000Z",
+        "https://cloud.google.com/ 1 0.000000 1970-01-01T00:00:05.000Z 1970-01-01T00:00:05.000Z",
+        "https://cloud.google.com/ 1 1.000000 1970-01-01T00:01:10.000Z 1970-01-01T00:01:10.000Z");
+
+    for (AggregationMode mode : AggregationMode.values()) {
+      PCollection<String> summaries = pipeline
+          .apply("Create reviews " + mode,
+              Create.timestamped(reviews).withCoder(RowCoder.of(REVIEW_SCHEMA)))
+          .setRowSchema(REVIEW_SCHEMA)
+          .apply("Windows " + mode, Window.into(FixedWindows.of(Duration.standardMinutes(1))))
+          .apply("Summarize " + mode, StreamingBeamSql.summarizePageScores(mode))
+          .apply("Format " + mode, MapElements.into(TypeDescriptors.strings())
+              .via(StreamingBeamSqlTest::format));
+      PAssert.that("Summaries of " + mode, summaries).containsInAnyOrder(expected);
+    }
+    pipeline.run().waitUntilFinish();
+  }
+
+  static TimestampedValue<Row> review(String url, double score, long seconds) {
+    Instant time = new Instant(seconds * 1000);
+    return TimestampedValue.of(
+        Row.withSchema(REVIEW_SCHEMA).addValues(url, score, time).build(), time);
+  }
+
+  // The SQL and COMBINER rows can differ in field nullability, so they are compared by value.
+  // Beam SQL rounds AVG to 10 decimal places, so scores are compared to 6.
+  private static String format(Row row) {
+    return String.join(" ",
+        row.getString("url"),
+        String.valueOf(row.getInt64("num_reviews")),
+        String.format("%.6f", row.getDouble("score")),
+        row.getDateTime("first_date").toInstant().toString(),
+        row.getDateTime("last_date").toInstant().toString());
+  }
+}
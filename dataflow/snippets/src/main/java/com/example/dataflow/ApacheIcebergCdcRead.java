@@ -89,6 +89,20 @@ public class ApacheIcebergCdcRead {
     String getCatalogName();
 
     void setCatalogName(String catalogName);
+
+    @Description(
+        "Keep a running total per user and upsert it into the destination table, instead of "
+            + "appending the totals of each window")
+    @Default.Boolean(false)
+    Boolean getUpsertTotals();
+
+    void setUpsertTotals(Boolean value);
+
+    @Description("In upsert mode, the number of upsert commits between compactions of the table")
+    @Default.Integer(10)
+    Integer getCompactEveryCommits();
+
+    void setCompactEveryCommits(Integer value);
   }
 
   public static void main(String[] args) throws IOException {
@@ -129,6 +143,21 @@ public class ApacheIcebergCdcRead {
             .getSinglePCollection()
             .setRowSchema(SOURCE_SCHEMA);
 
+    if (options.getUpsertTotals()) {
+      // Upsert one row per user, and compact the table periodically so it does not fill up with
+      // small files.
+      cdcEvents.apply(
+          "UpsertTotalsIntoIceberg",
+          new ApacheIcebergUpsertTotals(
+              options.getCatalogName(),
+              catalogProps,
+              options.getDestinationTable(),
+              Duration.standardSeconds(30),
+              options.getCompactEveryCommits()));
+      p.run();
+      return;
+    }
+
     PCollection<Row> aggregatedRows =
         cdcEvents
             .apply("ApplyWindow", Window.into(FixedWindows.of(Duration.standardSeconds(30))))
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupIntoBatches;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.transforms.windowing.AfterProcessingTime;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindows;
+import org.apache.beam.sdk.transforms.windowing.Repeatedly;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.iceberg.CatalogUtil;
+import org.apache.iceberg.DataFile;
+import org.apache.iceberg.DeleteFile;
+import org.apache.iceberg.FileFormat;
+import org.apache.iceberg.FileScanTask;
+import org.apache.iceberg.PartitionSpec;
+import org.apache.iceberg.Schema;
+import org.apache.iceberg.Snapshot;
+import org.apache.iceberg.Table;
+import org.apache.iceberg.TableProperties;
+import org.apache.iceberg.catalog.Catalog;
+import org.apache.iceberg.catalog.TableIdentifier;
+import org.apache.iceberg.data.GenericAppenderFactory;
+import org.apache.iceberg.data.GenericRecord;
+import org.apache.iceberg.data.IcebergGenerics;
+import org.apache.iceberg.data.Record;
+import org.apache.iceberg.deletes.EqualityDeleteWriter;
+import org.apache.iceberg.exceptions.AlreadyExistsException;
+import org.apache.iceberg.io.CloseableIterable;
+import org.apache.iceberg.io.DataWriter;
+import org.apache.iceberg.io.OutputFileFactory;
+import org.apache.iceberg.types.Types;
+import org.joda.time.Duration;
+
+/**
+ * Keeps a running click total for each user in Beam state and upserts the totals into an Iceberg
+ * table, so that the table holds one row per user instead of one row per user and window.
+ *
+ * <p>Each trigger emits only the users whose totals changed. Their new totals are committed in one
+ * batch as an equality delete on {@code user_id} plus a data file with the new rows. Every {@code
+ * compactEveryCommits} commits, the live rows are rewritten into a single data file and the delete
+ * files are dropped, so the number of files in the table stays bounded.
+ *
+ * <p>The destination table is created as a format version 2 table with {@code user_id} as its
+ * identifier field if it does not exist. Running totals are kept in pipeline state, so a new
+ * pipeline starts counting from zero; update the running pipeline in place to keep them.
+ */
+public class ApacheIcebergUpsertTotals extends PTransform<PCollection<Row>, PDone> {
+
+  // The schema of the destination table. It matches ApacheIcebergCdcRead.DESTINATION_SCHEMA.
+  static final Schema TABLE_SCHEMA =
+      new Schema(
+          ImmutableList.of(
+              Types.NestedField.required(1, "user_id", Types.StringType.get()),
+              Types.NestedField.required(2, "total_clicks", Types.LongType.get())),
+          ImmutableSet.of(1));
+
+  // The largest number of changed users written in a single commit.
+  private static final int MAX_BATCH_SIZE = 10_000;
+
+  private final String catalogName;
+  private final Map<String, String> catalogProperties;
+  private final String table;
+  private final Duration triggeringFrequency;
+  private final int compactEveryCommits;
+
+  public ApacheIcebergUpsertTotals(
+      String catalogName,
+      Map<String, String> catalogProperties,
+      String table,
+      Duration triggeringFrequency,
+      int compactEveryCommits) {
+    this.catalogName = catalogName;
+    this.catalogProperties = new HashMap<>(catalogProperties);
+    this.table = table;
+    this.triggeringFrequency = triggeringFrequency;
+    this.compactEveryCommits = compactEveryCommits;
+  }
+
+  @Override
+  public PDone expand(PCollection<Row> cdcEvents) {
+    cdcEvents
+        .apply(
+            "ExtractUserAndCount",
+            MapElements.into(
+                    TypeDescriptors.kvs(TypeDescriptors.strings(), TypeDescriptors.longs()))
+                .via(
+                    row -> {
+                      Long clickCount = row.getInt64("click_count");
+                      return KV.of(row.getString("user_id"), clickCount == null ? 0L : clickCount);
+                    }))
+        .apply(
+            "TriggerPeriodically",
+            Window.<KV<String, Long>>into(new GlobalWindows())
+                .triggering(
+                    Repeatedly.forever(
+                        AfterProcessingTime.pastFirstElementInPane()
+                            .plusDelayOf(triggeringFrequency)))
+                .discardingFiredPanes())
+        // Each pane holds only the clicks since the previous trigger.
+        .apply("SumNewClicksPerUser", Sum.longsPerKey())
+        .apply("UpdateRunningTotals", ParDo.of(new RunningTotalFn()))
+        // Send every change to a single committer, so that upserts and compactions never race.
+        .apply("SingleCommitter", WithKeys.of(0))
+        .apply(
+            "BatchChangedUsers",
+            GroupIntoBatches.<Integer, KV<String, Long>>ofSize(MAX_BATCH_SIZE)
+                .withMaxBufferingDuration(triggeringFrequency))
+        .apply(
+            "UpsertIntoIceberg",
+            ParDo.of(
+                new UpsertFn(catalogName, catalogProperties, table, compactEveryCommits)));
+    return PDone.in(cdcEvents.getPipeline());
+  }
+
+  /** Adds the new clicks of a user to their running total and emits the total if it changed. */
+  static class RunningTotalFn extends DoFn<KV<String, Long>, KV<String, Long>> {
+    @StateId("total")
+    private final StateSpec<ValueState<Long>> totalSpec = StateSpecs.value(VarLongCoder.of());
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, Long> newClicks,
+        @StateId("total") ValueState<Long> total,
+        OutputReceiver<KV<String, Long>> out) {
+      if (newClicks.getValue() == 0) {
+        return;
+      }
+      Long previous = total.read();
+      long updated = (previous == null ? 0L : previous) + newClicks.getValue();
+      total.write(updated);
+      out.output(KV.of(newClicks.getKey(), updated));
+    }
+  }
+
+  /** Commits each batch of changed totals as an upsert, and compacts the table periodically. */
+  static class UpsertFn extends DoFn<KV<Integer, Iterable<KV<String, Long>>>, Void> {
+    private final String catalogName;
+    private final Map<String, String> catalogProperties;
+    private final String table;
+    private final int compactEveryCommits;
+
+    @StateId("commits")
+    private final StateSpec<ValueState<Integer>> commitsSpec = StateSpecs.value(VarIntCoder.of());
+
+    private transient Catalog catalog;
+
+    UpsertFn(
+        String catalogName,
+        Map<String, String> catalogProperties,
+        String table,
+        int compactEveryCommits) {
+      this.catalogName = catalogName;
+      this.catalogProperties = catalogProperties;
+      this.table = table;
+      this.compactEveryCommits = compactEveryCommits;
+    }
+
+    @Setup
+    public void setup() {
+      catalog = CatalogUtil.buildIcebergCatalog(catalogName, catalogProperties, new Configuration());
+      TableIdentifier tableId = TableIdentifier.parse(table);
+      if (!catalog.tableExists(tableId)) {
+        try {
+          catalog.createTable(
+              tableId,
+              TABLE_SCHEMA,
+              PartitionSpec.unpartitioned(),
+              ImmutableMap.of(TableProperties.FORMAT_VERSION, "2"));
+        } catch (AlreadyExistsException e) {
+          // Another worker created it first.
+        }
+      }
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<Integer, Iterable<KV<String, Long>>> batch,
+        @StateId("commits") ValueState<Integer> commits)
+        throws IOException {
+      // A user can appear more than once in a batch. Totals only grow, so keep the largest.
+      Map<String, Long> totals = new LinkedHashMap<>();
+      for (KV<String, Long> total : batch.getValue()) {
+        totals.merge(total.getKey(), total.getValue(), Math::max);
+      }
+
+      Table icebergTable = catalog.loadTable(TableIdentifier.parse(table));
+      upsert(icebergTable, totals);
+
+      Integer previous = commits.read();
+      int sinceCompaction = (previous == null ? 0 : previous) + 1;
+      if (sinceCompaction >= compactEveryCommits) {
+        compact(icebergTable);
+        sinceCompaction = 0;
+      }
+      commits.write(sinceCompaction);
+    }
+
+    // Deletes the previous row of every changed user and adds the new one in a single commit. The
+    // equality deletes only apply to data files from earlier commits, so the new rows are kept.
+    private static void upsert(Table table, Map<String, Long> totals) throws IOException {
+      Schema keySchema = table.schema().select("user_id");
+      GenericAppenderFactory appenders = appenderFactory(table);
+      OutputFileFactory files = outputFileFactory(table);
+
+      EqualityDeleteWriter<Record> deletes =
+          appenders.newEqDeleteWriter(files.newOutputFile(), FileFormat.PARQUET, null);
+      DataWriter<Record> rows =
+          appenders.newDataWriter(files.newOutputFile(), FileFormat.PARQUET, null);
+      Record key = GenericRecord.create(keySchema);
+      Record row = GenericRecord.create(table.schema());
+      try {
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+          deletes.write(key.copy("user_id", total.getKey()));
+          rows.write(row.copy("user_id", total.getKey(), "total_clicks", total.getValue()));
+        }
+      } finally {
+        deletes.close();
+        rows.close();
+      }
+
+      table
+          .newRowDelta()
+          .addDeletes(deletes.toDeleteFile())
+          .addRows(rows.toDataFile())
+          .commit();
+    }
+
+    // Rewrites the live rows of the table into one data file, and drops the data and delete files
+    // they were read from.
+    private static void compact(Table table) throws IOException {
+      table.refresh();
+      Snapshot snapshot = table.currentSnapshot();
+      Map<String, DataFile> dataFiles = new HashMap<>();
+      Map<String, DeleteFile> deleteFiles = new HashMap<>();
+      try (CloseableIterable<FileScanTask> tasks =
+          table.newScan().useSnapshot(snapshot.snapshotId()).planFiles()) {
+        for (FileScanTask task : tasks) {
+          dataFiles.put(task.file().path().toString(), task.file());
+          for (DeleteFile delete : task.deletes()) {
+            deleteFiles.put(delete.path().toString(), delete);
+          }
+        }
+      }
+      if (dataFiles.size() <= 1 && deleteFiles.isEmpty()) {
+        return;
+      }
+
+      DataWriter<Record> rows =
+          appenderFactory(table)
+              .newDataWriter(outputFileFactory(table).newOutputFile(), FileFormat.PARQUET, null);
+      try (CloseableIterable<Record> records =
+          IcebergGenerics.read(table).useSnapshot(snapshot.snapshotId()).build()) {
+        for (Record record : records) {
+          rows.write(record);
+        }
+      } finally {
+        rows.close();
+      }
+
+      table
+          .newRewrite()
+          .validateFromSnapshot(snapshot.snapshotId())
+          .rewriteFiles(
+              ImmutableSet.copyOf(dataFiles.values()),
+              ImmutableSet.copyOf(deleteFiles.values()),
+              ImmutableSet.of(rows.toDataFile()),
+              ImmutableSet.of())
+          .commit();
+    }
+
+    private static GenericAppenderFactory appenderFactory(Table table) {
+      Schema keySchema = table.schema().select("user_id");
+      return new GenericAppenderFactory(
+          table.schema(),
+          table.spec(),
+          new int[] {keySchema.findField("user_id").fieldId()},
+          keySchema,
+          null);
+    }
+
+    private static OutputFileFactory outputFileFactory(Table table) {
+      return OutputFileFactory.builderFor(table, 0, 0).format(FileFormat.PARQUET).build();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+// [START dataflow_bigquery_stream_beam_rows]
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO.Write;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO.Write.CreateDisposition;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO.Write.WriteDisposition;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.schemas.Schema;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.WithFailures;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+public class BigQueryStreamBeamRows {
+  // The schema of the rows. With useBeamSchema(), BigQueryIO builds the protocol buffer
+  // descriptor for the Storage Write API from it once, and converts each Row straight to a
+  // protocol buffer message, without building a TableRow first.
+  public static final Schema SCHEMA = Schema.builder()
+      .addStringField("user_name")
+      .addInt64Field("age")
+      .build();
+
+  // Create a PTransform that sends simulated streaming data. In a real application, the data
+  // source would be an external source, such as Pub/Sub.
+  private static TestStream<String> createEventSource() {
+    Instant startTime = new Instant(0);
+    return TestStream.create(StringUtf8Coder.of())
+        .advanceWatermarkTo(startTime)
+        .addElements(
+            TimestampedValue.of("Alice,20", startTime),
+            TimestampedValue.of("Bob,30",
+                startTime.plus(Duration.standardSeconds(1))),
+            TimestampedValue.of("Charles,40",
+                startTime.plus(Duration.standardSeconds(2))),
+            TimestampedValue.of("Dylan,Invalid value",
+                startTime.plus(Duration.standardSeconds(2))))
+        .advanceWatermarkToInfinity();
+  }
+
+  // Parses a "name,age" line into a Row. The values already match the schema, so they are
+  // attached without being checked again.
+  public static Row parse(String line) {
+    int comma = line.indexOf(',');
+    return Row.withSchema(SCHEMA)
+        .attachValues(line.substring(0, comma), Long.parseLong(line.substring(comma + 1)));
+  }
+
+  public static PipelineResult main(String[] args) {
+    // Parse the pipeline options passed into the application. Example:
+    //   --projectId=$PROJECT_ID --datasetName=$DATASET_NAME --tableName=$TABLE_NAME
+    // For more information, see https://beam.apache.org/documentation/programming-guide/#configuring-pipeline-options
+    PipelineOptionsFactory.register(ExamplePipelineOptions.class);
+    ExamplePipelineOptions options = PipelineOptionsFactory.fromArgs(args)
+        .withValidation()
+        .as(ExamplePipelineOptions.class);
+    options.setStreaming(true);
+
+    // Create a pipeline and apply transforms.
+    Pipeline pipeline = Pipeline.create(options);
+    WithFailures.Result<PCollection<Row>, String> rows = pipeline
+        // Add a streaming data source.
+        .apply(createEventSource())
+        // Map the event data into Beam Rows. Lines that do not match the schema are kept apart.
+        .apply(MapElements
+            .into(TypeDescriptors.rows())
+            .via(BigQueryStreamBeamRows::parse)
+            .exceptionsInto(TypeDescriptors.strings())
+            .exceptionsVia(x -> x.element()));
+
+    rows.output()
+        .setRowSchema(SCHEMA)
+        // Write the rows to BigQuery
+        .apply(BigQueryIO.<Row>write()
+            .to(String.format("%s:%s.%s",
+                options.getProjectId(),
+                options.getDatasetName(),
+                options.getTableName()))
+            .useBeamSchema()
+            .withCreateDisposition(CreateDisposition.CREATE_NEVER)
+            .withWriteDisposition(WriteDisposition.WRITE_APPEND)
+            .withMethod(Write.Method.STORAGE_WRITE_API)
+            // For exactly-once processing, set the triggering frequency.
+            .withTriggeringFrequency(Duration.standardSeconds(5)))
+        // Get the collection of write errors.
+        .getFailedStorageApiInserts()
+        .apply(MapElements.into(TypeDescriptors.strings())
+            // Process each error. In production systems, it's useful to write the errors to
+            // another destination, such as a dead-letter table or queue.
+            .via(
+                x -> {
+                  System.out.println("Failed insert: " + x.getErrorMessage());
+                  System.out.println("Row: " + x.getRow());
+                  return "";
+                }));
+
+    // Process the lines that could not be parsed.
+    rows.failures()
+        .apply(MapElements.into(TypeDescriptors.strings())
+            .via(
+                x -> {
+                  System.out.println("Failed to parse: " + x);
+                  return "";
+                }));
+    return pipeline.run();
+  }
+}
+// [END dataflow_bigquery_stream_beam_rows]
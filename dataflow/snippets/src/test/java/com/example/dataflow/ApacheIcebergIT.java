@@ -16,6 +16,8 @@
 
 package com.example.dataflow;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.api.gax.paging.Page;
@@ -28,15 +30,22 @@ import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.RowCoder;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.values.Row;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.iceberg.CatalogProperties;
 import org.apache.iceberg.CatalogUtil;
 import org.apache.iceberg.DataFile;
 import org.apache.iceberg.DataFiles;
+import org.apache.iceberg.FileScanTask;
 import org.apache.iceberg.PartitionSpec;
 import org.apache.iceberg.Schema;
 import org.apache.iceberg.Table;
@@ -53,6 +62,7 @@ import org.apache.iceberg.io.FileAppender;
 import org.apache.iceberg.parquet.Parquet;
 import org.apache.iceberg.types.Types;
 import org.apache.iceberg.types.Types.NestedField;
+import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -286,4 +296,57 @@ public class ApacheIcebergIT {
     String output = Files.readString(Paths.get(outputFileName));
     assertTrue(output.contains("0:Person-0"));
   }
+
+  @Test
+  public void testApacheIcebergUpsertTotals() {
+    String tableName = "upsert_totals";
+
+    // Send three batches of clicks, one trigger apart.
+    TestStream<Row> events =
+        TestStream.create(RowCoder.of(ApacheIcebergCdcRead.SOURCE_SCHEMA))
+            .addElements(click("alice", 1), click("bob", 2))
+            .advanceProcessingTime(Duration.standardMinutes(1))
+            .addElements(click("alice", 3))
+            .advanceProcessingTime(Duration.standardMinutes(1))
+            .addElements(click("bob", 4), click("carol", 5))
+            .advanceProcessingTime(Duration.standardMinutes(1))
+            .advanceWatermarkToInfinity();
+
+    // Run the pipeline against the local Hadoop catalog, compacting every two commits.
+    Pipeline pipeline = Pipeline.create();
+    pipeline
+        .apply(events)
+        .apply(
+            new ApacheIcebergUpsertTotals(
+                CATALOG_NAME,
+                ImmutableMap.of(
+                    "type", CatalogUtil.ICEBERG_CATALOG_TYPE_HADOOP,
+                    CatalogProperties.WAREHOUSE_LOCATION, warehouseLocation),
+                tableName,
+                Duration.standardSeconds(30),
+                2));
+    pipeline.run().waitUntilFinish();
+
+    // Verify that the table holds exactly one row per user, with the running total.
+    Table table = catalog.loadTable(TableIdentifier.of(tableName));
+    Map<String, Long> totals = new HashMap<>();
+    for (Record r : IcebergGenerics.read(table).build()) {
+      assertNull(totals.put((String) r.getField("user_id"), (Long) r.getField("total_clicks")));
+    }
+    assertEquals(ImmutableMap.of("alice", 4L, "bob", 6L, "carol", 5L), totals);
+
+    // Verify that compaction kept the number of data files bounded.
+    int dataFiles = 0;
+    for (FileScanTask task : table.newScan().planFiles()) {
+      dataFiles++;
+    }
+    assertTrue("Too many data files: " + dataFiles, dataFiles <= 2);
+  }
+
+  private static Row click(String userId, long clickCount) {
+    return Row.withSchema(ApacheIcebergCdcRead.SOURCE_SCHEMA)
+        .withFieldValue("user_id", userId)
+        .withFieldValue("click_count", clickCount)
+        .build();
+  }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableReference;
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.beam.runners.direct.DirectOptions;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
+import org.apache.beam.sdk.io.GenerateSequence;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO.Write;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO.Write.CreateDisposition;
+import org.apache.beam.sdk.io.gcp.bigquery.BigQueryServices;
+import org.apache.beam.sdk.io.gcp.testing.FakeBigQueryServices;
+import org.apache.beam.sdk.io.gcp.testing.FakeDatasetService;
+import org.apache.beam.sdk.io.gcp.testing.FakeJobService;
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptor;
+import org.apache.beam.sdk.values.TypeDescriptors;
+
+/**
+ * Compares the CPU used per row by the two ways these snippets write to BigQuery with the Storage
+ * Write API, on the DirectRunner against an in-memory fake of BigQuery:
+ *
+ * <ul>
+ *   <li>TableRow: lines are split into a {@link TableRow}, as in {@link BigQueryStreamExactlyOnce},
+ *       and written with {@code writeTableRows()}, which converts each map to a protocol buffer
+ *       message by field name.
+ *   <li>Beam Row: lines are parsed into a {@link Row}, as in {@link BigQueryStreamBeamRows}, and
+ *       written with {@code useBeamSchema()}, which converts each Row by field position with a
+ *       descriptor built once from the schema.
+ * </ul>
+ *
+ * <p>Run it with, for example:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.dataflow.BigQueryStorageWriteBenchmark \
+ *     -Dexec.args="--rows=500000 --iterations=5"
+ * </pre>
+ *
+ * <p>The CPU time of each thread is sampled every few milliseconds while a pipeline runs, so the
+ * DirectRunner's worker threads are counted even though they end with the run; what a thread does
+ * after its last sample is missed.
+ */
+public class BigQueryStorageWriteBenchmark {
+  private static final String PROJECT = "benchmark-project";
+  private static final String DATASET = "benchmark_dataset";
+
+  public interface Options extends DirectOptions {
+    @Description("Number of rows each pipeline writes")
+    @Default.Long(200_000)
+    Long getRows();
+
+    void setRows(Long value);
+
+    @Description("Number of times each pipeline is run; the first runs warm up the JVM")
+    @Default.Integer(3)
+    Integer getIterations();
+
+    void setIterations(Integer value);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = PipelineOptionsFactory.fromArgs(args).withValidation().as(Options.class);
+    options.as(GcpOptions.class).setProject(PROJECT);
+    options.setBlockOnRun(true);
+    // Measure the pipelines, not the DirectRunner's checks of every element.
+    options.setEnforceImmutability(false);
+    options.setEnforceEncodability(false);
+
+    FakeDatasetService.setUp();
+    FakeDatasetService datasetService = new FakeDatasetService();
+    datasetService.createDataset(PROJECT, DATASET, "", "", null);
+    BigQueryServices services =
+        new FakeBigQueryServices()
+            .withDatasetService(datasetService)
+            .withJobService(new FakeJobService());
+
+    for (int i = 0; i < options.getIterations(); i++) {
+      run("TableRow", options, datasetService, services, "table_rows_" + i, false);
+      run("Beam Row", options, datasetService, services, "beam_rows_" + i, true);
+    }
+  }
+
+  private static void run(
+      String name,
+      Options options,
+      FakeDatasetService datasetService,
+      BigQueryServices services,
+      String tableName,
+      boolean useBeamRows)
+      throws Exception {
+    TableReference table =
+        new TableReference().setProjectId(PROJECT).setDatasetId(DATASET).setTableId(tableName);
+    datasetService.createTable(
+        new Table()
+            .setTableReference(table)
+            .setSchema(
+                new TableSchema()
+                    .setFields(
+                        Arrays.asList(
+                            new TableFieldSchema().setName("user_name").setType("STRING"),
+                            new TableFieldSchema().setName("age").setType("INT64")))));
+
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<String> lines = pipeline
+        .apply(GenerateSequence.from(0).to(options.getRows()))
+        .apply(MapElements.into(TypeDescriptors.strings()).via((Long x) -> "user" + x + "," + x));
+    if (useBeamRows) {
+      lines
+          .apply(MapElements.into(TypeDescriptors.rows()).via(BigQueryStreamBeamRows::parse))
+          .setRowSchema(BigQueryStreamBeamRows.SCHEMA)
+          .apply(BigQueryIO.<Row>write()
+              .to(table)
+              .useBeamSchema()
+              .withCreateDisposition(CreateDisposition.CREATE_NEVER)
+              .withMethod(Write.Method.STORAGE_WRITE_API)
+              .withTestServices(services));
+    } else {
+      lines
+          .apply(MapElements
+              .into(TypeDescriptor.of(TableRow.class))
+              .via((String x) -> {
+                String[] columns = x.split(",");
+                return new TableRow().set("user_name", columns[0]).set("age", columns[1]);
+              }))
+          .apply(BigQueryIO.writeTableRows()
+              .to(table)
+              .withCreateDisposition(CreateDisposition.CREATE_NEVER)
+              .withMethod(Write.Method.STORAGE_WRITE_API)
+              .withTestServices(services));
+    }
+
+    CpuSampler cpu = new CpuSampler();
+    long startNanos = System.nanoTime();
+    cpu.start();
+    pipeline.run().waitUntilFinish();
+    long cpuNanos = cpu.stop();
+    long elapsedNanos = System.nanoTime() - startNanos;
+
+    int written = datasetService.getAllRows(PROJECT, DATASET, tableName).size();
+    if (written != options.getRows()) {
+      throw new IllegalStateException(
+          String.format("%s wrote %d rows, not %d", name, written, options.getRows()));
+    }
+    System.out.format(
+        "%-8s %,d rows: %,d ns CPU per row, %,d ms%n",
+        name, written, cpuNanos / written, elapsedNanos / 1_000_000);
+  }
+
+  /** Adds up the CPU time that every thread of this process used while it ran. */
+  private static final class CpuSampler {
+    private static final long INTERVAL_MILLIS = 5;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    // The CPU time of each thread when sampling started, and when it was last sampled.
+    private final Map<Long, Long> startNanos = new HashMap<>();
+    private final Map<Long, Long> lastNanos = new HashMap<>();
+    private final Thread sampler = new Thread(this::sampleUntilInterrupted, "cpu-sampler");
+
+    CpuSampler() {
+      if (!threads.isThreadCpuTimeSupported()) {
+        throw new UnsupportedOperationException("This JVM does not measure thread CPU time");
+      }
+      threads.setThreadCpuTimeEnabled(true);
+    }
+
+    void start() {
+      sample();
+      startNanos.putAll(lastNanos);
+      sampler.setDaemon(true);
+      sampler.start();
+    }
+
+    /** Stops sampling and returns the CPU time used since {@link #start}. */
+    long stop() throws InterruptedException {
+      sampler.interrupt();
+      sampler.join();
+      sample();
+      long nanos = 0;
+      for (Map.Entry<Long, Long> thread : lastNanos.entrySet()) {
+        nanos += thread.getValue() - startNanos.getOrDefault(thread.getKey(), 0L);
+      }
+      return nanos;
+    }
+
+    private void sampleUntilInterrupted() {
+      try {
+        while (true) {
+          sample();
+          Thread.sleep(INTERVAL_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        // Stopped.
+      }
+    }
+
+    // Only one thread samples at a time: the sampler, or the caller before starting it and
+    // after joining it.
+    private void sample() {
+      for (long id : threads.getAllThreadIds()) {
+        long nanos = threads.getThreadCpuTime(id);
+        // -1 for a thread that ended since the ids were listed.
+        if (nanos >= 0) {
+          lastNanos.put(id, nanos);
+        }
+      }
+    }
+  }
+}
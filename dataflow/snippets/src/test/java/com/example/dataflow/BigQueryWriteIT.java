@@ -140,4 +140,28 @@ public class BigQueryWriteIT {
     String got = bout.toString();
     assertTrue(got.contains("Failed insert: "));
   }
+
+  @Test
+  public void streamBeamRows() throws Exception {
+    createTable();
+    PipelineResult r = BigQueryStreamBeamRows.main(
+        new String[] {
+            "--runner=DirectRunner",
+            "--projectId=" + projectId,
+            "--datasetName=" + datasetName,
+            "--tableName=" + tableName,
+            "--blockOnRun=false"
+        }
+    );
+    r.waitUntilFinish();
+    // Verify that the records are visible in the new table.
+    String query = "SELECT * FROM " + tableName;
+    QueryJobConfiguration queryConfig =
+        QueryJobConfiguration.newBuilder(query).setDefaultDataset(datasetName).build();
+    TableResult result = bigquery.query(queryConfig);
+    assertEquals(3, result.getTotalRows());
+    // Verify that the bad data was rejected before it reached BigQuery.
+    String got = bout.toString();
+    assertTrue(got.contains("Failed to parse: Dylan,Invalid value"));
+  }
 }
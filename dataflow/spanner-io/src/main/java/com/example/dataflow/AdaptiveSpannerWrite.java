@@ -0,0 +1,529 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import com.google.cloud.ByteArray;
+import com.google.cloud.Date;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.DatabaseId;
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerOptions;
+import com.google.cloud.spanner.Type;
+import com.google.cloud.spanner.Value;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.beam.sdk.io.gcp.spanner.MutationGroup;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+
+/**
+ * Writes {@link MutationGroup}s to Spanner in key-sorted batches whose size adapts to the
+ * observed commit latency and aborts.
+ *
+ * <p>Every bundle is buffered, sorted by table and primary key, and committed in batches of at
+ * most {@link BatchSizer#targetMutations()} mutated cells and {@link BatchSizer#maxBytes()} bytes.
+ * A mutation group is never split across commits. Per-batch latency, size and retries are
+ * reported as Beam metrics in the {@code AdaptiveSpannerWrite} namespace.
+ */
+public class AdaptiveSpannerWrite extends PTransform<PCollection<MutationGroup>, PDone> {
+
+  private final String projectId;
+  private final String instanceId;
+  private final String databaseId;
+  private final Map<String, List<String>> keyColumns;
+  private final BatchSizer sizer;
+
+  private AdaptiveSpannerWrite(
+      String projectId,
+      String instanceId,
+      String databaseId,
+      Map<String, List<String>> keyColumns,
+      BatchSizer sizer) {
+    this.projectId = projectId;
+    this.instanceId = instanceId;
+    this.databaseId = databaseId;
+    this.keyColumns = keyColumns;
+    this.sizer = sizer;
+  }
+
+  /**
+   * Creates the write. {@code keyColumns} maps each table name to its primary key columns, in key
+   * order, and is used to sort the mutations. Tables that are not in the map keep their order.
+   */
+  public static AdaptiveSpannerWrite create(
+      String projectId,
+      String instanceId,
+      String databaseId,
+      Map<String, List<String>> keyColumns) {
+    return new AdaptiveSpannerWrite(
+        projectId, instanceId, databaseId, keyColumns, new BatchSizer(100, 5000, 1 << 20, 500));
+  }
+
+  /** Uses the given sizer to pick the batch sizes. */
+  public AdaptiveSpannerWrite withBatchSizer(BatchSizer sizer) {
+    return new AdaptiveSpannerWrite(projectId, instanceId, databaseId, keyColumns, sizer);
+  }
+
+  @Override
+  public PDone expand(PCollection<MutationGroup> input) {
+    input.apply(
+        "Write sorted batches",
+        ParDo.of(new WriteFn(projectId, instanceId, databaseId, keyColumns, sizer)));
+    return PDone.in(input.getPipeline());
+  }
+
+  /**
+   * Additive-increase, multiplicative-decrease controller for the number of mutated cells per
+   * commit. A commit that aborted or took longer than the target latency halves the batch size,
+   * a commit well under the target latency grows it by a quarter.
+   */
+  public static class BatchSizer implements Serializable {
+    private final long minMutations;
+    private final long maxMutations;
+    private final long maxBytes;
+    private final long targetLatencyMillis;
+    private long targetMutations;
+
+    public BatchSizer(
+        long minMutations, long maxMutations, long maxBytes, long targetLatencyMillis) {
+      if (minMutations < 1 || maxMutations < minMutations) {
+        throw new IllegalArgumentException(
+            "Expected 1 <= minMutations <= maxMutations, got " + minMutations + ", "
+                + maxMutations);
+      }
+      this.minMutations = minMutations;
+      this.maxMutations = maxMutations;
+      this.maxBytes = maxBytes;
+      this.targetLatencyMillis = targetLatencyMillis;
+      this.targetMutations = minMutations;
+    }
+
+    /** The number of mutated cells to put into the next commit. */
+    public long targetMutations() {
+      return targetMutations;
+    }
+
+    /** The maximum estimated size of a commit in bytes. */
+    public long maxBytes() {
+      return maxBytes;
+    }
+
+    /** Updates the target from a finished commit. */
+    public void recordCommit(long latencyMillis, int aborts) {
+      if (aborts > 0 || latencyMillis > targetLatencyMillis) {
+        targetMutations = Math.max(minMutations, targetMutations / 2);
+      } else if (latencyMillis < targetLatencyMillis / 2) {
+        targetMutations = Math.min(maxMutations, targetMutations + Math.max(1, targetMutations / 4));
+      }
+    }
+
+    /**
+     * Removes the next batch from the front of {@code groups}. The batch holds at least one group
+     * and otherwise stops before the group that would exceed the mutation or byte target.
+     */
+    public List<MutationGroup> nextBatch(List<MutationGroup> groups) {
+      int end = 0;
+      long mutations = 0;
+      long bytes = 0;
+      while (end < groups.size()) {
+        MutationGroup group = groups.get(end);
+        long groupMutations = countMutations(group);
+        long groupBytes = estimateBytes(group);
+        if (end > 0
+            && (mutations + groupMutations > targetMutations || bytes + groupBytes > maxBytes)) {
+          break;
+        }
+        mutations += groupMutations;
+        bytes += groupBytes;
+        end++;
+      }
+      List<MutationGroup> batch = new ArrayList<>(groups.subList(0, end));
+      groups.subList(0, end).clear();
+      return batch;
+    }
+  }
+
+  /**
+   * Counts the cells that a group mutates, which is what Spanner limits per commit. A delete
+   * counts as one.
+   */
+  static long countMutations(MutationGroup group) {
+    long count = 0;
+    for (Mutation mutation : group) {
+      if (mutation.getOperation() == Mutation.Op.DELETE) {
+        count++;
+      } else {
+        for (Value ignored : mutation.getValues()) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** Roughly estimates the size of the values in a group, the same way as {@link EstimateSize}. */
+  static long estimateBytes(MutationGroup group) {
+    long sum = 0;
+    for (Mutation mutation : group) {
+      if (mutation.getOperation() == Mutation.Op.DELETE) {
+        sum += mutation.getKeySet().toString().length();
+        continue;
+      }
+      for (Value value : mutation.getValues()) {
+        if (value.isNull()) {
+          continue;
+        }
+        switch (value.getType().getCode()) {
+          case BOOL:
+            sum += 1;
+            break;
+          case INT64:
+          case FLOAT64:
+            sum += 8;
+            break;
+          case TIMESTAMP:
+          case DATE:
+            sum += 12;
+            break;
+          case BYTES:
+            sum += value.getBytes().length();
+            break;
+          case STRING:
+            sum += EstimateSize.utf8Length(value.getString());
+            break;
+          default:
+            sum += value.toString().length();
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Orders mutation groups by the table and primary key of their first mutation, so that each
+   * commit touches as few splits as possible. Groups with the same key keep their original order,
+   * so a delete and a write of the same row are applied in the order they came in. A group whose
+   * first mutation has no single key, such as a range delete or a write to a table without known
+   * key columns, stays where it is, and no group is moved past it. Keys are compared the way
+   * Spanner orders them, so strings and bytes are compared by their unsigned bytes.
+   */
+  static class KeyOrder implements Serializable {
+    private final Map<String, List<String>> keyColumns;
+
+    KeyOrder(Map<String, List<String>> keyColumns) {
+      this.keyColumns = keyColumns;
+    }
+
+    /** Sorts {@code groups} in place, reading the key of every group only once. */
+    void sort(List<MutationGroup> groups) {
+      List<MutationGroup> sorted = new ArrayList<>(groups.size());
+      List<SortKey> run = new ArrayList<>();
+      for (MutationGroup group : groups) {
+        List<Value> key = keyOf(group.primary());
+        if (key != null) {
+          run.add(new SortKey(group, key));
+          continue;
+        }
+        addSorted(run, sorted);
+        sorted.add(group);
+      }
+      addSorted(run, sorted);
+      groups.clear();
+      groups.addAll(sorted);
+    }
+
+    private static void addSorted(List<SortKey> run, List<MutationGroup> sorted) {
+      // List.sort is stable, which keeps the original order of groups with the same key.
+      run.sort(null);
+      for (SortKey key : run) {
+        sorted.add(key.group);
+      }
+      run.clear();
+    }
+
+    /** Returns the key of the one row that {@code mutation} changes, or null if it is unknown. */
+    private List<Value> keyOf(Mutation mutation) {
+      List<String> columns = keyColumns.get(mutation.getTable());
+      if (columns == null) {
+        return null;
+      }
+      if (mutation.getOperation() == Mutation.Op.DELETE) {
+        return keyOf(mutation.getKeySet());
+      }
+      Map<String, Value> values = mutation.asMap();
+      List<Value> key = new ArrayList<>(columns.size());
+      for (String column : columns) {
+        key.add(values.get(column));
+      }
+      return key;
+    }
+
+    private static List<Value> keyOf(KeySet keySet) {
+      if (keySet.isAll() || keySet.getRanges().iterator().hasNext()) {
+        return null;
+      }
+      Iterator<Key> keys = keySet.getKeys().iterator();
+      if (!keys.hasNext()) {
+        return null;
+      }
+      Key only = keys.next();
+      if (keys.hasNext()) {
+        return null;
+      }
+      List<Value> key = new ArrayList<>(only.size());
+      for (Object part : only.getParts()) {
+        Value value = toValue(part);
+        if (value == null) {
+          return null;
+        }
+        key.add(value);
+      }
+      return key;
+    }
+
+    /** Converts a key part to the value a write of the same row holds, or null if unsupported. */
+    private static Value toValue(Object part) {
+      if (part == null) {
+        return Value.string(null);
+      } else if (part instanceof Boolean) {
+        return Value.bool((Boolean) part);
+      } else if (part instanceof Long) {
+        return Value.int64((Long) part);
+      } else if (part instanceof Double) {
+        return Value.float64((Double) part);
+      } else if (part instanceof String) {
+        return Value.string((String) part);
+      } else if (part instanceof ByteArray) {
+        return Value.bytes((ByteArray) part);
+      } else if (part instanceof Timestamp) {
+        return Value.timestamp((Timestamp) part);
+      } else if (part instanceof Date) {
+        return Value.date((Date) part);
+      }
+      return null;
+    }
+  }
+
+  private static class SortKey implements Comparable<SortKey> {
+    final MutationGroup group;
+    final String table;
+    final List<Value> key;
+
+    SortKey(MutationGroup group, List<Value> key) {
+      this.group = group;
+      this.table = group.primary().getTable();
+      this.key = key;
+    }
+
+    @Override
+    public int compareTo(SortKey other) {
+      int result = table.compareTo(other.table);
+      if (result != 0) {
+        return result;
+      }
+      for (int i = 0; i < Math.min(key.size(), other.key.size()); i++) {
+        result = compareValues(key.get(i), other.key.get(i));
+        if (result != 0) {
+          return result;
+        }
+      }
+      return Integer.compare(key.size(), other.key.size());
+    }
+  }
+
+  static int compareValues(Value left, Value right) {
+    boolean leftNull = left == null || left.isNull();
+    boolean rightNull = right == null || right.isNull();
+    if (leftNull || rightNull) {
+      return Boolean.compare(!leftNull, !rightNull);
+    }
+    Type.Code code = left.getType().getCode();
+    if (code != right.getType().getCode()) {
+      return code.compareTo(right.getType().getCode());
+    }
+    switch (code) {
+      case BOOL:
+        return Boolean.compare(left.getBool(), right.getBool());
+      case INT64:
+        return Long.compare(left.getInt64(), right.getInt64());
+      case FLOAT64:
+        return Double.compare(left.getFloat64(), right.getFloat64());
+      case STRING:
+        return compareUtf8(left.getString(), right.getString());
+      case BYTES:
+        return compareUnsigned(left.getBytes().toByteArray(), right.getBytes().toByteArray());
+      case TIMESTAMP:
+        return left.getTimestamp().compareTo(right.getTimestamp());
+      case DATE:
+        return left.getDate().compareTo(right.getDate());
+      default:
+        return left.toString().compareTo(right.toString());
+    }
+  }
+
+  /**
+   * Compares strings in the order of their UTF-8 bytes, which is code point order. {@link
+   * String#compareTo} compares UTF-16 units and puts supplementary characters before U+E000 to
+   * U+FFFF.
+   */
+  static int compareUtf8(String left, String right) {
+    int i = 0;
+    int j = 0;
+    while (i < left.length() && j < right.length()) {
+      int a = left.codePointAt(i);
+      int b = right.codePointAt(j);
+      if (a != b) {
+        return Integer.compare(a, b);
+      }
+      i += Character.charCount(a);
+      j += Character.charCount(b);
+    }
+    return Boolean.compare(i < left.length(), j < right.length());
+  }
+
+  private static int compareUnsigned(byte[] left, byte[] right) {
+    for (int i = 0; i < Math.min(left.length, right.length); i++) {
+      int result = Integer.compare(Byte.toUnsignedInt(left[i]), Byte.toUnsignedInt(right[i]));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(left.length, right.length);
+  }
+
+  static class WriteFn extends DoFn<MutationGroup, Void> {
+    private static final String NAMESPACE = AdaptiveSpannerWrite.class.getSimpleName();
+
+    private final String projectId;
+    private final String instanceId;
+    private final String databaseId;
+    private final KeyOrder keyOrder;
+    private final BatchSizer sizer;
+
+    private final Distribution batchLatency = Metrics.distribution(NAMESPACE, "batchLatencyMs");
+    private final Distribution batchMutations = Metrics.distribution(NAMESPACE, "batchMutations");
+    private final Distribution batchBytes = Metrics.distribution(NAMESPACE, "batchBytes");
+    private final Counter retries = Metrics.counter(NAMESPACE, "retries");
+
+    private transient Spanner spanner;
+    private transient DatabaseClient client;
+    private transient List<MutationGroup> buffer;
+    private transient long bufferedMutations;
+
+    WriteFn(
+        String projectId,
+        String instanceId,
+        String databaseId,
+        Map<String, List<String>> keyColumns,
+        BatchSizer sizer) {
+      this.projectId = projectId;
+      this.instanceId = instanceId;
+      this.databaseId = databaseId;
+      this.keyOrder = new KeyOrder(keyColumns);
+      this.sizer = sizer;
+    }
+
+    @Setup
+    public void setup() {
+      SpannerOptions.Builder options = SpannerOptions.newBuilder();
+      if (projectId != null) {
+        options.setProjectId(projectId);
+      }
+      spanner = options.build().getService();
+      client = spanner.getDatabaseClient(
+          DatabaseId.of(spanner.getOptions().getProjectId(), instanceId, databaseId));
+    }
+
+    @StartBundle
+    public void startBundle() {
+      buffer = new ArrayList<>();
+      bufferedMutations = 0;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      buffer.add(c.element());
+      bufferedMutations += countMutations(c.element());
+      // Bound the memory used by large bundles, the sort order only holds within a flush.
+      if (bufferedMutations >= 20 * sizer.targetMutations()) {
+        flush();
+      }
+    }
+
+    @FinishBundle
+    public void finishBundle() {
+      flush();
+    }
+
+    private void flush() {
+      keyOrder.sort(buffer);
+      while (!buffer.isEmpty()) {
+        commit(sizer.nextBatch(buffer));
+      }
+      bufferedMutations = 0;
+    }
+
+    private void commit(List<MutationGroup> batch) {
+      List<Mutation> mutations = new ArrayList<>();
+      long cells = 0;
+      long bytes = 0;
+      for (MutationGroup group : batch) {
+        group.forEach(mutations::add);
+        cells += countMutations(group);
+        bytes += estimateBytes(group);
+      }
+
+      // The transaction function runs again for every abort, which makes aborts observable.
+      AtomicInteger attempts = new AtomicInteger();
+      long start = System.currentTimeMillis();
+      client.readWriteTransaction().run(transaction -> {
+        attempts.incrementAndGet();
+        transaction.buffer(mutations);
+        return null;
+      });
+      long latency = System.currentTimeMillis() - start;
+
+      int aborts = attempts.get() - 1;
+      sizer.recordCommit(latency, aborts);
+      batchLatency.update(latency);
+      batchMutations.update(cells);
+      batchBytes.update(bytes);
+      retries.inc(aborts);
+    }
+
+    @Teardown
+    public void teardown() {
+      if (spanner != null) {
+        spanner.close();
+      }
+    }
+  }
+}
@@ -16,7 +16,15 @@
 
 package com.example.dataflow;
 
+import com.google.cloud.ByteArray;
 import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.Type;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.List;
+import org.apache.beam.sdk.coders.DefaultCoder;
+import org.apache.beam.sdk.extensions.avro.coders.AvroCoder;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -31,6 +39,14 @@ public class EstimateSize extends PTransform<PCollection<Struct>, PCollection<Lo
     return new EstimateSize();
   }
 
+  /**
+   * Summarizes the row sizes of a whole collection into a single {@link SizeSummary}. Rows are
+   * combined into a fixed-size histogram before the shuffle, so no per-row sizes are emitted.
+   */
+  public static Summarize summarize() {
+    return new Summarize();
+  }
+
   private EstimateSize() {
   }
 
@@ -40,47 +56,311 @@ public class EstimateSize extends PTransform<PCollection<Struct>, PCollection<Lo
   }
 
   /**
-   * Estimates the size of a Spanner row. For simplicity, arrays and structs aren't supported.
+   * Estimates the size of a Spanner row in bytes, using the storage sizes of the Spanner data
+   * types. Strings and JSON are counted by their UTF-8 length, and arrays and structs by the sum
+   * of their elements.
+   */
+  public static long estimate(Struct row) {
+    long sum = 0;
+    for (int i = 0; i < row.getColumnCount(); i++) {
+      if (!row.isNull(i)) {
+        sum += estimateColumn(row, i, row.getColumnType(i));
+      }
+    }
+    return sum;
+  }
+
+  private static long estimateColumn(Struct row, int i, Type type) {
+    switch (type.getCode()) {
+      case BOOL:
+        return 1;
+      case INT64:
+      case FLOAT64:
+        return 8;
+      case TIMESTAMP:
+      case DATE:
+        return 12;
+      case NUMERIC:
+        return numericSize(row.getBigDecimal(i));
+      case PG_NUMERIC:
+      case STRING:
+        return utf8Length(row.getString(i));
+      case JSON:
+        return utf8Length(row.getJson(i));
+      case PG_JSONB:
+        return utf8Length(row.getPgJsonb(i));
+      case BYTES:
+        return row.getBytes(i).length();
+      case STRUCT:
+        return estimate(row.getStruct(i));
+      case ARRAY:
+        return estimateArray(row, i, type.getArrayElementType());
+      default:
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+  }
+
+  private static long estimateArray(Struct row, int i, Type elementType) {
+    switch (elementType.getCode()) {
+      case BOOL:
+        return row.getBooleanList(i).size();
+      case INT64:
+        return 8L * row.getLongList(i).size();
+      case FLOAT64:
+        return 8L * row.getDoubleList(i).size();
+      case TIMESTAMP:
+        return 12L * row.getTimestampList(i).size();
+      case DATE:
+        return 12L * row.getDateList(i).size();
+      case NUMERIC: {
+        long sum = 0;
+        for (BigDecimal value : row.getBigDecimalList(i)) {
+          sum += value == null ? 0 : numericSize(value);
+        }
+        return sum;
+      }
+      case PG_NUMERIC:
+      case STRING:
+        return utf8Length(row.getStringList(i));
+      case JSON:
+        return utf8Length(row.getJsonList(i));
+      case PG_JSONB:
+        return utf8Length(row.getPgJsonbList(i));
+      case BYTES: {
+        long sum = 0;
+        for (ByteArray value : row.getBytesList(i)) {
+          sum += value == null ? 0 : value.length();
+        }
+        return sum;
+      }
+      case STRUCT: {
+        long sum = 0;
+        for (Struct value : row.getStructList(i)) {
+          sum += value == null ? 0 : estimate(value);
+        }
+        return sum;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported array element type: " + elementType);
+    }
+  }
+
+  /** Spanner stores a NUMERIC in 6 to 22 bytes, depending on the number of digits. */
+  private static long numericSize(BigDecimal value) {
+    if (value.signum() == 0) {
+      return 1;
+    }
+    return Math.min(22, 6 + (value.precision() + 1) / 2);
+  }
+
+  private static long utf8Length(List<String> values) {
+    long sum = 0;
+    for (String value : values) {
+      sum += value == null ? 0 : utf8Length(value);
+    }
+    return sum;
+  }
+
+  /** Counts the UTF-8 encoded length of a string without encoding it. */
+  static long utf8Length(CharSequence value) {
+    long length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Estimates the size of a Spanner row, see {@link EstimateSize#estimate(Struct)}.
    */
   public static class EstimateStructSizeFn extends DoFn<Struct, Long> {
 
     @ProcessElement
     public void processElement(ProcessContext c) throws Exception {
-      Struct row = c.element();
-      long sum = 0;
-      for (int i = 0; i < row.getColumnCount(); i++) {
-        if (row.isNull(i)) {
-          continue;
-        }
+      c.output(estimate(c.element()));
+    }
+  }
+
+  /** Combines all the rows of a collection into one {@link SizeSummary}. */
+  public static class Summarize extends PTransform<PCollection<Struct>, PCollection<SizeSummary>> {
+
+    private Summarize() {
+    }
+
+    @Override
+    public PCollection<SizeSummary> expand(PCollection<Struct> input) {
+      return input.apply(Combine.globally(new SizeSummaryFn()));
+    }
+  }
+
+  /**
+   * Log-linear histogram of row sizes. Sizes below 8 bytes have their own bucket, larger sizes
+   * share a bucket with the sizes that have the same highest 4 bits, so every bucket is at most
+   * 12.5% wide. The histogram has a fixed size no matter how many rows it counts.
+   */
+  @DefaultCoder(AvroCoder.class)
+  public static class SizeHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
 
-        switch (row.getColumnType(i).getCode()) {
-          case BOOL:
-            sum += 1;
-            break;
-          case INT64:
-          case FLOAT64:
-            sum += 8;
-            break;
-          case TIMESTAMP:
-          case DATE:
-            sum += 12;
-            break;
-          case BYTES:
-            sum += row.getBytes(i).length();
-            break;
-          case STRING:
-            sum += row.getString(i).length();
-            break;
-          case ARRAY:
-            throw new IllegalArgumentException("Arrays are not supported :(");
-          case STRUCT:
-            throw new IllegalArgumentException("Structs are not supported :(");
-          default:
-            throw new IllegalArgumentException("Unsupported type :(");
+    long count = 0;
+    long totalBytes = 0;
+    long minBytes = Long.MAX_VALUE;
+    long maxBytes = 0;
+    long[] buckets = new long[NUM_BUCKETS];
+
+    void add(long bytes) {
+      count++;
+      totalBytes += bytes;
+      minBytes = Math.min(minBytes, bytes);
+      maxBytes = Math.max(maxBytes, bytes);
+      buckets[bucket(bytes)]++;
+    }
+
+    void merge(SizeHistogram other) {
+      count += other.count;
+      totalBytes += other.totalBytes;
+      minBytes = Math.min(minBytes, other.minBytes);
+      maxBytes = Math.max(maxBytes, other.maxBytes);
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        buckets[i] += other.buckets[i];
+      }
+    }
+
+    /** Returns the smallest bucket bound that at least {@code fraction} of the rows fit in. */
+    long percentile(double fraction) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(fraction * count));
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return Math.max(minBytes, Math.min(maxBytes, upperBound(i)));
         }
       }
-      c.output(sum);
+      return maxBytes;
+    }
+
+    static int bucket(long bytes) {
+      if (bytes < SUB_BUCKETS) {
+        return (int) bytes;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(bytes);
+      int subBucket = (int) (bytes >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+      long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+      long shift = exponent - SUB_BUCKET_BITS;
+      return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
     }
   }
 
+  /** The total and the distribution of the row sizes of a collection, in bytes. */
+  @DefaultCoder(AvroCoder.class)
+  public static class SizeSummary implements Serializable {
+    long rows;
+    long totalBytes;
+    long minBytes;
+    long maxBytes;
+    long p50Bytes;
+    long p90Bytes;
+    long p99Bytes;
+
+    public long getRows() {
+      return rows;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public long getMinBytes() {
+      return minBytes;
+    }
+
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+
+    public long getP50Bytes() {
+      return p50Bytes;
+    }
+
+    public long getP90Bytes() {
+      return p90Bytes;
+    }
+
+    public long getP99Bytes() {
+      return p99Bytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "rows=%d total=%d min=%d p50=%d p90=%d p99=%d max=%d",
+          rows, totalBytes, minBytes, p50Bytes, p90Bytes, p99Bytes, maxBytes);
+    }
+  }
+
+  /**
+   * Estimates each row and adds it to a {@link SizeHistogram}. Beam lifts the combiner, so each
+   * bundle is pre-aggregated before anything is shuffled.
+   */
+  public static class SizeSummaryFn
+      extends Combine.CombineFn<Struct, SizeHistogram, SizeSummary> {
+
+    @Override
+    public SizeHistogram createAccumulator() {
+      return new SizeHistogram();
+    }
+
+    @Override
+    public SizeHistogram addInput(SizeHistogram histogram, Struct row) {
+      histogram.add(estimate(row));
+      return histogram;
+    }
+
+    @Override
+    public SizeHistogram mergeAccumulators(Iterable<SizeHistogram> histograms) {
+      SizeHistogram merged = createAccumulator();
+      for (SizeHistogram histogram : histograms) {
+        merged.merge(histogram);
+      }
+      return merged;
+    }
+
+    @Override
+    public SizeSummary extractOutput(SizeHistogram histogram) {
+      SizeSummary summary = new SizeSummary();
+      summary.rows = histogram.count;
+      summary.totalBytes = histogram.totalBytes;
+      summary.minBytes = histogram.count == 0 ? 0 : histogram.minBytes;
+      summary.maxBytes = histogram.maxBytes;
+      summary.p50Bytes = histogram.percentile(0.50);
+      summary.p90Bytes = histogram.percentile(0.90);
+      summary.p99Bytes = histogram.percentile(0.99);
+      return summary;
+    }
+  }
 }
@@ -20,8 +20,11 @@ import com.google.cloud.Timestamp;
 import com.google.cloud.spanner.Dialect;
 import com.google.cloud.spanner.Mutation;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.Hashing;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
 import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.gcp.spanner.MutationGroup;
 import org.apache.beam.sdk.io.gcp.spanner.SpannerIO;
@@ -70,6 +73,12 @@ public class SpannerGroupWrite {
 
     void setSuspiciousUsersFile(String value);
 
+    @Description("Write with key-sorted batches that adapt to the commit latency instead of the "
+        + "default SpannerIO batching")
+    @Default.Boolean(false)
+    boolean getAdaptiveBatching();
+
+    void setAdaptiveBatching(boolean value);
   }
 
   public static void main(String[] args) {
@@ -83,7 +92,9 @@ public class SpannerGroupWrite {
     PCollection<String> suspiciousUserIds = p.apply(TextIO.read().from(usersIdFile));
     final Timestamp timestamp = Timestamp.now();
 
-    if (options.getDialect() == Dialect.POSTGRESQL) {
+    if (options.getAdaptiveBatching()) {
+      adaptiveBatchingWrite(options, suspiciousUserIds, timestamp);
+    } else if (options.getDialect() == Dialect.POSTGRESQL) {
       postgreSqlWrite(instanceId, databaseId, p, suspiciousUserIds, timestamp);
     } else {
       googleSqlWrite(instanceId, databaseId, suspiciousUserIds, timestamp);
@@ -93,6 +104,56 @@ public class SpannerGroupWrite {
 
   }
 
+  /**
+   * Writes the same mutation groups as {@link #googleSqlWrite} with {@link AdaptiveSpannerWrite},
+   * which keeps every group in a single commit. The groups are sorted by the user id.
+   */
+  static void adaptiveBatchingWrite(
+      Options options, PCollection<String> suspiciousUserIds, Timestamp timestamp) {
+    blockAndReview(suspiciousUserIds, timestamp)
+        .apply(AdaptiveSpannerWrite.create(
+            options.as(GcpOptions.class).getProject(),
+            options.getInstanceId(),
+            options.getDatabaseId(),
+            ImmutableMap.of("Users", ImmutableList.of("id"))));
+  }
+
+  /**
+   * Blocks every suspicious user and adds a review of the account in the same group, as the
+   * {@link #googleSqlWrite} and {@link #postgreSqlWrite} snippets do.
+   */
+  static PCollection<MutationGroup> blockAndReview(
+      PCollection<String> suspiciousUserIds, Timestamp timestamp) {
+    return suspiciousUserIds
+        .apply(MapElements.via(new SimpleFunction<String, MutationGroup>() {
+
+          @Override
+          public MutationGroup apply(String userId) {
+            // Immediately block the user.
+            Mutation userMutation = Mutation.newUpdateBuilder("Users")
+                .set("id").to(userId)
+                .set("state").to("BLOCKED")
+                .build();
+            long generatedId = Hashing.sha1().newHasher()
+                .putString(userId, Charsets.UTF_8)
+                .putLong(timestamp.getSeconds())
+                .putLong(timestamp.getNanos())
+                .hash()
+                .asLong();
+
+            // Add an entry to pending review requests.
+            Mutation pendingReview = Mutation.newInsertOrUpdateBuilder("PendingReviews")
+                .set("id").to(generatedId)  // Must be deterministically generated.
+                .set("userId").to(userId)
+                .set("action").to("REVIEW ACCOUNT")
+                .set("note").to("Suspicious activity detected.")
+                .build();
+
+            return MutationGroup.create(userMutation, pendingReview);
+          }
+        }));
+  }
+
   /**
    * {@link MutationGroup} depends on the dialect that is used, and will by default use {@link
    * Dialect#GOOGLE_STANDARD_SQL}.
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import com.google.cloud.Date;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.BatchClient;
+import com.google.cloud.spanner.BatchReadOnlyTransaction;
+import com.google.cloud.spanner.BatchTransactionId;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.DatabaseId;
+import com.google.cloud.spanner.Dialect;
+import com.google.cloud.spanner.Options;
+import com.google.cloud.spanner.Partition;
+import com.google.cloud.spanner.PartitionOptions;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerOptions;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.cloud.spanner.Type;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.extensions.avro.coders.AvroCoder;
+import org.apache.beam.sdk.extensions.avro.io.AvroIO;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.options.Validation;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.PDone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+This sample demonstrates how to export Spanner tables to Avro files, reading the partitions of
+every table in parallel at a single timestamp.
+
+## How to run
+cd java-docs-samples/dataflow/spanner-io
+mvn clean
+mvn compile
+mvn exec:java \
+    -Dexec.mainClass=com.example.dataflow.SpannerPartitionedExport \
+    -Dexec.args="--instanceId=my-instance-id \
+                 --databaseId=my-database-id \
+                 --outputDirectory=gs://my-bucket/export \
+                 --dataBoost=true"
+*/
+
+/**
+ * Exports Spanner tables to Avro files. Each table is split with {@code PartitionQuery}, and the
+ * partitions are read in parallel, all at the same read timestamp, optionally with Data Boost.
+ *
+ * <p>The rows, bytes and milliseconds of every partition are reported as Beam distributions per
+ * table. A partition that takes more than {@value #SLOW_PARTITION_FACTOR} times as long as the
+ * earlier partitions of its table on the same worker is logged as a warning, so skew is easy to
+ * spot.
+ *
+ * <p>The table list and the row types are read while the pipeline is constructed, because every
+ * table gets its own branch of the pipeline and its own Avro schema. The read timestamp and the
+ * partitions are only taken when the pipeline runs, so the snapshot does not age while the job
+ * is submitted and waits for workers, and partition tokens are never serialized into the job.
+ */
+public class SpannerPartitionedExport extends PTransform<PBegin, PDone> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SpannerPartitionedExport.class);
+
+  /** How many times slower than the average of its table a partition must be to be logged. */
+  static final int SLOW_PARTITION_FACTOR = 4;
+
+  public interface ExportOptions extends PipelineOptions {
+
+    @Description("Spanner instance ID to export from")
+    @Validation.Required
+    String getInstanceId();
+
+    void setInstanceId(String value);
+
+    @Description("Spanner database name to export from")
+    @Validation.Required
+    String getDatabaseId();
+
+    void setDatabaseId(String value);
+
+    @Description("Comma separated tables to export, all tables if not set")
+    String getTables();
+
+    void setTables(String value);
+
+    @Description("Directory to write one Avro file set per table to")
+    @Validation.Required
+    String getOutputDirectory();
+
+    void setOutputDirectory(String value);
+
+    @Description("Read the partitions with Spanner Data Boost")
+    @Default.Boolean(false)
+    boolean getDataBoost();
+
+    void setDataBoost(boolean value);
+
+    @Description("Avro codec of the output files, for example snappy, deflate or null")
+    @Default.String("snappy")
+    String getCodec();
+
+    void setCodec(String value);
+  }
+
+  private final String projectId;
+  private final String instanceId;
+  private final String databaseId;
+  private final List<String> tables;
+  private final String outputDirectory;
+  private final boolean dataBoost;
+  private final String codec;
+
+  private SpannerPartitionedExport(
+      String projectId,
+      String instanceId,
+      String databaseId,
+      List<String> tables,
+      String outputDirectory,
+      boolean dataBoost,
+      String codec) {
+    this.projectId = projectId;
+    this.instanceId = instanceId;
+    this.databaseId = databaseId;
+    this.tables = tables;
+    this.outputDirectory = outputDirectory;
+    this.dataBoost = dataBoost;
+    this.codec = codec;
+  }
+
+  /**
+   * Exports {@code tables}, or every table of the database if it is empty, to {@code
+   * outputDirectory}/{@code table}. Uses the default project if {@code projectId} is null.
+   */
+  public static SpannerPartitionedExport create(
+      String projectId,
+      String instanceId,
+      String databaseId,
+      List<String> tables,
+      String outputDirectory) {
+    return new SpannerPartitionedExport(
+        projectId, instanceId, databaseId, tables, outputDirectory, false, "snappy");
+  }
+
+  /** Reads the partitions with Spanner Data Boost, which uses independent compute resources. */
+  public SpannerPartitionedExport withDataBoost(boolean dataBoost) {
+    return new SpannerPartitionedExport(
+        projectId, instanceId, databaseId, tables, outputDirectory, dataBoost, codec);
+  }
+
+  /** Sets the Avro codec, as accepted by {@link CodecFactory#fromString(String)}. */
+  public SpannerPartitionedExport withCodec(String codec) {
+    return new SpannerPartitionedExport(
+        projectId, instanceId, databaseId, tables, outputDirectory, dataBoost, codec);
+  }
+
+  @Override
+  public PDone expand(PBegin input) {
+    Pipeline pipeline = input.getPipeline();
+
+    // Every table and partition is read at this one timestamp, so that the export is a single
+    // consistent snapshot, even though each table gets its own batch transaction.
+    PCollectionView<Timestamp> readTimestamp = pipeline
+        .apply("Start", Create.of(databaseId))
+        .apply("Pin read timestamp", ParDo.of(new ReadTimestampFn(
+            projectId, instanceId, databaseId)))
+        .setCoder(SerializableCoder.of(Timestamp.class))
+        .apply(View.asSingleton());
+
+    try (Spanner spanner = createSpanner(projectId)) {
+      DatabaseClient client = spanner.getDatabaseClient(
+          DatabaseId.of(spanner.getOptions().getProjectId(), instanceId, databaseId));
+      Dialect dialect = client.getDialect();
+
+      List<String> exportTables = tables.isEmpty() ? listTables(client, dialect) : tables;
+      for (String table : exportTables) {
+        String query = "SELECT * FROM " + quote(table, dialect);
+        Schema schema = avroSchema(table, rowType(client, query));
+        pipeline
+            .apply("Table " + table, Create.of(table))
+            .apply("Partition " + table, ParDo.of(new PartitionQueryFn(
+                    projectId, instanceId, databaseId, readTimestamp, query, dataBoost))
+                .withSideInputs(readTimestamp))
+            .setCoder(SerializableCoder.of(TablePartition.class))
+            // Spread the partitions of the table over all workers.
+            .apply("Reshuffle " + table, Reshuffle.viaRandomKey())
+            .apply("Read " + table, ParDo.of(new ReadPartitionFn(
+                projectId, instanceId, databaseId, schema.toString())))
+            .setCoder(AvroCoder.of(GenericRecord.class, schema))
+            .apply("Write " + table, AvroIO.writeGenericRecords(schema)
+                .to(outputDirectory + "/" + table + "/part")
+                .withSuffix(".avro")
+                .withCodec(CodecFactory.fromString(codec)));
+      }
+    }
+    return PDone.in(pipeline);
+  }
+
+  private static Spanner createSpanner(String projectId) {
+    SpannerOptions.Builder options = SpannerOptions.newBuilder();
+    if (projectId != null) {
+      options.setProjectId(projectId);
+    }
+    return options.build().getService();
+  }
+
+  /** GoogleSQL uses the empty string and PostgreSQL uses public as the default schema. */
+  private static List<String> listTables(DatabaseClient client, Dialect dialect) {
+    String query = dialect == Dialect.POSTGRESQL
+        ? "SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'"
+        : "SELECT table_name FROM information_schema.tables "
+            + "WHERE table_catalog = '' AND table_schema = ''";
+    List<String> tables = new ArrayList<>();
+    try (ResultSet resultSet = client.singleUse().executeQuery(Statement.of(query))) {
+      while (resultSet.next()) {
+        tables.add(resultSet.getString(0));
+      }
+    }
+    return tables;
+  }
+
+  private static String quote(String table, Dialect dialect) {
+    return dialect == Dialect.POSTGRESQL ? "\"" + table + "\"" : "`" + table + "`";
+  }
+
+  /** Returns the row type of a query without reading any rows. */
+  private static Type rowType(DatabaseClient client, String query) {
+    try (ResultSet resultSet =
+        client.singleUse().executeQuery(Statement.of(query + " LIMIT 0"))) {
+      resultSet.next();
+      return resultSet.getType();
+    }
+  }
+
+  /**
+   * Maps a Spanner row type to an Avro record. NUMERIC, JSON and the PostgreSQL types are written
+   * as strings, TIMESTAMP and DATE use the Avro logical types, and every column is nullable.
+   */
+  static Schema avroSchema(String table, Type rowType) {
+    SchemaBuilder.FieldAssembler<Schema> fields = SchemaBuilder.record(table).fields();
+    for (Type.StructField field : rowType.getStructFields()) {
+      fields = fields.name(field.getName()).type(nullable(avroType(field.getType()))).withDefault(
+          null);
+    }
+    return fields.endRecord();
+  }
+
+  private static Schema nullable(Schema schema) {
+    return Schema.createUnion(Schema.create(Schema.Type.NULL), schema);
+  }
+
+  private static Schema avroType(Type type) {
+    switch (type.getCode()) {
+      case BOOL:
+        return Schema.create(Schema.Type.BOOLEAN);
+      case INT64:
+        return Schema.create(Schema.Type.LONG);
+      case FLOAT64:
+        return Schema.create(Schema.Type.DOUBLE);
+      case NUMERIC:
+      case PG_NUMERIC:
+      case STRING:
+      case JSON:
+      case PG_JSONB:
+        return Schema.create(Schema.Type.STRING);
+      case BYTES:
+        return Schema.create(Schema.Type.BYTES);
+      case TIMESTAMP:
+        return LogicalTypes.timestampMicros().addToSchema(Schema.create(Schema.Type.LONG));
+      case DATE:
+        return LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT));
+      case ARRAY:
+        return Schema.createArray(nullable(avroType(type.getArrayElementType())));
+      default:
+        throw new IllegalArgumentException("Unsupported column type: " + type);
+    }
+  }
+
+  /** Converts a row to an Avro record of the schema from {@link #avroSchema}. */
+  static GenericRecord toRecord(Struct row, Schema schema) {
+    GenericRecord record = new GenericData.Record(schema);
+    for (int i = 0; i < row.getColumnCount(); i++) {
+      if (!row.isNull(i)) {
+        record.put(i, toAvro(row.getColumnType(i), row, i));
+      }
+    }
+    return record;
+  }
+
+  private static Object toAvro(Type type, Struct row, int i) {
+    switch (type.getCode()) {
+      case BOOL:
+        return row.getBoolean(i);
+      case INT64:
+        return row.getLong(i);
+      case FLOAT64:
+        return row.getDouble(i);
+      case NUMERIC:
+        return row.getBigDecimal(i).toPlainString();
+      case PG_NUMERIC:
+      case STRING:
+        return row.getString(i);
+      case JSON:
+        return row.getJson(i);
+      case PG_JSONB:
+        return row.getPgJsonb(i);
+      case BYTES:
+        return ByteBuffer.wrap(row.getBytes(i).toByteArray());
+      case TIMESTAMP:
+        return micros(row.getTimestamp(i));
+      case DATE:
+        return days(row.getDate(i));
+      case ARRAY:
+        return toAvroList(type.getArrayElementType(), row, i);
+      default:
+        throw new IllegalArgumentException("Unsupported column type: " + type);
+    }
+  }
+
+  private static List<?> toAvroList(Type elementType, Struct row, int i) {
+    switch (elementType.getCode()) {
+      case BOOL:
+        return row.getBooleanList(i);
+      case INT64:
+        return row.getLongList(i);
+      case FLOAT64:
+        return row.getDoubleList(i);
+      case NUMERIC: {
+        List<String> values = new ArrayList<>();
+        row.getBigDecimalList(i).forEach(v -> values.add(v == null ? null : v.toPlainString()));
+        return values;
+      }
+      case PG_NUMERIC:
+      case STRING:
+        return row.getStringList(i);
+      case JSON:
+        return row.getJsonList(i);
+      case PG_JSONB:
+        return row.getPgJsonbList(i);
+      case BYTES: {
+        List<ByteBuffer> values = new ArrayList<>();
+        row.getBytesList(i).forEach(
+            v -> values.add(v == null ? null : ByteBuffer.wrap(v.toByteArray())));
+        return values;
+      }
+      case TIMESTAMP: {
+        List<Long> values = new ArrayList<>();
+        row.getTimestampList(i).forEach(v -> values.add(v == null ? null : micros(v)));
+        return values;
+      }
+      case DATE: {
+        List<Integer> values = new ArrayList<>();
+        row.getDateList(i).forEach(v -> values.add(v == null ? null : days(v)));
+        return values;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported array element type: " + elementType);
+    }
+  }
+
+  private static long micros(Timestamp timestamp) {
+    return timestamp.getSeconds() * 1_000_000L + timestamp.getNanos() / 1_000;
+  }
+
+  private static int days(Date date) {
+    return (int) LocalDate.of(date.getYear(), date.getMonth(), date.getDayOfMonth()).toEpochDay();
+  }
+
+  /** A partition of a table, with the batch transaction that it must be read in. */
+  static class TablePartition implements Serializable {
+    final String table;
+    final int index;
+    final BatchTransactionId transactionId;
+    final Partition partition;
+
+    TablePartition(
+        String table, int index, BatchTransactionId transactionId, Partition partition) {
+      this.table = table;
+      this.index = index;
+      this.transactionId = transactionId;
+      this.partition = partition;
+    }
+  }
+
+  /** Base class for the DoFns that share one Spanner client per DoFn instance. */
+  abstract static class SpannerFn<InputT, OutputT> extends DoFn<InputT, OutputT> {
+    private final String projectId;
+    private final String instanceId;
+    private final String databaseId;
+
+    protected transient Spanner spanner;
+    protected transient BatchClient batchClient;
+
+    SpannerFn(String projectId, String instanceId, String databaseId) {
+      this.projectId = projectId;
+      this.instanceId = instanceId;
+      this.databaseId = databaseId;
+    }
+
+    @Setup
+    public void setup() {
+      spanner = createSpanner(projectId);
+      batchClient = spanner.getBatchClient(
+          DatabaseId.of(spanner.getOptions().getProjectId(), instanceId, databaseId));
+    }
+
+    @Teardown
+    public void teardown() {
+      if (spanner != null) {
+        spanner.close();
+      }
+    }
+  }
+
+  // DoFn.Timestamp hides com.google.cloud.Timestamp inside the DoFns below.
+
+  /** Takes the current timestamp of the database as the read timestamp of the export. */
+  static class ReadTimestampFn extends SpannerFn<String, com.google.cloud.Timestamp> {
+    ReadTimestampFn(String projectId, String instanceId, String databaseId) {
+      super(projectId, instanceId, databaseId);
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      try (BatchReadOnlyTransaction transaction =
+          batchClient.batchReadOnlyTransaction(TimestampBound.strong())) {
+        c.output(transaction.getReadTimestamp());
+      }
+    }
+  }
+
+  /** Splits the query of a table into partitions at the shared read timestamp. */
+  static class PartitionQueryFn extends SpannerFn<String, TablePartition> {
+    private final PCollectionView<com.google.cloud.Timestamp> readTimestamp;
+    private final String query;
+    private final boolean dataBoost;
+
+    PartitionQueryFn(
+        String projectId,
+        String instanceId,
+        String databaseId,
+        PCollectionView<com.google.cloud.Timestamp> readTimestamp,
+        String query,
+        boolean dataBoost) {
+      super(projectId, instanceId, databaseId);
+      this.readTimestamp = readTimestamp;
+      this.query = query;
+      this.dataBoost = dataBoost;
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      BatchReadOnlyTransaction transaction = batchClient.batchReadOnlyTransaction(
+          TimestampBound.ofReadTimestamp(c.sideInput(readTimestamp)));
+      List<Partition> partitions = transaction.partitionQuery(
+          PartitionOptions.getDefaultInstance(),
+          Statement.of(query),
+          Options.dataBoostEnabled(dataBoost));
+      LOG.info("Table {} has {} partitions", c.element(), partitions.size());
+      for (int i = 0; i < partitions.size(); i++) {
+        c.output(new TablePartition(
+            c.element(), i, transaction.getBatchTransactionId(), partitions.get(i)));
+      }
+    }
+  }
+
+  /** Reads one partition and reports how long it took and how much it read. */
+  static class ReadPartitionFn extends SpannerFn<TablePartition, GenericRecord> {
+    private final String schemaJson;
+    private transient Schema schema;
+    // Partitions and milliseconds read per table by this instance, to find slow partitions.
+    private transient Map<String, long[]> seen;
+
+    ReadPartitionFn(String projectId, String instanceId, String databaseId, String schemaJson) {
+      super(projectId, instanceId, databaseId);
+      this.schemaJson = schemaJson;
+    }
+
+    @Override
+    public void setup() {
+      super.setup();
+      schema = new Schema.Parser().parse(schemaJson);
+      seen = new HashMap<>();
+    }
+
+    @ProcessElement
+    public void processElement(ProcessContext c) {
+      TablePartition work = c.element();
+      long rows = 0;
+      long bytes = 0;
+      long start = System.currentTimeMillis();
+      BatchReadOnlyTransaction transaction =
+          batchClient.batchReadOnlyTransaction(work.transactionId);
+      try (ResultSet resultSet = transaction.execute(work.partition)) {
+        while (resultSet.next()) {
+          Struct row = resultSet.getCurrentRowAsStruct();
+          rows++;
+          bytes += EstimateSize.estimate(row);
+          c.output(toRecord(row, schema));
+        }
+      }
+      long millis = Math.max(1, System.currentTimeMillis() - start);
+
+      Metrics.distribution(work.table, "partitionRows").update(rows);
+      Metrics.distribution(work.table, "partitionBytes").update(bytes);
+      Metrics.distribution(work.table, "partitionMillis").update(millis);
+      Distribution throughput = Metrics.distribution(work.table, "partitionBytesPerSecond");
+      throughput.update(bytes * 1000 / millis);
+
+      long[] tableSeen = seen.computeIfAbsent(work.table, table -> new long[2]);
+      if (isSlow(millis, tableSeen[0], tableSeen[1])) {
+        LOG.warn("Table {} partition {} is slow: {} rows, {} bytes in {} ms, {} ms on average",
+            work.table, work.index, rows, bytes, millis, tableSeen[1] / tableSeen[0]);
+      }
+      tableSeen[0]++;
+      tableSeen[1] += millis;
+    }
+  }
+
+  /**
+   * Whether a partition that took {@code millis} is slow compared to {@code partitions} earlier
+   * partitions that took {@code totalMillis} together. A few partitions are needed for a
+   * meaningful average.
+   */
+  static boolean isSlow(long millis, long partitions, long totalMillis) {
+    return partitions >= 3 && millis > SLOW_PARTITION_FACTOR * totalMillis / partitions;
+  }
+
+  public static void main(String[] args) {
+    ExportOptions options =
+        PipelineOptionsFactory.fromArgs(args).withValidation().as(ExportOptions.class);
+    Pipeline pipeline = Pipeline.create(options);
+
+    List<String> tables = new ArrayList<>();
+    if (options.getTables() != null) {
+      for (String table : options.getTables().split(",")) {
+        tables.add(table.trim());
+      }
+    }
+
+    pipeline.apply("Export", SpannerPartitionedExport
+        .create(null, options.getInstanceId(), options.getDatabaseId(), tables,
+            options.getOutputDirectory())
+        .withDataBoost(options.getDataBoost())
+        .withCodec(options.getCodec()));
+
+    pipeline.run().waitUntilFinish();
+  }
+}
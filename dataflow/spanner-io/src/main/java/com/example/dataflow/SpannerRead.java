@@ -52,7 +52,8 @@ mvn exec:java \
     -Dexec.args="--instanceId=my-instance-id \
                  --databaseId=my-database-id \
                  --table=my_table \
-                 --output=path/to/output_file"
+                 --output=path/to/output_file \
+                 --summaryOutput=path/to/summary_file"
 */
 public class SpannerRead {
 
@@ -81,6 +82,11 @@ public class SpannerRead {
     String getOutput();
 
     void setOutput(String value);
+
+    @Description("Optional output filename for the row count and row size percentiles")
+    String getSummaryOutput();
+
+    void setSummaryOutput(String value);
   }
 
 
@@ -111,6 +117,14 @@ public class SpannerRead {
         .apply(ToString.elements())
         .apply(TextIO.write().to(options.getOutput()).withoutSharding());
 
+    if (options.getSummaryOutput() != null) {
+      // Combine the row sizes into a single summary, without emitting a size per row
+      records
+          .apply("Summarize row sizes", EstimateSize.summarize())
+          .apply("Summary to string", ToString.elements())
+          .apply("Write summary", TextIO.write().to(options.getSummaryOutput()).withoutSharding());
+    }
+
     pipeline.run().waitUntilFinish();
   }
 }
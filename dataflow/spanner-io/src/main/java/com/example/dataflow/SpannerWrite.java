@@ -18,10 +18,16 @@ package com.example.dataflow;
 
 import com.google.cloud.spanner.Dialect;
 import com.google.cloud.spanner.Mutation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.DefaultCoder;
 import org.apache.beam.sdk.extensions.avro.coders.AvroCoder;
+import org.apache.beam.sdk.extensions.gcp.options.GcpOptions;
 import org.apache.beam.sdk.io.TextIO;
+import org.apache.beam.sdk.io.gcp.spanner.MutationGroup;
 import org.apache.beam.sdk.io.gcp.spanner.SpannerIO;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Default.Enum;
@@ -31,10 +37,12 @@ import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.Validation;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TypeDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -104,8 +112,20 @@ public class SpannerWrite {
     Dialect getDialect();
 
     void setDialect(Dialect dialect);
+
+    @Description("Write with key-sorted batches that adapt to the commit latency instead of the "
+        + "default SpannerIO batching")
+    @Default.Boolean(false)
+    boolean getAdaptiveBatching();
+
+    void setAdaptiveBatching(boolean value);
   }
 
+  /** Primary key columns of the tables in this sample, used to sort adaptive batches. */
+  static final Map<String, List<String>> KEY_COLUMNS = ImmutableMap.of(
+      "singers", ImmutableList.of("singerId"),
+      "albums", ImmutableList.of("singerId", "albumId"));
+
   @DefaultCoder(AvroCoder.class)
   static class Singer {
     long singerId;
@@ -185,6 +205,12 @@ public class SpannerWrite {
     String instanceId = options.getInstanceId();
     String databaseId = options.getDatabaseId();
 
+    if (options.getAdaptiveBatching()) {
+      adaptiveBatchingWrite(options, p);
+      p.run().waitUntilFinish();
+      return;
+    }
+
     // Read singers from a tab-delimited file
     p.apply("ReadSingers", TextIO.read().from(options.getSingersFilename()))
         // Parse the tab-delimited lines into Singer objects
@@ -222,6 +248,36 @@ public class SpannerWrite {
     p.run().waitUntilFinish();
   }
 
+  /**
+   * Writes the singers and albums with {@link AdaptiveSpannerWrite}. The Spanner client picks up
+   * the dialect from the database, so the same mutations work for both dialects.
+   */
+  static void adaptiveBatchingWrite(Options options, Pipeline p) {
+    String projectId = options.as(GcpOptions.class).getProject();
+
+    p.apply("ReadSingers", TextIO.read().from(options.getSingersFilename()))
+        .apply("ParseSingers", ParDo.of(new ParseSinger()))
+        .apply("CreateSingerMutation", MapElements.into(TypeDescriptor.of(MutationGroup.class))
+            .via(singer -> MutationGroup.create(Mutation.newInsertOrUpdateBuilder("singers")
+                .set("singerId").to(singer.singerId)
+                .set("firstName").to(singer.firstName)
+                .set("lastName").to(singer.lastName)
+                .build())))
+        .apply("WriteSingers", AdaptiveSpannerWrite.create(
+            projectId, options.getInstanceId(), options.getDatabaseId(), KEY_COLUMNS));
+
+    p.apply("ReadAlbums", TextIO.read().from(options.getAlbumsFilename()))
+        .apply("ParseAlbums", ParDo.of(new ParseAlbum()))
+        .apply("CreateAlbumMutation", MapElements.into(TypeDescriptor.of(MutationGroup.class))
+            .via(album -> MutationGroup.create(Mutation.newInsertOrUpdateBuilder("albums")
+                .set("singerId").to(album.singerId)
+                .set("albumId").to(album.albumId)
+                .set("albumTitle").to(album.albumTitle)
+                .build())))
+        .apply("WriteAlbums", AdaptiveSpannerWrite.create(
+            projectId, options.getInstanceId(), options.getDatabaseId(), KEY_COLUMNS));
+  }
+
   /**
    * Mutations depend on the dialect that is used, and will by default use {@link
    * Dialect#GOOGLE_STANDARD_SQL}.
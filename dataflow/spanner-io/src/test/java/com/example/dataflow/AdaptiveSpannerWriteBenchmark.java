@@ -0,0 +1,160 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import com.google.cloud.spanner.DatabaseAdminClient;
+import com.google.cloud.spanner.InstanceAdminClient;
+import com.google.cloud.spanner.InstanceConfigId;
+import com.google.cloud.spanner.InstanceId;
+import com.google.cloud.spanner.InstanceInfo;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerOptions;
+import java.util.Arrays;
+import org.apache.beam.runners.direct.DirectOptions;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.io.GenerateSequence;
+import org.apache.beam.sdk.io.gcp.spanner.MutationGroup;
+import org.apache.beam.sdk.io.gcp.spanner.SpannerIO;
+import org.apache.beam.sdk.metrics.DistributionResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptor;
+
+/**
+ * Compares the default SpannerIO batching with {@link AdaptiveSpannerWrite} on the Cloud Spanner
+ * emulator. Start the emulator, set {@code SPANNER_EMULATOR_HOST} (for example to
+ * {@code localhost:9010}) and run it with
+ * {@code java -cp ... AdaptiveSpannerWriteBenchmark [albums] [iterations]}; the first iterations
+ * warm up the JVM. Every run writes to a new database.
+ *
+ * <p>The emulator runs one transaction at a time and does not split tables, so it shows the cost
+ * of the batching and sorting, not the latency of a real instance.
+ */
+public final class AdaptiveSpannerWriteBenchmark {
+  private static final String PROJECT_ID = "benchmark-project";
+  private static final String INSTANCE_ID = "benchmark-instance";
+
+  public static void main(String[] args) throws Exception {
+    String emulatorHost = System.getenv("SPANNER_EMULATOR_HOST");
+    if (emulatorHost == null) {
+      System.err.println("Set SPANNER_EMULATOR_HOST to the address of the Spanner emulator.");
+      System.exit(1);
+    }
+    long albums = args.length > 0 ? Long.parseLong(args[0]) : 100_000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    SpannerOptions options = SpannerOptions.newBuilder()
+        .setProjectId(PROJECT_ID)
+        .setEmulatorHost(emulatorHost)
+        .build();
+    try (Spanner spanner = options.getService()) {
+      createInstance(spanner.getInstanceAdminClient());
+      DatabaseAdminClient admin = spanner.getDatabaseAdminClient();
+
+      System.out.println("mode            ms   albums/s  batches  mean batch ms  retries");
+      for (int i = 0; i < iterations; i++) {
+        for (boolean adaptive : new boolean[] {false, true}) {
+          String databaseId = "benchmark-" + (adaptive ? "adaptive-" : "default-") + i;
+          admin.createDatabase(INSTANCE_ID, databaseId, Arrays.asList(
+              "CREATE TABLE albums (singerId INT64 NOT NULL, albumId INT64 NOT NULL, "
+                  + "albumTitle STRING(MAX)) PRIMARY KEY (singerId, albumId)")).get();
+          try {
+            run(emulatorHost, databaseId, albums, adaptive);
+          } finally {
+            admin.dropDatabase(INSTANCE_ID, databaseId);
+          }
+        }
+      }
+    }
+  }
+
+  private static void createInstance(InstanceAdminClient admin) throws Exception {
+    try {
+      admin.getInstance(INSTANCE_ID);
+    } catch (RuntimeException e) {
+      admin.createInstance(InstanceInfo
+          .newBuilder(InstanceId.of(PROJECT_ID, INSTANCE_ID))
+          .setInstanceConfigId(InstanceConfigId.of(PROJECT_ID, "emulator-config"))
+          .setDisplayName(INSTANCE_ID)
+          .setNodeCount(1)
+          .build()).get();
+    }
+  }
+
+  private static void run(String emulatorHost, String databaseId, long albums, boolean adaptive) {
+    DirectOptions options = PipelineOptionsFactory.as(DirectOptions.class);
+    options.setBlockOnRun(true);
+    options.setEnforceImmutability(false);
+    options.setEnforceEncodability(false);
+
+    Pipeline pipeline = Pipeline.create(options);
+    PCollection<MutationGroup> groups = pipeline
+        .apply(GenerateSequence.from(0).to(albums))
+        // Spread consecutive albums over the singers, so that the input is not in key order.
+        .apply(MapElements.into(TypeDescriptor.of(MutationGroup.class))
+            .via(i -> MutationGroup.create(Mutation.newInsertOrUpdateBuilder("albums")
+                .set("singerId").to(i % 1000)
+                .set("albumId").to(i / 1000)
+                .set("albumTitle").to("Album " + i)
+                .build())));
+    if (adaptive) {
+      groups.apply(AdaptiveSpannerWrite.create(
+          PROJECT_ID, INSTANCE_ID, databaseId, SpannerWrite.KEY_COLUMNS));
+    } else {
+      groups.apply(SpannerIO.write()
+          .withProjectId(PROJECT_ID)
+          .withInstanceId(INSTANCE_ID)
+          .withDatabaseId(databaseId)
+          .withEmulatorHost(emulatorHost)
+          .grouped());
+    }
+
+    long start = System.nanoTime();
+    PipelineResult result = pipeline.run();
+    result.waitUntilFinish();
+    long millis = (System.nanoTime() - start) / 1_000_000;
+
+    String namespace = AdaptiveSpannerWrite.class.getSimpleName();
+    long batches = 0;
+    double meanBatchMillis = 0;
+    long retries = 0;
+    if (adaptive) {
+      for (MetricResult<DistributionResult> latency : result.metrics().queryMetrics(
+          MetricsFilter.builder()
+              .addNameFilter(MetricNameFilter.named(namespace, "batchLatencyMs"))
+              .build()).getDistributions()) {
+        batches += latency.getAttempted().getCount();
+        meanBatchMillis = latency.getAttempted().getMean();
+      }
+      for (MetricResult<Long> counter : result.metrics().queryMetrics(
+          MetricsFilter.builder()
+              .addNameFilter(MetricNameFilter.named(namespace, "retries"))
+              .build()).getCounters()) {
+        retries += counter.getAttempted();
+      }
+    }
+    System.out.format("%-8s %9d %10.0f %8d %14.1f %8d%n",
+        adaptive ? "adaptive" : "default", millis, albums * 1000.0 / millis, batches,
+        meanBatchMillis, retries);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.example.dataflow.AdaptiveSpannerWrite.BatchSizer;
+import com.example.dataflow.AdaptiveSpannerWrite.KeyOrder;
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.io.gcp.spanner.MutationGroup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class AdaptiveSpannerWriteTest {
+
+  private static MutationGroup album(long singerId, long albumId) {
+    return MutationGroup.create(Mutation.newInsertOrUpdateBuilder("albums")
+        .set("singerId").to(singerId)
+        .set("albumId").to(albumId)
+        .set("albumTitle").to("Album " + albumId)
+        .build());
+  }
+
+  @Test
+  public void testBatchSizerGrowsWhenCommitsAreFast() {
+    BatchSizer sizer = new BatchSizer(100, 1000, 1 << 20, 500);
+    sizer.recordCommit(10, 0);
+    assertEquals(125, sizer.targetMutations());
+    for (int i = 0; i < 20; i++) {
+      sizer.recordCommit(10, 0);
+    }
+    assertEquals(1000, sizer.targetMutations());
+  }
+
+  @Test
+  public void testBatchSizerShrinksOnSlowCommitsAndAborts() {
+    BatchSizer sizer = new BatchSizer(100, 1000, 1 << 20, 500);
+    for (int i = 0; i < 20; i++) {
+      sizer.recordCommit(10, 0);
+    }
+    sizer.recordCommit(800, 0);
+    assertEquals(500, sizer.targetMutations());
+    sizer.recordCommit(10, 1);
+    assertEquals(250, sizer.targetMutations());
+    // A commit between half and the full target latency keeps the size.
+    sizer.recordCommit(300, 0);
+    assertEquals(250, sizer.targetMutations());
+    sizer.recordCommit(800, 2);
+    sizer.recordCommit(800, 2);
+    assertEquals(100, sizer.targetMutations());
+  }
+
+  @Test
+  public void testNextBatchRespectsMutationTarget() {
+    // Every album mutates 3 cells, so 10 cells fit 3 albums.
+    BatchSizer sizer = new BatchSizer(10, 10, 1 << 20, 500);
+    List<MutationGroup> groups = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      groups.add(album(1, i));
+    }
+    assertEquals(3, sizer.nextBatch(groups).size());
+    assertEquals(3, sizer.nextBatch(groups).size());
+    assertEquals(1, sizer.nextBatch(groups).size());
+    assertEquals(0, groups.size());
+  }
+
+  @Test
+  public void testNextBatchRespectsByteLimit() {
+    // Every album is 8 + 8 + 7 bytes, so 50 bytes fit 2 albums.
+    BatchSizer sizer = new BatchSizer(1000, 1000, 50, 500);
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(album(1, 1), album(1, 2),
+        album(1, 3)));
+    assertEquals(2, sizer.nextBatch(groups).size());
+    assertEquals(1, sizer.nextBatch(groups).size());
+  }
+
+  @Test
+  public void testNextBatchNeverSplitsGroups() {
+    BatchSizer sizer = new BatchSizer(1, 1, 1 << 20, 500);
+    MutationGroup group = MutationGroup.create(
+        album(1, 1).primary(), album(1, 2).primary(), album(1, 3).primary());
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(group, album(2, 1)));
+    List<MutationGroup> batch = sizer.nextBatch(groups);
+    assertEquals(1, batch.size());
+    assertEquals(3, batch.get(0).size());
+    assertEquals(1, groups.size());
+  }
+
+  @Test
+  public void testKeyOrderSortsByTableAndKey() {
+    KeyOrder order = new KeyOrder(SpannerWrite.KEY_COLUMNS);
+    MutationGroup singer = MutationGroup.create(Mutation.newInsertOrUpdateBuilder("singers")
+        .set("singerId").to(1L)
+        .build());
+    MutationGroup delete = MutationGroup.create(Mutation.delete("albums", Key.of(1L, 1L)));
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(
+        singer, delete, album(2, 1), album(1, 9), album(1, 2)));
+
+    order.sort(groups);
+
+    assertEquals(Arrays.asList(delete, album(1, 2), album(1, 9), album(2, 1), singer), groups);
+  }
+
+  @Test
+  public void testKeyOrderKeepsChangesToTheSameRowInOrder() {
+    KeyOrder order = new KeyOrder(SpannerWrite.KEY_COLUMNS);
+    MutationGroup delete = MutationGroup.create(Mutation.delete("albums", Key.of(1L, 2L)));
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(
+        album(2, 1), album(1, 2), delete, album(1, 2), album(1, 1)));
+
+    order.sort(groups);
+
+    assertEquals(
+        Arrays.asList(album(1, 1), album(1, 2), delete, album(1, 2), album(2, 1)), groups);
+    assertSame(delete, groups.get(2));
+  }
+
+  @Test
+  public void testKeyOrderDoesNotMoveGroupsPastRangeDeletes() {
+    KeyOrder order = new KeyOrder(SpannerWrite.KEY_COLUMNS);
+    MutationGroup delete = MutationGroup.create(
+        Mutation.delete("albums", KeySet.prefixRange(Key.of(1L))));
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(
+        album(1, 2), album(1, 1), delete, album(2, 1), album(1, 3)));
+
+    order.sort(groups);
+
+    assertEquals(
+        Arrays.asList(album(1, 1), album(1, 2), delete, album(1, 3), album(2, 1)), groups);
+  }
+
+  @Test
+  public void testKeyOrderComparesStringsByUtf8Bytes() {
+    KeyOrder order = new KeyOrder(ImmutableMap.of("users", ImmutableList.of("id")));
+    // U+1F600 is a surrogate pair in UTF-16, which sorts before U+FFFD, but after it in UTF-8.
+    MutationGroup emoji = user("\uD83D\uDE00");
+    MutationGroup replacement = user("\uFFFD");
+    MutationGroup ascii = user("z");
+    List<MutationGroup> groups = new ArrayList<>(Arrays.asList(emoji, replacement, ascii));
+
+    order.sort(groups);
+
+    assertEquals(Arrays.asList(ascii, replacement, emoji), groups);
+  }
+
+  private static MutationGroup user(String id) {
+    return MutationGroup.create(Mutation.newInsertOrUpdateBuilder("users")
+        .set("id").to(id)
+        .build());
+  }
+}
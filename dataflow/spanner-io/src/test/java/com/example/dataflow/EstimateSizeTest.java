@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.dataflow.EstimateSize.SizeHistogram;
+import com.example.dataflow.EstimateSize.SizeSummary;
+import com.google.cloud.ByteArray;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.Value;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EstimateSizeTest {
+  @Rule public final transient TestPipeline pipeline = TestPipeline.create();
+
+  private static Struct row(long bytes) {
+    return Struct.newBuilder().set("payload").to(ByteArray.copyFrom(new byte[(int) bytes])).build();
+  }
+
+  @Test
+  public void testUtf8Length() {
+    assertEquals(5, EstimateSize.utf8Length("hello"));
+    assertEquals(2, EstimateSize.utf8Length("\u00e9"));
+    assertEquals(3, EstimateSize.utf8Length("\u20ac"));
+    assertEquals(4, EstimateSize.utf8Length("\ud83d\ude00"));
+  }
+
+  @Test
+  public void testEstimatesScalarTypes() {
+    Struct row = Struct.newBuilder()
+        .set("bool").to(true)
+        .set("int64").to(1L)
+        .set("float64").to(1.0)
+        .set("timestamp").to(Timestamp.now())
+        .set("string").to("\u00e9t\u00e9")
+        .set("json").to(Value.json("{\"a\":1}"))
+        .set("pgJsonb").to(Value.pgJsonb("{}"))
+        .set("pgNumeric").to(Value.pgNumeric("1.5"))
+        .set("numeric").to(new BigDecimal("123.45"))
+        .set("zero").to(BigDecimal.ZERO)
+        .set("bytes").to(ByteArray.copyFrom(new byte[3]))
+        .set("null").to((String) null)
+        .build();
+    // 1 + 8 + 8 + 12 + 5 + 7 + 2 + 3 + (6 + 3) + 1 + 3
+    assertEquals(59, EstimateSize.estimate(row));
+  }
+
+  @Test
+  public void testEstimatesArraysAndStructs() {
+    Struct inner = Struct.newBuilder().set("id").to(1L).set("name").to("ab").build();
+    Struct row = Struct.newBuilder()
+        .set("ids").toInt64Array(new long[] {1, 2, 3})
+        .set("names").toStringArray(Arrays.asList("a", null, "\u00e9"))
+        .set("inner").to(inner)
+        .set("inners").toStructArray(inner.getType(), Arrays.asList(inner, inner))
+        .set("emptyNames").toStringArray(new ArrayList<>())
+        .build();
+    // 24 + (1 + 2) + 10 + 20
+    assertEquals(57, EstimateSize.estimate(row));
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    for (long bytes : new long[] {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = SizeHistogram.bucket(bytes);
+      // Every size is in the bucket that it is not above the upper bound of.
+      assertTrue(bytes <= SizeHistogram.upperBound(bucket));
+      assertTrue(bucket == 0 || bytes > SizeHistogram.upperBound(bucket - 1));
+      assertTrue(bucket < SizeHistogram.NUM_BUCKETS);
+    }
+  }
+
+  @Test
+  public void testHistogramPercentilesAreWithinBucketWidth() {
+    SizeHistogram histogram = new SizeHistogram();
+    for (long bytes = 1; bytes <= 1000; bytes++) {
+      histogram.add(bytes);
+    }
+    assertEquals(500, histogram.percentile(0.50), 500 / 8);
+    assertEquals(900, histogram.percentile(0.90), 900 / 8);
+    assertEquals(990, histogram.percentile(0.99), 990 / 8);
+    assertEquals(1000, histogram.percentile(1.0));
+  }
+
+  @Test
+  public void testSummarize() {
+    List<Struct> rows = new ArrayList<>();
+    for (long bytes = 1; bytes <= 100; bytes++) {
+      rows.add(row(bytes));
+    }
+    PCollection<String> summary = pipeline
+        .apply(Create.of(rows).withCoder(SerializableCoder.of(Struct.class)))
+        .apply(EstimateSize.summarize())
+        .apply(MapElements.into(TypeDescriptors.strings()).via(SizeSummary::toString));
+
+    PAssert.thatSingleton(summary)
+        .isEqualTo("rows=100 total=5050 min=1 p50=51 p90=95 p99=100 max=100");
+    pipeline.run().waitUntilFinish();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.dataflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.ByteArray;
+import com.google.cloud.Date;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.Value;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SpannerPartitionedExportTest {
+
+  @Test
+  public void testConvertsRowToAvro() {
+    Struct row = Struct.newBuilder()
+        .set("id").to(7L)
+        .set("active").to(true)
+        .set("score").to(1.5)
+        .set("name").to("Marc")
+        .set("price").to(new BigDecimal("12.50"))
+        .set("info").to(Value.json("{\"a\":1}"))
+        .set("data").to(ByteArray.copyFrom(new byte[] {1, 2}))
+        .set("updated").to(Timestamp.ofTimeSecondsAndNanos(10, 5_000))
+        .set("released").to(Date.fromYearMonthDay(1970, 1, 3))
+        .set("tags").toStringArray(Arrays.asList("a", null))
+        .set("missing").to((String) null)
+        .build();
+
+    Schema schema = SpannerPartitionedExport.avroSchema("Songs", row.getType());
+    GenericRecord record = SpannerPartitionedExport.toRecord(row, schema);
+
+    assertEquals("Songs", schema.getName());
+    assertEquals(7L, record.get("id"));
+    assertEquals(true, record.get("active"));
+    assertEquals(1.5, record.get("score"));
+    assertEquals("Marc", record.get("name"));
+    assertEquals("12.50", record.get("price"));
+    assertEquals("{\"a\":1}", record.get("info"));
+    assertEquals(ByteBuffer.wrap(new byte[] {1, 2}), record.get("data"));
+    assertEquals(10_000_005L, record.get("updated"));
+    assertEquals(2, record.get("released"));
+    assertEquals(Arrays.asList("a", null), record.get("tags"));
+    assertNull(record.get("missing"));
+  }
+
+  @Test
+  public void testColumnsAreNullableLogicalTypes() {
+    Struct row = Struct.newBuilder()
+        .set("updated").to(Timestamp.now())
+        .set("released").to(Date.fromYearMonthDay(2020, 1, 1))
+        .build();
+
+    Schema schema = SpannerPartitionedExport.avroSchema("Albums", row.getType());
+
+    Schema updated = schema.getField("updated").schema();
+    assertEquals(Schema.Type.NULL, updated.getTypes().get(0).getType());
+    assertEquals("timestamp-micros", updated.getTypes().get(1).getLogicalType().getName());
+    Schema released = schema.getField("released").schema();
+    assertEquals("date", released.getTypes().get(1).getLogicalType().getName());
+  }
+
+  @Test
+  public void testSlowPartitionsNeedAnAverage() {
+    // Without three earlier partitions there is no average to compare to.
+    assertFalse(SpannerPartitionedExport.isSlow(10_000, 2, 200));
+    assertFalse(SpannerPartitionedExport.isSlow(400, 3, 300));
+    assertTrue(SpannerPartitionedExport.isSlow(401, 3, 300));
+  }
+}
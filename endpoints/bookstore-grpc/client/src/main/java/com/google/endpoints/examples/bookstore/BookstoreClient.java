@@ -16,7 +16,10 @@
 
 package com.google.endpoints.examples.bookstore;
 
-import com.google.protobuf.Empty;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import io.grpc.CallOptions;
 import io.grpc.Channel;
@@ -28,8 +31,15 @@ import io.grpc.ManagedChannelBuilder;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -44,6 +54,8 @@ import org.apache.commons.cli.ParseException;
 public final class BookstoreClient {
 
   private static final String DEFAULT_ADDRESS = "localhost:8000";
+  private static final int DEFAULT_CONCURRENCY = 32;
+  private static final long DEFAULT_DURATION_SECONDS = 10;
 
   public static void main(String[] args) throws Exception {
     Options options = createOptions();
@@ -61,10 +73,22 @@ public final class BookstoreClient {
     String apiKey = params.getOptionValue("api_key");
     String authToken = params.getOptionValue("auth_token");
     String operation = params.getOptionValue("operation", "list");
+    int concurrency;
+    long durationSeconds;
+    try {
+      concurrency = Integer.parseInt(
+          params.getOptionValue("concurrency", String.valueOf(DEFAULT_CONCURRENCY)));
+      durationSeconds = Long.parseLong(
+          params.getOptionValue("duration", String.valueOf(DEFAULT_DURATION_SECONDS)));
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid number: " + e.getMessage());
+      printUsage(options);
+      return;
+    }
 
-    // Create gRPC stub.
-    BookstoreGrpc.BookstoreBlockingStub bookstore = createBookstoreStub(
-        address, apiKey, authToken);
+    // Create gRPC stubs.
+    Channel channel = createChannel(address, apiKey, authToken);
+    BookstoreGrpc.BookstoreBlockingStub bookstore = BookstoreGrpc.newBlockingStub(channel);
 
     if ("list".equals(operation)) {
       listShelves(bookstore);
@@ -72,17 +96,28 @@ public final class BookstoreClient {
       createShelf(bookstore);
     } else if ("enumerate".equals(operation)) {
       enumerate(bookstore);
+    } else if ("enumerate_async".equals(operation)) {
+      enumerateAsync(BookstoreGrpc.newFutureStub(channel), concurrency);
+    } else if ("stream".equals(operation)) {
+      streamBooks(bookstore);
+    } else if ("load".equals(operation)) {
+      new LoadGenerator(bookstore, BookstoreGrpc.newFutureStub(channel))
+          .run(concurrency, TimeUnit.SECONDS.toNanos(durationSeconds));
     }
   }
 
   /**
-   * Lists all shelves in the bookstore.
+   * Lists all shelves in the bookstore, a page at a time.
    *
    * @param bookstore a client stub to call Bookstore service.
    */
   static void listShelves(BookstoreGrpc.BookstoreBlockingStub bookstore) {
-    ListShelvesResponse shelves = bookstore.listShelves(Empty.getDefaultInstance());
-    System.out.println(shelves);
+    String pageToken = "";
+    do {
+      ListShelvesResponse shelves = bookstore.listShelves(listShelvesRequest(pageToken));
+      System.out.println(shelves);
+      pageToken = shelves.getNextPageToken();
+    } while (!pageToken.isEmpty());
   }
 
   /**
@@ -103,38 +138,155 @@ public final class BookstoreClient {
    * @param bookstore a client stub to call Bookstore service.
    */
   static void enumerate(BookstoreGrpc.BookstoreBlockingStub bookstore) {
-    System.out.println("Calling listShelves");
-    ListShelvesResponse shelves = bookstore.listShelves(Empty.getDefaultInstance());
-    System.out.println(shelves);
-
-    for (Shelf s : shelves.getShelvesList()) {
-      System.out.format("Getting shelf %d\n", s.getId());
-      GetShelfRequest getShelfRequest = GetShelfRequest.newBuilder()
-          .setShelf(s.getId())
-          .build();
-      Shelf shelf = bookstore.getShelf(getShelfRequest);
-      System.out.println(shelf);
-
-      System.out.format("Getting books from shelf %d:\n", shelf.getId());
-      ListBooksRequest listBooksRequest = ListBooksRequest.newBuilder()
-          .setShelf(shelf.getId())
-          .build();
-
-      ListBooksResponse books = bookstore.listBooks(listBooksRequest);
-      System.out.println(books);
-
-      for (Book b : books.getBooksList()) {
-        System.out.format("Getting book %d from shelf %d:\n", b.getId(), shelf.getId());
-
-        GetBookRequest getBookRequest = GetBookRequest.newBuilder()
-            .setShelf(shelf.getId())
-            .setBook(b.getId())
+    String shelvesToken = "";
+    do {
+      System.out.println("Calling listShelves");
+      ListShelvesResponse shelves = bookstore.listShelves(listShelvesRequest(shelvesToken));
+      System.out.println(shelves);
+
+      for (Shelf s : shelves.getShelvesList()) {
+        System.out.format("Getting shelf %d\n", s.getId());
+        GetShelfRequest getShelfRequest = GetShelfRequest.newBuilder()
+            .setShelf(s.getId())
             .build();
+        Shelf shelf = bookstore.getShelf(getShelfRequest);
+        System.out.println(shelf);
+
+        String booksToken = "";
+        do {
+          System.out.format("Getting books from shelf %d:\n", shelf.getId());
+          ListBooksResponse books = bookstore.listBooks(
+              listBooksRequest(shelf.getId(), booksToken));
+          System.out.println(books);
+
+          for (Book b : books.getBooksList()) {
+            System.out.format("Getting book %d from shelf %d:\n", b.getId(), shelf.getId());
+
+            GetBookRequest getBookRequest = GetBookRequest.newBuilder()
+                .setShelf(shelf.getId())
+                .setBook(b.getId())
+                .build();
+
+            Book book = bookstore.getBook(getBookRequest);
+            System.out.println(book);
+          }
+          booksToken = books.getNextPageToken();
+        } while (!booksToken.isEmpty());
+      }
+      shelvesToken = shelves.getNextPageToken();
+    } while (!shelvesToken.isEmpty());
+  }
 
-        Book book = bookstore.getBook(getBookRequest);
-        System.out.println(book);
+  /**
+   * Enumerates all books in the bookstore like {@link #enumerate}, but without waiting for each
+   * call before making the next. Gets run concurrently, at most {@code maxInFlight} at a time, and
+   * the next page of each list is requested before the gets for the current one. Results are
+   * printed as they arrive, so not in order.
+   *
+   * @param bookstore a client stub to call Bookstore service.
+   * @param maxInFlight the most calls waiting for their response at any time.
+   */
+  static void enumerateAsync(BookstoreGrpc.BookstoreFutureStub bookstore, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    long start = System.nanoTime();
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    AtomicLong failures = new AtomicLong();
+    long shelfCount = 0;
+    long bookCount = 0;
+
+    @Nullable ListenableFuture<ListShelvesResponse> nextShelves =
+        bookstore.listShelves(listShelvesRequest(""));
+    while (nextShelves != null) {
+      ListShelvesResponse shelves = nextShelves.get();
+      nextShelves = shelves.getNextPageToken().isEmpty()
+          ? null
+          : bookstore.listShelves(listShelvesRequest(shelves.getNextPageToken()));
+
+      for (Shelf s : shelves.getShelvesList()) {
+        inFlight.acquire();
+        print(bookstore.getShelf(GetShelfRequest.newBuilder().setShelf(s.getId()).build()),
+            inFlight, failures);
+        shelfCount++;
+
+        @Nullable ListenableFuture<ListBooksResponse> nextBooks =
+            bookstore.listBooks(listBooksRequest(s.getId(), ""));
+        while (nextBooks != null) {
+          ListBooksResponse books = nextBooks.get();
+          nextBooks = books.getNextPageToken().isEmpty()
+              ? null
+              : bookstore.listBooks(listBooksRequest(s.getId(), books.getNextPageToken()));
+
+          for (Book b : books.getBooksList()) {
+            GetBookRequest getBookRequest = GetBookRequest.newBuilder()
+                .setShelf(s.getId())
+                .setBook(b.getId())
+                .build();
+            inFlight.acquire();
+            print(bookstore.getBook(getBookRequest), inFlight, failures);
+            bookCount++;
+          }
+        }
       }
     }
+
+    // Wait for the calls still in flight.
+    inFlight.acquire(maxInFlight);
+    System.out.format("Enumerated %d shelves and %d books in %d ms, %d calls failed\n",
+        shelfCount, bookCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+        failures.get());
+  }
+
+  private static <T> void print(
+      ListenableFuture<T> call, Semaphore inFlight, AtomicLong failures) {
+    Futures.addCallback(call, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T result) {
+        System.out.println(result);
+        inFlight.release();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        System.err.println("Call failed: " + t);
+        failures.incrementAndGet();
+        inFlight.release();
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Streams the books of every shelf in the bookstore. The server sends books only as fast as
+   * they are read here.
+   *
+   * @param bookstore a client stub to call Bookstore service.
+   */
+  static void streamBooks(BookstoreGrpc.BookstoreBlockingStub bookstore) {
+    String pageToken = "";
+    do {
+      ListShelvesResponse shelves = bookstore.listShelves(listShelvesRequest(pageToken));
+      for (Shelf shelf : shelves.getShelvesList()) {
+        System.out.format("Streaming books from shelf %d:\n", shelf.getId());
+        Iterator<Book> books = bookstore.streamBooks(
+            StreamBooksRequest.newBuilder().setShelf(shelf.getId()).build());
+        while (books.hasNext()) {
+          System.out.println(books.next());
+        }
+      }
+      pageToken = shelves.getNextPageToken();
+    } while (!pageToken.isEmpty());
+  }
+
+  static ListShelvesRequest listShelvesRequest(String pageToken) {
+    return ListShelvesRequest.newBuilder()
+        .setPageToken(pageToken)
+        .build();
+  }
+
+  static ListBooksRequest listBooksRequest(long shelfId, String pageToken) {
+    return ListBooksRequest.newBuilder()
+        .setShelf(shelfId)
+        .setPageToken(pageToken)
+        .build();
   }
 
   private static final class Interceptor implements ClientInterceptor {
@@ -177,15 +329,12 @@ public final class BookstoreClient {
     }
   }
 
-  static BookstoreGrpc.BookstoreBlockingStub createBookstoreStub(
-      String address, String apiKey, String authToken) {
+  static Channel createChannel(String address, String apiKey, String authToken) {
     Channel channel = ManagedChannelBuilder.forTarget(address)
-        .usePlaintext(true)
+        .usePlaintext()
         .build();
 
-    channel = ClientInterceptors.intercept(channel,  new Interceptor(apiKey, authToken));
-
-    return BookstoreGrpc.newBlockingStub(channel);
+    return ClientInterceptors.intercept(channel,  new Interceptor(apiKey, authToken));
   }
 
   private static Options createOptions() {
@@ -221,12 +370,32 @@ public final class BookstoreClient {
     // operation
     options.addOption(Option.builder()
         .longOpt("operation")
-        .desc("The bookstore operation to perform: list|create|enumerate")
+        .desc("The bookstore operation to perform: "
+            + "list|create|enumerate|enumerate_async|stream|load")
         .hasArg()
         .argName("op")
         .type(String.class)
         .build());
 
+    // concurrency
+    options.addOption(Option.builder()
+        .longOpt("concurrency")
+        .desc("The most calls in flight for enumerate_async and load (default "
+            + DEFAULT_CONCURRENCY + ")")
+        .hasArg()
+        .argName("calls")
+        .type(Number.class)
+        .build());
+
+    // duration
+    options.addOption(Option.builder()
+        .longOpt("duration")
+        .desc("How long load runs, in seconds (default " + DEFAULT_DURATION_SECONDS + ")")
+        .hasArg()
+        .argName("seconds")
+        .type(Number.class)
+        .build());
+
     return options;
   }
 
@@ -0,0 +1,179 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls the Bookstore API as fast as it answers, with a fixed number of calls in flight, and
+ * reports the throughput and latency percentiles of each kind of call.
+ *
+ * <p>Of every 10 calls, 9 get a random book and 1 lists the first page of books on a random shelf.
+ * The books are those on the first page of each shelf when the run starts.
+ */
+final class LoadGenerator {
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final BookstoreGrpc.BookstoreBlockingStub blockingStub;
+  private final BookstoreGrpc.BookstoreFutureStub futureStub;
+  private final List<GetBookRequest> books;
+  private final Latencies getBookLatencies;
+  private final Latencies listBooksLatencies;
+
+  LoadGenerator(BookstoreGrpc.BookstoreBlockingStub blockingStub,
+      BookstoreGrpc.BookstoreFutureStub futureStub) {
+    this.blockingStub = blockingStub;
+    this.futureStub = futureStub;
+    this.books = new ArrayList<>();
+    this.getBookLatencies = new Latencies("GetBook");
+    this.listBooksLatencies = new Latencies("ListBooks");
+  }
+
+  /**
+   * Runs the load and prints the results.
+   *
+   * @param concurrency how many calls are in flight at any time.
+   * @param durationNanos how long to keep starting calls.
+   */
+  void run(int concurrency, long durationNanos) throws InterruptedException {
+    String pageToken = "";
+    do {
+      ListShelvesResponse shelves =
+          blockingStub.listShelves(BookstoreClient.listShelvesRequest(pageToken));
+      for (Shelf shelf : shelves.getShelvesList()) {
+        ListBooksResponse page =
+            blockingStub.listBooks(BookstoreClient.listBooksRequest(shelf.getId(), ""));
+        for (Book book : page.getBooksList()) {
+          books.add(GetBookRequest.newBuilder()
+              .setShelf(shelf.getId())
+              .setBook(book.getId())
+              .build());
+        }
+      }
+      pageToken = shelves.getNextPageToken();
+    } while (!pageToken.isEmpty());
+    if (books.isEmpty()) {
+      System.err.println("The bookstore has no books to load");
+      return;
+    }
+
+    long start = System.nanoTime();
+    long deadline = start + durationNanos;
+    CountDownLatch done = new CountDownLatch(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      callUntil(deadline, done);
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+
+    System.out.format("%d calls in flight for %d s%n",
+        concurrency, TimeUnit.NANOSECONDS.toSeconds(elapsed));
+    System.out.format("%-10s %9s %7s  %7s  %7s  %7s  %7s  %7s%n",
+        "call", "calls/s", "failed", "p50", "p90", "p99", "p99.9", "max");
+    getBookLatencies.print(elapsed);
+    listBooksLatencies.print(elapsed);
+  }
+
+  /** Makes one call, then another when it completes, until the deadline. */
+  private void callUntil(long deadline, CountDownLatch done) {
+    long start = System.nanoTime();
+    if (start - deadline >= 0) {
+      done.countDown();
+      return;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    GetBookRequest book = books.get(random.nextInt(books.size()));
+    ListenableFuture<?> call;
+    Latencies latencies;
+    if (random.nextInt(10) == 0) {
+      call = futureStub.listBooks(BookstoreClient.listBooksRequest(book.getShelf(), ""));
+      latencies = listBooksLatencies;
+    } else {
+      call = futureStub.getBook(book);
+      latencies = getBookLatencies;
+    }
+    Futures.addCallback(call, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object result) {
+        latencies.add(System.nanoTime() - start);
+        callUntil(deadline, done);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        latencies.addFailure();
+        callUntil(deadline, done);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /** The latencies of the successful calls of one kind, and the number that failed. */
+  private static final class Latencies {
+    private final String name;
+    // Guarded by this.
+    private long[] nanos;
+    private int count;
+    private long failures;
+
+    private Latencies(String name) {
+      this.name = name;
+      this.nanos = new long[1024];
+    }
+
+    private synchronized void add(long latencyNanos) {
+      if (count == nanos.length) {
+        nanos = Arrays.copyOf(nanos, count * 2);
+      }
+      nanos[count++] = latencyNanos;
+    }
+
+    private synchronized void addFailure() {
+      failures++;
+    }
+
+    private synchronized void print(long elapsedNanos) {
+      long[] sorted = Arrays.copyOf(nanos, count);
+      Arrays.sort(sorted);
+      StringBuilder line = new StringBuilder(String.format("%-10s %9.0f %7d",
+          name, count * 1e9 / elapsedNanos, failures));
+      for (double percentile : PERCENTILES) {
+        line.append(String.format("  %5.1fms", millis(sorted, percentile / 100)));
+      }
+      line.append(String.format("  %5.1fms", millis(sorted, 1)));
+      System.out.println(line);
+    }
+
+    /** Returns the latency that the given fraction of calls took at most. */
+    private static double millis(long[] sorted, double fraction) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(fraction * sorted.length) - 1;
+      return sorted[Math.max(index, 0)] / 1e6;
+    }
+  }
+}
@@ -16,156 +16,428 @@
 
 package com.google.endpoints.examples.bookstore;
 
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-
 import io.grpc.Status;
 import io.grpc.StatusException;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
 
 /**
  * The in-memory Bookstore database implementation.
+ *
+ * <p>Every shelf has its own lock, so requests for different shelves never wait for each other.
+ * Shelves are found through a concurrent map without locking; only creating, deleting and listing
+ * shelves share a lock. Lists are built straight into the response under a read lock, so each one
+ * is a consistent snapshot without copying the collection first.
+ *
+ * <p>Lists come in pages. Shelves and books are kept in id order and ids are never reused, so a
+ * page token is just the id of the last item on the page: the next page starts after it, whatever
+ * was created or deleted in between.
+ *
+ * <p>A store opened with {@link #open} also writes every change to a {@link BookstoreLog} and
+ * answers only once the change is written. Each change is appended to the log under the lock that
+ * orders it, and waits for the write after releasing the lock, so concurrent changes share writes.
  */
-final class BookstoreData {
+final class BookstoreData implements Closeable {
+  /** The page size of a list request that does not ask for one. */
+  static final int DEFAULT_PAGE_SIZE = 100;
+  /** The largest page a list request gets, whatever it asks for. */
+  static final int MAX_PAGE_SIZE = 1000;
+
   private static final class ShelfInfo {
     private final Shelf shelf;
-    private final Map<Long, Book> books;
-    private long lastBookId;
+    private final ReadWriteLock lock;
+    // Guarded by lock.
+    private final NavigableMap<Long, Book> books;
+    private final AtomicLong lastBookId;
+    // Guarded by lock.
+    private boolean deleted;
 
     private ShelfInfo(Shelf shelf) {
       this.shelf = shelf;
-      this.books = new HashMap<>();
-      this.lastBookId = 0;
+      this.lock = new ReentrantReadWriteLock();
+      this.books = new TreeMap<>();
+      this.lastBookId = new AtomicLong();
     }
   }
 
-  private final Object lock;
-  private final Map<Long, ShelfInfo> shelves;
-  private long lastShelfId;
-  private final Function<ShelfInfo, Shelf> shelfInfoToShelf =
-      new Function<>() {
-        @Nullable
-        @Override
-        public Shelf apply(@Nullable ShelfInfo shelfInfo) {
-          if (shelfInfo == null) {
-            return null;
-          }
-          return shelfInfo.shelf;
-        }
-      };
+  // Held to read while listing shelves, and to write while adding or removing one.
+  private final ReadWriteLock shelvesLock;
+  // Written with shelvesLock held; read without it to find a shelf. In id order.
+  private final ConcurrentNavigableMap<Long, ShelfInfo> shelves;
+  private final AtomicLong lastShelfId;
+  @Nullable private BookstoreLog log;
 
   BookstoreData() {
-    lock = new Object();
-    shelves = new HashMap<>();
-    lastShelfId = 0;
+    shelvesLock = new ReentrantReadWriteLock();
+    shelves = new ConcurrentSkipListMap<>();
+    lastShelfId = new AtomicLong();
   }
 
-  public ShelfEntity createShelf(Shelf shelf) {
-    synchronized (lock) {
-      lastShelfId++;
-      shelf = shelf.toBuilder()
-          .setId(lastShelfId)
-          .build();
-      shelves.put(lastShelfId, new ShelfInfo(shelf));
-      return ShelfEntity.create(lastShelfId, shelf);
+  /**
+   * Opens a store kept in {@code directory}, with the shelves and books it held when it was last
+   * closed or crashed.
+   *
+   * @param fsync whether every change waits until it is on disk
+   * @param groupCommitMicros how long the log waits for more changes before each write
+   */
+  static BookstoreData open(Path directory, boolean fsync, long groupCommitMicros)
+      throws IOException {
+    BookstoreData data = new BookstoreData();
+    data.log = BookstoreLog.open(directory, fsync, groupCommitMicros, 1024, data.new Recovery());
+    return data;
+  }
+
+  /** Whether the store has ever held a shelf. */
+  boolean isNew() {
+    return lastShelfId.get() == 0;
+  }
+
+  /**
+   * Writes a snapshot of the store, so the next start does not replay the log written before it.
+   * Does nothing for a store without a log, or when nothing changed since the last snapshot.
+   */
+  void snapshot() throws IOException {
+    if (log == null || log.bytesSinceSnapshot() == 0) {
+      return;
+    }
+    log.snapshot(writer -> {
+      // A shelf is added or removed together with its log record, under the write lock. Reading
+      // the shelves under the read lock, after the snapshot marker, therefore sees every shelf
+      // change that went into the log before the marker.
+      List<ShelfInfo> shelfInfos;
+      shelvesLock.readLock().lock();
+      try {
+        shelfInfos = new ArrayList<>(shelves.values());
+      } finally {
+        shelvesLock.readLock().unlock();
+      }
+      for (ShelfInfo shelfInfo : shelfInfos) {
+        shelfInfo.lock.readLock().lock();
+        try {
+          if (!shelfInfo.deleted) {
+            writer.writeShelf(shelfInfo.shelf, shelfInfo.lastBookId.get(),
+                shelfInfo.books.values());
+          }
+        } finally {
+          shelfInfo.lock.readLock().unlock();
+        }
+      }
+      return lastShelfId.get();
+    });
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (log != null) {
+      log.close();
     }
   }
 
-  public Iterable<Shelf> listShelves() {
-    synchronized (lock) {
-      return Iterables.transform(ImmutableList.copyOf(shelves.values()),
-              shelfInfoToShelf);
+  public ShelfEntity createShelf(Shelf shelf) throws StatusException {
+    long shelfId = lastShelfId.incrementAndGet();
+    Shelf created = shelf.toBuilder()
+        .setId(shelfId)
+        .build();
+    long sequence;
+    shelvesLock.writeLock().lock();
+    try {
+      sequence = append(() -> log.appendCreateShelf(created));
+      shelves.put(shelfId, new ShelfInfo(created));
+    } finally {
+      shelvesLock.writeLock().unlock();
     }
+    awaitWritten(sequence);
+    return ShelfEntity.create(shelfId, created);
   }
 
-  public Shelf getShelf(long shelfId) throws StatusException {
-    synchronized (lock) {
-      @Nullable Shelf shelf = shelfInfoToShelf.apply(shelves.get(shelfId));
-      if (shelf == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
+  /** Returns every shelf in one response. */
+  public ListShelvesResponse listShelves() {
+    return listShelves(0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns a page of shelves.
+   *
+   * @param pageSize the most shelves to return; 0 for {@link #DEFAULT_PAGE_SIZE}
+   * @param pageToken the {@code next_page_token} of the previous page, or empty for the first
+   */
+  public ListShelvesResponse listShelves(int pageSize, String pageToken) throws StatusException {
+    return listShelves(parsePageToken(pageToken), checkPageSize(pageSize));
+  }
+
+  private ListShelvesResponse listShelves(long afterShelfId, int pageSize) {
+    ListShelvesResponse.Builder response = ListShelvesResponse.newBuilder();
+    shelvesLock.readLock().lock();
+    try {
+      Iterator<ShelfInfo> page = shelves.tailMap(afterShelfId, false).values().iterator();
+      for (int i = 0; i < pageSize && page.hasNext(); i++) {
+        response.addShelves(page.next().shelf);
+      }
+      if (page.hasNext()) {
+        response.setNextPageToken(pageToken(response.getShelves(pageSize - 1).getId()));
       }
-      return shelf;
+    } finally {
+      shelvesLock.readLock().unlock();
     }
+    return response.build();
+  }
+
+  public Shelf getShelf(long shelfId) throws StatusException {
+    return getShelfInfo(shelfId).shelf;
   }
 
   public void deleteShelf(long shelfId) throws StatusException {
-    synchronized (lock) {
-      if (shelves.remove(shelfId) == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
+    long sequence;
+    shelvesLock.writeLock().lock();
+    try {
+      ShelfInfo shelfInfo = getShelfInfo(shelfId);
+      // Holding the shelf's lock too keeps its last changes ahead of the delete in the log.
+      shelfInfo.lock.writeLock().lock();
+      try {
+        sequence = append(() -> log.appendDeleteShelf(shelfId));
+        shelves.remove(shelfId);
+        // Requests that already found the shelf fail rather than change it.
+        shelfInfo.deleted = true;
+      } finally {
+        shelfInfo.lock.writeLock().unlock();
       }
+    } finally {
+      shelvesLock.writeLock().unlock();
     }
+    awaitWritten(sequence);
   }
 
-  public Iterable<Book> listBooks(long shelfId) throws StatusException {
-    synchronized (lock) {
-      @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
-      if (shelfInfo == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
+  /** Returns every book on a shelf in one response. */
+  public ListBooksResponse listBooks(long shelfId) throws StatusException {
+    return listBooks(shelfId, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns a page of the books on a shelf.
+   *
+   * @param pageSize the most books to return; 0 for {@link #DEFAULT_PAGE_SIZE}
+   * @param pageToken the {@code next_page_token} of the previous page, or empty for the first
+   */
+  public ListBooksResponse listBooks(long shelfId, int pageSize, String pageToken)
+      throws StatusException {
+    return listBooks(shelfId, parsePageToken(pageToken), checkPageSize(pageSize));
+  }
+
+  private ListBooksResponse listBooks(long shelfId, long afterBookId, int pageSize)
+      throws StatusException {
+    ShelfInfo shelfInfo = getShelfInfo(shelfId);
+    ListBooksResponse.Builder response = ListBooksResponse.newBuilder();
+    shelfInfo.lock.readLock().lock();
+    try {
+      checkNotDeleted(shelfInfo);
+      Iterator<Book> page = shelfInfo.books.tailMap(afterBookId, false).values().iterator();
+      for (int i = 0; i < pageSize && page.hasNext(); i++) {
+        response.addBooks(page.next());
       }
-      return ImmutableList.copyOf(shelfInfo.books.values());
+      if (page.hasNext()) {
+        response.setNextPageToken(pageToken(response.getBooks(pageSize - 1).getId()));
+      }
+    } finally {
+      shelfInfo.lock.readLock().unlock();
     }
+    return response.build();
   }
 
   public Book createBook(long shelfId, Book book) throws StatusException {
-    synchronized (lock) {
-      @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
-      if (shelfInfo == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
-      }
-      shelfInfo.lastBookId++;
-      book = book.toBuilder()
-          .setId(shelfInfo.lastBookId)
+    ShelfInfo shelfInfo = getShelfInfo(shelfId);
+    long sequence;
+    shelfInfo.lock.writeLock().lock();
+    try {
+      checkNotDeleted(shelfInfo);
+      long bookId = shelfInfo.lastBookId.incrementAndGet();
+      Book created = book.toBuilder()
+          .setId(bookId)
           .build();
-      shelfInfo.books.put(shelfInfo.lastBookId, book);
+      sequence = append(() -> log.appendCreateBook(shelfId, created));
+      shelfInfo.books.put(bookId, created);
+      book = created;
+    } finally {
+      shelfInfo.lock.writeLock().unlock();
     }
+    awaitWritten(sequence);
     return book;
   }
 
   public Book getBook(long shelfId, long bookId) throws StatusException {
-    synchronized (lock) {
-      @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
-      if (shelfInfo == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
-      }
-      @Nullable Book book = shelfInfo.books.get(bookId);
-      if (book == null) {
+    ShelfInfo shelfInfo = getShelfInfo(shelfId);
+    @Nullable Book book;
+    shelfInfo.lock.readLock().lock();
+    try {
+      checkNotDeleted(shelfInfo);
+      book = shelfInfo.books.get(bookId);
+    } finally {
+      shelfInfo.lock.readLock().unlock();
+    }
+    if (book == null) {
+      throw Status.NOT_FOUND
+          .withDescription("Unknown book ID")
+          .asException();
+    }
+    return book;
+  }
+
+  public void deleteBook(long shelfId, long bookId) throws StatusException {
+    ShelfInfo shelfInfo = getShelfInfo(shelfId);
+    long sequence;
+    shelfInfo.lock.writeLock().lock();
+    try {
+      checkNotDeleted(shelfInfo);
+      if (!shelfInfo.books.containsKey(bookId)) {
         throw Status.NOT_FOUND
             .withDescription("Unknown book ID")
             .asException();
       }
-      return book;
+      sequence = append(() -> log.appendDeleteBook(shelfId, bookId));
+      shelfInfo.books.remove(bookId);
+    } finally {
+      shelfInfo.lock.writeLock().unlock();
     }
+    awaitWritten(sequence);
   }
 
-  public void deleteBook(long shelfId, long bookId) throws StatusException {
-    synchronized (lock) {
+  /** Appends a change to the log, if there is one, and returns the sequence to wait for. */
+  private long append(LogAppend append) throws StatusException {
+    if (log == null) {
+      return 0;
+    }
+    try {
+      return append.append();
+    } catch (IOException e) {
+      throw Status.UNAVAILABLE
+          .withDescription("Cannot write the change")
+          .withCause(e)
+          .asException();
+    }
+  }
+
+  private void awaitWritten(long sequence) throws StatusException {
+    if (log == null) {
+      return;
+    }
+    try {
+      log.awaitWritten(sequence);
+    } catch (IOException e) {
+      // The change is in memory, but may be lost on restart.
+      throw Status.DATA_LOSS
+          .withDescription("The change may not have been written")
+          .withCause(e)
+          .asException();
+    }
+  }
+
+  private interface LogAppend {
+    long append() throws IOException;
+  }
+
+  private static int checkPageSize(int pageSize) throws StatusException {
+    if (pageSize < 0) {
+      throw Status.INVALID_ARGUMENT
+          .withDescription("Negative page size")
+          .asException();
+    }
+    return pageSize == 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+  }
+
+  private static String pageToken(long lastId) {
+    return Long.toString(lastId);
+  }
+
+  /** Returns the id after which a page starts. */
+  private static long parsePageToken(String pageToken) throws StatusException {
+    if (pageToken.isEmpty()) {
+      return 0;
+    }
+    try {
+      long lastId = Long.parseLong(pageToken);
+      if (lastId > 0) {
+        return lastId;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw Status.INVALID_ARGUMENT
+        .withDescription("Invalid page token")
+        .asException();
+  }
+
+  private ShelfInfo getShelfInfo(long shelfId) throws StatusException {
+    @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
+    if (shelfInfo == null) {
+      throw Status.NOT_FOUND
+          .withDescription("Unknown shelf ID")
+          .asException();
+    }
+    return shelfInfo;
+  }
+
+  /** Fails requests that found a shelf just before it was deleted. Call with its lock held. */
+  private static void checkNotDeleted(ShelfInfo shelfInfo) throws StatusException {
+    if (shelfInfo.deleted) {
+      throw Status.NOT_FOUND
+          .withDescription("Unknown shelf ID")
+          .asException();
+    }
+  }
+
+  /** Rebuilds the store from a snapshot and log. Replaying a change twice has no effect. */
+  private final class Recovery implements BookstoreLog.Handler {
+    @Override
+    public void restoreShelf(Shelf shelf, long lastBookId) {
+      createShelf(shelf);
+      shelves.get(shelf.getId()).lastBookId.accumulateAndGet(lastBookId, Math::max);
+    }
+
+    @Override
+    public void restoreLastShelfId(long shelfId) {
+      lastShelfId.accumulateAndGet(shelfId, Math::max);
+    }
+
+    @Override
+    public void createShelf(Shelf shelf) {
+      shelves.putIfAbsent(shelf.getId(), new ShelfInfo(shelf));
+      lastShelfId.accumulateAndGet(shelf.getId(), Math::max);
+    }
+
+    @Override
+    public void deleteShelf(long shelfId) {
+      shelves.remove(shelfId);
+    }
+
+    @Override
+    public void createBook(long shelfId, Book book) {
       @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
-      if (shelfInfo == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown shelf ID")
-            .asException();
+      // The shelf is gone if it was deleted later in the log.
+      if (shelfInfo != null) {
+        shelfInfo.books.put(book.getId(), book);
+        shelfInfo.lastBookId.accumulateAndGet(book.getId(), Math::max);
       }
-      if (shelfInfo.books.remove(bookId) == null) {
-        throw Status.NOT_FOUND
-            .withDescription("Unknown book ID")
-            .asException();
+    }
+
+    @Override
+    public void deleteBook(long shelfId, long bookId) {
+      @Nullable ShelfInfo shelfInfo = shelves.get(shelfId);
+      if (shelfInfo != null) {
+        shelfInfo.books.remove(bookId);
       }
     }
   }
 }
-
@@ -0,0 +1,583 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+/**
+ * The durable storage of a {@link BookstoreData}: a write-ahead log of every change, and a
+ * snapshot of the whole store that lets a restart skip the log written before it.
+ *
+ * <p>Changes are appended to an in-memory batch, and a single thread writes each batch to the
+ * current log segment with one write and one fsync, so concurrent writers share the cost of a
+ * sync. Each record is {@code [length][CRC32][type][payload]}; recovery stops at the first record
+ * that is incomplete or corrupt, which is where a crash interrupted the last write.
+ *
+ * <p>Taking a snapshot starts a new segment first. Replaying a change that the snapshot already
+ * holds leaves the store as it was, so the segments after a snapshot can always be replayed on
+ * top of it.
+ */
+final class BookstoreLog implements Closeable {
+
+  /** Receives the contents of the snapshot and the log, in order, during recovery. */
+  interface Handler {
+    void restoreShelf(Shelf shelf, long lastBookId);
+
+    void restoreLastShelfId(long lastShelfId);
+
+    void createShelf(Shelf shelf);
+
+    void deleteShelf(long shelfId);
+
+    void createBook(long shelfId, Book book);
+
+    void deleteBook(long shelfId, long bookId);
+  }
+
+  /** Writes the contents of the store into a snapshot. */
+  interface SnapshotWriter {
+    void writeShelf(Shelf shelf, long lastBookId, Iterable<Book> books) throws IOException;
+  }
+
+  /** The contents of a store, written with a {@link SnapshotWriter}. */
+  interface SnapshotSource {
+    long writeTo(SnapshotWriter writer) throws IOException;
+  }
+
+  private static final byte CREATE_SHELF = 1;
+  private static final byte DELETE_SHELF = 2;
+  private static final byte CREATE_BOOK = 3;
+  private static final byte DELETE_BOOK = 4;
+
+  private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + 1;
+  private static final int SNAPSHOT_MAGIC = 0x42534e50;
+  private static final String SNAPSHOT = "snapshot";
+  private static final String SEGMENT_PREFIX = "wal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+  private final boolean fsync;
+  private final long groupCommitNanos;
+  private final int maxBatchRecords;
+  private final Thread writer;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition appended = lock.newCondition();
+  private final Condition written = lock.newCondition();
+  // Guarded by lock. Records not yet written; a null entry starts a new segment.
+  private List<ByteBuffer> batch = new ArrayList<>();
+  private int batchRecords;
+  private long lastSequence;
+  private long writtenSequence;
+  private long segment;
+  private long segmentBytes;
+  @Nullable private IOException failure;
+  private boolean closed;
+
+  // Used only by the writer thread, and by the constructor before it starts.
+  private FileChannel channel;
+  private long channelSegment;
+
+  /**
+   * Opens the log in {@code directory}, replaying the snapshot and the segments after it into
+   * {@code handler}.
+   *
+   * @param fsync whether to wait for every batch to reach the disk; without it, a machine crash
+   *     can lose the writes of the last few seconds, but a server crash loses nothing
+   * @param groupCommitMicros how long a batch waits for more records before it is written
+   * @param maxBatchRecords the most records in one batch
+   */
+  static BookstoreLog open(Path directory, boolean fsync, long groupCommitMicros,
+      int maxBatchRecords, Handler handler) throws IOException {
+    Files.createDirectories(directory);
+    long firstSegment = readSnapshot(directory.resolve(SNAPSHOT), handler);
+    List<Long> segments = segments(directory);
+    long last = firstSegment;
+    for (long segment : segments) {
+      if (segment < firstSegment) {
+        // Left behind by a crash after the snapshot was written; the snapshot replaces it.
+        Files.deleteIfExists(segmentPath(directory, segment));
+        continue;
+      }
+      replay(segmentPath(directory, segment), handler);
+      last = segment;
+    }
+    return new BookstoreLog(directory, last, fsync, groupCommitMicros, maxBatchRecords);
+  }
+
+  private BookstoreLog(Path directory, long segment, boolean fsync, long groupCommitMicros,
+      int maxBatchRecords) throws IOException {
+    this.directory = directory;
+    this.fsync = fsync;
+    this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMicros);
+    this.maxBatchRecords = maxBatchRecords;
+    this.segment = segment;
+    this.channelSegment = segment;
+    this.channel = openSegment(segment);
+    this.segmentBytes = channel.size();
+    this.writer = new Thread(this::writeBatches, "bookstore-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  long appendCreateShelf(Shelf shelf) throws IOException {
+    return append(CREATE_SHELF, shelf.toByteArray());
+  }
+
+  long appendDeleteShelf(long shelfId) throws IOException {
+    return append(DELETE_SHELF, ByteBuffer.allocate(Long.BYTES).putLong(shelfId).array());
+  }
+
+  long appendCreateBook(long shelfId, Book book) throws IOException {
+    byte[] bookBytes = book.toByteArray();
+    return append(CREATE_BOOK,
+        ByteBuffer.allocate(Long.BYTES + bookBytes.length).putLong(shelfId).put(bookBytes).array());
+  }
+
+  long appendDeleteBook(long shelfId, long bookId) throws IOException {
+    return append(DELETE_BOOK,
+        ByteBuffer.allocate(2 * Long.BYTES).putLong(shelfId).putLong(bookId).array());
+  }
+
+  /**
+   * Adds a record to the next batch and returns its sequence number. Call it while holding the
+   * lock that orders the change, and wait for it with {@link #awaitWritten} after releasing it.
+   */
+  private long append(byte type, byte[] payload) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(payload, 0, payload.length);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length)
+        .putInt(payload.length)
+        .putInt((int) crc.getValue())
+        .put(type)
+        .put(payload);
+    record.flip();
+    lock.lock();
+    try {
+      checkOpen();
+      batch.add(record);
+      batchRecords++;
+      if (batchRecords == 1 || batchRecords >= maxBatchRecords) {
+        appended.signal();
+      }
+      return ++lastSequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Waits until the record with {@code sequence}, and every record before it, is written. */
+  void awaitWritten(long sequence) throws IOException {
+    lock.lock();
+    try {
+      // The writer writes every record appended before the log was closed.
+      while (writtenSequence < sequence) {
+        if (failure != null) {
+          throw new IOException("The log failed", failure);
+        }
+        written.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (failure != null) {
+      throw new IOException("The log failed", failure);
+    }
+    if (closed) {
+      throw new IOException("The log is closed");
+    }
+  }
+
+  /** About how many bytes were written to the log since the last snapshot. */
+  long bytesSinceSnapshot() {
+    lock.lock();
+    try {
+      return segmentBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes a snapshot of {@code source} and deletes the log it replaces. Changes can continue while
+   * the snapshot is taken; the source must read each shelf consistently.
+   */
+  void snapshot(SnapshotSource source) throws IOException {
+    long firstSegment;
+    long sequence;
+    lock.lock();
+    try {
+      checkOpen();
+      // Every change after this goes to the new segment.
+      firstSegment = segment + 1;
+      segment = firstSegment;
+      segmentBytes = 0;
+      batch.add(null);
+      sequence = lastSequence;
+      appended.signal();
+    } finally {
+      lock.unlock();
+    }
+    awaitWritten(sequence);
+
+    Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+    try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      SnapshotFile file = new SnapshotFile(out);
+      file.buffer.putInt(SNAPSHOT_MAGIC).putLong(firstSegment);
+      // The last shelf id and the shelf count follow the shelves.
+      long lastShelfId = source.writeTo(file::writeShelf);
+      file.ensure(Long.BYTES + Integer.BYTES);
+      file.buffer.putLong(lastShelfId).putInt(file.shelves);
+      file.flush();
+      out.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    for (long old : segments(directory)) {
+      if (old < firstSegment) {
+        Files.deleteIfExists(segmentPath(directory, old));
+      }
+    }
+  }
+
+  /** Writes every pending batch and stops the writer. */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      closed = true;
+      appended.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+  }
+
+  private void writeBatches() {
+    try {
+      writeUntilClosed();
+    } catch (RuntimeException | Error e) {
+      lock.lock();
+      try {
+        failure = new IOException("The log writer failed", e);
+        written.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+  }
+
+  private void writeUntilClosed() {
+    while (true) {
+      List<ByteBuffer> records;
+      long sequence;
+      lock.lock();
+      try {
+        while (batch.isEmpty() && !closed) {
+          appended.awaitUninterruptibly();
+        }
+        if (batch.isEmpty()) {
+          return;
+        }
+        // Give other writers a chance to join the batch.
+        long wait = groupCommitNanos;
+        while (wait > 0 && batchRecords < maxBatchRecords && !closed) {
+          try {
+            wait = appended.awaitNanos(wait);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+        records = batch;
+        sequence = lastSequence;
+        batch = new ArrayList<>();
+        batchRecords = 0;
+      } finally {
+        lock.unlock();
+      }
+
+      IOException error = null;
+      long bytes = 0;
+      try {
+        bytes = write(records);
+      } catch (IOException e) {
+        error = e;
+      }
+
+      lock.lock();
+      try {
+        if (error != null) {
+          failure = error;
+        } else {
+          writtenSequence = sequence;
+          segmentBytes += bytes;
+        }
+        written.signalAll();
+        if (error != null) {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** Writes a batch, switching segments where it says so, and returns the bytes written. */
+  private long write(List<ByteBuffer> records) throws IOException {
+    long bytes = 0;
+    int start = 0;
+    for (int i = 0; i <= records.size(); i++) {
+      if (i < records.size() && records.get(i) != null) {
+        continue;
+      }
+      ByteBuffer[] buffers = records.subList(start, i).toArray(new ByteBuffer[0]);
+      long remaining = 0;
+      for (ByteBuffer buffer : buffers) {
+        remaining += buffer.remaining();
+      }
+      while (remaining > 0) {
+        remaining -= channel.write(buffers);
+      }
+      if (i > start && fsync) {
+        channel.force(false);
+      }
+      if (i < records.size()) {
+        // Everything before the marker belongs to the snapshot's segments.
+        channel.force(false);
+        channel.close();
+        channel = openSegment(++channelSegment);
+        bytes = 0;
+      } else {
+        for (ByteBuffer buffer : buffers) {
+          bytes += buffer.limit();
+        }
+      }
+      start = i + 1;
+    }
+    return bytes;
+  }
+
+  private FileChannel openSegment(long segment) throws IOException {
+    FileChannel channel = FileChannel.open(segmentPath(directory, segment),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    if (fsync) {
+      // Makes the new file itself durable.
+      channel.force(true);
+    }
+    return channel;
+  }
+
+  private static Path segmentPath(Path directory, long segment) {
+    return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+  }
+
+  private static List<Long> segments(Path directory) throws IOException {
+    List<Long> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        segments.add(Long.parseLong(
+            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    segments.sort(null);
+    return segments;
+  }
+
+  /** Replays a segment, cutting off the incomplete or corrupt record a crash may have left. */
+  private static void replay(Path file, Handler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      if (size == 0) {
+        return;
+      }
+      MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      int position = 0;
+      while (position + HEADER_BYTES <= log.limit()) {
+        int length = log.getInt(position);
+        int checksum = log.getInt(position + Integer.BYTES);
+        byte type = log.get(position + 2 * Integer.BYTES);
+        if (length < 0 || position + HEADER_BYTES + length > log.limit()) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer record = log.duplicate();
+        record.position(position + HEADER_BYTES);
+        record.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        apply(type, ByteBuffer.wrap(payload), handler);
+        position += HEADER_BYTES + length;
+      }
+      if (position < size) {
+        channel.truncate(position);
+      }
+    }
+  }
+
+  private static void apply(byte type, ByteBuffer payload, Handler handler)
+      throws InvalidProtocolBufferException {
+    switch (type) {
+      case CREATE_SHELF:
+        handler.createShelf(Shelf.parseFrom(payload));
+        break;
+      case DELETE_SHELF:
+        handler.deleteShelf(payload.getLong());
+        break;
+      case CREATE_BOOK:
+        long shelfId = payload.getLong();
+        handler.createBook(shelfId, Book.parseFrom(payload));
+        break;
+      case DELETE_BOOK:
+        handler.deleteBook(payload.getLong(), payload.getLong());
+        break;
+      default:
+        throw new InvalidProtocolBufferException("Unknown log record type " + type);
+    }
+  }
+
+  /** Reads a snapshot with a memory-mapped read, and returns the first segment to replay. */
+  private static long readSnapshot(Path file, Handler handler) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (snapshot.getInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a bookstore snapshot: " + file);
+      }
+      long firstSegment = snapshot.getLong();
+      int trailer = snapshot.limit() - Long.BYTES - Integer.BYTES;
+      long lastShelfId = snapshot.getLong(trailer);
+      int shelves = snapshot.getInt(trailer + Long.BYTES);
+      for (int s = 0; s < shelves; s++) {
+        Shelf shelf = Shelf.parseFrom(slice(snapshot));
+        long lastBookId = snapshot.getLong();
+        handler.restoreShelf(shelf, lastBookId);
+        int books = snapshot.getInt();
+        for (int b = 0; b < books; b++) {
+          handler.createBook(shelf.getId(), Book.parseFrom(slice(snapshot)));
+        }
+      }
+      handler.restoreLastShelfId(lastShelfId);
+      return firstSegment;
+    }
+  }
+
+  /** Returns the next length-prefixed message of a buffer, without copying it. */
+  private static ByteBuffer slice(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    ByteBuffer message = buffer.slice();
+    message.limit(length);
+    buffer.position(buffer.position() + length);
+    return message;
+  }
+
+  /** Writes a snapshot through a fixed buffer. */
+  private static final class SnapshotFile {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private int shelves;
+
+    private SnapshotFile(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    private void writeShelf(Shelf shelf, long lastBookId, Iterable<Book> books)
+        throws IOException {
+      writeMessage(shelf.toByteArray());
+      ensure(Long.BYTES + Integer.BYTES);
+      buffer.putLong(lastBookId);
+      // The count is written when the books have been.
+      int countPosition = buffer.position();
+      buffer.putInt(0);
+      long countOffset = channel.position() + countPosition;
+      int count = 0;
+      for (Book book : books) {
+        writeMessage(book.toByteArray());
+        count++;
+      }
+      if (countOffset >= channel.position()) {
+        buffer.putInt((int) (countOffset - channel.position()), count);
+      } else {
+        channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), countOffset);
+      }
+      shelves++;
+    }
+
+    private void writeMessage(byte[] message) throws IOException {
+      ensure(Integer.BYTES + message.length);
+      if (Integer.BYTES + message.length > buffer.capacity()) {
+        buffer.putInt(message.length);
+        flush();
+        channel.write(ByteBuffer.wrap(message));
+        return;
+      }
+      buffer.putInt(message.length).put(message);
+    }
+
+    private void ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -21,6 +21,9 @@ import io.grpc.ServerBuilder;
 import io.grpc.StatusException;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
@@ -37,6 +40,10 @@ import org.apache.commons.cli.ParseException;
 public final class BookstoreServer {
 
   private static final int DEFAULT_PORT = 8000;
+  private static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 60;
+  // Changes that arrive while the log is syncing already share the next sync; waiting longer for
+  // more only pays off on disks whose syncs are much slower than the time between changes.
+  private static final long GROUP_COMMIT_MICROS = 0;
 
   public static void main(String[] args) throws Exception {
     Options options = createOptions();
@@ -63,7 +70,37 @@ public final class BookstoreServer {
       }
     }
 
-    final BookstoreData data = initializeBookstoreData();
+    long snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL_SECONDS;
+    if (line.hasOption("snapshot-interval")) {
+      String intervalOption = line.getOptionValue("snapshot-interval");
+      try {
+        snapshotInterval = Long.parseLong(intervalOption);
+      } catch (java.lang.NumberFormatException e) {
+        System.err.println("Invalid snapshot interval: " + intervalOption);
+        printUsage(options);
+        return;
+      }
+    }
+
+    final BookstoreData data;
+    final ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor();
+    if (line.hasOption("data-dir")) {
+      data = BookstoreData.open(Paths.get(line.getOptionValue("data-dir")),
+          !line.hasOption("no-fsync"), GROUP_COMMIT_MICROS);
+      snapshots.scheduleWithFixedDelay(() -> {
+        try {
+          data.snapshot();
+        } catch (IOException e) {
+          // The log still holds every change; the next snapshot tries again.
+          e.printStackTrace();
+        }
+      }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    } else {
+      data = new BookstoreData();
+    }
+    if (data.isNew()) {
+      initializeBookstoreData(data);
+    }
     final BookstoreServer server = new BookstoreServer();
     Runtime.getRuntime().addShutdownHook(new Thread() {
       @Override
@@ -71,6 +108,10 @@ public final class BookstoreServer {
         try {
           System.out.println("Shutting down");
           server.stop();
+          snapshots.shutdownNow();
+          // Makes the next start fast.
+          data.snapshot();
+          data.close();
         } catch (Exception e) {
           e.printStackTrace();
         }
@@ -102,15 +143,13 @@ public final class BookstoreServer {
     }
   }
 
-  private static BookstoreData initializeBookstoreData() throws StatusException {
-    BookstoreData data = new BookstoreData();
+  private static void initializeBookstoreData(BookstoreData data) throws StatusException {
     ShelfEntity shelf = data.createShelf(Shelf.newBuilder().setTheme("Fiction").build());
     data.createBook(shelf.getShelfId(),
         Book.newBuilder().setAuthor("Neal Stephenson").setTitle("REAMDE").build());
     shelf = data.createShelf(Shelf.newBuilder().setTheme("Fantasy").build());
     data.createBook(shelf.getShelfId(),
         Book.newBuilder().setAuthor("George R. R. Martin").setTitle("A Game of Thrones").build());
-    return data;
   }
 
   private static Options createOptions() {
@@ -125,6 +164,30 @@ public final class BookstoreServer {
         .type(Integer.class)
         .build());
 
+    // data-dir
+    options.addOption(Option.builder()
+        .longOpt("data-dir")
+        .desc("The directory in which the server keeps its data across restarts. "
+            + "Without it, the data is kept in memory only.")
+        .hasArg()
+        .argName("directory")
+        .build());
+
+    // no-fsync
+    options.addOption(Option.builder()
+        .longOpt("no-fsync")
+        .desc("Answer changes once they are written, without waiting for them to reach the disk.")
+        .build());
+
+    // snapshot-interval
+    options.addOption(Option.builder()
+        .longOpt("snapshot-interval")
+        .desc("Seconds between snapshots of the data, which shorten the log replayed on start.")
+        .hasArg()
+        .argName("seconds")
+        .type(Long.class)
+        .build());
+
     return options;
   }
 
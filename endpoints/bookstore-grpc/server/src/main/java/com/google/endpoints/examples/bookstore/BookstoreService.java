@@ -18,14 +18,21 @@ package com.google.endpoints.examples.bookstore;
 
 import com.google.protobuf.Empty;
 
+import io.grpc.StatusException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 import java.util.concurrent.Executor;
 
+import javax.annotation.Nullable;
+
 /**
  * Implements the Bookstore GRPC service.
  */
 public final class BookstoreService extends BookstoreGrpc.BookstoreImplBase {
+  // How many books StreamBooks reads from the store at a time.
+  private static final int STREAM_PAGE_SIZE = 100;
+
   private final BookstoreData data;
 
   public BookstoreService(BookstoreData data) {
@@ -33,12 +40,11 @@ public final class BookstoreService extends BookstoreGrpc.BookstoreImplBase {
   }
 
   @Override
-  public void listShelves(Empty request, StreamObserver<ListShelvesResponse> responseObserver) {
+  public void listShelves(
+      ListShelvesRequest request, StreamObserver<ListShelvesResponse> responseObserver) {
     ListShelvesResponse response;
     try {
-      response = ListShelvesResponse.newBuilder()
-          .addAllShelves(data.listShelves())
-          .build();
+      response = data.listShelves(request.getPageSize(), request.getPageToken());
     } catch (Throwable t) {
       responseObserver.onError(t);
       return;
@@ -93,9 +99,8 @@ public final class BookstoreService extends BookstoreGrpc.BookstoreImplBase {
   public void listBooks(ListBooksRequest request, StreamObserver<ListBooksResponse> responseObserver) {
     ListBooksResponse response;
     try {
-      response = ListBooksResponse.newBuilder()
-          .addAllBooks(data.listBooks(request.getShelf()))
-          .build();
+      response = data.listBooks(
+          request.getShelf(), request.getPageSize(), request.getPageToken());
     } catch (Throwable t) {
       responseObserver.onError(t);
       return;
@@ -105,6 +110,15 @@ public final class BookstoreService extends BookstoreGrpc.BookstoreImplBase {
     responseObserver.onCompleted();
   }
 
+  @Override
+  public void streamBooks(StreamBooksRequest request, StreamObserver<Book> responseObserver) {
+    ServerCallStreamObserver<Book> call = (ServerCallStreamObserver<Book>) responseObserver;
+    BookStreamer streamer = new BookStreamer(request.getShelf(), call);
+    call.setOnCancelHandler(streamer::cancel);
+    // gRPC runs this once the method returns, and again whenever the client catches up.
+    call.setOnReadyHandler(streamer);
+  }
+
   @Override
   public void createBook(CreateBookRequest request, StreamObserver<Book> responseObserver) {
     Book response;
@@ -145,4 +159,48 @@ public final class BookstoreService extends BookstoreGrpc.BookstoreImplBase {
     responseObserver.onNext(Empty.getDefaultInstance());
     responseObserver.onCompleted();
   }
+
+  /**
+   * Sends the books of a shelf while the client keeps up with them, reading a page from the store
+   * at a time. A book created or deleted during the stream may or may not be sent.
+   *
+   * <p>gRPC never runs the handlers of one call at the same time, so the fields need no lock.
+   */
+  private final class BookStreamer implements Runnable {
+    private final long shelfId;
+    private final ServerCallStreamObserver<Book> call;
+    @Nullable private ListBooksResponse page;
+    private int sent;
+    private boolean done;
+
+    private BookStreamer(long shelfId, ServerCallStreamObserver<Book> call) {
+      this.shelfId = shelfId;
+      this.call = call;
+    }
+
+    @Override
+    public void run() {
+      while (!done && call.isReady()) {
+        if (page != null && sent < page.getBooksCount()) {
+          call.onNext(page.getBooks(sent++));
+        } else if (page != null && page.getNextPageToken().isEmpty()) {
+          done = true;
+          call.onCompleted();
+        } else {
+          try {
+            page = data.listBooks(
+                shelfId, STREAM_PAGE_SIZE, page == null ? "" : page.getNextPageToken());
+            sent = 0;
+          } catch (StatusException e) {
+            done = true;
+            call.onError(e);
+          }
+        }
+      }
+    }
+
+    private void cancel() {
+      done = true;
+    }
+  }
 }
@@ -0,0 +1,116 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import io.grpc.StatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of {@link BookstoreData} under a mix of book and shelf operations, at
+ * 1 to 64 threads. Run it with {@code java -cp ... BookstoreDataBenchmark [seconds per run]}.
+ *
+ * <p>Of every 100 operations, 70 get a book, 10 create a book and delete it again, 18 list the
+ * books of a shelf and 2 list the shelves. Every shelf keeps its {@value #BOOKS_PER_SHELF} books,
+ * so the gets always find theirs.
+ */
+public final class BookstoreDataBenchmark {
+  private static final int SHELVES = 64;
+  private static final int BOOKS_PER_SHELF = 100;
+
+  public static void main(String[] args) throws Exception {
+    long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+    // The first run warms up the JIT.
+    run(4, 1);
+    System.out.println("threads      ops/s");
+    for (int threads = 1; threads <= 64; threads *= 2) {
+      System.out.format("%7d %10.0f%n", threads, run(threads, seconds));
+    }
+  }
+
+  private static double run(int threads, long seconds) throws Exception {
+    BookstoreData data = new BookstoreData();
+    long[] shelfIds = new long[SHELVES];
+    for (int s = 0; s < SHELVES; s++) {
+      shelfIds[s] = data.createShelf(Shelf.newBuilder().setTheme("Theme " + s).build())
+          .getShelfId();
+      for (int b = 0; b < BOOKS_PER_SHELF; b++) {
+        data.createBook(shelfIds[s],
+            Book.newBuilder().setAuthor("Author " + b).setTitle("Title " + b).build());
+      }
+    }
+
+    LongAdder operations = new LongAdder();
+    AtomicBoolean stop = new AtomicBoolean();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+          start.await();
+          while (!stop.get()) {
+            operate(data, shelfIds[random.nextInt(SHELVES)], random);
+            operations.increment();
+          }
+        } catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    stop.set(true);
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    if (!errors.isEmpty()) {
+      throw new IllegalStateException("A worker failed", errors.get(0));
+    }
+    return operations.sum() * 1e9 / elapsed;
+  }
+
+  private static void operate(BookstoreData data, long shelfId, ThreadLocalRandom random)
+      throws StatusException {
+    int operation = random.nextInt(100);
+    if (operation < 70) {
+      data.getBook(shelfId, 1 + random.nextInt(BOOKS_PER_SHELF));
+    } else if (operation < 80) {
+      Book book = data.createBook(shelfId,
+          Book.newBuilder().setAuthor("Author").setTitle("Title").build());
+      data.deleteBook(shelfId, book.getId());
+    } else if (operation < 98) {
+      data.listBooks(shelfId);
+    } else {
+      data.listShelves();
+    }
+  }
+}
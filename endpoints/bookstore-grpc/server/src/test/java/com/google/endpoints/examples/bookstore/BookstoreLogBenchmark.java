@@ -0,0 +1,117 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Measures how many books a logged {@link BookstoreData} creates per second, with and without
+ * fsync and with different group commit delays, at 1 to 64 writing threads. Also measures how
+ * long the store takes to open from its log and from a snapshot. Run it with
+ * {@code java -cp ... BookstoreLogBenchmark [directory] [seconds per run]}; the directory should be
+ * on the disk to measure.
+ */
+public final class BookstoreLogBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    Path root = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("bookstore");
+    long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+    System.out.println("fsync  group commit  threads      books/s");
+    for (boolean fsync : new boolean[] {false, true}) {
+      for (long groupCommitMicros : new long[] {0, 200, 2000}) {
+        for (int threads = 1; threads <= 64; threads *= 4) {
+          Path directory = Files.createTempDirectory(root, "run");
+          double rate = run(directory, fsync, groupCommitMicros, threads, seconds);
+          System.out.format("%5s  %9d us  %7d  %11.0f%n", fsync, groupCommitMicros, threads, rate);
+          delete(directory);
+        }
+      }
+    }
+
+    Path directory = Files.createTempDirectory(root, "recovery");
+    run(directory, false, 200, 16, seconds);
+    System.out.format("Opened from the log in %d ms%n", openMillis(directory));
+    try (BookstoreData data = BookstoreData.open(directory, false, 0)) {
+      data.snapshot();
+    }
+    System.out.format("Opened from a snapshot in %d ms%n", openMillis(directory));
+    delete(directory);
+  }
+
+  private static double run(Path directory, boolean fsync, long groupCommitMicros, int threads,
+      long seconds) throws Exception {
+    try (BookstoreData data = BookstoreData.open(directory, fsync, groupCommitMicros)) {
+      long shelfId = data.createShelf(Shelf.newBuilder().setTheme("Benchmark").build())
+          .getShelfId();
+      LongAdder books = new LongAdder();
+      AtomicBoolean stop = new AtomicBoolean();
+      CountDownLatch start = new CountDownLatch(1);
+      List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        Thread worker = new Thread(() -> {
+          Book book = Book.newBuilder().setAuthor("Author").setTitle("A book title").build();
+          try {
+            start.await();
+            while (!stop.get()) {
+              data.createBook(shelfId, book);
+              books.increment();
+            }
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        });
+        worker.start();
+        workers.add(worker);
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+      stop.set(true);
+      for (Thread worker : workers) {
+        worker.join();
+      }
+      return books.sum() * 1e9 / (System.nanoTime() - begin);
+    }
+  }
+
+  private static long openMillis(Path directory) throws IOException {
+    long begin = System.nanoTime();
+    try (BookstoreData data = BookstoreData.open(directory, false, 0)) {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+    }
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,262 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.grpc.Status;
+import io.grpc.StatusException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that a {@link BookstoreData} opened with a log recovers its contents.
+ */
+@RunWith(JUnit4.class)
+public class BookstoreLogTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private BookstoreData open() throws IOException {
+    return BookstoreData.open(folder.getRoot().toPath(), true, 0);
+  }
+
+  private static Book book(String title) {
+    return Book.newBuilder().setAuthor("Author").setTitle(title).build();
+  }
+
+  private static Shelf shelf(String theme) {
+    return Shelf.newBuilder().setTheme(theme).build();
+  }
+
+  private static List<Object> contents(BookstoreData data) throws StatusException {
+    List<Object> contents = new ArrayList<>();
+    for (Shelf shelf : data.listShelves().getShelvesList()) {
+      contents.add(shelf);
+      contents.addAll(data.listBooks(shelf.getId()).getBooksList());
+    }
+    return contents;
+  }
+
+  @Test
+  public void testRecoversFromLog() throws Exception {
+    List<Object> expected;
+    try (BookstoreData data = open()) {
+      assertTrue(data.isNew());
+      long fiction = data.createShelf(shelf("Fiction")).getShelfId();
+      long poetry = data.createShelf(shelf("Poetry")).getShelfId();
+      long deleted = data.createShelf(shelf("Deleted")).getShelfId();
+      data.createBook(fiction, book("One"));
+      long two = data.createBook(fiction, book("Two")).getId();
+      data.createBook(poetry, book("Three"));
+      data.createBook(deleted, book("Four"));
+      data.deleteBook(fiction, two);
+      data.deleteShelf(deleted);
+      expected = contents(data);
+    }
+
+    try (BookstoreData data = open()) {
+      assertFalse(data.isNew());
+      assertEquals(expected, contents(data));
+      // Ids are not reused, even those of deleted shelves and books.
+      assertEquals(4, data.createShelf(shelf("New")).getShelfId());
+      assertEquals(3, data.createBook(1, book("Five")).getId());
+    }
+  }
+
+  @Test
+  public void testRecoversFromSnapshotAndLog() throws Exception {
+    List<Object> expected;
+    try (BookstoreData data = open()) {
+      long fiction = data.createShelf(shelf("Fiction")).getShelfId();
+      for (int i = 0; i < 100; i++) {
+        data.createBook(fiction, book("Before " + i));
+      }
+      data.snapshot();
+      // Only the segment started by the snapshot is left.
+      assertEquals(1, logSegments().size());
+
+      data.deleteBook(fiction, 1);
+      data.createBook(fiction, book("After"));
+      long poetry = data.createShelf(shelf("Poetry")).getShelfId();
+      data.createBook(poetry, book("Poem"));
+      expected = contents(data);
+    }
+
+    try (BookstoreData data = open()) {
+      assertEquals(expected, contents(data));
+      assertEquals(102, data.createBook(1, book("Next")).getId());
+    }
+  }
+
+  @Test
+  public void testCutsOffTornRecord() throws Exception {
+    List<Object> expected;
+    try (BookstoreData data = open()) {
+      long fiction = data.createShelf(shelf("Fiction")).getShelfId();
+      data.createBook(fiction, book("One"));
+      expected = contents(data);
+    }
+    Path segment = logSegments().get(logSegments().size() - 1);
+    long size = Files.size(segment);
+    // A record header that promises more bytes than a crash let reach the file.
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.allocate(12).putInt(0, 100).putInt(4, 1234));
+    }
+
+    try (BookstoreData data = open()) {
+      assertEquals(expected, contents(data));
+      assertEquals(size, Files.size(segment));
+      data.createBook(1, book("Two"));
+      expected = contents(data);
+    }
+    try (BookstoreData data = open()) {
+      assertEquals(expected, contents(data));
+    }
+  }
+
+  @Test
+  public void testSnapshotsDuringConcurrentChanges() throws Exception {
+    List<Object> expected;
+    try (BookstoreData data = BookstoreData.open(folder.getRoot().toPath(), false, 100)) {
+      for (int s = 0; s < 4; s++) {
+        data.createShelf(shelf("Shelf " + s));
+      }
+      AtomicBoolean failed = new AtomicBoolean();
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        long shelfId = 1 + t % 4;
+        Thread writer = new Thread(() -> {
+          try {
+            for (int i = 0; i < 300; i++) {
+              Book created = data.createBook(shelfId, book("Book " + i));
+              if (i % 3 == 0) {
+                data.deleteBook(shelfId, created.getId());
+              }
+            }
+          } catch (StatusException e) {
+            failed.set(true);
+          }
+        });
+        writer.start();
+        writers.add(writer);
+      }
+      for (int i = 0; i < 5; i++) {
+        data.snapshot();
+      }
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      assertFalse(failed.get());
+      expected = contents(data);
+    }
+
+    try (BookstoreData data = open()) {
+      assertEquals(expected, contents(data));
+    }
+  }
+
+  @Test
+  public void testSnapshotsDuringConcurrentShelfChanges() throws Exception {
+    List<Object> expected;
+    try (BookstoreData data = BookstoreData.open(folder.getRoot().toPath(), false, 100)) {
+      AtomicBoolean failed = new AtomicBoolean();
+      AtomicBoolean done = new AtomicBoolean();
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        Thread writer = new Thread(() -> {
+          try {
+            for (int i = 0; i < 300; i++) {
+              ShelfEntity created = data.createShelf(shelf("Shelf " + i));
+              if (i % 3 == 0) {
+                data.deleteShelf(created.getShelfId());
+              }
+            }
+          } catch (StatusException e) {
+            failed.set(true);
+          }
+        });
+        writer.start();
+        writers.add(writer);
+      }
+      Thread snapshots = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            data.snapshot();
+          }
+        } catch (IOException e) {
+          failed.set(true);
+        }
+      });
+      snapshots.start();
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      done.set(true);
+      snapshots.join();
+      assertFalse(failed.get());
+      expected = contents(data);
+      assertEquals(800, expected.size());
+    }
+
+    try (BookstoreData data = open()) {
+      assertEquals(expected, contents(data));
+    }
+  }
+
+  @Test
+  public void testFailsChangesAfterClose() throws Exception {
+    BookstoreData data = open();
+    long fiction = data.createShelf(shelf("Fiction")).getShelfId();
+    data.close();
+    try {
+      data.createBook(fiction, book("Late"));
+      fail("Expected the change to fail");
+    } catch (StatusException e) {
+      assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+    }
+    // A change that was not logged is not applied either.
+    assertEquals(0, data.listBooks(fiction).getBooksCount());
+  }
+
+  private List<Path> logSegments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(folder.getRoot().toPath(), "wal-*.log")) {
+      files.forEach(segments::add);
+    }
+    segments.sort(null);
+    return segments;
+  }
+}
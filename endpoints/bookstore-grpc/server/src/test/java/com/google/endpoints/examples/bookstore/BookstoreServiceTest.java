@@ -0,0 +1,284 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.endpoints.examples.bookstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests the paginated and streaming list calls of {@link BookstoreService}.
+ */
+@RunWith(JUnit4.class)
+public class BookstoreServiceTest {
+  private BookstoreData data;
+  private BookstoreService service;
+
+  @Before
+  public void setUp() {
+    data = new BookstoreData();
+    service = new BookstoreService(data);
+  }
+
+  private long createShelf(int books) throws Exception {
+    long shelfId = data.createShelf(Shelf.newBuilder().setTheme("Theme").build()).getShelfId();
+    for (int i = 0; i < books; i++) {
+      data.createBook(shelfId, Book.newBuilder().setAuthor("Author").setTitle("Book " + i).build());
+    }
+    return shelfId;
+  }
+
+  @Test
+  public void testListsShelvesInPages() throws Exception {
+    for (int s = 0; s < 250; s++) {
+      createShelf(0);
+    }
+    List<Long> listed = new ArrayList<>();
+    List<Integer> pageSizes = new ArrayList<>();
+    String pageToken = "";
+    do {
+      Recorder<ListShelvesResponse> page = new Recorder<>();
+      service.listShelves(
+          ListShelvesRequest.newBuilder().setPageToken(pageToken).build(), page);
+      for (Shelf shelf : page.single().getShelvesList()) {
+        listed.add(shelf.getId());
+      }
+      pageSizes.add(page.single().getShelvesCount());
+      pageToken = page.single().getNextPageToken();
+    } while (!pageToken.isEmpty());
+
+    assertEquals(250, listed.size());
+    assertEquals(1L, (long) listed.get(0));
+    assertEquals(250L, (long) listed.get(249));
+    int defaultSize = BookstoreData.DEFAULT_PAGE_SIZE;
+    assertEquals(defaultSize, (int) pageSizes.get(0));
+    assertEquals(250 - 2 * defaultSize, (int) pageSizes.get(2));
+  }
+
+  @Test
+  public void testListsBooksInPagesWhileTheShelfChanges() throws Exception {
+    long shelfId = createShelf(20);
+    List<Long> listed = new ArrayList<>();
+    String pageToken = "";
+    do {
+      Recorder<ListBooksResponse> page = new Recorder<>();
+      service.listBooks(ListBooksRequest.newBuilder()
+          .setShelf(shelfId)
+          .setPageSize(7)
+          .setPageToken(pageToken)
+          .build(), page);
+      for (Book book : page.single().getBooksList()) {
+        listed.add(book.getId());
+      }
+      pageToken = page.single().getNextPageToken();
+      if (listed.size() == 7) {
+        // Deleting a book already listed does not shift the next page, and a new book is listed.
+        data.deleteBook(shelfId, 3);
+        data.deleteBook(shelfId, 10);
+        data.createBook(shelfId, Book.newBuilder().setTitle("Late").build());
+      }
+    } while (!pageToken.isEmpty());
+
+    List<Long> expected = new ArrayList<>();
+    for (long id = 1; id <= 21; id++) {
+      if (id != 10) {
+        expected.add(id);
+      }
+    }
+    assertEquals(expected, listed);
+  }
+
+  @Test
+  public void testRejectsInvalidPages() throws Exception {
+    long shelfId = createShelf(1);
+    Recorder<ListBooksResponse> negativeSize = new Recorder<>();
+    service.listBooks(
+        ListBooksRequest.newBuilder().setShelf(shelfId).setPageSize(-1).build(), negativeSize);
+    assertEquals(Status.Code.INVALID_ARGUMENT, negativeSize.errorCode());
+
+    Recorder<ListShelvesResponse> badToken = new Recorder<>();
+    service.listShelves(ListShelvesRequest.newBuilder().setPageToken("next").build(), badToken);
+    assertEquals(Status.Code.INVALID_ARGUMENT, badToken.errorCode());
+
+    Recorder<ListBooksResponse> tooLarge = new Recorder<>();
+    createShelf(BookstoreData.MAX_PAGE_SIZE + 1);
+    service.listBooks(ListBooksRequest.newBuilder()
+        .setShelf(shelfId + 1)
+        .setPageSize(Integer.MAX_VALUE)
+        .build(), tooLarge);
+    assertEquals(BookstoreData.MAX_PAGE_SIZE, tooLarge.single().getBooksCount());
+  }
+
+  @Test
+  public void testStreamsBooksOnlyWhileTheClientIsReady() throws Exception {
+    long shelfId = createShelf(250);
+    FakeCall call = new FakeCall();
+    service.streamBooks(StreamBooksRequest.newBuilder().setShelf(shelfId).build(), call);
+    // Nothing is sent until gRPC reports the call ready.
+    assertTrue(call.books.isEmpty());
+
+    call.allow(30);
+    assertEquals(30, call.books.size());
+    assertFalse(call.completed);
+    call.allow(1000);
+    assertTrue(call.completed);
+    assertNull(call.error);
+
+    assertEquals(250, call.books.size());
+    for (int i = 0; i < 250; i++) {
+      assertEquals(i + 1, call.books.get(i).getId());
+    }
+  }
+
+  @Test
+  public void testStopsStreamingWhenCancelled() throws Exception {
+    long shelfId = createShelf(250);
+    FakeCall call = new FakeCall();
+    service.streamBooks(StreamBooksRequest.newBuilder().setShelf(shelfId).build(), call);
+    call.allow(10);
+    call.cancel();
+    call.allow(1000);
+    assertEquals(10, call.books.size());
+    assertFalse(call.completed);
+  }
+
+  @Test
+  public void testFailsStreamForUnknownShelf() throws Exception {
+    FakeCall call = new FakeCall();
+    service.streamBooks(StreamBooksRequest.newBuilder().setShelf(5).build(), call);
+    call.allow(10);
+    assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(call.error).getCode());
+  }
+
+  /** Records the response or error of a unary call. */
+  private static final class Recorder<T> implements StreamObserver<T> {
+    private final List<T> responses = new ArrayList<>();
+    @Nullable private Throwable error;
+
+    @Override
+    public void onNext(T response) {
+      responses.add(response);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onCompleted() {}
+
+    T single() {
+      assertNull(error);
+      assertEquals(1, responses.size());
+      return responses.get(0);
+    }
+
+    Status.Code errorCode() {
+      assertTrue(responses.isEmpty());
+      return Status.fromThrowable(error).getCode();
+    }
+  }
+
+  /** A streaming call whose client reads a given number of messages and then stops. */
+  private static final class FakeCall extends ServerCallStreamObserver<Book> {
+    private final List<Book> books = new ArrayList<>();
+    @Nullable private Runnable onReady;
+    @Nullable private Runnable onCancel;
+    private int capacity;
+    private boolean cancelled;
+    private boolean completed;
+    @Nullable private Throwable error;
+
+    /** Lets the client read {@code messages} more and runs the ready handler, as gRPC would. */
+    void allow(int messages) {
+      capacity += messages;
+      if (isReady()) {
+        onReady.run();
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      onCancel.run();
+    }
+
+    @Override
+    public boolean isReady() {
+      return !cancelled && capacity > 0;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+      onReady = onReadyHandler;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public void setOnCancelHandler(Runnable onCancelHandler) {
+      onCancel = onCancelHandler;
+    }
+
+    @Override
+    public void onNext(Book book) {
+      assertTrue(isReady());
+      capacity--;
+      books.add(book);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+
+    @Override
+    public void setCompression(String compression) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {}
+
+    @Override
+    public void request(int count) {}
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+  }
+}
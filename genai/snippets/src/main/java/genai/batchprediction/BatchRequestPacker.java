@@ -0,0 +1,370 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.batchprediction;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.genai.LocalTokenizer;
+import com.google.genai.types.Content;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sizes batch prediction input before it is submitted. Every request of a JSONL input file is
+ * tokenized locally, in parallel, and the requests are packed into as few input files as the
+ * per-file limits on requests, tokens and bytes allow. Requests that can never fit a job are
+ * reported instead of being written, so they don't fail the job hours later.
+ */
+public class BatchRequestPacker {
+
+  /** Counts the tokens of a request's contents. Implementations must be thread-safe. */
+  public interface TokenCounter {
+    int countTokens(List<Content> contents);
+
+    /**
+     * Counts with the SDK's {@link LocalTokenizer}, one per thread, without calling the service.
+     */
+    static TokenCounter local(String modelId) {
+      ThreadLocal<LocalTokenizer> tokenizers =
+          ThreadLocal.withInitial(() -> new LocalTokenizer(modelId));
+      return contents -> tokenizers.get().countTokens(contents).totalTokens().orElse(0);
+    }
+  }
+
+  /** A request that was not packed, with its line in the input and the reason. */
+  public static class Rejected {
+    private final int line;
+    private final String reason;
+
+    Rejected(int line, String reason) {
+      this.line = line;
+      this.reason = reason;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public String getReason() {
+      return reason;
+    }
+
+    @Override
+    public String toString() {
+      return "line " + line + ": " + reason;
+    }
+  }
+
+  /** An input file written by the packer. */
+  public static class PackedFile {
+    private final Path path;
+    private final int requests;
+    private final long tokens;
+    private final long bytes;
+
+    PackedFile(Path path, int requests, long tokens, long bytes) {
+      this.path = path;
+      this.requests = requests;
+      this.tokens = tokens;
+      this.bytes = bytes;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public int getRequests() {
+      return requests;
+    }
+
+    public long getTokens() {
+      return tokens;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d requests, %d tokens, %d bytes", path, requests, tokens, bytes);
+    }
+  }
+
+  /** The files written, the requests left out, and the input tokens of the packed requests. */
+  public static class Plan {
+    private final List<PackedFile> files;
+    private final List<Rejected> rejected;
+    private final int requests;
+    private final long inputTokens;
+
+    Plan(List<PackedFile> files, List<Rejected> rejected, int requests, long inputTokens) {
+      this.files = files;
+      this.rejected = rejected;
+      this.requests = requests;
+      this.inputTokens = inputTokens;
+    }
+
+    public List<PackedFile> getFiles() {
+      return files;
+    }
+
+    public List<Rejected> getRejected() {
+      return rejected;
+    }
+
+    public int getRequests() {
+      return requests;
+    }
+
+    public long getInputTokens() {
+      return inputTokens;
+    }
+
+    /**
+     * Estimates what running every packed file will cost and take.
+     *
+     * @param inputUsdPerMillion the batch price of a million input tokens
+     * @param outputUsdPerMillion the batch price of a million output tokens
+     * @param outputTokensPerRequest the expected length of each response
+     * @param tokensPerSecond the input and output tokens the job processes per second
+     */
+    public Estimate estimate(double inputUsdPerMillion, double outputUsdPerMillion,
+        int outputTokensPerRequest, double tokensPerSecond) {
+      long outputTokens = (long) requests * outputTokensPerRequest;
+      double usd = (inputTokens * inputUsdPerMillion + outputTokens * outputUsdPerMillion) / 1e6;
+      Duration duration =
+          Duration.ofSeconds((long) Math.ceil((inputTokens + outputTokens) / tokensPerSecond));
+      return new Estimate(outputTokens, usd, duration);
+    }
+  }
+
+  /** The expected output tokens, cost and duration of a plan. */
+  public static class Estimate {
+    private final long outputTokens;
+    private final double usd;
+    private final Duration duration;
+
+    Estimate(long outputTokens, double usd, Duration duration) {
+      this.outputTokens = outputTokens;
+      this.usd = usd;
+      this.duration = duration;
+    }
+
+    public long getOutputTokens() {
+      return outputTokens;
+    }
+
+    public double getUsd() {
+      return usd;
+    }
+
+    public Duration getDuration() {
+      return duration;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("~%d output tokens, ~$%.2f, ~%s", outputTokens, usd, duration);
+    }
+  }
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  // Lines tokenized by one fork-join task before it stops splitting.
+  private static final int LINES_PER_TASK = 64;
+
+  private final TokenCounter tokenCounter;
+  private final ForkJoinPool pool;
+  private int maxTokensPerRequest = 1_000_000;
+  private int maxRequestsPerFile = 200_000;
+  private long maxTokensPerFile = Long.MAX_VALUE;
+  private long maxBytesPerFile = 1L << 30;
+
+  public BatchRequestPacker(TokenCounter tokenCounter, ForkJoinPool pool) {
+    this.tokenCounter = tokenCounter;
+    this.pool = pool;
+  }
+
+  /** Rejects requests with more tokens than the model's context window. */
+  public BatchRequestPacker withMaxTokensPerRequest(int maxTokensPerRequest) {
+    this.maxTokensPerRequest = maxTokensPerRequest;
+    return this;
+  }
+
+  /** Limits each input file. */
+  public BatchRequestPacker withFileLimits(int maxRequests, long maxTokens, long maxBytes) {
+    this.maxRequestsPerFile = maxRequests;
+    this.maxTokensPerFile = maxTokens;
+    this.maxBytesPerFile = maxBytes;
+    return this;
+  }
+
+  /**
+   * Packs the requests of a batch prediction JSONL file, one {@code {"request": {...}}} per line,
+   * into {@code outputDir/part-00000.jsonl} and on.
+   */
+  public Plan pack(Path input, Path outputDir) throws IOException {
+    List<String> lines = Files.readAllLines(input, StandardCharsets.UTF_8);
+    int[] tokens = new int[lines.size()];
+    String[] errors = new String[lines.size()];
+    pool.invoke(new Tokenize(lines, tokens, errors, 0, lines.size()));
+
+    // Bins are filled first-fit with the largest requests first, which leaves little room unused.
+    List<Rejected> rejected = new ArrayList<>();
+    List<Integer> order = new ArrayList<>();
+    long[] bytes = new long[lines.size()];
+    for (int i = 0; i < lines.size(); i++) {
+      // With the newline that ends the line.
+      bytes[i] = lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+      if (lines.get(i).trim().isEmpty()) {
+        continue;
+      } else if (errors[i] != null) {
+        rejected.add(new Rejected(i + 1, errors[i]));
+      } else if (tokens[i] > maxTokensPerRequest || tokens[i] > maxTokensPerFile) {
+        rejected.add(new Rejected(i + 1, tokens[i] + " tokens is over the limit"));
+      } else if (bytes[i] > maxBytesPerFile) {
+        rejected.add(new Rejected(i + 1, bytes[i] + " bytes is over the file limit"));
+      } else {
+        order.add(i);
+      }
+    }
+    order.sort(Comparator.comparingInt((Integer i) -> tokens[i]).reversed());
+
+    List<List<Integer>> bins = new ArrayList<>();
+    List<long[]> usage = new ArrayList<>();
+    long inputTokens = 0;
+    for (int i : order) {
+      inputTokens += tokens[i];
+      int bin = 0;
+      while (bin < bins.size()) {
+        long[] used = usage.get(bin);
+        if (used[0] < maxRequestsPerFile && used[1] + tokens[i] <= maxTokensPerFile
+            && used[2] + bytes[i] <= maxBytesPerFile) {
+          break;
+        }
+        bin++;
+      }
+      if (bin == bins.size()) {
+        bins.add(new ArrayList<>());
+        usage.add(new long[3]);
+      }
+      bins.get(bin).add(i);
+      long[] used = usage.get(bin);
+      used[0]++;
+      used[1] += tokens[i];
+      used[2] += bytes[i];
+    }
+
+    Files.createDirectories(outputDir);
+    List<PackedFile> files = new ArrayList<>();
+    for (int b = 0; b < bins.size(); b++) {
+      Path file = outputDir.resolve(String.format("part-%05d.jsonl", b));
+      List<Integer> bin = bins.get(b);
+      // Keep the input order within a file.
+      bin.sort(null);
+      try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        for (int i : bin) {
+          writer.write(lines.get(i));
+          writer.newLine();
+        }
+      }
+      long[] used = usage.get(b);
+      files.add(new PackedFile(file, (int) used[0], used[1], used[2]));
+    }
+    return new Plan(files, rejected, order.size(), inputTokens);
+  }
+
+  /** Tokenizes a range of lines, splitting it across the pool while it is large. */
+  private class Tokenize extends RecursiveAction {
+    private final List<String> lines;
+    private final int[] tokens;
+    private final String[] errors;
+    private final int from;
+    private final int to;
+
+    Tokenize(List<String> lines, int[] tokens, String[] errors, int from, int to) {
+      this.lines = lines;
+      this.tokens = tokens;
+      this.errors = errors;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > LINES_PER_TASK) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Tokenize(lines, tokens, errors, from, middle),
+            new Tokenize(lines, tokens, errors, middle, to));
+        return;
+      }
+      for (int i = from; i < to; i++) {
+        if (lines.get(i).trim().isEmpty()) {
+          continue;
+        }
+        try {
+          tokens[i] = tokenCounter.countTokens(contents(lines.get(i)));
+        } catch (IOException | RuntimeException e) {
+          errors[i] = "cannot be tokenized: " + e.getMessage();
+        }
+      }
+    }
+  }
+
+  /** Returns the contents of a batch prediction request line. */
+  static List<Content> contents(String line) throws IOException {
+    JsonNode contents = MAPPER.readTree(line).path("request").path("contents");
+    if (!contents.isArray() || contents.size() == 0) {
+      throw new IOException("no request contents");
+    }
+    List<Content> result = new ArrayList<>();
+    for (JsonNode content : contents) {
+      result.add(Content.fromJson(content.toString()));
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws IOException {
+    // TODO(developer): Replace these variables before running the sample.
+    String modelId = "gemini-2.5-flash";
+    Path input = Paths.get(args.length > 0 ? args[0] : "prompt_for_batch_gemini_predict.jsonl");
+    Path outputDir = Paths.get(args.length > 1 ? args[1] : "packed");
+
+    BatchRequestPacker packer =
+        new BatchRequestPacker(TokenCounter.local(modelId), ForkJoinPool.commonPool())
+            .withMaxTokensPerRequest(1_000_000)
+            .withFileLimits(50_000, 500_000_000, 1L << 30);
+    Plan plan = packer.pack(input, outputDir);
+    plan.getFiles().forEach(System.out::println);
+    plan.getRejected().forEach(rejected -> System.out.println("Rejected " + rejected));
+    // Prices and throughput are placeholders; use the current batch prices of your model.
+    System.out.println(plan.estimate(0.15, 1.25, 500, 20_000));
+    // Example response:
+    // packed/part-00000.jsonl: 2 requests, 30 tokens, 482 bytes
+    // ~1000 output tokens, ~$0.00, ~PT1S
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.embeddings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Embeddings in one contiguous off-heap arena, searched by cosine similarity. Vectors are
+ * normalized when they are added, so similarity is a dot product. Each vector is stored either as
+ * 32-bit floats or quantized to one signed byte per dimension with a per-vector scale, which is a
+ * quarter of the memory at a small loss of precision.
+ *
+ * <p>A store is saved to a file with the same layout as the arena, so {@link #open} maps it back
+ * without reading or copying it. Stores opened from a file are read-only. Searches may run
+ * concurrently, but not while embeddings are being added.
+ */
+public class EmbeddingStore {
+
+  /** How each dimension of a vector is stored. */
+  public enum Encoding {
+    FLOAT32,
+    INT8
+  }
+
+  /** A stored embedding and its cosine similarity to the query. */
+  public static class Match {
+    private final int id;
+    private final float score;
+
+    Match(int id, float score) {
+      this.id = id;
+      this.score = score;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public float getScore() {
+      return score;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d (%.4f)", id, score);
+    }
+  }
+
+  private static final int MAGIC = 0x454d4231;
+  // Magic, dimensions, size and encoding.
+  private static final int HEADER_BYTES = 16;
+
+  private final int dimensions;
+  private final Encoding encoding;
+  // Bytes per vector; quantized vectors start with their scale.
+  private final int stride;
+  private final boolean readOnly;
+  private ByteBuffer arena;
+  private int size;
+
+  private EmbeddingStore(
+      int dimensions, Encoding encoding, ByteBuffer arena, int size, boolean readOnly) {
+    this.dimensions = dimensions;
+    this.encoding = encoding;
+    this.stride =
+        encoding == Encoding.FLOAT32 ? dimensions * Float.BYTES : Float.BYTES + dimensions;
+    this.readOnly = readOnly;
+    this.size = size;
+    this.arena = arena.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Creates an empty store with room for {@code capacity} vectors; it grows as needed. */
+  public static EmbeddingStore allocate(int dimensions, int capacity, Encoding encoding) {
+    EmbeddingStore store = new EmbeddingStore(dimensions, encoding,
+        ByteBuffer.allocateDirect(HEADER_BYTES), 0, false);
+    store.ensureCapacity(Math.max(capacity, 1));
+    return store;
+  }
+
+  /** Maps a store saved with {@link #save}. */
+  public static EmbeddingStore open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer arena = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+          .order(ByteOrder.LITTLE_ENDIAN);
+      if (arena.getInt(0) != MAGIC) {
+        throw new IOException("Not an embedding store: " + path);
+      }
+      return new EmbeddingStore(arena.getInt(4), Encoding.values()[arena.getInt(12)], arena,
+          arena.getInt(8), true);
+    }
+  }
+
+  /** Writes the store to a file that {@link #open} can map. */
+  public void save(Path path) throws IOException {
+    ByteBuffer contents = arena.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    contents.clear().limit(HEADER_BYTES + size * stride);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (contents.hasRemaining()) {
+        channel.write(contents);
+      }
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    long bytes = HEADER_BYTES + (long) capacity * stride;
+    if (bytes <= arena.capacity()) {
+      return;
+    }
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalStateException("A store holds at most 2 GB of vectors");
+    }
+    ByteBuffer grown = ByteBuffer.allocateDirect(
+        (int) Math.min(Integer.MAX_VALUE, Math.max(bytes, 2L * arena.capacity())));
+    ByteBuffer old = arena.duplicate();
+    old.clear().limit(HEADER_BYTES + size * stride);
+    grown.put(old);
+    arena = grown.order(ByteOrder.LITTLE_ENDIAN);
+    arena.putInt(0, MAGIC).putInt(4, dimensions).putInt(12, encoding.ordinal());
+  }
+
+  public int dimensions() {
+    return dimensions;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Encoding encoding() {
+    return encoding;
+  }
+
+  /** Adds an embedding and returns its id, which is the number of embeddings added before it. */
+  public int add(float[] embedding) {
+    if (readOnly) {
+      throw new IllegalStateException("The store is read-only");
+    }
+    float[] vector = normalize(embedding);
+    ensureCapacity(size + 1);
+    int offset = HEADER_BYTES + size * stride;
+    if (encoding == Encoding.FLOAT32) {
+      for (int i = 0; i < dimensions; i++) {
+        arena.putFloat(offset + i * Float.BYTES, vector[i]);
+      }
+    } else {
+      byte[] quantized = new byte[dimensions];
+      arena.putFloat(offset, quantize(vector, quantized));
+      for (int i = 0; i < dimensions; i++) {
+        arena.put(offset + Float.BYTES + i, quantized[i]);
+      }
+    }
+    size++;
+    arena.putInt(8, size);
+    return size - 1;
+  }
+
+  /** Rounds {@code vector} to bytes and returns the scale that restores it. */
+  private static float quantize(float[] vector, byte[] quantized) {
+    float max = 0;
+    for (float v : vector) {
+      max = Math.max(max, Math.abs(v));
+    }
+    float scale = max == 0 ? 1 : max / 127;
+    for (int i = 0; i < vector.length; i++) {
+      quantized[i] = (byte) Math.round(vector[i] / scale);
+    }
+    return scale;
+  }
+
+  /** Returns a copy of {@code vector} scaled to unit length. */
+  float[] normalize(float[] vector) {
+    if (vector.length != dimensions) {
+      throw new IllegalArgumentException(
+          "Expected " + dimensions + " dimensions, got " + vector.length);
+    }
+    double norm = 0;
+    for (float v : vector) {
+      norm += v * v;
+    }
+    float[] normalized = new float[dimensions];
+    float inverse = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+    for (int i = 0; i < dimensions; i++) {
+      normalized[i] = vector[i] * inverse;
+    }
+    return normalized;
+  }
+
+  /** Returns the similarity of a normalized query to a stored vector. */
+  float similarity(float[] query, int id) {
+    // Four independent sums let the loop issue several multiply-adds per cycle.
+    float s0 = 0;
+    float s1 = 0;
+    float s2 = 0;
+    float s3 = 0;
+    int i = 0;
+    ByteBuffer arena = this.arena;
+    int offset = HEADER_BYTES + id * stride;
+    if (encoding == Encoding.FLOAT32) {
+      for (; i + 3 < dimensions; i += 4) {
+        int at = offset + i * Float.BYTES;
+        s0 += query[i] * arena.getFloat(at);
+        s1 += query[i + 1] * arena.getFloat(at + 4);
+        s2 += query[i + 2] * arena.getFloat(at + 8);
+        s3 += query[i + 3] * arena.getFloat(at + 12);
+      }
+      for (; i < dimensions; i++) {
+        s0 += query[i] * arena.getFloat(offset + i * Float.BYTES);
+      }
+      return s0 + s1 + s2 + s3;
+    }
+    int base = offset + Float.BYTES;
+    for (; i + 3 < dimensions; i += 4) {
+      s0 += query[i] * arena.get(base + i);
+      s1 += query[i + 1] * arena.get(base + i + 1);
+      s2 += query[i + 2] * arena.get(base + i + 2);
+      s3 += query[i + 3] * arena.get(base + i + 3);
+    }
+    for (; i < dimensions; i++) {
+      s0 += query[i] * arena.get(base + i);
+    }
+    return (s0 + s1 + s2 + s3) * arena.getFloat(offset);
+  }
+
+  /** Returns the similarity of a quantized query to a stored quantized vector. */
+  private float similarity(byte[] query, float queryScale, int id) {
+    ByteBuffer arena = this.arena;
+    int offset = HEADER_BYTES + id * stride;
+    int base = offset + Float.BYTES;
+    int s0 = 0;
+    int s1 = 0;
+    int s2 = 0;
+    int s3 = 0;
+    int i = 0;
+    for (; i + 3 < dimensions; i += 4) {
+      s0 += query[i] * arena.get(base + i);
+      s1 += query[i + 1] * arena.get(base + i + 1);
+      s2 += query[i + 2] * arena.get(base + i + 2);
+      s3 += query[i + 3] * arena.get(base + i + 3);
+    }
+    for (; i < dimensions; i++) {
+      s0 += query[i] * arena.get(base + i);
+    }
+    return (s0 + s1 + s2 + s3) * queryScale * arena.getFloat(offset);
+  }
+
+  /** Returns the similarity of two stored vectors. */
+  float similarity(int a, int b) {
+    if (encoding == Encoding.FLOAT32) {
+      int offsetA = HEADER_BYTES + a * stride;
+      int offsetB = HEADER_BYTES + b * stride;
+      float sum = 0;
+      for (int i = 0; i < stride; i += Float.BYTES) {
+        sum += arena.getFloat(offsetA + i) * arena.getFloat(offsetB + i);
+      }
+      return sum;
+    }
+    int offsetA = HEADER_BYTES + a * stride;
+    int offsetB = HEADER_BYTES + b * stride;
+    long sum = 0;
+    for (int i = Float.BYTES; i < stride; i++) {
+      sum += arena.get(offsetA + i) * arena.get(offsetB + i);
+    }
+    return sum * arena.getFloat(offsetA) * arena.getFloat(offsetB);
+  }
+
+  /** Returns a stored vector, as it is used in similarities. */
+  public float[] vector(int id) {
+    float[] vector = new float[dimensions];
+    if (encoding == Encoding.FLOAT32) {
+      int offset = HEADER_BYTES + id * stride;
+      for (int i = 0; i < dimensions; i++) {
+        vector[i] = arena.getFloat(offset + i * Float.BYTES);
+      }
+    } else {
+      int offset = HEADER_BYTES + id * stride;
+      float scale = arena.getFloat(offset);
+      for (int i = 0; i < dimensions; i++) {
+        vector[i] = arena.get(offset + Float.BYTES + i) * scale;
+      }
+    }
+    return vector;
+  }
+
+  /**
+   * Returns the {@code k} stored embeddings most similar to the query, comparing all of them.
+   *
+   * @throws IllegalArgumentException if {@code k} is negative
+   */
+  public List<Match> search(float[] query, int k) {
+    checkK(k);
+    if (k == 0) {
+      return Arrays.asList();
+    }
+    float[] normalized = normalize(query);
+    byte[] quantized = null;
+    float queryScale = 0;
+    if (encoding == Encoding.INT8) {
+      // Quantizing the query too keeps the scan in integer arithmetic.
+      quantized = new byte[dimensions];
+      queryScale = quantize(normalized, quantized);
+    }
+    NodeHeap best = NodeHeap.lowestFirst(k + 1);
+    for (int id = 0; id < size; id++) {
+      float score = quantized == null
+          ? similarity(normalized, id)
+          : similarity(quantized, queryScale, id);
+      if (best.size() < k) {
+        best.push(id, score);
+      } else if (score > best.peekScore()) {
+        best.pop();
+        best.push(id, score);
+      }
+    }
+    return best.drainBestFirst();
+  }
+
+  /** Rejects a negative number of results to search for. */
+  static void checkK(int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative, got " + k);
+    }
+  }
+
+  /** A binary heap of node ids keyed by similarity. */
+  static class NodeHeap {
+    private final boolean highestFirst;
+    private int[] ids;
+    private float[] keys;
+    private int size;
+
+    private NodeHeap(boolean highestFirst, int capacity) {
+      this.highestFirst = highestFirst;
+      this.ids = new int[Math.max(capacity, 1)];
+      this.keys = new float[ids.length];
+    }
+
+    static NodeHeap lowestFirst(int capacity) {
+      return new NodeHeap(false, capacity);
+    }
+
+    static NodeHeap highestFirst(int capacity) {
+      return new NodeHeap(true, capacity);
+    }
+
+    int size() {
+      return size;
+    }
+
+    int peekId() {
+      return ids[0];
+    }
+
+    float peekScore() {
+      return highestFirst ? -keys[0] : keys[0];
+    }
+
+    void push(int id, float score) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        keys = Arrays.copyOf(keys, size * 2);
+      }
+      float key = highestFirst ? -score : score;
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (keys[parent] <= key) {
+          break;
+        }
+        ids[i] = ids[parent];
+        keys[i] = keys[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      keys[i] = key;
+    }
+
+    int pop() {
+      int top = ids[0];
+      size--;
+      int id = ids[size];
+      float key = keys[size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (key <= keys[child]) {
+          break;
+        }
+        ids[i] = ids[child];
+        keys[i] = keys[child];
+        i = child;
+      }
+      ids[i] = id;
+      keys[i] = key;
+      return top;
+    }
+
+    /** Empties a lowest-first heap into a list of matches, most similar first. */
+    List<Match> drainBestFirst() {
+      Match[] matches = new Match[size];
+      for (int i = matches.length - 1; i >= 0; i--) {
+        float score = peekScore();
+        matches[i] = new Match(pop(), score);
+      }
+      return Arrays.asList(matches);
+    }
+  }
+}
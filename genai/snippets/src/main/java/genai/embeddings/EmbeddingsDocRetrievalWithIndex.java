@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.embeddings;
+
+// [START googlegenaisdk_embeddings_docretrieval_with_index]
+
+import com.google.genai.Client;
+import com.google.genai.types.ContentEmbedding;
+import com.google.genai.types.EmbedContentConfig;
+import com.google.genai.types.EmbedContentResponse;
+import genai.embeddings.EmbeddingStore.Match;
+import java.util.List;
+
+public class EmbeddingsDocRetrievalWithIndex {
+
+  public static void main(String[] args) {
+    // TODO(developer): Replace these variables before running the sample.
+    String modelId = "gemini-embedding-001";
+    retrieve(modelId, "How long can I drive with my license?");
+  }
+
+  // Embeds documents into a local index and returns the documents most similar to a query.
+  public static List<Match> retrieve(String modelId, String query) {
+    List<String> documents =
+        List.of(
+            "How do I get a driver's license/learner's permit?",
+            "How long is my driver's license valid for?",
+            "Driver's knowledge test study guide");
+    int dimensions = 3072;
+
+    // Client Initialization. Once created, it can be reused for multiple requests.
+    try (Client client = Client.builder().location("global").vertexAI(true).build()) {
+      EmbedContentResponse response =
+          client.models.embedContent(
+              modelId,
+              documents,
+              EmbedContentConfig.builder()
+                  .taskType("RETRIEVAL_DOCUMENT")
+                  .outputDimensionality(dimensions)
+                  .title("Driver's License")
+                  .build());
+
+      // Quantized vectors take a quarter of the memory of floats; the ids follow the documents.
+      EmbeddingStore store =
+          EmbeddingStore.allocate(dimensions, documents.size(), EmbeddingStore.Encoding.INT8);
+      for (ContentEmbedding embedding : response.embeddings().get()) {
+        store.add(toArray(embedding.values().get()));
+      }
+      HnswIndex index = HnswIndex.build(store, 16, 100);
+
+      EmbedContentResponse queryResponse =
+          client.models.embedContent(
+              modelId,
+              query,
+              EmbedContentConfig.builder()
+                  .taskType("RETRIEVAL_QUERY")
+                  .outputDimensionality(dimensions)
+                  .build());
+      List<Match> matches =
+          index.search(toArray(queryResponse.embeddings().get().get(0).values().get()), 2, 32);
+
+      for (Match match : matches) {
+        System.out.printf("%.4f %s%n", match.getScore(), documents.get(match.getId()));
+      }
+      // Example response:
+      // 0.7791 How long is my driver's license valid for?
+      // 0.6463 How do I get a driver's license/learner's permit?
+      return matches;
+    }
+  }
+
+  private static float[] toArray(List<Float> values) {
+    float[] array = new float[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+}
+// [END googlegenaisdk_embeddings_docretrieval_with_index]
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.embeddings;
+
+import genai.embeddings.EmbeddingStore.Match;
+import genai.embeddings.EmbeddingStore.NodeHeap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An approximate nearest-neighbor index over an {@link EmbeddingStore}: a hierarchical navigable
+ * small world graph. A search walks down from a sparse top layer to the bottom layer, which links
+ * every embedding to its nearest neighbors, and compares the query with a few hundred embeddings
+ * instead of all of them.
+ *
+ * <p>The bottom layer is stored as fixed-size neighbor lists, so {@link #open} maps it from the
+ * file written by {@link #save} without copying it. Searches may run concurrently, but not while
+ * {@link #refresh} adds embeddings.
+ */
+public class HnswIndex {
+
+  private static final int MAGIC = 0x484e5731;
+  // Magic, m, size, entry point and top layer.
+  private static final int HEADER_INTS = 5;
+
+  private final EmbeddingStore store;
+  // The most neighbors of a node in the upper layers; the bottom layer allows twice as many.
+  private final int m;
+  private final int m0;
+  private final int efConstruction;
+  private final double levelMultiplier;
+  private final Random random;
+
+  // The bottom layer: for each node, its neighbor count followed by m0 neighbor slots.
+  private IntBuffer layer0;
+  private int[] levels;
+  // For each node above the bottom layer, its neighbor lists in the same format, one per layer.
+  private final Map<Integer, int[][]> upperLayers;
+  private int size;
+  private int entryPoint = -1;
+  private int topLevel = -1;
+
+  private HnswIndex(EmbeddingStore store, int m, int efConstruction, IntBuffer layer0,
+      int[] levels, Map<Integer, int[][]> upperLayers) {
+    this.store = store;
+    this.m = m;
+    this.m0 = 2 * m;
+    this.efConstruction = efConstruction;
+    this.levelMultiplier = 1 / Math.log(m);
+    this.random = new Random(42);
+    this.layer0 = layer0;
+    this.levels = levels;
+    this.upperLayers = upperLayers;
+  }
+
+  /**
+   * Indexes every embedding in the store.
+   *
+   * @param m the neighbors linked to each embedding; 16 suits most embeddings
+   * @param efConstruction the candidates considered for those links; higher builds a better graph
+   *     more slowly
+   */
+  public static HnswIndex build(EmbeddingStore store, int m, int efConstruction) {
+    HnswIndex index = new HnswIndex(store, m, efConstruction,
+        IntBuffer.allocate(Math.max(store.size(), 1) * (2 * m + 1)),
+        new int[Math.max(store.size(), 1)], new HashMap<>());
+    index.refresh();
+    return index;
+  }
+
+  /** Indexes the embeddings added to the store since the index was built or last refreshed. */
+  public void refresh() {
+    for (int id = size; id < store.size(); id++) {
+      insert(id);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns about the {@code k} stored embeddings most similar to the query.
+   *
+   * @param ef the candidates kept during the search, at least {@code k}; higher is more accurate
+   *     and slower
+   * @throws IllegalArgumentException if {@code k} is negative
+   */
+  public List<Match> search(float[] query, int k, int ef) {
+    EmbeddingStore.checkK(k);
+    if (size == 0 || k == 0) {
+      return Arrays.asList();
+    }
+    float[] normalized = store.normalize(query);
+    int node = entryPoint;
+    float score = store.similarity(normalized, node);
+    for (int level = topLevel; level > 0; level--) {
+      node = greedy(normalized, node, score, level);
+      score = store.similarity(normalized, node);
+    }
+    NodeHeap results = searchLayer(normalized, node, score, Math.max(ef, k), 0);
+    while (results.size() > k) {
+      results.pop();
+    }
+    return results.drainBestFirst();
+  }
+
+  private void insert(int id) {
+    float[] vector = store.vector(id);
+    int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    ensureCapacity(id + 1);
+    levels[id] = level;
+    layer0.put(id * (m0 + 1), 0);
+    if (level > 0) {
+      int[][] lists = new int[level][m + 1];
+      upperLayers.put(id, lists);
+    }
+    size = id + 1;
+    if (entryPoint < 0) {
+      entryPoint = id;
+      topLevel = level;
+      return;
+    }
+
+    int node = entryPoint;
+    float score = store.similarity(vector, node);
+    for (int l = topLevel; l > level; l--) {
+      node = greedy(vector, node, score, l);
+      score = store.similarity(vector, node);
+    }
+    for (int l = Math.min(level, topLevel); l >= 0; l--) {
+      NodeHeap candidates = searchLayer(vector, node, score, efConstruction, l);
+      int[] ids = new int[candidates.size()];
+      float[] scores = new float[ids.length];
+      for (int i = ids.length - 1; i >= 0; i--) {
+        scores[i] = candidates.peekScore();
+        ids[i] = candidates.pop();
+      }
+      int[] neighbors = selectNeighbors(ids, scores, m);
+      setNeighbors(id, l, neighbors, neighbors.length);
+      for (int neighbor : neighbors) {
+        link(neighbor, id, l);
+      }
+      node = ids[0];
+      score = scores[0];
+    }
+    if (level > topLevel) {
+      topLevel = level;
+      entryPoint = id;
+    }
+  }
+
+  private void ensureCapacity(int nodes) {
+    // A mapped graph is read-only, so it moves to the heap before it changes.
+    if (layer0.isReadOnly() || layer0.limit() < nodes * (m0 + 1)) {
+      IntBuffer grown = IntBuffer.allocate(Math.max(nodes, 2 * levels.length) * (m0 + 1));
+      IntBuffer old = layer0.duplicate();
+      old.position(0).limit(size * (m0 + 1));
+      grown.put(old).clear();
+      layer0 = grown;
+    }
+    if (levels.length < nodes) {
+      levels = Arrays.copyOf(levels, Math.max(nodes, 2 * levels.length));
+    }
+  }
+
+  private int neighborCount(int node, int level) {
+    return level == 0 ? layer0.get(node * (m0 + 1)) : upperLayers.get(node)[level - 1][0];
+  }
+
+  private int neighbor(int node, int level, int i) {
+    return level == 0
+        ? layer0.get(node * (m0 + 1) + 1 + i)
+        : upperLayers.get(node)[level - 1][1 + i];
+  }
+
+  private void setNeighbors(int node, int level, int[] neighbors, int count) {
+    if (level == 0) {
+      int base = node * (m0 + 1);
+      layer0.put(base, count);
+      for (int i = 0; i < count; i++) {
+        layer0.put(base + 1 + i, neighbors[i]);
+      }
+    } else {
+      int[] list = upperLayers.get(node)[level - 1];
+      list[0] = count;
+      System.arraycopy(neighbors, 0, list, 1, count);
+    }
+  }
+
+  /** Links {@code node} to {@code added}, pruning its neighbors if it has too many. */
+  private void link(int node, int added, int level) {
+    int max = level == 0 ? m0 : m;
+    int count = neighborCount(node, level);
+    if (count < max) {
+      int[] neighbors = new int[count + 1];
+      for (int i = 0; i < count; i++) {
+        neighbors[i] = neighbor(node, level, i);
+      }
+      neighbors[count] = added;
+      setNeighbors(node, level, neighbors, neighbors.length);
+      return;
+    }
+    NodeHeap byScore = NodeHeap.lowestFirst(count + 1);
+    for (int i = 0; i < count; i++) {
+      int neighbor = neighbor(node, level, i);
+      byScore.push(neighbor, store.similarity(node, neighbor));
+    }
+    byScore.push(added, store.similarity(node, added));
+    int[] ids = new int[byScore.size()];
+    float[] scores = new float[ids.length];
+    for (int i = ids.length - 1; i >= 0; i--) {
+      scores[i] = byScore.peekScore();
+      ids[i] = byScore.pop();
+    }
+    int[] neighbors = selectNeighbors(ids, scores, max);
+    setNeighbors(node, level, neighbors, neighbors.length);
+  }
+
+  /**
+   * Picks up to {@code max} neighbors from candidates sorted by similarity, preferring ones that
+   * are closer to the node than to any neighbor already picked, so links reach in all directions.
+   */
+  private int[] selectNeighbors(int[] ids, float[] scores, int max) {
+    int[] selected = new int[Math.min(max, ids.length)];
+    boolean[] taken = new boolean[ids.length];
+    int count = 0;
+    for (int i = 0; i < ids.length && count < selected.length; i++) {
+      boolean diverse = true;
+      for (int j = 0; j < count && diverse; j++) {
+        diverse = store.similarity(ids[i], selected[j]) < scores[i];
+      }
+      if (diverse) {
+        selected[count++] = ids[i];
+        taken[i] = true;
+      }
+    }
+    for (int i = 0; i < ids.length && count < selected.length; i++) {
+      if (!taken[i]) {
+        selected[count++] = ids[i];
+      }
+    }
+    return selected;
+  }
+
+  /** Moves to the most similar neighbor until no neighbor is more similar. */
+  private int greedy(float[] query, int node, float score, int level) {
+    boolean moved = true;
+    while (moved) {
+      moved = false;
+      int count = neighborCount(node, level);
+      for (int i = 0; i < count; i++) {
+        int neighbor = neighbor(node, level, i);
+        float similarity = store.similarity(query, neighbor);
+        if (similarity > score) {
+          score = similarity;
+          node = neighbor;
+          moved = true;
+        }
+      }
+    }
+    return node;
+  }
+
+  /** Returns up to {@code ef} of the most similar nodes of one layer, least similar first. */
+  private NodeHeap searchLayer(float[] query, int entry, float entryScore, int ef, int level) {
+    BitSet visited = new BitSet(size);
+    NodeHeap candidates = NodeHeap.highestFirst(ef);
+    NodeHeap results = NodeHeap.lowestFirst(ef + 1);
+    visited.set(entry);
+    candidates.push(entry, entryScore);
+    results.push(entry, entryScore);
+    while (candidates.size() > 0) {
+      if (results.size() >= ef && candidates.peekScore() < results.peekScore()) {
+        break;
+      }
+      int node = candidates.pop();
+      int count = neighborCount(node, level);
+      for (int i = 0; i < count; i++) {
+        int neighbor = neighbor(node, level, i);
+        if (visited.get(neighbor)) {
+          continue;
+        }
+        visited.set(neighbor);
+        float score = store.similarity(query, neighbor);
+        if (results.size() < ef || score > results.peekScore()) {
+          candidates.push(neighbor, score);
+          results.push(neighbor, score);
+          if (results.size() > ef) {
+            results.pop();
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /** Writes the graph to a file that {@link #open} can map. */
+  public void save(Path path) throws IOException {
+    long ints = HEADER_INTS + size + (long) size * (m0 + 1);
+    for (int[][] lists : upperLayers.values()) {
+      ints += lists.length * (m + 1);
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      IntBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, ints * Integer.BYTES)
+          .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      out.put(MAGIC).put(m).put(size).put(entryPoint).put(topLevel);
+      out.put(levels, 0, size);
+      IntBuffer graph = layer0.duplicate();
+      graph.clear().limit(size * (m0 + 1));
+      out.put(graph);
+      for (int id = 0; id < size; id++) {
+        for (int l = 1; l <= levels[id]; l++) {
+          out.put(upperLayers.get(id)[l - 1]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps a graph saved with {@link #save} over the store it was built from. The index can be
+   * refreshed as the store grows, which copies the graph to the heap.
+   */
+  public static HnswIndex open(Path path, EmbeddingStore store, int efConstruction)
+      throws IOException {
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    IntBuffer in = file.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    if (in.get() != MAGIC) {
+      throw new IOException("Not an HNSW index: " + path);
+    }
+    int m = in.get();
+    int size = in.get();
+    int entryPoint = in.get();
+    int topLevel = in.get();
+    if (size > store.size()) {
+      throw new IOException("The index has more embeddings than the store");
+    }
+    int[] levels = new int[Math.max(size, 1)];
+    in.get(levels, 0, size);
+    int layer0Ints = size * (2 * m + 1);
+    IntBuffer layer0 = in.slice();
+    layer0.limit(layer0Ints);
+    in.position(in.position() + layer0Ints);
+    Map<Integer, int[][]> upperLayers = new HashMap<>();
+    for (int id = 0; id < size; id++) {
+      if (levels[id] > 0) {
+        int[][] lists = new int[levels[id]][m + 1];
+        for (int[] list : lists) {
+          in.get(list);
+        }
+        upperLayers.put(id, lists);
+      }
+    }
+
+    HnswIndex index = new HnswIndex(store, m, efConstruction, layer0, levels, upperLayers);
+    index.size = size;
+    index.entryPoint = entryPoint;
+    index.topLevel = topLevel;
+    return index;
+  }
+}
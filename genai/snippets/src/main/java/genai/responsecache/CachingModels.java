@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.responsecache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.genai.Client;
+import com.google.genai.JsonSerializable;
+import com.google.genai.types.Content;
+import com.google.genai.types.CountTokensConfig;
+import com.google.genai.types.CountTokensResponse;
+import com.google.genai.types.EmbedContentConfig;
+import com.google.genai.types.EmbedContentResponse;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Answers repeated {@code client.models} calls from a {@link ResponseCache}. A call is keyed by the
+ * SHA-256 digest of its method, model, contents and config, serialized as JSON with sorted field
+ * names, so equal requests share a response however they were built.
+ *
+ * <p>Cached generations are replayed even when the config asks for sampling, which is what makes
+ * repeated evaluation runs reproducible.
+ */
+public class CachingModels {
+
+  /** The calls to the model service that can be cached; stub it in tests. */
+  public interface ModelService {
+    GenerateContentResponse generateContent(
+        String model, List<Content> contents, GenerateContentConfig config);
+
+    EmbedContentResponse embedContent(String model, List<String> texts, EmbedContentConfig config);
+
+    CountTokensResponse countTokens(String model, List<Content> contents, CountTokensConfig config);
+
+    /** Calls the service through a client. */
+    static ModelService of(Client client) {
+      return new ModelService() {
+        @Override
+        public GenerateContentResponse generateContent(
+            String model, List<Content> contents, GenerateContentConfig config) {
+          return client.models.generateContent(model, contents, config);
+        }
+
+        @Override
+        public EmbedContentResponse embedContent(
+            String model, List<String> texts, EmbedContentConfig config) {
+          return client.models.embedContent(model, texts, config);
+        }
+
+        @Override
+        public CountTokensResponse countTokens(
+            String model, List<Content> contents, CountTokensConfig config) {
+          return client.models.countTokens(model, contents, config);
+        }
+      };
+    }
+  }
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ModelService service;
+  private final ResponseCache cache;
+
+  public CachingModels(ModelService service, ResponseCache cache) {
+    this.service = service;
+    this.cache = cache;
+  }
+
+  public GenerateContentResponse generateContent(
+      String model, String text, GenerateContentConfig config) {
+    return generateContent(model, List.of(Content.fromParts(Part.fromText(text))), config);
+  }
+
+  public GenerateContentResponse generateContent(
+      String model, List<Content> contents, GenerateContentConfig config) {
+    String key = key("generateContent", model, contents, config);
+    return GenerateContentResponse.fromJson(
+        cache.get(key, () -> service.generateContent(model, contents, config).toJson()));
+  }
+
+  public EmbedContentResponse embedContent(
+      String model, List<String> texts, EmbedContentConfig config) {
+    ArrayNode contents = MAPPER.createArrayNode();
+    texts.forEach(contents::add);
+    String key = key("embedContent", model, contents, config);
+    return EmbedContentResponse.fromJson(
+        cache.get(key, () -> service.embedContent(model, texts, config).toJson()));
+  }
+
+  public CountTokensResponse countTokens(
+      String model, List<Content> contents, CountTokensConfig config) {
+    String key = key("countTokens", model, contents, config);
+    return CountTokensResponse.fromJson(
+        cache.get(key, () -> service.countTokens(model, contents, config).toJson()));
+  }
+
+  public ResponseCache.Stats stats() {
+    return cache.stats();
+  }
+
+  private static String key(
+      String method, String model, List<Content> contents, JsonSerializable config) {
+    ArrayNode nodes = MAPPER.createArrayNode();
+    for (Content content : contents) {
+      nodes.add(tree(content));
+    }
+    return key(method, model, nodes, config);
+  }
+
+  private static String key(
+      String method, String model, ArrayNode contents, JsonSerializable config) {
+    ObjectNode request = MAPPER.createObjectNode();
+    request.put("method", method);
+    request.put("model", model);
+    request.set("contents", contents);
+    request.set("config", config == null ? MAPPER.nullNode() : tree(config));
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(MAPPER.writeValueAsBytes(canonical(request)));
+      StringBuilder key = new StringBuilder(2 * digest.length);
+      for (byte b : digest) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static JsonNode tree(JsonSerializable value) {
+    try {
+      return MAPPER.readTree(value.toJson());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns a copy of the tree with the fields of every object in name order. */
+  private static JsonNode canonical(JsonNode node) {
+    if (node.isObject()) {
+      List<String> names = new ArrayList<>();
+      Iterator<String> fields = node.fieldNames();
+      fields.forEachRemaining(names::add);
+      names.sort(null);
+      ObjectNode sorted = MAPPER.createObjectNode();
+      for (String name : names) {
+        sorted.set(name, canonical(node.get(name)));
+      }
+      return sorted;
+    }
+    if (node.isArray()) {
+      ArrayNode array = MAPPER.createArrayNode();
+      node.forEach(element -> array.add(canonical(element)));
+      return array;
+    }
+    return node;
+  }
+
+  public static void main(String[] args) throws IOException {
+    // TODO(developer): Replace these variables before running the sample.
+    String modelId = "gemini-2.5-flash";
+    String cacheFile = "responses.cache";
+
+    // Client Initialization. Once created, it can be reused for multiple requests.
+    try (Client client = Client.builder().location("global").vertexAI(true).build();
+        ResponseCache cache =
+            new ResponseCache(64 << 20).withDiskTier(Paths.get(cacheFile), 1L << 30)) {
+      CachingModels models = new CachingModels(ModelService.of(client), cache);
+      for (int i = 0; i < 3; i++) {
+        GenerateContentResponse response =
+            models.generateContent(modelId, "How does AI work?", null);
+        System.out.println(response.text());
+      }
+      System.out.println(models.stats());
+      // Example response, on the first run:
+      // memory hits=2, disk hits=0, misses=1, shared loads=0, evictions=0, hit rate=0.667
+    }
+  }
+}
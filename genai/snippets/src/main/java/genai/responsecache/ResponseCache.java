@@ -0,0 +1,318 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.responsecache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A two-tier cache of serialized responses keyed by SHA-256 digests. The memory tier keeps the
+ * most recently used responses up to a size in bytes. The optional disk tier is an append-only
+ * file that is memory-mapped for reads, so responses survive restarts.
+ *
+ * <p>Concurrent requests for a key that is being loaded wait for that load instead of starting
+ * their own.
+ */
+public class ResponseCache implements Closeable {
+
+  /** Counts of how requests were answered. */
+  public static class Stats {
+    private final long memoryHits;
+    private final long diskHits;
+    private final long misses;
+    private final long sharedLoads;
+    private final long evictions;
+
+    Stats(long memoryHits, long diskHits, long misses, long sharedLoads, long evictions) {
+      this.memoryHits = memoryHits;
+      this.diskHits = diskHits;
+      this.misses = misses;
+      this.sharedLoads = sharedLoads;
+      this.evictions = evictions;
+    }
+
+    public long getMemoryHits() {
+      return memoryHits;
+    }
+
+    public long getDiskHits() {
+      return diskHits;
+    }
+
+    /** Requests that loaded their response. */
+    public long getMisses() {
+      return misses;
+    }
+
+    /** Requests that waited for a load another request had started. */
+    public long getSharedLoads() {
+      return sharedLoads;
+    }
+
+    /** Responses dropped from the memory tier to stay within its size. */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public double getHitRate() {
+      long requests = memoryHits + diskHits + misses + sharedLoads;
+      return requests == 0 ? 0 : (double) (requests - misses) / requests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "memory hits=%d, disk hits=%d, misses=%d, shared loads=%d, evictions=%d, hit rate=%.3f",
+          memoryHits, diskHits, misses, sharedLoads, evictions, getHitRate());
+    }
+  }
+
+  private static final int KEY_BYTES = 32;
+
+  private final long maxMemoryBytes;
+  // Guarded by itself; in least recently used order.
+  private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes;
+  private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+  private DiskTier disk;
+
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder diskHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder sharedLoads = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /** Creates a cache that keeps up to {@code maxMemoryBytes} of responses in memory. */
+  public ResponseCache(long maxMemoryBytes) {
+    this.maxMemoryBytes = maxMemoryBytes;
+  }
+
+  /**
+   * Also keeps responses in {@code file}, reading the responses a previous run left there. The
+   * file stops growing at {@code maxDiskBytes}, at most 2 GB.
+   */
+  public ResponseCache withDiskTier(Path file, long maxDiskBytes) throws IOException {
+    this.disk = new DiskTier(file, Math.min(maxDiskBytes, Integer.MAX_VALUE));
+    return this;
+  }
+
+  /**
+   * Returns the response for {@code key}, calling {@code loader} only if no tier has it and no
+   * other request is loading it. A failed load is not cached and fails every request waiting on
+   * it.
+   *
+   * @param key the hex SHA-256 digest of the request
+   */
+  public String get(String key, Supplier<String> loader) {
+    String value = memoryGet(key);
+    if (value != null) {
+      memoryHits.increment();
+      return value;
+    }
+    if (disk != null && (value = disk.get(key)) != null) {
+      diskHits.increment();
+      memoryPut(key, value);
+      return value;
+    }
+
+    CompletableFuture<String> load = new CompletableFuture<>();
+    CompletableFuture<String> running = loading.putIfAbsent(key, load);
+    if (running != null) {
+      sharedLoads.increment();
+      try {
+        return running.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException
+            ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    try {
+      // Another load may have finished between the lookups above and claiming this one.
+      value = memoryGet(key);
+      if (value != null) {
+        memoryHits.increment();
+      } else {
+        misses.increment();
+        value = loader.get();
+        memoryPut(key, value);
+        if (disk != null) {
+          disk.put(key, value);
+        }
+      }
+      load.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(key, load);
+    }
+  }
+
+  public Stats stats() {
+    return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum(), sharedLoads.sum(),
+        evictions.sum());
+  }
+
+  private String memoryGet(String key) {
+    synchronized (memory) {
+      return memory.get(key);
+    }
+  }
+
+  private void memoryPut(String key, String value) {
+    long bytes = weight(value);
+    if (bytes > maxMemoryBytes) {
+      return;
+    }
+    synchronized (memory) {
+      String old = memory.put(key, value);
+      memoryBytes += bytes - (old == null ? 0 : weight(old));
+      Iterator<Map.Entry<String, String>> eldest = memory.entrySet().iterator();
+      while (memoryBytes > maxMemoryBytes) {
+        Map.Entry<String, String> entry = eldest.next();
+        memoryBytes -= weight(entry.getValue());
+        eldest.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  private static long weight(String value) {
+    return 2L * value.length();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (disk != null) {
+      disk.close();
+    }
+  }
+
+  /**
+   * An append-only file of records: a 32-byte key, a 4-byte length and the UTF-8 value. An
+   * incomplete record left by a crash is cut off when the file is opened.
+   */
+  private static class DiskTier implements Closeable {
+    private final FileChannel channel;
+    private final long maxBytes;
+    // Guarded by this.
+    private final Map<String, Long> offsets = new HashMap<>();
+    private MappedByteBuffer mapped;
+    private long size;
+
+    DiskTier(Path file, long maxBytes) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      this.maxBytes = maxBytes;
+      long length = channel.size();
+      if (length > 0) {
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, Integer.MAX_VALUE));
+        int position = 0;
+        while (position + KEY_BYTES + Integer.BYTES <= buffer.limit()) {
+          int valueBytes = buffer.getInt(position + KEY_BYTES);
+          int end = position + KEY_BYTES + Integer.BYTES + valueBytes;
+          if (valueBytes < 0 || end > buffer.limit() || end < 0) {
+            break;
+          }
+          offsets.put(hex(buffer, position), (long) position);
+          position = end;
+        }
+        mapped = buffer;
+        size = position;
+        channel.truncate(size);
+      }
+    }
+
+    synchronized String get(String key) {
+      Long offset = offsets.get(key);
+      if (offset == null) {
+        return null;
+      }
+      int position = offset.intValue();
+      if (mapped == null || position >= mapped.limit()) {
+        // The record was written after the file was last mapped.
+        try {
+          mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+          return null;
+        }
+      }
+      int valueBytes = mapped.getInt(position + KEY_BYTES);
+      byte[] value = new byte[valueBytes];
+      ByteBuffer record = mapped.duplicate();
+      record.position(position + KEY_BYTES + Integer.BYTES);
+      record.get(value);
+      return new String(value, StandardCharsets.UTF_8);
+    }
+
+    synchronized void put(String key, String value) {
+      if (offsets.containsKey(key)) {
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      long end = size + KEY_BYTES + Integer.BYTES + bytes.length;
+      if (end > maxBytes) {
+        return;
+      }
+      ByteBuffer record = ByteBuffer.allocate(KEY_BYTES + Integer.BYTES + bytes.length);
+      for (int i = 0; i < KEY_BYTES; i++) {
+        record.put((byte) Integer.parseInt(key.substring(2 * i, 2 * i + 2), 16));
+      }
+      record.putInt(bytes.length).put(bytes).flip();
+      try {
+        while (record.hasRemaining()) {
+          channel.write(record, size + record.position());
+        }
+      } catch (IOException e) {
+        // The disk tier is an optimization, so a failed write only loses this record.
+        return;
+      }
+      offsets.put(key, size);
+      size = end;
+    }
+
+    private static String hex(ByteBuffer buffer, int position) {
+      StringBuilder key = new StringBuilder(2 * KEY_BYTES);
+      for (int i = 0; i < KEY_BYTES; i++) {
+        key.append(String.format("%02x", buffer.get(position + i)));
+      }
+      return key.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.batchprediction;
+
+import genai.batchprediction.BatchRequestPacker.Plan;
+import genai.batchprediction.BatchRequestPacker.TokenCounter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how many tokens per second {@link BatchRequestPacker} tokenizes with the local
+ * tokenizer, per core, as the pool grows. The tokenizer model is downloaded on first use. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=genai.batchprediction.BatchRequestPackerBenchmark -Dexec.args="[requests]"}.
+ */
+public class BatchRequestPackerBenchmark {
+
+  private static final String[] WORDS = {
+    "the", "batch", "prediction", "job", "reads", "every", "request", "from", "Cloud", "Storage",
+    "and", "writes", "one", "response", "per", "line", "tokenization", "is", "local", "fast"
+  };
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    Random random = new Random(42);
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < requests; i++) {
+      StringBuilder text = new StringBuilder();
+      int words = 20 + random.nextInt(400);
+      for (int w = 0; w < words; w++) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      lines.add("{\"request\": {\"contents\": [{\"role\": \"user\", \"parts\": [{\"text\": \""
+          + text + "\"}]}]}}");
+    }
+    Path dir = Files.createTempDirectory("packer");
+    Path input = Files.write(dir.resolve("input.jsonl"), lines, StandardCharsets.UTF_8);
+    TokenCounter counter = TokenCounter.local("gemini-2.5-flash");
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      BatchRequestPacker packer = new BatchRequestPacker(counter, pool);
+      // The first run loads the tokenizer on every thread and compiles the hot code.
+      packer.pack(input, dir.resolve("warmup"));
+      long start = System.nanoTime();
+      Plan plan = packer.pack(input, dir.resolve("packed-" + threads));
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%2d threads: %10.0f tokens/s, %10.0f tokens/s per core, %d files%n",
+          threads, plan.getInputTokens() / seconds, plan.getInputTokens() / seconds / threads,
+          plan.getFiles().size());
+      pool.shutdown();
+    }
+  }
+}
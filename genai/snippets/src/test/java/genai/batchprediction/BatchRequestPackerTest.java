@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.batchprediction;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+import genai.batchprediction.BatchRequestPacker.Estimate;
+import genai.batchprediction.BatchRequestPacker.PackedFile;
+import genai.batchprediction.BatchRequestPacker.Plan;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BatchRequestPackerTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+  /** Counts one token per word, and notes the threads it ran on. */
+  private int countWords(List<Content> contents) {
+    threads.add(Thread.currentThread());
+    int words = 0;
+    for (Content content : contents) {
+      for (Part part : content.parts().get()) {
+        words += part.text().orElse("").split(" ").length;
+      }
+    }
+    return words;
+  }
+
+  private static String request(int words) {
+    StringBuilder text = new StringBuilder("w");
+    for (int i = 1; i < words; i++) {
+      text.append(" w");
+    }
+    return "{\"request\": {\"contents\": [{\"role\": \"user\", \"parts\": [{\"text\": \""
+        + text + "\"}]}]}}";
+  }
+
+  @Test
+  public void testPacksWithinLimits() throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      lines.add(request(1 + i % 50));
+    }
+    lines.add(request(500));
+    lines.add("{\"request\": {}}");
+    lines.add("");
+    Path input = Files.write(folder.newFile("input.jsonl").toPath(), lines, StandardCharsets.UTF_8);
+    Path output = folder.getRoot().toPath().resolve("packed");
+
+    Plan plan = new BatchRequestPacker(this::countWords, new ForkJoinPool(4))
+        .withMaxTokensPerRequest(100)
+        .withFileLimits(300, 5000, 1 << 20)
+        .pack(input, output);
+
+    assertThat(threads.size()).isGreaterThan(1);
+    assertThat(plan.getRequests()).isEqualTo(1000);
+    // 1 + 2 + ... + 50 words, twenty times.
+    assertThat(plan.getInputTokens()).isEqualTo(20 * 1275);
+    // 25500 tokens in files of at most 5000 tokens need 6 files; first-fit decreasing finds that.
+    assertThat(plan.getFiles()).hasSize(6);
+    assertThat(plan.getRejected()).hasSize(2);
+    assertThat(plan.getRejected().get(0).getLine()).isEqualTo(1001);
+    assertThat(plan.getRejected().get(1).getReason()).contains("no request contents");
+
+    List<String> packed = new ArrayList<>();
+    for (PackedFile file : plan.getFiles()) {
+      assertThat(file.getRequests()).isAtMost(300);
+      assertThat(file.getTokens()).isAtMost(5000);
+      List<String> fileLines = Files.readAllLines(file.getPath(), StandardCharsets.UTF_8);
+      assertThat(fileLines).hasSize(file.getRequests());
+      assertThat(Files.size(file.getPath())).isEqualTo(file.getBytes());
+      packed.addAll(fileLines);
+    }
+    assertThat(packed).containsExactlyElementsIn(lines.subList(0, 1000));
+  }
+
+  @Test
+  public void testEstimatesCostAndDuration() throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(request(100));
+    }
+    Path input = Files.write(folder.newFile("input.jsonl").toPath(), lines, StandardCharsets.UTF_8);
+
+    Plan plan = new BatchRequestPacker(this::countWords, new ForkJoinPool(2))
+        .pack(input, folder.getRoot().toPath().resolve("packed"));
+    Estimate estimate = plan.estimate(1.0, 4.0, 50, 100);
+
+    assertThat(plan.getFiles()).hasSize(1);
+    assertThat(estimate.getOutputTokens()).isEqualTo(5000);
+    // 10000 input tokens at $1 and 5000 output tokens at $4 per million.
+    assertThat(estimate.getUsd()).isWithin(1e-9).of(0.03);
+    assertThat(estimate.getDuration()).isEqualTo(Duration.ofSeconds(150));
+  }
+}
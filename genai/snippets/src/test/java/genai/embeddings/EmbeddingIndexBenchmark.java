@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.embeddings;
+
+import genai.embeddings.EmbeddingStore.Encoding;
+import genai.embeddings.EmbeddingStore.Match;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Measures recall@10 and queries per second of exact, quantized and HNSW search over synthetic
+ * clustered embeddings, and how long a saved store and index take to reopen. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=genai.embeddings.EmbeddingIndexBenchmark -Dexec.args="[count] [dimensions]"}.
+ */
+public class EmbeddingIndexBenchmark {
+
+  private static final int K = 10;
+  private static final int QUERIES = 200;
+
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+    Random random = new Random(42);
+    float[][] vectors = HnswIndexTest.clustered(random, count, dimensions);
+    float[][] queries = new float[QUERIES][];
+    for (int i = 0; i < QUERIES; i++) {
+      queries[i] = HnswIndexTest.near(random, vectors);
+    }
+    System.out.printf("%d vectors of %d dimensions, %d queries, recall@%d%n",
+        count, dimensions, QUERIES, K);
+
+    EmbeddingStore exact = HnswIndexTest.store(vectors, Encoding.FLOAT32);
+    EmbeddingStore quantized = HnswIndexTest.store(vectors, Encoding.INT8);
+    List<Set<Integer>> truth = new ArrayList<>();
+    for (float[] query : queries) {
+      truth.add(HnswIndexTest.ids(exact.search(query, K)));
+    }
+
+    measure("exact float32", queries, truth, query -> exact.search(query, K));
+    measure("exact int8", queries, truth, query -> quantized.search(query, K));
+
+    long start = System.nanoTime();
+    HnswIndex index = HnswIndex.build(exact, 16, 100);
+    System.out.printf("HNSW build: %d ms%n", (System.nanoTime() - start) / 1000000);
+    for (int ef : new int[] {16, 32, 64, 128, 256}) {
+      measure("HNSW ef=" + ef, queries, truth, query -> index.search(query, K, ef));
+    }
+
+    Path dir = Files.createTempDirectory("embeddings");
+    Path storeFile = dir.resolve("store.bin");
+    Path indexFile = dir.resolve("index.hnsw");
+    exact.save(storeFile);
+    index.save(indexFile);
+    start = System.nanoTime();
+    EmbeddingStore reopened = EmbeddingStore.open(storeFile);
+    HnswIndex reopenedIndex = HnswIndex.open(indexFile, reopened, 100);
+    System.out.printf("Reopen: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+    measure("reopened HNSW ef=64", queries, truth, query -> reopenedIndex.search(query, K, 64));
+    Files.delete(storeFile);
+    Files.delete(indexFile);
+    Files.delete(dir);
+  }
+
+  private static void measure(String name, float[][] queries, List<Set<Integer>> truth,
+      Function<float[], List<Match>> search) {
+    // Warm up so the timed rounds run compiled code.
+    for (int round = 0; round < 3; round++) {
+      for (float[] query : queries) {
+        search.apply(query);
+      }
+    }
+    int found = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < queries.length; i++) {
+      for (Match match : search.apply(queries[i])) {
+        found += truth.get(i).contains(match.getId()) ? 1 : 0;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%-22s recall %.3f  %8.0f queries/s  %7.3f ms/query%n", name,
+        found / (double) (queries.length * K), queries.length * 1e9 / elapsed,
+        elapsed / 1e6 / queries.length);
+  }
+}
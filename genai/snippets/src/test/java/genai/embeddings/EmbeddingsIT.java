@@ -20,8 +20,10 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 
 import com.google.genai.types.EmbedContentResponse;
+import genai.embeddings.EmbeddingStore.Match;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -70,4 +72,15 @@ public class EmbeddingsIT {
     assertThat(output).contains("statistics");
     assertThat(output).contains("tokenCount");
   }
+
+  @Test
+  public void testEmbeddingsDocRetrievalWithIndex() {
+    List<Match> matches =
+        EmbeddingsDocRetrievalWithIndex.retrieve(
+            GEMINI_EMBEDDING, "How long can I drive with my license?");
+    assertThat(matches).hasSize(2);
+
+    String output = bout.toString();
+    assertThat(output).contains("How long is my driver's license valid for?");
+  }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.embeddings;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import genai.embeddings.EmbeddingStore.Encoding;
+import genai.embeddings.EmbeddingStore.Match;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HnswIndexTest {
+
+  private static final int DIMENSIONS = 64;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Returns vectors scattered around a few centers, like embeddings of related documents. */
+  static float[][] clustered(Random random, int count, int dimensions) {
+    float[][] centers = new float[32][dimensions];
+    for (float[] center : centers) {
+      for (int i = 0; i < dimensions; i++) {
+        center[i] = (float) random.nextGaussian();
+      }
+    }
+    float[][] vectors = new float[count][dimensions];
+    for (float[] vector : vectors) {
+      float[] center = centers[random.nextInt(centers.length)];
+      for (int i = 0; i < dimensions; i++) {
+        vector[i] = center[i] + 0.5f * (float) random.nextGaussian();
+      }
+    }
+    return vectors;
+  }
+
+  /** Returns a query near one of the vectors. */
+  static float[] near(Random random, float[][] vectors) {
+    float[] vector = vectors[random.nextInt(vectors.length)];
+    float[] query = new float[vector.length];
+    for (int i = 0; i < vector.length; i++) {
+      query[i] = vector[i] + 0.5f * (float) random.nextGaussian();
+    }
+    return query;
+  }
+
+  static EmbeddingStore store(float[][] vectors, Encoding encoding) {
+    EmbeddingStore store = EmbeddingStore.allocate(vectors[0].length, 16, encoding);
+    for (float[] vector : vectors) {
+      store.add(vector);
+    }
+    return store;
+  }
+
+  static Set<Integer> ids(List<Match> matches) {
+    Set<Integer> ids = new HashSet<>();
+    for (Match match : matches) {
+      ids.add(match.getId());
+    }
+    return ids;
+  }
+
+  private static double cosine(float[] a, float[] b) {
+    double dot = 0;
+    double normA = 0;
+    double normB = 0;
+    for (int i = 0; i < a.length; i++) {
+      dot += a[i] * b[i];
+      normA += a[i] * a[i];
+      normB += b[i] * b[i];
+    }
+    return dot / Math.sqrt(normA * normB);
+  }
+
+  @Test
+  public void testExactSearchMatchesScan() {
+    Random random = new Random(1);
+    float[][] vectors = clustered(random, 500, DIMENSIONS);
+    EmbeddingStore store = store(vectors, Encoding.FLOAT32);
+
+    for (int q = 0; q < 20; q++) {
+      float[] query = near(random, vectors);
+      List<Integer> expected = new ArrayList<>();
+      for (int id = 0; id < vectors.length; id++) {
+        expected.add(id);
+      }
+      expected.sort(Comparator.comparingDouble(id -> -cosine(query, vectors[id])));
+
+      List<Match> matches = store.search(query, 10);
+      assertThat(matches).hasSize(10);
+      for (int i = 0; i < 10; i++) {
+        assertThat(matches.get(i).getId()).isEqualTo(expected.get(i));
+        assertThat((double) matches.get(i).getScore())
+            .isWithin(1e-4).of(cosine(query, vectors[expected.get(i)]));
+      }
+    }
+  }
+
+  @Test
+  public void testQuantizedSearchKeepsRecall() {
+    Random random = new Random(2);
+    float[][] vectors = clustered(random, 2000, DIMENSIONS);
+    EmbeddingStore exact = store(vectors, Encoding.FLOAT32);
+    EmbeddingStore quantized = store(vectors, Encoding.INT8);
+
+    int found = 0;
+    for (int q = 0; q < 50; q++) {
+      float[] query = near(random, vectors);
+      Set<Integer> expected = ids(exact.search(query, 10));
+      for (Match match : quantized.search(query, 10)) {
+        found += expected.contains(match.getId()) ? 1 : 0;
+      }
+    }
+    assertThat(found / 500.0).isAtLeast(0.9);
+  }
+
+  @Test
+  public void testHnswRecall() {
+    Random random = new Random(3);
+    float[][] vectors = clustered(random, 5000, DIMENSIONS);
+    EmbeddingStore store = store(vectors, Encoding.FLOAT32);
+    HnswIndex index = HnswIndex.build(store, 16, 100);
+
+    int found = 0;
+    for (int q = 0; q < 100; q++) {
+      float[] query = near(random, vectors);
+      Set<Integer> expected = ids(store.search(query, 10));
+      for (Match match : index.search(query, 10, 64)) {
+        found += expected.contains(match.getId()) ? 1 : 0;
+      }
+    }
+    assertThat(found / 1000.0).isAtLeast(0.95);
+  }
+
+  @Test
+  public void testReopensSavedFiles() throws Exception {
+    Random random = new Random(4);
+    float[][] vectors = clustered(random, 1000, DIMENSIONS);
+    EmbeddingStore store = store(vectors, Encoding.INT8);
+    HnswIndex index = HnswIndex.build(store, 8, 50);
+    Path storeFile = folder.getRoot().toPath().resolve("embeddings.bin");
+    Path indexFile = folder.getRoot().toPath().resolve("embeddings.hnsw");
+    store.save(storeFile);
+    index.save(indexFile);
+
+    EmbeddingStore reopened = EmbeddingStore.open(storeFile);
+    HnswIndex reopenedIndex = HnswIndex.open(indexFile, reopened, 50);
+
+    assertThat(reopened.size()).isEqualTo(1000);
+    assertThat(reopened.encoding()).isEqualTo(Encoding.INT8);
+    assertThat(reopened.vector(999)).isEqualTo(store.vector(999));
+    for (int q = 0; q < 10; q++) {
+      float[] query = near(random, vectors);
+      assertThat(ids(reopened.search(query, 5))).isEqualTo(ids(store.search(query, 5)));
+      assertThat(ids(reopenedIndex.search(query, 5, 32)))
+          .isEqualTo(ids(index.search(query, 5, 32)));
+    }
+
+    // The mapped graph moves to the heap when it grows.
+    store.add(vectors[0]);
+    HnswIndex grown = HnswIndex.open(indexFile, store, 50);
+    grown.refresh();
+    assertThat(grown.size()).isEqualTo(1001);
+    assertThat(ids(grown.search(vectors[0], 2, 32))).containsExactly(0, 1000);
+  }
+
+  @Test
+  public void testSearchChecksK() {
+    Random random = new Random(5);
+    float[][] vectors = clustered(random, 100, DIMENSIONS);
+    EmbeddingStore store = store(vectors, Encoding.FLOAT32);
+    HnswIndex index = HnswIndex.build(store, 8, 50);
+    EmbeddingStore empty = EmbeddingStore.allocate(DIMENSIONS, 10, Encoding.FLOAT32);
+
+    assertThat(store.search(vectors[0], 0)).isEmpty();
+    assertThat(empty.search(vectors[0], 0)).isEmpty();
+    assertThat(index.search(vectors[0], 0, 32)).isEmpty();
+    assertThrows(IllegalArgumentException.class, () -> store.search(vectors[0], -1));
+    assertThrows(IllegalArgumentException.class, () -> empty.search(vectors[0], -1));
+    assertThrows(IllegalArgumentException.class, () -> index.search(vectors[0], -1, 32));
+  }
+}
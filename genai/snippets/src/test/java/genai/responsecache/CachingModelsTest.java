@@ -0,0 +1,191 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package genai.responsecache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.ContentEmbedding;
+import com.google.genai.types.CountTokensConfig;
+import com.google.genai.types.CountTokensResponse;
+import com.google.genai.types.EmbedContentConfig;
+import com.google.genai.types.EmbedContentResponse;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CachingModelsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Echoes every prompt, counting calls; generation waits for {@code release} if it is set. */
+  private static class StubService implements CachingModels.ModelService {
+    final AtomicInteger calls = new AtomicInteger();
+    volatile CountDownLatch release;
+
+    @Override
+    public GenerateContentResponse generateContent(
+        String model, List<Content> contents, GenerateContentConfig config) {
+      calls.incrementAndGet();
+      try {
+        if (release != null) {
+          release.await(10, TimeUnit.SECONDS);
+        }
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      String prompt = contents.get(0).parts().get().get(0).text().get();
+      if (prompt.equals("fail")) {
+        throw new IllegalArgumentException("Bad prompt");
+      }
+      return GenerateContentResponse.builder()
+          .candidates(Candidate.builder()
+              .content(Content.fromParts(Part.fromText(model + ": " + prompt))))
+          .build();
+    }
+
+    @Override
+    public EmbedContentResponse embedContent(
+        String model, List<String> texts, EmbedContentConfig config) {
+      calls.incrementAndGet();
+      List<ContentEmbedding> embeddings = new ArrayList<>();
+      for (String text : texts) {
+        embeddings.add(ContentEmbedding.builder().values(List.of((float) text.length())).build());
+      }
+      return EmbedContentResponse.builder().embeddings(embeddings).build();
+    }
+
+    @Override
+    public CountTokensResponse countTokens(
+        String model, List<Content> contents, CountTokensConfig config) {
+      calls.incrementAndGet();
+      return CountTokensResponse.builder().totalTokens(contents.size()).build();
+    }
+  }
+
+  @Test
+  public void testCachesByCanonicalRequest() {
+    StubService service = new StubService();
+    CachingModels models = new CachingModels(service, new ResponseCache(1 << 20));
+    GenerateContentConfig config =
+        GenerateContentConfig.builder().temperature(0.5f).candidateCount(1).build();
+    GenerateContentConfig sameConfig =
+        GenerateContentConfig.builder().candidateCount(1).temperature(0.5f).build();
+
+    assertThat(models.generateContent("m", "hello", config).text()).isEqualTo("m: hello");
+    assertThat(models.generateContent("m", "hello", sameConfig).text()).isEqualTo("m: hello");
+    assertThat(service.calls.get()).isEqualTo(1);
+
+    // A different model, prompt or config is a different request.
+    models.generateContent("other", "hello", config);
+    models.generateContent("m", "hello!", config);
+    models.generateContent("m", "hello", null);
+    assertThat(service.calls.get()).isEqualTo(4);
+
+    EmbedContentConfig embedConfig =
+        EmbedContentConfig.builder().taskType("RETRIEVAL_QUERY").build();
+    models.embedContent("e", List.of("a", "bb"), embedConfig);
+    EmbedContentResponse embeddings = models.embedContent("e", List.of("a", "bb"), embedConfig);
+    assertThat(embeddings.embeddings().get().get(1).values().get()).containsExactly(2f);
+    models.countTokens("m", List.of(Content.fromParts(Part.fromText("a"))), null);
+    models.countTokens("m", List.of(Content.fromParts(Part.fromText("a"))), null);
+    assertThat(service.calls.get()).isEqualTo(6);
+    assertThat(models.stats().getMemoryHits()).isEqualTo(3);
+    assertThat(models.stats().getMisses()).isEqualTo(6);
+  }
+
+  @Test
+  public void testCollapsesConcurrentRequests() throws Exception {
+    StubService service = new StubService();
+    service.release = new CountDownLatch(1);
+    CachingModels models = new CachingModels(service, new ResponseCache(1 << 20));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> responses = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        responses.add(executor.submit(() -> models.generateContent("m", "slow", null).text()));
+      }
+      // Let every request reach the cache before the single call returns.
+      while (models.stats().getSharedLoads() < 7) {
+        Thread.sleep(1);
+      }
+      service.release.countDown();
+      for (Future<String> response : responses) {
+        assertThat(response.get(10, TimeUnit.SECONDS)).isEqualTo("m: slow");
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(service.calls.get()).isEqualTo(1);
+    assertThat(models.stats().getHitRate()).isWithin(1e-9).of(7 / 8.0);
+  }
+
+  @Test
+  public void testDoesNotCacheFailures() {
+    StubService service = new StubService();
+    CachingModels models = new CachingModels(service, new ResponseCache(1 << 20));
+
+    assertThrows(IllegalArgumentException.class, () -> models.generateContent("m", "fail", null));
+    assertThrows(IllegalArgumentException.class, () -> models.generateContent("m", "fail", null));
+    assertThat(service.calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testEvictsAndReloadsFromDisk() throws Exception {
+    StubService service = new StubService();
+    Path file = folder.getRoot().toPath().resolve("responses.cache");
+    // Room for a few responses in memory.
+    try (ResponseCache cache = new ResponseCache(1000).withDiskTier(file, 1 << 20)) {
+      CachingModels models = new CachingModels(service, cache);
+      for (int i = 0; i < 20; i++) {
+        models.generateContent("m", "prompt " + i, null);
+      }
+      assertThat(models.stats().getEvictions()).isAtLeast(10);
+      assertThat(models.generateContent("m", "prompt 0", null).text()).isEqualTo("m: prompt 0");
+      assertThat(models.stats().getDiskHits()).isEqualTo(1);
+    }
+    assertThat(service.calls.get()).isEqualTo(20);
+
+    // A new cache reads the responses of the last run from the file.
+    try (ResponseCache cache = new ResponseCache(1 << 20).withDiskTier(file, 1 << 20)) {
+      CachingModels models = new CachingModels(service, cache);
+      for (int i = 0; i < 20; i++) {
+        assertThat(models.generateContent("m", "prompt " + i, null).text())
+            .isEqualTo("m: prompt " + i);
+      }
+      assertThat(models.stats().getDiskHits()).isEqualTo(20);
+    }
+    assertThat(service.calls.get()).isEqualTo(20);
+  }
+}
@@ -17,8 +17,8 @@ package com.examples.pubsub.streaming;
 // [START pubsub_to_gcs]
 
 import java.io.IOException;
-import org.apache.beam.examples.common.WriteOneFilePerWindow;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.io.Compression;
 import org.apache.beam.sdk.io.gcp.pubsub.PubsubIO;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
@@ -52,12 +52,39 @@ public class PubSubToGcs {
     String getOutput();
 
     void setOutput(String value);
+
+    @Description("Number of output shards per window, or 0 to scale shards with the input rate.")
+    @Default.Integer(1)
+    Integer getNumShards();
+
+    void setNumShards(Integer value);
+
+    @Description("Start a new output file after this many messages, or 0 to write one per window.")
+    @Default.Long(0)
+    Long getMaxRecordsPerFile();
+
+    void setMaxRecordsPerFile(Long value);
+
+    @Description("Start a new output file after this many seconds, or 0 to write one per window.")
+    @Default.Integer(0)
+    Integer getMaxFileAgeSeconds();
+
+    void setMaxFileAgeSeconds(Integer value);
+
+    @Description("Output file format: TEXT or AVRO.")
+    @Default.Enum("TEXT")
+    WriteRolledFiles.Format getOutputFormat();
+
+    void setOutputFormat(WriteRolledFiles.Format value);
+
+    @Description("Output file compression, for example UNCOMPRESSED, GZIP or ZSTD.")
+    @Default.Enum("UNCOMPRESSED")
+    Compression getCompression();
+
+    void setCompression(Compression value);
   }
 
   public static void main(String[] args) throws IOException {
-    // The maximum number of shards when writing output.
-    int numShards = 1;
-
     PubSubToGcsOptions options =
         PipelineOptionsFactory.fromArgs(args).withValidation().as(PubSubToGcsOptions.class);
 
@@ -70,8 +97,13 @@ public class PubSubToGcs {
         .apply("Read PubSub Messages", PubsubIO.readStrings().fromTopic(options.getInputTopic()))
         // 2) Group the messages into fixed-sized minute intervals.
         .apply(Window.into(FixedWindows.of(Duration.standardMinutes(options.getWindowSize()))))
-        // 3) Write one file to GCS for every window of messages.
-        .apply("Write Files to GCS", new WriteOneFilePerWindow(options.getOutput(), numShards));
+        // 3) Write the files of every window of messages to GCS.
+        .apply("Write Files to GCS", WriteRolledFiles.to(options.getOutput())
+            .withNumShards(options.getNumShards())
+            .withMaxRecordsPerFile(options.getMaxRecordsPerFile())
+            .withMaxFileAge(Duration.standardSeconds(options.getMaxFileAgeSeconds()))
+            .withFormat(options.getOutputFormat())
+            .withCompression(options.getCompression()));
 
     // Execute the pipeline and wait until it finishes running.
     pipeline.run().waitUntilFinish();
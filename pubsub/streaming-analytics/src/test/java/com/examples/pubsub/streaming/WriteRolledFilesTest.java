@@ -0,0 +1,143 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.examples.pubsub.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.Compression;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WriteRolledFilesTest {
+  @Rule public final TestPipeline pipeline = TestPipeline.create();
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private TestStream<String> messages() {
+    Instant start = new Instant(0);
+    TestStream.Builder<String> stream = TestStream.create(StringUtf8Coder.of());
+    for (int i = 0; i < 6; i += 2) {
+      stream = stream.addElements(
+          TimestampedValue.of("message-" + i, start.plus(Duration.standardSeconds(i))),
+          TimestampedValue.of("message-" + (i + 1), start.plus(Duration.standardSeconds(i + 1))));
+    }
+    return stream.advanceWatermarkToInfinity();
+  }
+
+  private static List<String> readGzipLines(File file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  @Test
+  public void testRollsCompressedTextFilesByRecordCount() throws IOException {
+    pipeline
+        .apply(messages())
+        .apply(Window.into(FixedWindows.of(Duration.standardMinutes(1))))
+        .apply(WriteRolledFiles.to(folder.getRoot().getPath() + "/output")
+            .withNumShards(1)
+            .withMaxRecordsPerFile(2)
+            .withCompression(Compression.GZIP));
+    pipeline.run().waitUntilFinish();
+
+    // The messages arrive two at a time, so every pair fills a file before the window closes,
+    // and nothing is left for the final pane.
+    File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(".txt.gz"));
+    assertEquals(3, files.length);
+    List<String> lines = new ArrayList<>();
+    for (File file : files) {
+      assertTrue(file.getName().startsWith("output"));
+      List<String> fileLines = readGzipLines(file);
+      assertEquals(2, fileLines.size());
+      lines.addAll(fileLines);
+    }
+    assertEquals(6, lines.size());
+    for (int i = 0; i < 6; i++) {
+      assertTrue(lines.contains("message-" + i));
+    }
+  }
+
+  @Test
+  public void testRejectsTooManyRecordsPerFile() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> WriteRolledFiles.to("output").withMaxRecordsPerFile(Integer.MAX_VALUE + 1L));
+  }
+
+  @Test
+  public void testWritesAvroRecords() throws IOException {
+    assertEquals(6, writeAvro(Compression.SNAPPY, "snappy").size());
+  }
+
+  @Test
+  public void testWritesZstandardAvroRecords() throws IOException {
+    assertEquals(6, writeAvro(Compression.ZSTD, "zstandard").size());
+  }
+
+  private List<String> writeAvro(Compression compression, String codec) throws IOException {
+    pipeline
+        .apply(messages())
+        .apply(Window.into(FixedWindows.of(Duration.standardMinutes(1))))
+        .apply(WriteRolledFiles.to(folder.getRoot().getPath() + "/output")
+            .withFormat(WriteRolledFiles.Format.AVRO)
+            .withCompression(compression));
+    pipeline.run().waitUntilFinish();
+
+    File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(".avro"));
+    assertEquals(1, files.length);
+    List<String> messages = new ArrayList<>();
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(files[0], new GenericDatumReader<>(WriteRolledFiles.AVRO_SCHEMA))) {
+      // Avro compresses the blocks inside the file, and names the codec in its header.
+      assertEquals(codec, reader.getMetaString("avro.codec"));
+      for (GenericRecord record : reader) {
+        messages.add(record.get("message").toString());
+      }
+    }
+    return messages;
+  }
+}
@@ -18,8 +18,8 @@ package examples;
 
 import com.google.cloud.pubsublite.SubscriptionPath;
 import com.google.cloud.pubsublite.proto.SequencedMessage;
-import org.apache.beam.examples.common.WriteOneFilePerWindow;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.io.Compression;
 import org.apache.beam.sdk.io.gcp.pubsublite.PubsubLiteIO;
 import org.apache.beam.sdk.io.gcp.pubsublite.SubscriberOptions;
 import org.apache.beam.sdk.options.Default;
@@ -58,14 +58,41 @@ public class PubsubliteToGcs {
     String getOutput();
 
     void setOutput(String value);
+
+    @Description("Number of output shards per window, or 0 to scale shards with the input rate.")
+    @Default.Integer(1)
+    Integer getNumShards();
+
+    void setNumShards(Integer value);
+
+    @Description("Start a new output file after this many messages, or 0 to write one per window.")
+    @Default.Long(0)
+    Long getMaxRecordsPerFile();
+
+    void setMaxRecordsPerFile(Long value);
+
+    @Description("Start a new output file after this many seconds, or 0 to write one per window.")
+    @Default.Integer(0)
+    Integer getMaxFileAgeSeconds();
+
+    void setMaxFileAgeSeconds(Integer value);
+
+    @Description("Output file format: TEXT or AVRO.")
+    @Default.Enum("TEXT")
+    WriteRolledFiles.Format getOutputFormat();
+
+    void setOutputFormat(WriteRolledFiles.Format value);
+
+    @Description("Output file compression, for example UNCOMPRESSED, GZIP or ZSTD.")
+    @Default.Enum("UNCOMPRESSED")
+    Compression getCompression();
+
+    void setCompression(Compression value);
   }
 
   private static final Logger LOG = LoggerFactory.getLogger(PubsubliteToGcs.class);
 
   public static void main(String[] args) throws InterruptedException {
-    // The maximum number of shards when writing output files.
-    int numShards = 1;
-
     PubsubliteToGcsOptions options =
         PipelineOptionsFactory.fromArgs(args).withValidation().as(PubsubliteToGcsOptions.class);
 
@@ -104,7 +131,14 @@ public class PubsubliteToGcs {
                 // https://beam.apache.org/documentation/programming-guide/#triggers
                 // for more information.
                 .<String>into(FixedWindows.of(Duration.standardMinutes(options.getWindowSize()))))
-        .apply("Write elements to GCS", new WriteOneFilePerWindow(options.getOutput(), numShards));
+        .apply(
+            "Write elements to GCS",
+            WriteRolledFiles.to(options.getOutput())
+                .withNumShards(options.getNumShards())
+                .withMaxRecordsPerFile(options.getMaxRecordsPerFile())
+                .withMaxFileAge(Duration.standardSeconds(options.getMaxFileAgeSeconds()))
+                .withFormat(options.getOutputFormat())
+                .withCompression(options.getCompression()));
 
     // Execute the pipeline. You may add `.waitUntilFinish()` to observe logs in your console, but
     // `waitUntilFinish()` will not work in Dataflow Flex Templates.
@@ -0,0 +1,238 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package examples;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.beam.sdk.io.Compression;
+import org.apache.beam.sdk.io.FileIO;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.TextIO;
+import org.apache.beam.sdk.io.WriteFilesResult;
+import org.apache.beam.sdk.io.fs.ResourceId;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.windowing.AfterFirst;
+import org.apache.beam.sdk.transforms.windowing.AfterPane;
+import org.apache.beam.sdk.transforms.windowing.AfterProcessingTime;
+import org.apache.beam.sdk.transforms.windowing.AfterWatermark;
+import org.apache.beam.sdk.transforms.windowing.Trigger.OnceTrigger;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Duration;
+
+/**
+ * Writes windowed strings to files, optionally rolling to a new file before the window ends.
+ *
+ * <p>Within a window, a new set of files is started once a shard has buffered {@code
+ * maxRecordsPerFile} records or its oldest record is {@code maxFileAge} old, whichever comes
+ * first. The remaining records are written when the window closes. With {@code numShards} set to
+ * 0 the runner picks the number of shards and scales it with the input rate. Only the Dataflow
+ * runner supports this in streaming pipelines.
+ */
+public class WriteRolledFiles extends PTransform<PCollection<String>, WriteFilesResult<Void>> {
+
+  /** The file format of the output files. */
+  public enum Format {
+    TEXT,
+    AVRO
+  }
+
+  /** Schema of the Avro records, one record per message. */
+  public static final Schema AVRO_SCHEMA =
+      SchemaBuilder.record("Message")
+          .namespace("examples")
+          .fields()
+          .requiredString("message")
+          .endRecord();
+
+  private final String output;
+  private final int numShards;
+  private final long maxRecordsPerFile;
+  private final Duration maxFileAge;
+  private final Format format;
+  private final Compression compression;
+
+  private WriteRolledFiles(
+      String output,
+      int numShards,
+      long maxRecordsPerFile,
+      Duration maxFileAge,
+      Format format,
+      Compression compression) {
+    this.output = output;
+    this.numShards = numShards;
+    this.maxRecordsPerFile = maxRecordsPerFile;
+    this.maxFileAge = maxFileAge;
+    this.format = format;
+    this.compression = compression;
+  }
+
+  /**
+   * Writes to files starting with {@code output}, one uncompressed text file per window, like
+   * {@code WriteOneFilePerWindow}.
+   */
+  public static WriteRolledFiles to(String output) {
+    return new WriteRolledFiles(
+        output, 1, 0, Duration.ZERO, Format.TEXT, Compression.UNCOMPRESSED);
+  }
+
+  /** Sets a fixed number of shards, or 0 to let the runner scale shards with the input rate. */
+  public WriteRolledFiles withNumShards(int numShards) {
+    return new WriteRolledFiles(
+        output, numShards, maxRecordsPerFile, maxFileAge, format, compression);
+  }
+
+  /**
+   * Starts a new file once a shard has this many records, or never if 0. The count is checked by
+   * a Beam trigger, so it can be at most {@link Integer#MAX_VALUE}.
+   */
+  public WriteRolledFiles withMaxRecordsPerFile(long maxRecordsPerFile) {
+    if (maxRecordsPerFile < 0 || maxRecordsPerFile > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "maxRecordsPerFile must be between 0 and " + Integer.MAX_VALUE + ": "
+              + maxRecordsPerFile);
+    }
+    return new WriteRolledFiles(
+        output, numShards, maxRecordsPerFile, maxFileAge, format, compression);
+  }
+
+  /** Starts a new file once the oldest buffered record is this old, or never if zero. */
+  public WriteRolledFiles withMaxFileAge(Duration maxFileAge) {
+    return new WriteRolledFiles(
+        output, numShards, maxRecordsPerFile, maxFileAge, format, compression);
+  }
+
+  /** Sets the output format, see {@link #AVRO_SCHEMA} for the Avro records. */
+  public WriteRolledFiles withFormat(Format format) {
+    return new WriteRolledFiles(
+        output, numShards, maxRecordsPerFile, maxFileAge, format, compression);
+  }
+
+  /**
+   * Sets the compression. Text files are compressed as a whole, Avro files use the matching Avro
+   * block codec so that they stay readable by Avro tools.
+   */
+  public WriteRolledFiles withCompression(Compression compression) {
+    return new WriteRolledFiles(
+        output, numShards, maxRecordsPerFile, maxFileAge, format, compression);
+  }
+
+  @Override
+  public WriteFilesResult<Void> expand(PCollection<String> input) {
+    ResourceId resource = FileSystems.matchNewResource(output, false);
+    String directory = resource.getCurrentDirectory().toString();
+    String prefix = resource.isDirectory() ? "" : resource.getFilename();
+
+    OnceTrigger roll = null;
+    if (maxRecordsPerFile > 0) {
+      roll = AfterPane.elementCountAtLeast(Math.toIntExact(maxRecordsPerFile));
+    }
+    if (maxFileAge.isLongerThan(Duration.ZERO)) {
+      OnceTrigger byAge = AfterProcessingTime.pastFirstElementInPane().plusDelayOf(maxFileAge);
+      roll = roll == null ? byAge : AfterFirst.of(roll, byAge);
+    }
+
+    PCollection<String> panes = input;
+    if (roll != null) {
+      // Every early pane becomes its own set of files, and the final pane is written when the
+      // watermark passes the end of the window.
+      panes =
+          input.apply(
+              "Roll files",
+              Window.<String>configure()
+                  .triggering(
+                      AfterWatermark.pastEndOfWindow()
+                          .withEarlyFirings(roll))
+                  .withAllowedLateness(Duration.ZERO)
+                  .discardingFiredPanes());
+    }
+
+    FileIO.Write<Void, String> write;
+    if (format == Format.AVRO) {
+      write =
+          FileIO.<String>write()
+              .via(new AvroSink(compression))
+              .withSuffix(".avro");
+    } else {
+      write =
+          FileIO.<String>write()
+              .via(TextIO.sink())
+              .withCompression(compression)
+              // FileIO appends the compression suffix, such as ".gz", itself.
+              .withSuffix(".txt");
+    }
+    write = write.to(directory).withPrefix(prefix);
+    write = numShards > 0 ? write.withNumShards(numShards) : write.withAutoSharding();
+
+    return panes.apply("Write files", write);
+  }
+
+  /**
+   * Writes messages to an Avro container file, which compresses its blocks itself. AvroIO's sink
+   * only takes the codecs of the Avro version that Beam ships with, which lacks Zstandard.
+   */
+  private static class AvroSink implements FileIO.Sink<String> {
+    private final Compression compression;
+    private transient DataFileWriter<GenericRecord> writer;
+
+    AvroSink(Compression compression) {
+      this.compression = compression;
+    }
+
+    @Override
+    public void open(WritableByteChannel channel) throws IOException {
+      writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(AVRO_SCHEMA))
+          .setCodec(avroCodec(compression));
+      writer.create(AVRO_SCHEMA, Channels.newOutputStream(channel));
+    }
+
+    @Override
+    public void write(String message) throws IOException {
+      writer.append(new GenericRecordBuilder(AVRO_SCHEMA).set("message", message).build());
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // FileIO closes the channel.
+      writer.flush();
+    }
+  }
+
+  private static CodecFactory avroCodec(Compression compression) {
+    switch (compression) {
+      case UNCOMPRESSED:
+        return CodecFactory.nullCodec();
+      case GZIP:
+      case DEFLATE:
+        return CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL);
+      case SNAPPY:
+        return CodecFactory.snappyCodec();
+      case BZIP2:
+        return CodecFactory.bzip2Codec();
+      case ZSTD:
+        return CodecFactory.zstandardCodec(CodecFactory.DEFAULT_ZSTANDARD_LEVEL);
+      default:
+        throw new IllegalArgumentException("Unsupported Avro compression: " + compression);
+    }
+  }
+}
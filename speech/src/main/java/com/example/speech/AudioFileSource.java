@@ -0,0 +1,291 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import com.google.api.gax.rpc.ClientStream;
+import com.google.api.gax.rpc.ClientStreamReadyObserver;
+import com.google.protobuf.ByteString;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streams the audio of a local file in fixed-size chunks, without reading the whole file into
+ * memory. The file is memory-mapped a window at a time, and each chunk is copied straight from
+ * the mapping with {@link ByteString#copyFrom(ByteBuffer)}, so heap use depends on the chunk size
+ * and not on the file size.
+ *
+ * <p>WAV files are read from their header; any other file is treated as raw 16-bit, 16000 Hz,
+ * mono PCM. Chunks always hold whole frames, and can be paced to real time, or any multiple of
+ * it, or sent as fast as the stream accepts them.
+ */
+public class AudioFileSource implements Closeable {
+
+  private static final int DEFAULT_SAMPLE_RATE = 16000;
+  private static final int DEFAULT_BYTES_PER_FRAME = 2;
+  private static final int DEFAULT_CHUNK_MILLIS = 100;
+  // Largest part of the file that is mapped at once.
+  private static final long WINDOW_BYTES = 64L << 20;
+
+  private final FileChannel channel;
+  private final long dataOffset;
+  private final long dataBytes;
+  private final int sampleRateHertz;
+  private final int bytesPerFrame;
+  private int chunkBytes;
+  private double speed = 0;
+
+  private AudioFileSource(
+      FileChannel channel, long dataOffset, long dataBytes, int sampleRateHertz,
+      int bytesPerFrame) {
+    this.channel = channel;
+    this.dataOffset = dataOffset;
+    this.dataBytes = dataBytes - dataBytes % bytesPerFrame;
+    this.sampleRateHertz = sampleRateHertz;
+    this.bytesPerFrame = bytesPerFrame;
+    withChunkMillis(DEFAULT_CHUNK_MILLIS);
+  }
+
+  /** Opens a WAV file, or a raw 16-bit, 16000 Hz, mono PCM file. */
+  public static AudioFileSource open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      AudioFileSource wav = readWavHeader(channel);
+      if (wav != null) {
+        return wav;
+      }
+      return new AudioFileSource(
+          channel, 0, channel.size(), DEFAULT_SAMPLE_RATE, DEFAULT_BYTES_PER_FRAME);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Opens a raw PCM file with the given sample rate and frame size. */
+  public static AudioFileSource openRaw(Path path, int sampleRateHertz, int bytesPerFrame)
+      throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    return new AudioFileSource(channel, 0, channel.size(), sampleRateHertz, bytesPerFrame);
+  }
+
+  /**
+   * Returns the source of the data chunk of a RIFF WAVE file, or null if the file does not start
+   * with a RIFF WAVE header.
+   */
+  private static AudioFileSource readWavHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    if (channel.read(header, 0) < 12
+        || header.getInt(0) != 0x46464952 // "RIFF"
+        || header.getInt(8) != 0x45564157) { // "WAVE"
+      return null;
+    }
+    int sampleRate = 0;
+    int blockAlign = 0;
+    long position = 12;
+    ByteBuffer chunk = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    while (position + 8 <= channel.size()) {
+      chunk.clear();
+      channel.read(chunk, position);
+      int id = chunk.getInt(0);
+      long size = chunk.getInt(4) & 0xFFFFFFFFL;
+      if (id == 0x20746d66) { // "fmt "
+        sampleRate = chunk.getInt(12);
+        chunk.clear();
+        channel.read(chunk, position + 8);
+        blockAlign = chunk.getShort(12);
+      } else if (id == 0x61746164) { // "data"
+        if (blockAlign <= 0) {
+          throw new IOException("WAV data chunk before a valid fmt chunk");
+        }
+        long offset = position + 8;
+        // Recorders that never finished the file leave the size unset, so trust the file size.
+        long bytes = Math.min(size, channel.size() - offset);
+        return new AudioFileSource(channel, offset, bytes, sampleRate, blockAlign);
+      }
+      // Chunks are padded to an even size.
+      position += 8 + size + (size & 1);
+    }
+    throw new IOException("WAV file has no data chunk");
+  }
+
+  /** Sets the length of the chunks, rounded down to whole frames. */
+  public AudioFileSource withChunkMillis(int chunkMillis) {
+    long bytes = (long) sampleRateHertz * bytesPerFrame * chunkMillis / 1000;
+    this.chunkBytes = (int) Math.max(bytesPerFrame, bytes - bytes % bytesPerFrame);
+    return this;
+  }
+
+  /**
+   * Paces the chunks to {@code speed} times real time, for example 1 to simulate a live stream.
+   * A speed of 0, the default, sends the chunks as fast as they are accepted.
+   */
+  public AudioFileSource withSpeed(double speed) {
+    this.speed = speed;
+    return this;
+  }
+
+  public int getSampleRateHertz() {
+    return sampleRateHertz;
+  }
+
+  public int getBytesPerFrame() {
+    return bytesPerFrame;
+  }
+
+  public int getChunkBytes() {
+    return chunkBytes;
+  }
+
+  /** Returns the length of the audio, excluding any header. */
+  public long getAudioBytes() {
+    return dataBytes;
+  }
+
+  /** Passes every chunk of the audio, in order, to {@code consumer}. */
+  public void forEachChunk(Consumer<ByteString> consumer) throws IOException {
+    forEachChunk(0, dataBytes, chunk -> {
+      consumer.accept(chunk);
+      return true;
+    });
+  }
+
+  /**
+   * Passes the chunks of the audio from {@code fromByte} to {@code toByte}, both rounded down to
+   * whole frames, to {@code sink} until it returns false. Pacing starts at {@code fromByte}.
+   */
+  private void forEachChunk(long fromByte, long toByte, ChunkSink sink) throws IOException {
+    long from = Math.max(0, fromByte - fromByte % bytesPerFrame);
+    long to = Math.min(dataBytes, toByte - toByte % bytesPerFrame);
+    long start = System.nanoTime();
+    // Map whole chunks only, so that no chunk spans two windows.
+    long windowBytes = WINDOW_BYTES - WINDOW_BYTES % chunkBytes;
+    for (long window = from; window < to; window += windowBytes) {
+      long length = Math.min(windowBytes, to - window);
+      MappedByteBuffer mapped =
+          channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + window, length);
+      while (mapped.hasRemaining()) {
+        pace(start, window - from + mapped.position());
+        ByteBuffer chunk = mapped.slice();
+        chunk.limit(Math.min(chunkBytes, chunk.remaining()));
+        mapped.position(mapped.position() + chunk.remaining());
+        if (!sink.accept(ByteString.copyFrom(chunk))) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends every chunk of the audio to {@code stream}, waiting whenever the stream's outbound
+   * buffer is full, so the unsent audio never piles up on the heap. The stream must have been
+   * started with {@code ready} as its {@link ClientStreamReadyObserver}.
+   *
+   * @return false if {@code ready} was closed before all the audio was sent
+   */
+  public <RequestT> boolean sendTo(
+      ClientStream<RequestT> stream, SendReadyObserver<RequestT> ready,
+      Function<ByteString, RequestT> toRequest) throws IOException {
+    return sendTo(stream, ready, toRequest, 0, dataBytes);
+  }
+
+  /**
+   * Sends the audio from {@code fromByte} to {@code toByte} to {@code stream}, like {@link
+   * #sendTo(ClientStream, SendReadyObserver, Function)}. Offsets exclude any header.
+   */
+  public <RequestT> boolean sendTo(
+      ClientStream<RequestT> stream, SendReadyObserver<RequestT> ready,
+      Function<ByteString, RequestT> toRequest, long fromByte, long toByte) throws IOException {
+    boolean[] sentAll = {true};
+    forEachChunk(fromByte, toByte, chunk -> {
+      try {
+        if (!ready.awaitReady(stream)) {
+          sentAll[0] = false;
+          return false;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the stream");
+      }
+      stream.send(toRequest.apply(chunk));
+      return true;
+    });
+    return sentAll[0];
+  }
+
+  /** Sleeps until the audio before {@code sentBytes} would have been played at the speed. */
+  private void pace(long startNanos, long sentBytes) {
+    if (speed <= 0) {
+      return;
+    }
+    long audioNanos = (long) (sentBytes * 1e9 / ((long) sampleRateHertz * bytesPerFrame) / speed);
+    long waitNanos = startNanos + audioNanos - System.nanoTime();
+    if (waitNanos > 0) {
+      LockSupport.parkNanos(waitNanos);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /** Receives the chunks of {@link #forEachChunk(long, long, ChunkSink)}. */
+  private interface ChunkSink {
+    /** Returns false to stop at this chunk. */
+    boolean accept(ByteString chunk) throws IOException;
+  }
+
+  /**
+   * Blocks {@link #sendTo} until its stream is ready for more requests. Pass it to {@code
+   * BidiStreamingCallable.internalCall} with the response observer, and close it when the call ends
+   * so that a waiting sender gives up.
+   */
+  public static class SendReadyObserver<RequestT>
+      implements ClientStreamReadyObserver<RequestT>, Closeable {
+    private boolean closed = false;
+
+    @Override
+    public synchronized void onReady(ClientStream<RequestT> stream) {
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
+    /** Waits until {@code stream} is ready, and returns false if this was closed instead. */
+    synchronized boolean awaitReady(ClientStream<RequestT> stream) throws InterruptedException {
+      // onReady needs the lock to notify, so it cannot slip in between the check and the wait.
+      while (!closed && !stream.isSendReady()) {
+        wait();
+      }
+      return !closed;
+    }
+  }
+}
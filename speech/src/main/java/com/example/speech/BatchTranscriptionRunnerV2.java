@@ -0,0 +1,424 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.speech.v2.AutoDetectDecodingConfig;
+import com.google.cloud.speech.v2.BatchRecognizeFileMetadata;
+import com.google.cloud.speech.v2.BatchRecognizeFileResult;
+import com.google.cloud.speech.v2.BatchRecognizeRequest;
+import com.google.cloud.speech.v2.BatchRecognizeResponse;
+import com.google.cloud.speech.v2.InlineOutputConfig;
+import com.google.cloud.speech.v2.RecognitionConfig;
+import com.google.cloud.speech.v2.RecognitionOutputConfig;
+import com.google.cloud.speech.v2.SpeechClient;
+import com.google.cloud.speech.v2.SpeechRecognitionResult;
+import com.google.cloud.speech.v2.SpeechSettings;
+import com.google.longrunning.Operation;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transcribes a manifest of thousands of Cloud Storage audio files with batch recognition.
+ *
+ * <p>Files are grouped into requests by count and total size, and at most a fixed number of
+ * operations run at a time. All operations are polled with exponential backoff on one shared
+ * scheduler. Each transcript is appended to the output file as soon as its operation finishes,
+ * and submitted operations are recorded in a checkpoint file, so an interrupted run picks up the
+ * operations it started and skips the files that are already transcribed.
+ *
+ * <p>The manifest has one file per line, as {@code gs://bucket/file.wav} or, to batch by size,
+ * {@code gs://bucket/file.wav,sizeInBytes}. Each output line is {@code uri TAB status TAB
+ * transcript}, with a status of {@code OK} or {@code ERROR}; failed files are retried by the next
+ * run.
+ */
+public class BatchTranscriptionRunnerV2 {
+
+  private static final String OK = "OK";
+  private static final String ERROR = "ERROR";
+
+  private final SpeechClient speechClient;
+  private final String recognizerName;
+  private final RecognitionConfig recognitionConfig;
+  private int maxConcurrentOperations = 10;
+  private int maxFilesPerRequest = 15;
+  private long maxBytesPerRequest = 1L << 30;
+  private long initialPollMillis = 1000;
+  private long maxPollMillis = 60000;
+
+  public static void main(String[] args) throws Exception {
+    String projectId = "your_gcp_project_id";
+    String manifest = "path/to/manifest.txt";
+    String output = "path/to/transcripts.tsv";
+    String checkpoint = "path/to/checkpoint.txt";
+    batchTranscribe(projectId, manifest, output, checkpoint);
+  }
+
+  public static void batchTranscribe(
+      String projectId, String manifest, String output, String checkpoint) throws Exception {
+    SpeechSettings speechSettings = SpeechSettings.newBuilder()
+        .setEndpoint("us-speech.googleapis.com:443")
+        .build();
+    try (SpeechClient speechClient = SpeechClient.create(speechSettings)) {
+      String recognizerName =
+          String.format("projects/%s/locations/us/recognizers/_", projectId);
+      RecognitionConfig recognitionConfig = RecognitionConfig.newBuilder()
+          .setModel("chirp_3")
+          .addLanguageCodes("en-US")
+          .setAutoDecodingConfig(AutoDetectDecodingConfig.newBuilder().build())
+          .build();
+
+      int transcribed = new BatchTranscriptionRunnerV2(
+              speechClient, recognizerName, recognitionConfig)
+          .withMaxConcurrentOperations(20)
+          .run(Paths.get(manifest), Paths.get(output), Paths.get(checkpoint));
+      System.out.printf("Transcribed %d files.%n", transcribed);
+    }
+  }
+
+  public BatchTranscriptionRunnerV2(
+      SpeechClient speechClient, String recognizerName, RecognitionConfig recognitionConfig) {
+    this.speechClient = speechClient;
+    this.recognizerName = recognizerName;
+    this.recognitionConfig = recognitionConfig;
+  }
+
+  /** Sets how many batch operations may run at the same time. */
+  public BatchTranscriptionRunnerV2 withMaxConcurrentOperations(int maxConcurrentOperations) {
+    this.maxConcurrentOperations = maxConcurrentOperations;
+    return this;
+  }
+
+  /** Sets the most files, and the most audio bytes, that one request may hold. */
+  public BatchTranscriptionRunnerV2 withRequestLimits(int maxFiles, long maxBytes) {
+    this.maxFilesPerRequest = maxFiles;
+    this.maxBytesPerRequest = maxBytes;
+    return this;
+  }
+
+  /** Sets the first polling delay, which doubles after every poll up to {@code maxMillis}. */
+  public BatchTranscriptionRunnerV2 withPollingBackoff(long initialMillis, long maxMillis) {
+    this.initialPollMillis = initialMillis;
+    this.maxPollMillis = maxMillis;
+    return this;
+  }
+
+  /** A file of the manifest. */
+  static class AudioFile {
+    final String uri;
+    final long sizeBytes;
+
+    AudioFile(String uri, long sizeBytes) {
+      this.uri = uri;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+
+  /**
+   * Transcribes the files of {@code manifest} that are not in {@code output} yet, and returns the
+   * number of files this run transcribed.
+   */
+  public int run(Path manifest, Path output, Path checkpoint)
+      throws IOException, InterruptedException {
+    Set<String> transcribed = readTranscribed(output);
+    Map<String, List<String>> pending = readPendingOperations(checkpoint);
+    Set<String> inFlight = new HashSet<>();
+    pending.values().forEach(inFlight::addAll);
+
+    List<AudioFile> files = new ArrayList<>();
+    for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      String uri = fields[0].trim();
+      if (!transcribed.contains(uri) && !inFlight.contains(uri)) {
+        files.add(new AudioFile(uri, fields.length > 1 ? Long.parseLong(fields[1].trim()) : 0));
+      }
+    }
+
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    Semaphore permits = new Semaphore(maxConcurrentOperations);
+    List<CompletableFuture<Integer>> operations = new ArrayList<>();
+    try (Sink sink = new Sink(output, checkpoint)) {
+      for (Map.Entry<String, List<String>> operation : pending.entrySet()) {
+        permits.acquire();
+        System.out.printf("Resuming operation %s%n", operation.getKey());
+        operations.add(poll(scheduler, permits, sink, operation.getKey(), operation.getValue()));
+      }
+      for (List<AudioFile> batch : batches(files)) {
+        // Blocks until one of the running operations finishes.
+        permits.acquire();
+        List<String> uris = new ArrayList<>();
+        BatchRecognizeRequest.Builder request = BatchRecognizeRequest.newBuilder()
+            .setRecognizer(recognizerName)
+            .setConfig(recognitionConfig)
+            .setRecognitionOutputConfig(RecognitionOutputConfig.newBuilder()
+                .setInlineResponseConfig(InlineOutputConfig.newBuilder().build())
+                .build());
+        for (AudioFile file : batch) {
+          uris.add(file.uri);
+          request.addFiles(BatchRecognizeFileMetadata.newBuilder().setUri(file.uri).build());
+        }
+        String name;
+        try {
+          name = speechClient.batchRecognizeCallable().call(request.build()).getName();
+        } catch (ApiException e) {
+          permits.release();
+          sink.writeErrors(uris, e.getMessage());
+          continue;
+        }
+        sink.writeSubmitted(name, uris);
+        operations.add(poll(scheduler, permits, sink, name, uris));
+      }
+
+      int count = 0;
+      for (CompletableFuture<Integer> operation : operations) {
+        count += operation.join();
+      }
+      return count;
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /** Groups the files into requests of at most the maximum file count and total size. */
+  List<List<AudioFile>> batches(List<AudioFile> files) {
+    List<List<AudioFile>> batches = new ArrayList<>();
+    List<AudioFile> batch = new ArrayList<>();
+    long batchBytes = 0;
+    for (AudioFile file : files) {
+      if (!batch.isEmpty() && (batch.size() >= maxFilesPerRequest
+          || batchBytes + file.sizeBytes > maxBytesPerRequest)) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchBytes = 0;
+      }
+      batch.add(file);
+      batchBytes += file.sizeBytes;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * Polls an operation until it is done, then writes its results and releases its permit. The
+   * returned future completes with the number of files transcribed.
+   */
+  private CompletableFuture<Integer> poll(ScheduledExecutorService scheduler, Semaphore permits,
+      Sink sink, String name, List<String> uris) {
+    CompletableFuture<Integer> result = new CompletableFuture<>();
+    result.whenComplete((count, t) -> permits.release());
+    scheduler.schedule(
+        new Poll(scheduler, sink, name, uris, result, initialPollMillis),
+        initialPollMillis, TimeUnit.MILLISECONDS);
+    return result;
+  }
+
+  private class Poll implements Runnable {
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final String name;
+    private final List<String> uris;
+    private final CompletableFuture<Integer> result;
+    private final long delayMillis;
+
+    Poll(ScheduledExecutorService scheduler, Sink sink, String name, List<String> uris,
+        CompletableFuture<Integer> result, long delayMillis) {
+      this.scheduler = scheduler;
+      this.sink = sink;
+      this.name = name;
+      this.uris = uris;
+      this.result = result;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void run() {
+      try {
+        Operation operation;
+        try {
+          operation = speechClient.getOperationsClient().getOperation(name);
+        } catch (ApiException e) {
+          if (!e.isRetryable()) {
+            // For example, the operation of an old checkpoint has expired.
+            result.complete(sink.writeFailed(name, uris, e.getMessage()));
+            return;
+          }
+          operation = null;
+        }
+        if (operation == null || !operation.getDone()) {
+          long nextDelayMillis = Math.min(maxPollMillis, delayMillis * 2);
+          scheduler.schedule(
+              new Poll(scheduler, sink, name, uris, result, nextDelayMillis),
+              delayMillis, TimeUnit.MILLISECONDS);
+          return;
+        }
+        result.complete(sink.writeResults(name, uris, operation));
+      } catch (RuntimeException | IOException e) {
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  private static Set<String> readTranscribed(Path output) throws IOException {
+    Set<String> transcribed = new HashSet<>();
+    if (Files.exists(output)) {
+      for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length >= 2 && fields[1].equals(OK)) {
+          transcribed.add(fields[0]);
+        }
+      }
+    }
+    return transcribed;
+  }
+
+  /** Returns the operations that the checkpoint has as submitted, but not as done. */
+  private static Map<String, List<String>> readPendingOperations(Path checkpoint)
+      throws IOException {
+    Map<String, List<String>> pending = new LinkedHashMap<>();
+    if (Files.exists(checkpoint)) {
+      for (String line : Files.readAllLines(checkpoint, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t");
+        if (fields[0].equals("submitted") && fields.length == 3) {
+          List<String> uris = new ArrayList<>();
+          for (String uri : fields[2].split(",")) {
+            uris.add(uri);
+          }
+          pending.put(fields[1], uris);
+        } else if (fields[0].equals("done") && fields.length == 2) {
+          pending.remove(fields[1]);
+        }
+      }
+    }
+    return pending;
+  }
+
+  /** Appends transcripts to the output, and operation states to the checkpoint. */
+  private static class Sink implements AutoCloseable {
+    private final BufferedWriter output;
+    private final BufferedWriter checkpoint;
+
+    Sink(Path output, Path checkpoint) throws IOException {
+      this.output = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      this.checkpoint = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    synchronized void writeSubmitted(String name, List<String> uris) throws IOException {
+      checkpoint.write("submitted\t" + name + "\t" + String.join(",", uris) + "\n");
+      checkpoint.flush();
+    }
+
+    synchronized void writeErrors(List<String> uris, String message) throws IOException {
+      for (String uri : uris) {
+        writeLine(uri, ERROR, message);
+      }
+      output.flush();
+    }
+
+    synchronized int writeFailed(String name, List<String> uris, String message)
+        throws IOException {
+      writeErrors(uris, message);
+      writeDone(name);
+      return 0;
+    }
+
+    /** Writes the results of a finished operation, and returns how many files succeeded. */
+    synchronized int writeResults(String name, List<String> uris, Operation operation)
+        throws IOException {
+      int transcribed = 0;
+      if (operation.hasError()) {
+        for (String uri : uris) {
+          writeLine(uri, ERROR, operation.getError().getMessage());
+        }
+      } else {
+        BatchRecognizeResponse response;
+        try {
+          response = operation.getResponse().unpack(BatchRecognizeResponse.class);
+        } catch (InvalidProtocolBufferException e) {
+          throw new UncheckedIOException(e);
+        }
+        for (String uri : uris) {
+          BatchRecognizeFileResult fileResult = response.getResultsMap().get(uri);
+          if (fileResult == null) {
+            writeLine(uri, ERROR, "No result");
+          } else if (fileResult.hasError() && fileResult.getError().getCode() != 0) {
+            writeLine(uri, ERROR, fileResult.getError().getMessage());
+          } else {
+            StringBuilder transcript = new StringBuilder();
+            for (SpeechRecognitionResult result : fileResult.getTranscript().getResultsList()) {
+              if (result.getAlternativesCount() > 0) {
+                if (transcript.length() > 0) {
+                  transcript.append(' ');
+                }
+                transcript.append(result.getAlternatives(0).getTranscript().trim());
+              }
+            }
+            writeLine(uri, OK, transcript.toString());
+            transcribed++;
+          }
+        }
+      }
+      // The transcripts must be safe on disk before the operation is marked as done.
+      output.flush();
+      writeDone(name);
+      return transcribed;
+    }
+
+    private void writeDone(String name) throws IOException {
+      checkpoint.write("done\t" + name + "\n");
+      checkpoint.flush();
+    }
+
+    private void writeLine(String uri, String status, String text) throws IOException {
+      output.write(uri + "\t" + status + "\t" + text.replaceAll("[\t\r\n]+", " ") + "\n");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      try {
+        output.close();
+      } finally {
+        checkpoint.close();
+      }
+    }
+  }
+}
@@ -30,17 +30,38 @@ import com.google.cloud.speech.v1p1beta1.StreamingRecognizeRequest;
 import com.google.cloud.speech.v1p1beta1.StreamingRecognizeResponse;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Duration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.DataLine.Info;
 import javax.sound.sampled.TargetDataLine;
 
+/**
+ * Transcribes audio streams of any length. A streaming recognize call is limited to about 5
+ * minutes, so the recognizer restarts the call before the limit and resends the audio that was
+ * not finalized yet.
+ *
+ * <p>The recognizer keeps no state of its own, so a single instance and {@link SpeechClient} can
+ * run many sessions at the same time, each on its own thread of a shared executor. Every session
+ * holds a fixed-size ring buffer of recent audio for the replay, so its memory does not grow with
+ * the length of the stream.
+ */
 public class InfiniteStreamRecognize {
 
   private static final int STREAMING_LIMIT = 290000; // ~5 minutes
@@ -49,22 +70,56 @@ public class InfiniteStreamRecognize {
   public static final String GREEN = "\033[0;32m";
   public static final String YELLOW = "\033[0;33m";
 
-  // Creating shared object
-  private static volatile BlockingQueue<byte[]> sharedQueue = new LinkedBlockingQueue<byte[]>();
-  private static TargetDataLine targetDataLine;
-  private static int BYTES_PER_BUFFER = 6400; // buffer size in bytes
-
-  private static int restartCounter = 0;
-  private static ArrayList<ByteString> audioInput = new ArrayList<ByteString>();
-  private static ArrayList<ByteString> lastAudioInput = new ArrayList<ByteString>();
-  private static int resultEndTimeInMS = 0;
-  private static int isFinalEndTime = 0;
-  private static int finalRequestEndTime = 0;
-  private static boolean newStream = true;
-  private static double bridgingOffset = 0;
-  private static boolean lastTranscriptWasFinal = false;
-  private static StreamController referenceToStreamController;
-  private static ByteString tempByteString;
+  private static final int BYTES_PER_BUFFER = 6400; // buffer size in bytes
+  private static final int REPLAY_LIMIT = 30000; // audio kept for the replay, in milliseconds
+  private static final int DRAIN_TIMEOUT = 2000; // wait for the results of a call, in milliseconds
+
+  /** Receives the transcripts of a session. */
+  public interface TranscriptListener {
+    /**
+     * Called for every interim and final result, with the end time of the result measured from
+     * the start of the session's audio.
+     */
+    void onTranscript(long endTimeMillis, SpeechRecognitionAlternative alternative,
+        boolean isFinal);
+  }
+
+  private final SpeechClient client;
+  private final StreamingRecognitionConfig streamingConfig;
+  private final int bytesPerFrame;
+  private final int bytesPerSecond;
+  private final long streamingLimitMillis;
+  private final int replayLimitMillis;
+
+  /**
+   * Creates a recognizer for LINEAR16 or MULAW audio described by {@code config}, restarting the
+   * stream after {@code streamingLimitMillis} of wall clock or audio time, and replaying at most
+   * {@code replayLimitMillis} of unfinalized audio.
+   */
+  public InfiniteStreamRecognize(SpeechClient client, RecognitionConfig config,
+      long streamingLimitMillis, int replayLimitMillis) {
+    int bytesPerSample;
+    switch (config.getEncoding()) {
+      case LINEAR16:
+        bytesPerSample = 2;
+        break;
+      case MULAW:
+        bytesPerSample = 1;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported encoding: " + config.getEncoding());
+    }
+    this.client = client;
+    this.streamingConfig =
+        StreamingRecognitionConfig.newBuilder()
+            .setConfig(config)
+            .setInterimResults(true)
+            .build();
+    this.bytesPerFrame = Math.max(1, config.getAudioChannelCount()) * bytesPerSample;
+    this.bytesPerSecond = config.getSampleRateHertz() * bytesPerFrame;
+    this.streamingLimitMillis = streamingLimitMillis;
+    this.replayLimitMillis = replayLimitMillis;
+  }
 
   public static void main(String... args) {
     InfiniteStreamRecognizeOptions options = InfiniteStreamRecognizeOptions.fromFlags(args);
@@ -75,7 +130,11 @@ public class InfiniteStreamRecognize {
     }
 
     try {
-      infiniteStreamingRecognize(options.langCode);
+      if (options.audioFiles.isEmpty()) {
+        infiniteStreamingRecognize(options.langCode);
+      } else {
+        infiniteStreamingRecognize(options.langCode, options.audioFiles);
+      }
     } catch (Exception e) {
       System.out.println("Exception caught: " + e);
     }
@@ -93,208 +152,306 @@ public class InfiniteStreamRecognize {
                 - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(millis))));
   }
 
+  private static RecognitionConfig recognitionConfig(String languageCode) {
+    return RecognitionConfig.newBuilder()
+        .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+        .setLanguageCode(languageCode)
+        .setSampleRateHertz(16000)
+        .build();
+  }
+
   /** Performs infinite streaming speech recognition */
   public static void infiniteStreamingRecognize(String languageCode) throws Exception {
+    // SampleRate:16000Hz, SampleSizeInBits: 16, Number of channels: 1, Signed: true,
+    // bigEndian: false
+    AudioFormat audioFormat = new AudioFormat(16000, 16, 1, true, false);
+    DataLine.Info targetInfo =
+        new Info(
+            TargetDataLine.class,
+            audioFormat); // Set the system information to read from the microphone audio stream
+
+    if (!AudioSystem.isLineSupported(targetInfo)) {
+      System.out.println("Microphone not supported");
+      System.exit(0);
+    }
+    // Target data line captures the audio stream the microphone produces.
+    TargetDataLine targetDataLine = (TargetDataLine) AudioSystem.getLine(targetInfo);
+    targetDataLine.open(audioFormat);
+    targetDataLine.start();
+
+    try (SpeechClient client = SpeechClient.create();
+        InputStream audio = new AudioInputStream(targetDataLine)) {
+      InfiniteStreamRecognize recognizer = new InfiniteStreamRecognize(
+          client, recognitionConfig(languageCode), STREAMING_LIMIT, REPLAY_LIMIT);
+      System.out.println(YELLOW);
+      System.out.println("Start speaking...Press Ctrl-C to stop");
+      recognizer.recognize(audio, InfiniteStreamRecognize::printTranscript);
+    }
+  }
 
-    // Microphone Input buffering
-    class MicBuffer implements Runnable {
-
-      @Override
-      public void run() {
-        System.out.println(YELLOW);
-        System.out.println("Start speaking...Press Ctrl-C to stop");
-        targetDataLine.start();
-        byte[] data = new byte[BYTES_PER_BUFFER];
-        while (targetDataLine.isOpen()) {
-          try {
-            int numBytesRead = targetDataLine.read(data, 0, data.length);
-            if ((numBytesRead <= 0) && (targetDataLine.isOpen())) {
-              continue;
-            }
-            sharedQueue.put(data.clone());
-          } catch (InterruptedException e) {
-            System.out.println("Microphone input buffering interrupted : " + e.getMessage());
+  /**
+   * Transcribes raw LINEAR16 files at 16000 Hz, one session per file, all sessions sharing one
+   * client and executor.
+   */
+  public static void infiniteStreamingRecognize(String languageCode, List<String> audioFiles)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(audioFiles.size());
+    try (SpeechClient client = SpeechClient.create()) {
+      InfiniteStreamRecognize recognizer = new InfiniteStreamRecognize(
+          client, recognitionConfig(languageCode), STREAMING_LIMIT, REPLAY_LIMIT);
+      List<Future<?>> sessions = new ArrayList<>();
+      for (String audioFile : audioFiles) {
+        sessions.add(executor.submit(() -> {
+          try (InputStream audio = Files.newInputStream(Paths.get(audioFile))) {
+            recognizer.recognize(audio, (endTimeMillis, alternative, isFinal) -> {
+              if (isFinal) {
+                System.out.printf("%s %s %s [confidence: %.2f]\n", audioFile,
+                    convertMillisToDate(endTimeMillis), alternative.getTranscript(),
+                    alternative.getConfidence());
+              }
+            });
           }
+          return null;
+        }));
+      }
+      for (Future<?> session : sessions) {
+        session.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void printTranscript(
+      long endTimeMillis, SpeechRecognitionAlternative alternative, boolean isFinal) {
+    if (isFinal) {
+      System.out.print(GREEN);
+      System.out.print("\033[2K\r");
+      System.out.printf(
+          "%s: %s [confidence: %.2f]\n",
+          convertMillisToDate(endTimeMillis),
+          alternative.getTranscript(),
+          alternative.getConfidence());
+    } else {
+      System.out.print(RED);
+      System.out.print("\033[2K\r");
+      System.out.printf("%s: %s", convertMillisToDate(endTimeMillis), alternative.getTranscript());
+    }
+  }
+
+  /**
+   * Streams {@code audio} until it ends, restarting the streaming call as needed, and returns
+   * once the results of the last call are delivered. Blocks the calling thread.
+   */
+  public void recognize(InputStream audio, TranscriptListener listener) throws IOException {
+    new Session(listener).run(audio);
+  }
+
+  private long bytesToMillis(long bytes) {
+    return bytes * 1000 / bytesPerSecond;
+  }
+
+  private long millisToBytes(long millis) {
+    // Keep whole frames, so the replay never starts in the middle of a sample.
+    long bytes = millis * bytesPerSecond / 1000;
+    return bytes - bytes % bytesPerFrame;
+  }
+
+  /** The state of one audio stream, which spans any number of streaming calls. */
+  private class Session {
+    private final TranscriptListener listener;
+    private final AudioRing ring;
+    private final byte[] buffer = new byte[BYTES_PER_BUFFER];
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    // End of the finalized audio, as an offset into the whole session's audio.
+    private volatile long finalizedOffset = 0;
+    private long readOffset = 0;
+    private Call call;
+
+    Session(TranscriptListener listener) {
+      this.listener = listener;
+      this.ring = new AudioRing((int) millisToBytes(replayLimitMillis));
+    }
+
+    void run(InputStream audio) throws IOException {
+      call = new Call(0);
+      int numBytesRead;
+      while ((numBytesRead = audio.read(buffer)) >= 0) {
+        checkError();
+        if (numBytesRead == 0) {
+          continue;
         }
+        // Restart only when there is more audio, so the last call is never empty.
+        if (call.expired()) {
+          restart();
+        }
+        ring.write(buffer, 0, numBytesRead);
+        readOffset += numBytesRead;
+        call.send(ByteString.copyFrom(buffer, 0, numBytesRead));
       }
+      call.finish();
+      checkError();
     }
 
-    // Creating microphone input buffer thread
-    MicBuffer micrunnable = new MicBuffer();
-    Thread micThread = new Thread(micrunnable);
-    ResponseObserver<StreamingRecognizeResponse> responseObserver = null;
-    try (SpeechClient client = SpeechClient.create()) {
-      ClientStream<StreamingRecognizeRequest> clientStream;
-      responseObserver =
-          new ResponseObserver<StreamingRecognizeResponse>() {
-
-            ArrayList<StreamingRecognizeResponse> responses = new ArrayList<>();
-
-            public void onStart(StreamController controller) {
-              referenceToStreamController = controller;
-            }
-
-            public void onResponse(StreamingRecognizeResponse response) {
-              responses.add(response);
-              StreamingRecognitionResult result = response.getResultsList().get(0);
-              Duration resultEndTime = result.getResultEndTime();
-              resultEndTimeInMS =
-                  (int)
-                      ((resultEndTime.getSeconds() * 1000) + (resultEndTime.getNanos() / 1000000));
-              double correctedTime =
-                  resultEndTimeInMS - bridgingOffset + (STREAMING_LIMIT * restartCounter);
-
-              SpeechRecognitionAlternative alternative = result.getAlternativesList().get(0);
-              if (result.getIsFinal()) {
-                System.out.print(GREEN);
-                System.out.print("\033[2K\r");
-                System.out.printf(
-                    "%s: %s [confidence: %.2f]\n",
-                    convertMillisToDate(correctedTime),
-                    alternative.getTranscript(),
-                    alternative.getConfidence());
-                isFinalEndTime = resultEndTimeInMS;
-                lastTranscriptWasFinal = true;
-              } else {
-                System.out.print(RED);
-                System.out.print("\033[2K\r");
-                System.out.printf(
-                    "%s: %s", convertMillisToDate(correctedTime), alternative.getTranscript());
-                lastTranscriptWasFinal = false;
-              }
-            }
-
-            public void onComplete() {}
-
-            public void onError(Throwable t) {}
-          };
-      clientStream = client.streamingRecognizeCallable().splitCall(responseObserver);
-
-      RecognitionConfig recognitionConfig =
-          RecognitionConfig.newBuilder()
-              .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-              .setLanguageCode(languageCode)
-              .setSampleRateHertz(16000)
-              .build();
-
-      StreamingRecognitionConfig streamingRecognitionConfig =
-          StreamingRecognitionConfig.newBuilder()
-              .setConfig(recognitionConfig)
-              .setInterimResults(true)
-              .build();
-
-      StreamingRecognizeRequest request =
-          StreamingRecognizeRequest.newBuilder()
-              .setStreamingConfig(streamingRecognitionConfig)
-              .build(); // The first request in a streaming call has to be a config
-
-      clientStream.send(request);
-
-      try {
-        // SampleRate:16000Hz, SampleSizeInBits: 16, Number of channels: 1, Signed: true,
-        // bigEndian: false
-        AudioFormat audioFormat = new AudioFormat(16000, 16, 1, true, false);
-        DataLine.Info targetInfo =
-            new Info(
-                TargetDataLine.class,
-                audioFormat); // Set the system information to read from the microphone audio
-        // stream
-
-        if (!AudioSystem.isLineSupported(targetInfo)) {
-          System.out.println("Microphone not supported");
-          System.exit(0);
+    /**
+     * Closes the current call, giving it a moment to return its last results, and starts a new one
+     * with the audio that is not finalized yet, or as much of it as the ring still holds.
+     */
+    private void restart() {
+      call.drain();
+      long replayOffset = Math.max(finalizedOffset, ring.oldestOffset());
+      call = new Call(replayOffset);
+      ring.forEachChunk(replayOffset, BYTES_PER_BUFFER, call::send);
+    }
+
+    private void checkError() throws IOException {
+      Throwable t = error.get();
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t != null) {
+        throw new IOException(t);
+      }
+    }
+
+    /** A single streaming call, and the observer of its responses. */
+    private class Call implements ResponseObserver<StreamingRecognizeResponse> {
+      // Offset of the first audio byte sent on this call.
+      private final long startOffset;
+      private final long startTime = System.currentTimeMillis();
+      private final CountDownLatch done = new CountDownLatch(1);
+      private final ClientStream<StreamingRecognizeRequest> stream;
+      private volatile StreamController controller;
+      private volatile boolean cancelled = false;
+
+      Call(long startOffset) {
+        this.startOffset = startOffset;
+        this.stream = client.streamingRecognizeCallable().splitCall(this);
+        // The first request in a streaming call has to be a config
+        stream.send(
+            StreamingRecognizeRequest.newBuilder().setStreamingConfig(streamingConfig).build());
+      }
+
+      void send(ByteString audio) {
+        stream.send(StreamingRecognizeRequest.newBuilder().setAudioContent(audio).build());
+      }
+
+      boolean expired() {
+        return System.currentTimeMillis() - startTime >= streamingLimitMillis
+            || bytesToMillis(readOffset - startOffset) >= streamingLimitMillis;
+      }
+
+      void cancel() {
+        cancelled = true;
+        if (controller != null) {
+          controller.cancel(); // remove Observer
         }
-        // Target data line captures the audio stream the microphone produces.
-        targetDataLine = (TargetDataLine) AudioSystem.getLine(targetInfo);
-        targetDataLine.open(audioFormat);
-        micThread.start();
-
-        long startTime = System.currentTimeMillis();
-
-        while (true) {
-
-          long estimatedTime = System.currentTimeMillis() - startTime;
-
-          if (estimatedTime >= STREAMING_LIMIT) {
-
-            clientStream.closeSend();
-            referenceToStreamController.cancel(); // remove Observer
-
-            if (resultEndTimeInMS > 0) {
-              finalRequestEndTime = isFinalEndTime;
-            }
-            resultEndTimeInMS = 0;
-
-            lastAudioInput = null;
-            lastAudioInput = audioInput;
-            audioInput = new ArrayList<ByteString>();
-
-            restartCounter++;
-
-            if (!lastTranscriptWasFinal) {
-              System.out.print('\n');
-            }
-
-            newStream = true;
-
-            clientStream = client.streamingRecognizeCallable().splitCall(responseObserver);
-
-            request =
-                StreamingRecognizeRequest.newBuilder()
-                    .setStreamingConfig(streamingRecognitionConfig)
-                    .build();
-
-            System.out.println(YELLOW);
-            System.out.printf("%d: RESTARTING REQUEST\n", restartCounter * STREAMING_LIMIT);
-
-            startTime = System.currentTimeMillis();
-
-          } else {
-
-            if ((newStream) && (lastAudioInput.size() > 0)) {
-              // if this is the first audio from a new request
-              // calculate amount of unfinalized audio from last request
-              // resend the audio to the speech client before incoming audio
-              double chunkTime = STREAMING_LIMIT / lastAudioInput.size();
-              // ms length of each chunk in previous request audio arrayList
-              if (chunkTime != 0) {
-                if (bridgingOffset < 0) {
-                  // bridging Offset accounts for time of resent audio
-                  // calculated from last request
-                  bridgingOffset = 0;
-                }
-                if (bridgingOffset > finalRequestEndTime) {
-                  bridgingOffset = finalRequestEndTime;
-                }
-                int chunksFromMs =
-                    (int) Math.floor((finalRequestEndTime - bridgingOffset) / chunkTime);
-                // chunks from MS is number of chunks to resend
-                bridgingOffset =
-                    (int) Math.floor((lastAudioInput.size() - chunksFromMs) * chunkTime);
-                // set bridging offset for next request
-                for (int i = chunksFromMs; i < lastAudioInput.size(); i++) {
-                  request =
-                      StreamingRecognizeRequest.newBuilder()
-                          .setAudioContent(lastAudioInput.get(i))
-                          .build();
-                  clientStream.send(request);
-                }
-              }
-              newStream = false;
-            }
+      }
 
-            tempByteString = ByteString.copyFrom(sharedQueue.take());
+      /** Half-closes the call and waits a bounded time for its results, then cancels it. */
+      void drain() {
+        stream.closeSend();
+        try {
+          done.await(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        cancel();
+      }
 
-            request =
-                StreamingRecognizeRequest.newBuilder().setAudioContent(tempByteString).build();
+      void finish() {
+        stream.closeSend();
+        try {
+          done.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          cancel();
+        }
+      }
 
-            audioInput.add(tempByteString);
-          }
+      @Override
+      public void onStart(StreamController controller) {
+        this.controller = controller;
+      }
 
-          clientStream.send(request);
+      @Override
+      public void onResponse(StreamingRecognizeResponse response) {
+        if (cancelled || response.getResultsCount() == 0) {
+          return;
         }
-      } catch (Exception e) {
-        System.out.println(e);
+        StreamingRecognitionResult result = response.getResultsList().get(0);
+        Duration resultEndTime = result.getResultEndTime();
+        long resultEndTimeInMs = resultEndTime.getSeconds() * 1000
+            + resultEndTime.getNanos() / 1000000;
+        long endOffset = startOffset + millisToBytes(resultEndTimeInMs);
+        if (result.getIsFinal()) {
+          finalizedOffset = Math.max(finalizedOffset, endOffset);
+        }
+        listener.onTranscript(
+            bytesToMillis(endOffset), result.getAlternativesList().get(0), result.getIsFinal());
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        if (!cancelled) {
+          error.compareAndSet(null, t);
+        }
+        done.countDown();
+      }
+
+      @Override
+      public void onComplete() {
+        done.countDown();
+      }
+    }
+  }
+
+  /**
+   * A fixed-size ring of the most recent audio bytes, in a direct buffer. Positions are offsets
+   * into the whole session's audio.
+   */
+  static class AudioRing {
+    private final ByteBuffer buffer;
+    private long written = 0;
+
+    AudioRing(int capacity) {
+      this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    void write(byte[] data, int offset, int length) {
+      int capacity = buffer.capacity();
+      if (length > capacity) {
+        offset += length - capacity;
+        written += length - capacity;
+        length = capacity;
+      }
+      int position = (int) (written % capacity);
+      int first = Math.min(length, capacity - position);
+      buffer.position(position);
+      buffer.put(data, offset, first);
+      buffer.position(0);
+      buffer.put(data, offset + first, length - first);
+      written += length;
+    }
+
+    /** Returns the offset of the oldest byte still in the ring. */
+    long oldestOffset() {
+      return Math.max(0, written - buffer.capacity());
+    }
+
+    /** Passes the bytes from {@code from} to the end, in chunks of at most {@code chunkSize}. */
+    void forEachChunk(long from, int chunkSize, Consumer<ByteString> consumer) {
+      if (from < oldestOffset() || from > written) {
+        throw new IllegalArgumentException("Offset " + from + " is not in the ring");
+      }
+      int capacity = buffer.capacity();
+      while (from < written) {
+        int position = (int) (from % capacity);
+        int length = (int) Math.min(Math.min(chunkSize, written - from), capacity - position);
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(position + length).position(position);
+        consumer.accept(ByteString.copyFrom(chunk));
+        from += length;
       }
     }
   }
@@ -16,6 +16,9 @@
 
 package com.example.speech;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -25,6 +28,7 @@ import org.apache.commons.cli.ParseException;
 
 public class InfiniteStreamRecognizeOptions {
   String langCode = "en-US"; // by default english US
+  List<String> audioFiles = new ArrayList<>(); // by default the microphone
 
   /** Construct an InfiniteStreamRecognizeOptions class from command line flags. */
   public static InfiniteStreamRecognizeOptions fromFlags(String[] args) {
@@ -36,6 +40,13 @@ public class InfiniteStreamRecognizeOptions {
             .hasArg()
             .desc("Language code")
             .build());
+    options.addOption(
+        Option.builder()
+            .type(String.class)
+            .longOpt("audio_files")
+            .hasArg()
+            .desc("Comma separated raw LINEAR16 16kHz files to transcribe concurrently")
+            .build());
 
     CommandLineParser parser = new DefaultParser();
     CommandLine commandLine;
@@ -46,6 +57,9 @@ public class InfiniteStreamRecognizeOptions {
       if (commandLine.hasOption("lang_code")) {
         res.langCode = commandLine.getOptionValue("lang_code");
       }
+      if (commandLine.hasOption("audio_files")) {
+        res.audioFiles = Arrays.asList(commandLine.getOptionValue("audio_files").split(","));
+      }
       return res;
     } catch (ParseException e) {
       System.err.println(e.getMessage());
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import com.google.api.gax.rpc.ClientStream;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.StreamController;
+import com.google.cloud.speech.v1.RecognitionConfig;
+import com.google.cloud.speech.v1.RecognitionConfig.AudioEncoding;
+import com.google.cloud.speech.v1.SpeechClient;
+import com.google.cloud.speech.v1.StreamingRecognitionConfig;
+import com.google.cloud.speech.v1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1.StreamingRecognizeResponse;
+import com.google.protobuf.Duration;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Streams a large local LINEAR16 file to Speech-to-Text with {@link AudioFileSource}, which
+ * reads the file a chunk at a time instead of loading it into memory, and paces the chunks to
+ * real time as a live microphone would.
+ *
+ * <p>A streaming call accepts about five minutes of audio, so, as in {@link
+ * InfiniteStreamRecognize}, the sample starts a new call before the limit. The new call starts
+ * at the end of the last final result, so words cut off by the restart are sent again. The file
+ * can be read from any offset, so unlike a live stream there is no need to buffer that audio.
+ *
+ * <p>Use mvn to run the example:
+ * mvn compile exec:java -Dexec.mainClass="com.example.speech.StreamRecognizeLargeFile" \
+ *     -Dexec.args="/path/to/audio/file.wav"
+ */
+public class StreamRecognizeLargeFile {
+
+  private static final int STREAMING_LIMIT = 290000; // ~5 minutes
+  private static final int REPLAY_LIMIT = 30000; // audio sent again after a restart, at most
+
+  public static void main(String... args) throws Exception {
+    String filePath = args.length > 0 ? args[0] : "path/to/your/audio.wav";
+    streamingRecognizeLargeFile(filePath);
+  }
+
+  /** Performs streaming speech recognition on a WAV, or raw 16 kHz LINEAR16, file. */
+  public static void streamingRecognizeLargeFile(String filePath) throws Exception {
+    try (SpeechClient speech = SpeechClient.create();
+        AudioFileSource source = AudioFileSource.open(Paths.get(filePath)).withSpeed(1)) {
+      RecognitionConfig recConfig =
+          RecognitionConfig.newBuilder()
+              .setEncoding(AudioEncoding.LINEAR16)
+              .setLanguageCode("en-US")
+              .setSampleRateHertz(source.getSampleRateHertz())
+              .setAudioChannelCount(source.getBytesPerFrame() / 2)
+              .build();
+      StreamingRecognitionConfig config =
+          StreamingRecognitionConfig.newBuilder().setConfig(recConfig).build();
+
+      long bytesPerSecond = (long) source.getSampleRateHertz() * source.getBytesPerFrame();
+      long limitBytes = STREAMING_LIMIT * bytesPerSecond / 1000;
+      long replayBytes = REPLAY_LIMIT * bytesPerSecond / 1000;
+      long offset = 0;
+      while (true) {
+        long end = Math.min(offset + limitBytes, source.getAudioBytes());
+        Call call = new Call(speech, config, offset, bytesPerSecond);
+
+        // The source waits while the stream is not ready, so unsent chunks do not pile up in
+        // memory. Each request after the config only contains one chunk of audio.
+        source.sendTo(call.stream, call.ready,
+            chunk -> StreamingRecognizeRequest.newBuilder().setAudioContent(chunk).build(),
+            offset, end);
+        call.finish();
+        if (call.error != null) {
+          System.out.println("Error: " + call.error);
+          return;
+        }
+        if (end >= source.getAudioBytes()) {
+          return;
+        }
+        offset = Math.max(call.finalizedOffset, end - replayBytes);
+      }
+    }
+  }
+
+  /** A single streaming call over part of the file, and the observer of its responses. */
+  private static class Call implements ResponseObserver<StreamingRecognizeResponse> {
+    // Offset of the first audio byte sent on this call.
+    private final long startOffset;
+    private final long bytesPerSecond;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AudioFileSource.SendReadyObserver<StreamingRecognizeRequest> ready =
+        new AudioFileSource.SendReadyObserver<>();
+    private final ClientStream<StreamingRecognizeRequest> stream;
+    // End of the finalized audio, as an offset into the file's audio.
+    private volatile long finalizedOffset;
+    private volatile Throwable error;
+
+    Call(SpeechClient speech, StreamingRecognitionConfig config, long startOffset,
+        long bytesPerSecond) {
+      this.startOffset = startOffset;
+      this.bytesPerSecond = bytesPerSecond;
+      this.finalizedOffset = startOffset;
+      // Like splitCall, but with an observer that wakes the sender when the stream is ready.
+      this.stream = speech.streamingRecognizeCallable().internalCall(this, ready, null);
+      // The first request must only contain the audio configuration.
+      stream.send(StreamingRecognizeRequest.newBuilder().setStreamingConfig(config).build());
+    }
+
+    /** Half-closes the call and waits for its last results. */
+    void finish() throws InterruptedException {
+      stream.closeSend();
+      finished.await();
+    }
+
+    @Override
+    public void onStart(StreamController controller) {}
+
+    @Override
+    public void onResponse(StreamingRecognizeResponse response) {
+      for (StreamingRecognitionResult result : response.getResultsList()) {
+        if (result.getIsFinal() && result.getAlternativesCount() > 0) {
+          System.out.printf("Transcript : %s\n", result.getAlternatives(0).getTranscript());
+          Duration endTime = result.getResultEndTime();
+          long endMillis = endTime.getSeconds() * 1000 + endTime.getNanos() / 1000000;
+          finalizedOffset = Math.max(finalizedOffset,
+              startOffset + endMillis * bytesPerSecond / 1000);
+        }
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      ready.close();
+      finished.countDown();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      ready.close();
+      finished.countDown();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import com.google.protobuf.ByteString;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares reading an hour-long WAV file with {@code Files.readAllBytes} to streaming it with
+ * {@link AudioFileSource}, by time and by the heap bytes allocated. Both allocate the chunks that
+ * would be sent, but only {@code readAllBytes} needs the whole file on the heap at once; run with
+ * a small heap, such as {@code -Xmx64m}, to see it fail where {@link AudioFileSource} does not.
+ *
+ * <p>Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.speech.AudioFileSourceBenchmark -Dexec.args="60"
+ */
+public class AudioFileSourceBenchmark {
+
+  public static void main(String... args) throws Exception {
+    int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+    Path path = Files.createTempFile("benchmark", ".wav");
+    try {
+      writeWav(path, minutes);
+      System.out.printf("%d minute WAV file, %d bytes%n", minutes, Files.size(path));
+      for (int run = 0; run < 3; run++) {
+        measure("readAllBytes", () -> {
+          byte[] data = Files.readAllBytes(path);
+          long sent = 0;
+          for (int i = 0; i < data.length; i += 3200) {
+            sent += ByteString.copyFrom(data, i, Math.min(3200, data.length - i)).size();
+          }
+          return sent;
+        });
+        measure("AudioFileSource", () -> {
+          AtomicLong sent = new AtomicLong();
+          try (AudioFileSource source = AudioFileSource.open(path)) {
+            source.forEachChunk(chunk -> sent.addAndGet(chunk.size()));
+          }
+          return sent.get();
+        });
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  interface Reader {
+    long read() throws Exception;
+  }
+
+  private static void measure(String name, Reader reader) throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    long bytes;
+    try {
+      bytes = reader.read();
+    } catch (OutOfMemoryError e) {
+      System.out.printf("%-16s out of memory%n", name);
+      return;
+    }
+    long millis = (System.nanoTime() - start) / 1000000;
+    long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+    System.out.printf("%-16s %6d ms %8.1f MB/s %8d MB allocated%n",
+        name, millis, bytes / 1e3 / Math.max(1, millis), allocated >> 20);
+  }
+
+  /** Writes a 16-bit, 16000 Hz, mono WAV file of a sine tone, a megabyte at a time. */
+  private static void writeWav(Path path, int minutes) throws Exception {
+    long dataBytes = minutes * 60L * 16000 * 2;
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0x46464952).putInt((int) (dataBytes + 36)).putInt(0x45564157);
+    buffer.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 1)
+        .putInt(16000).putInt(32000).putShort((short) 2).putShort((short) 16);
+    buffer.putInt(0x61746164).putInt((int) dataBytes);
+    try (OutputStream out = Files.newOutputStream(path)) {
+      for (long sample = 0; sample < dataBytes / 2; sample++) {
+        if (!buffer.hasRemaining()) {
+          out.write(buffer.array(), 0, buffer.position());
+          buffer.clear();
+        }
+        buffer.putShort((short) (8000 * Math.sin(sample * 2 * Math.PI * 440 / 16000)));
+      }
+      out.write(buffer.array(), 0, buffer.position());
+    }
+  }
+}
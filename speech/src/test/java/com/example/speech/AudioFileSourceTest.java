@@ -0,0 +1,188 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.gax.rpc.ClientStream;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class AudioFileSourceTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Writes a WAV file with a LIST chunk before the data, like many recorders do. */
+  static void writeWav(Path path, int sampleRate, int channels, byte[] data) throws IOException {
+    ByteBuffer wav = ByteBuffer.allocate(12 + 8 + 16 + 8 + 4 + 8 + data.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    wav.putInt(0x46464952).putInt(wav.capacity() - 8).putInt(0x45564157);
+    wav.putInt(0x20746d66).putInt(16)
+        .putShort((short) 1)
+        .putShort((short) channels)
+        .putInt(sampleRate)
+        .putInt(sampleRate * channels * 2)
+        .putShort((short) (channels * 2))
+        .putShort((short) 16);
+    wav.putInt(0x5453494c).putInt(4).putInt(0); // "LIST"
+    wav.putInt(0x61746164).putInt(data.length).put(data);
+    Files.write(path, wav.array());
+  }
+
+  private static List<ByteString> chunks(AudioFileSource source) throws IOException {
+    List<ByteString> chunks = new ArrayList<>();
+    source.forEachChunk(chunks::add);
+    return chunks;
+  }
+
+  @Test
+  public void testReadsWavDataInFrameAlignedChunks() throws Exception {
+    byte[] data = new byte[4 * 8000 + 6];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    Path path = folder.getRoot().toPath().resolve("stereo.wav");
+    writeWav(path, 8000, 2, data);
+
+    try (AudioFileSource source = AudioFileSource.open(path).withChunkMillis(300)) {
+      assertThat(source.getSampleRateHertz()).isEqualTo(8000);
+      assertThat(source.getBytesPerFrame()).isEqualTo(4);
+      assertThat(source.getChunkBytes()).isEqualTo(9600);
+      // The trailing partial frame is dropped.
+      assertThat(source.getAudioBytes()).isEqualTo(32004);
+
+      List<ByteString> chunks = chunks(source);
+      assertThat(chunks).hasSize(4);
+      assertThat(chunks.get(3).size()).isEqualTo(32004 - 3 * 9600);
+      ByteString all = ByteString.EMPTY;
+      for (ByteString chunk : chunks) {
+        assertThat(chunk.size() % 4).isEqualTo(0);
+        all = all.concat(chunk);
+      }
+      assertThat(all).isEqualTo(ByteString.copyFrom(data, 0, 32004));
+    }
+  }
+
+  @Test
+  public void testReadsRawFiles() throws Exception {
+    Path path = Paths.get("resources/audio.raw");
+    try (AudioFileSource source = AudioFileSource.open(path)) {
+      assertThat(source.getChunkBytes()).isEqualTo(3200);
+      assertThat(ByteString.copyFrom(chunks(source)))
+          .isEqualTo(ByteString.copyFrom(Files.readAllBytes(path)));
+    }
+  }
+
+  @Test
+  public void testPacesToSpeed() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("one-second.wav");
+    writeWav(path, 16000, 1, new byte[32000]);
+
+    long start = System.nanoTime();
+    try (AudioFileSource source = AudioFileSource.open(path).withSpeed(4)) {
+      chunks(source);
+    }
+    long millis = (System.nanoTime() - start) / 1000000;
+    // The last 100ms chunk is sent at 900ms of audio time, which is 225ms at 4x.
+    assertThat(millis).isAtLeast(220L);
+    assertThat(millis).isLessThan(1000L);
+  }
+
+  /** A stream that only accepts a request after it was made ready. */
+  private static class GatedStream implements ClientStream<ByteString> {
+    final List<ByteString> sent = new ArrayList<>();
+    volatile boolean ready = false;
+
+    @Override
+    public void send(ByteString request) {
+      assertThat(ready).isTrue();
+      sent.add(request);
+      ready = false;
+    }
+
+    @Override
+    public void closeSendWithError(Throwable t) {}
+
+    @Override
+    public void closeSend() {}
+
+    @Override
+    public boolean isSendReady() {
+      return ready;
+    }
+  }
+
+  @Test
+  public void testSendToWaitsUntilTheStreamIsReady() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("one-second.wav");
+    byte[] data = new byte[32000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    writeWav(path, 16000, 1, data);
+    GatedStream stream = new GatedStream();
+    AudioFileSource.SendReadyObserver<ByteString> ready = new AudioFileSource.SendReadyObserver<>();
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    executor.scheduleWithFixedDelay(() -> {
+      stream.ready = true;
+      ready.onReady(stream);
+    }, 1, 1, TimeUnit.MILLISECONDS);
+
+    try (AudioFileSource source = AudioFileSource.open(path)) {
+      // Only the second quarter second, which spans parts of two chunks.
+      assertThat(source.sendTo(stream, ready, chunk -> chunk, 8000, 16001)).isTrue();
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(stream.sent).hasSize(3);
+    assertThat(ByteString.copyFrom(stream.sent))
+        .isEqualTo(ByteString.copyFrom(data, 8000, 8000));
+  }
+
+  @Test
+  public void testSendToStopsWhenClosed() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("one-second.wav");
+    writeWav(path, 16000, 1, new byte[32000]);
+    GatedStream stream = new GatedStream();
+    AudioFileSource.SendReadyObserver<ByteString> ready = new AudioFileSource.SendReadyObserver<>();
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    executor.schedule(ready::close, 50, TimeUnit.MILLISECONDS);
+
+    try (AudioFileSource source = AudioFileSource.open(path)) {
+      assertThat(source.sendTo(stream, ready, chunk -> chunk)).isFalse();
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(stream.sent).isEmpty();
+  }
+}
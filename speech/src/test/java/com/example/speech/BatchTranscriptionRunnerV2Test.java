@@ -0,0 +1,239 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.speech.v2.BatchRecognizeFileMetadata;
+import com.google.cloud.speech.v2.BatchRecognizeFileResult;
+import com.google.cloud.speech.v2.BatchRecognizeRequest;
+import com.google.cloud.speech.v2.BatchRecognizeResponse;
+import com.google.cloud.speech.v2.BatchRecognizeResults;
+import com.google.cloud.speech.v2.RecognitionConfig;
+import com.google.cloud.speech.v2.SpeechClient;
+import com.google.cloud.speech.v2.SpeechRecognitionAlternative;
+import com.google.cloud.speech.v2.SpeechRecognitionResult;
+import com.google.cloud.speech.v2.SpeechSettings;
+import com.google.longrunning.GetOperationRequest;
+import com.google.longrunning.Operation;
+import com.google.protobuf.Any;
+import com.google.rpc.Status;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BatchTranscriptionRunnerV2Test {
+
+  private static final MethodDescriptor<BatchRecognizeRequest, Operation> BATCH_RECOGNIZE =
+      MethodDescriptor.<BatchRecognizeRequest, Operation>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName("google.cloud.speech.v2.Speech/BatchRecognize")
+          .setRequestMarshaller(ProtoUtils.marshaller(BatchRecognizeRequest.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(Operation.getDefaultInstance()))
+          .build();
+
+  private static final MethodDescriptor<GetOperationRequest, Operation> GET_OPERATION =
+      MethodDescriptor.<GetOperationRequest, Operation>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName("google.longrunning.Operations/GetOperation")
+          .setRequestMarshaller(ProtoUtils.marshaller(GetOperationRequest.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(Operation.getDefaultInstance()))
+          .build();
+
+  // Every operation is done on its third poll.
+  private static final int POLLS_UNTIL_DONE = 3;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<BatchRecognizeRequest> requests =
+      Collections.synchronizedList(new ArrayList<>());
+  private final Map<String, BatchRecognizeRequest> operations = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private Server server;
+  private ManagedChannel channel;
+  private SpeechClient client;
+
+  private void batchRecognize(BatchRecognizeRequest request, StreamObserver<Operation> response) {
+    requests.add(request);
+    String name = "operations/" + requests.size();
+    operations.put(name, request);
+    polls.put(name, new AtomicInteger());
+    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    response.onNext(Operation.newBuilder().setName(name).build());
+    response.onCompleted();
+  }
+
+  /** Transcribes every file as its own name, and fails the files with "bad" in their name. */
+  private void getOperation(GetOperationRequest request, StreamObserver<Operation> response) {
+    BatchRecognizeRequest batch = operations.get(request.getName());
+    if (batch == null) {
+      response.onError(io.grpc.Status.NOT_FOUND.asRuntimeException());
+      return;
+    }
+    Operation.Builder operation = Operation.newBuilder().setName(request.getName());
+    if (polls.get(request.getName()).incrementAndGet() == POLLS_UNTIL_DONE) {
+      running.decrementAndGet();
+    }
+    if (polls.get(request.getName()).get() >= POLLS_UNTIL_DONE) {
+      BatchRecognizeResponse.Builder results = BatchRecognizeResponse.newBuilder();
+      for (BatchRecognizeFileMetadata file : batch.getFilesList()) {
+        BatchRecognizeFileResult.Builder result = BatchRecognizeFileResult.newBuilder();
+        if (file.getUri().contains("bad")) {
+          result.setError(Status.newBuilder().setCode(3).setMessage("Bad audio"));
+        } else {
+          result.setTranscript(BatchRecognizeResults.newBuilder()
+              .addResults(SpeechRecognitionResult.newBuilder()
+                  .addAlternatives(SpeechRecognitionAlternative.newBuilder()
+                      .setTranscript(file.getUri().substring(5)))));
+        }
+        results.putResults(file.getUri(), result.build());
+      }
+      operation.setDone(true).setResponse(Any.pack(results.build()));
+    }
+    response.onNext(operation.build());
+    response.onCompleted();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerServiceDefinition.builder("google.cloud.speech.v2.Speech")
+            .addMethod(BATCH_RECOGNIZE, ServerCalls.asyncUnaryCall(this::batchRecognize))
+            .build())
+        .addService(ServerServiceDefinition.builder("google.longrunning.Operations")
+            .addMethod(GET_OPERATION, ServerCalls.asyncUnaryCall(this::getOperation))
+            .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    client = SpeechClient.create(SpeechSettings.newBuilder()
+        .setTransportChannelProvider(
+            FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  private BatchTranscriptionRunnerV2 runner() {
+    return new BatchTranscriptionRunnerV2(client, "projects/p/locations/us/recognizers/_",
+        RecognitionConfig.getDefaultInstance())
+        .withMaxConcurrentOperations(3)
+        .withRequestLimits(4, 1000)
+        .withPollingBackoff(1, 8);
+  }
+
+  private Path manifest(int files) throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      lines.add(String.format("gs://b/%03d.wav,%d", i, i % 5 == 0 ? 600 : 100));
+    }
+    lines.add("gs://b/bad.wav");
+    return Files.write(folder.newFile("manifest.txt").toPath(), lines, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testTranscribesManifestWithBoundedConcurrency() throws Exception {
+    Path manifest = manifest(50);
+    Path output = folder.getRoot().toPath().resolve("out.tsv");
+    Path checkpoint = folder.getRoot().toPath().resolve("checkpoint.txt");
+
+    int transcribed = runner().run(manifest, output, checkpoint);
+
+    assertThat(transcribed).isEqualTo(50);
+    assertThat(maxRunning.get()).isAtMost(3);
+    for (BatchRecognizeRequest request : requests) {
+      assertThat(request.getFilesCount()).isAtMost(4);
+    }
+    // Files 0, 5, 10, ... are 600 bytes, so no request can hold two of them.
+    assertThat(requests.get(0).getFilesCount()).isEqualTo(4);
+    assertThat(requests.get(1).getFiles(0).getUri()).isEqualTo("gs://b/004.wav");
+    List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(51);
+    assertThat(lines).contains("gs://b/007.wav\tOK\tb/007.wav");
+    assertThat(lines).contains("gs://b/bad.wav\tERROR\tBad audio");
+  }
+
+  @Test
+  public void testResumesFromCheckpoint() throws Exception {
+    Path manifest = manifest(10);
+    Path output = folder.getRoot().toPath().resolve("out.tsv");
+    Path checkpoint = folder.getRoot().toPath().resolve("checkpoint.txt");
+    // A previous run transcribed file 0 and submitted files 1 and 2, then stopped.
+    Files.write(output, "gs://b/000.wav\tOK\tb/000.wav\n".getBytes(StandardCharsets.UTF_8));
+    operations.put("operations/old", BatchRecognizeRequest.newBuilder()
+        .addFiles(BatchRecognizeFileMetadata.newBuilder().setUri("gs://b/001.wav"))
+        .addFiles(BatchRecognizeFileMetadata.newBuilder().setUri("gs://b/002.wav"))
+        .build());
+    polls.put("operations/old", new AtomicInteger());
+    Files.write(checkpoint,
+        "submitted\toperations/old\tgs://b/001.wav,gs://b/002.wav\n"
+            .getBytes(StandardCharsets.UTF_8));
+
+    int transcribed = runner().run(manifest, output, checkpoint);
+
+    assertThat(transcribed).isEqualTo(9);
+    for (BatchRecognizeRequest request : requests) {
+      for (BatchRecognizeFileMetadata file : request.getFilesList()) {
+        assertThat(file.getUri()).isNoneOf("gs://b/000.wav", "gs://b/001.wav", "gs://b/002.wav");
+      }
+    }
+    List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(11);
+    assertThat(lines).contains("gs://b/002.wav\tOK\tb/002.wav");
+
+    // A third run only retries the file that failed.
+    requests.clear();
+    assertThat(runner().run(manifest, output, checkpoint)).isEqualTo(0);
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).getFiles(0).getUri()).isEqualTo("gs://b/bad.wav");
+  }
+}
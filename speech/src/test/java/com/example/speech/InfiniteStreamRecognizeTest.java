@@ -0,0 +1,245 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.speech;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.example.speech.InfiniteStreamRecognize.AudioRing;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.speech.v1p1beta1.RecognitionConfig;
+import com.google.cloud.speech.v1p1beta1.SpeechClient;
+import com.google.cloud.speech.v1p1beta1.SpeechRecognitionAlternative;
+import com.google.cloud.speech.v1p1beta1.SpeechSettings;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1p1beta1.StreamingRecognizeResponse;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Duration;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class InfiniteStreamRecognizeTest {
+
+  // 16 bytes per millisecond of LINEAR16 audio at 8000 Hz.
+  private static final int BYTES_PER_SECOND = 16000;
+
+  private static final MethodDescriptor<StreamingRecognizeRequest, StreamingRecognizeResponse>
+      STREAMING_RECOGNIZE =
+          MethodDescriptor.<StreamingRecognizeRequest, StreamingRecognizeResponse>newBuilder()
+              .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+              .setFullMethodName("google.cloud.speech.v1p1beta1.Speech/StreamingRecognize")
+              .setRequestMarshaller(
+                  ProtoUtils.marshaller(StreamingRecognizeRequest.getDefaultInstance()))
+              .setResponseMarshaller(
+                  ProtoUtils.marshaller(StreamingRecognizeResponse.getDefaultInstance()))
+              .build();
+
+  // The audio each call received, in the order the calls were made.
+  private final List<ByteString.Output> calls = Collections.synchronizedList(new ArrayList<>());
+  private Server server;
+  private ManagedChannel channel;
+  private SpeechClient client;
+
+  /**
+   * A fake Speech server that finalizes the audio of each call every full second, and returns
+   * interim results for the audio in between.
+   */
+  private StreamObserver<StreamingRecognizeRequest> fakeStreamingRecognize(
+      StreamObserver<StreamingRecognizeResponse> responses) {
+    ByteString.Output audio = ByteString.newOutput();
+    calls.add(audio);
+    return new StreamObserver<StreamingRecognizeRequest>() {
+      @Override
+      public void onNext(StreamingRecognizeRequest request) {
+        if (!request.hasStreamingConfig()) {
+          long before = audio.size() * 1000L / BYTES_PER_SECOND;
+          byte[] content = request.getAudioContent().toByteArray();
+          audio.write(content, 0, content.length);
+          long after = audio.size() * 1000L / BYTES_PER_SECOND;
+          boolean isFinal = after / 1000 > before / 1000;
+          long endMillis = isFinal ? after / 1000 * 1000 : after;
+          responses.onNext(StreamingRecognizeResponse.newBuilder()
+              .addResults(StreamingRecognitionResult.newBuilder()
+                  .setIsFinal(isFinal)
+                  .setResultEndTime(Duration.newBuilder()
+                      .setSeconds(endMillis / 1000)
+                      .setNanos((int) (endMillis % 1000) * 1000000))
+                  .addAlternatives(
+                      SpeechRecognitionAlternative.newBuilder().setTranscript("hello")))
+              .build());
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {}
+
+      @Override
+      public void onCompleted() {
+        responses.onCompleted();
+      }
+    };
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerServiceDefinition.builder("google.cloud.speech.v1p1beta1.Speech")
+            .addMethod(STREAMING_RECOGNIZE,
+                ServerCalls.asyncBidiStreamingCall(this::fakeStreamingRecognize))
+            .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    client = SpeechClient.create(SpeechSettings.newBuilder()
+        .setTransportChannelProvider(
+            FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  /** Returns audio in which every 4 bytes hold their own offset, so slices can be located. */
+  private static byte[] audio(int seconds) {
+    ByteBuffer audio = ByteBuffer.allocate(seconds * BYTES_PER_SECOND);
+    while (audio.hasRemaining()) {
+      audio.putInt(audio.position());
+    }
+    return audio.array();
+  }
+
+  @Test
+  public void testRestartsAndReplaysUnfinalizedAudio() throws Exception {
+    InfiniteStreamRecognize recognizer = new InfiniteStreamRecognize(client,
+        RecognitionConfig.newBuilder()
+            .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+            .setSampleRateHertz(8000)
+            .setLanguageCode("en-US")
+            .build(),
+        2500, 5000);
+    byte[] audio = audio(10);
+    List<Long> finalTimes = Collections.synchronizedList(new ArrayList<>());
+
+    recognizer.recognize(new ByteArrayInputStream(audio), (endTimeMillis, alternative, isFinal) -> {
+      if (isFinal) {
+        finalTimes.add(endTimeMillis);
+      }
+    });
+
+    assertThat(calls.size()).isGreaterThan(3);
+    int previousStart = -1;
+    int previousEnd = 0;
+    for (ByteString.Output call : calls) {
+      byte[] received = call.toByteString().toByteArray();
+      // Every call gets a contiguous slice of the audio that starts at a finalized second, and
+      // overlaps with the previous call by the audio that was not finalized yet.
+      int start = ByteBuffer.wrap(received).getInt();
+      assertThat(received).isEqualTo(Arrays.copyOfRange(audio, start, start + received.length));
+      assertThat(start).isAtLeast(previousStart + 1);
+      assertThat(start).isAtMost(previousEnd);
+      assertThat(start % BYTES_PER_SECOND).isEqualTo(0);
+      previousStart = start;
+      previousEnd = start + received.length;
+    }
+    assertThat(previousEnd).isEqualTo(audio.length);
+    // Final results are reported in session time, once for every second of audio.
+    assertThat(finalTimes).containsAtLeast(1000L, 5000L, 10000L).inOrder();
+    assertThat(finalTimes).isInOrder();
+  }
+
+  @Test
+  public void testRunsConcurrentSessions() throws Exception {
+    InfiniteStreamRecognize recognizer = new InfiniteStreamRecognize(client,
+        RecognitionConfig.newBuilder()
+            .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+            .setSampleRateHertz(8000)
+            .setLanguageCode("en-US")
+            .build(),
+        2500, 5000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Long>> sessions = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      sessions.add(executor.submit(() -> {
+        long[] lastFinal = new long[1];
+        recognizer.recognize(new ByteArrayInputStream(audio(6)), (endTimeMillis, alt, isFinal) -> {
+          if (isFinal) {
+            lastFinal[0] = endTimeMillis;
+          }
+        });
+        return lastFinal[0];
+      }));
+    }
+    for (Future<Long> session : sessions) {
+      assertThat(session.get()).isEqualTo(6000L);
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testAudioRingKeepsMostRecentBytes() {
+    AudioRing ring = new AudioRing(10);
+    byte[] data = new byte[25];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    ring.write(data, 0, 7);
+    assertThat(ring.oldestOffset()).isEqualTo(0);
+    ring.write(data, 7, 6);
+    assertThat(ring.oldestOffset()).isEqualTo(3);
+    ring.write(data, 13, 12);
+    assertThat(ring.oldestOffset()).isEqualTo(15);
+
+    ByteString.Output replay = ByteString.newOutput();
+    List<Integer> chunkSizes = new ArrayList<>();
+    ring.forEachChunk(17, 4, chunk -> {
+      chunkSizes.add(chunk.size());
+      replay.write(chunk.toByteArray(), 0, chunk.size());
+    });
+    assertThat(replay.toByteString()).isEqualTo(ByteString.copyFrom(data, 17, 8));
+    assertThat(chunkSizes).containsExactly(3, 4, 1).inOrder();
+  }
+}
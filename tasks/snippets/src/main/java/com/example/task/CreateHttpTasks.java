@@ -0,0 +1,64 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.task;
+
+import com.google.cloud.tasks.v2.CloudTasksClient;
+import com.google.cloud.tasks.v2.HttpMethod;
+import com.google.cloud.tasks.v2.HttpRequest;
+import com.google.cloud.tasks.v2.QueueName;
+import com.google.cloud.tasks.v2.Task;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+public class CreateHttpTasks {
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    // TODO(developer): Replace these variables before running the sample.
+    String projectId = "my-project-id";
+    String locationId = "us-central1";
+    String queueId = "my-queue";
+    int count = 1000;
+    createTasks(projectId, locationId, queueId, count);
+  }
+
+  // Create many tasks with HTTP targets, reusing one client and keeping up to 100 createTask
+  // calls in flight instead of waiting for each one.
+  public static void createTasks(String projectId, String locationId, String queueId, int count)
+      throws IOException, InterruptedException {
+    String url = "https://example.com/taskhandler";
+    String queuePath = QueueName.of(projectId, locationId, queueId).toString();
+
+    try (CloudTasksClient client = CloudTasksClient.create();
+        TaskEnqueuer enqueuer = new TaskEnqueuer(client, 100)) {
+      for (int i = 0; i < count; i++) {
+        Task task =
+            Task.newBuilder()
+                .setHttpRequest(
+                    HttpRequest.newBuilder()
+                        .setBody(ByteString.copyFrom("Hello, " + i, Charset.defaultCharset()))
+                        .setUrl(url)
+                        .setHttpMethod(HttpMethod.POST)
+                        .build())
+                .build();
+        enqueuer.enqueue(queuePath, task);
+      }
+      enqueuer.flush();
+      System.out.println("Tasks created: " + enqueuer.getMetrics());
+    }
+  }
+}
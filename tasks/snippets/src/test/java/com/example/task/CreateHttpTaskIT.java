@@ -78,6 +78,13 @@ public class CreateHttpTaskIT {
     assertThat(got).contains("Task created:");
   }
 
+  @Test
+  public void testCreateHttpTasks() throws Exception {
+    CreateHttpTasks.createTasks(PROJECT_ID, LOCATION_ID, QUEUE_ID, 10);
+    String got = bout.toString();
+    assertThat(got).contains("Tasks created: enqueued=10 failed=0");
+  }
+
   @Test
   public void testCreateHttpTaskWithToken() throws Exception {
     CreateHttpTaskWithToken.createTask(PROJECT_ID, LOCATION_ID, QUEUE_ID, EMAIL);
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.task;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.InvalidArgumentException;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.tasks.v2.CloudTasksClient;
+import com.google.cloud.tasks.v2.CloudTasksSettings;
+import com.google.cloud.tasks.v2.CreateTaskRequest;
+import com.google.cloud.tasks.v2.QueueName;
+import com.google.cloud.tasks.v2.Task;
+import com.google.cloud.tasks.v2.stub.CloudTasksStub;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for enqueuing tasks through an in-process fake of Cloud Tasks. */
+@RunWith(JUnit4.class)
+public class TaskEnqueuerTest {
+  private static final String QUEUE_PATH =
+      QueueName.of("my-project-id", "us-central1", "my-queue").toString();
+
+  private FakeCloudTasks fake;
+  private Server server;
+  private ManagedChannel channel;
+  private CloudTasksClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    fake = new FakeCloudTasks();
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name).addService(fake.service()).build().start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    client =
+        CloudTasksClient.create(
+            CloudTasksSettings.newBuilder()
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .setTransportChannelProvider(
+                    FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+                .build());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+    fake.responses.shutdownNow();
+  }
+
+  @Test
+  public void enqueuesWithBoundedInFlightCalls() throws Exception {
+    List<ApiFuture<Task>> results = new ArrayList<>();
+    try (TaskEnqueuer enqueuer = new TaskEnqueuer(client, 8)) {
+      for (int i = 0; i < 200; i++) {
+        results.add(enqueuer.enqueue(QUEUE_PATH, Task.getDefaultInstance()));
+      }
+      enqueuer.flush();
+      assertThat(enqueuer.getMetrics().getEnqueued()).isEqualTo(200);
+    }
+    for (ApiFuture<Task> result : results) {
+      assertThat(result.get().getName()).isNotEmpty();
+    }
+    assertThat(fake.calls.get()).isEqualTo(200);
+    assertThat(fake.maxConcurrent.get()).isAtMost(8);
+    assertThat(fake.maxConcurrent.get()).isGreaterThan(1);
+  }
+
+  @Test
+  public void enqueuesNamedTasksOnce() throws Exception {
+    Task task = Task.newBuilder().setName(QUEUE_PATH + "/tasks/task-1").build();
+    fake.existing.add(QUEUE_PATH + "/tasks/task-2");
+    try (TaskEnqueuer enqueuer = new TaskEnqueuer(client, 8)) {
+      ApiFuture<Task> first = enqueuer.enqueue(QUEUE_PATH, task);
+      ApiFuture<Task> second = enqueuer.enqueue(QUEUE_PATH, task);
+      // The queue already holds this task, so it counts as a duplicate.
+      ApiFuture<Task> existing =
+          enqueuer.enqueue(
+              QUEUE_PATH, Task.newBuilder().setName(QUEUE_PATH + "/tasks/task-2").build());
+      enqueuer.flush();
+
+      assertThat(second).isSameInstanceAs(first);
+      assertThat(first.get().getName()).isEqualTo(task.getName());
+      assertThat(existing.get().getName()).isEqualTo(QUEUE_PATH + "/tasks/task-2");
+      assertThat(enqueuer.getMetrics().getDuplicates()).isEqualTo(2);
+      assertThat(enqueuer.getMetrics().getEnqueued()).isEqualTo(1);
+
+      // Once enqueued, the name is not remembered; the queue rejects it instead.
+      ApiFuture<Task> again = enqueuer.enqueue(QUEUE_PATH, task);
+      assertThat(again).isNotSameInstanceAs(first);
+      assertThat(again.get().getName()).isEqualTo(task.getName());
+      assertThat(enqueuer.getMetrics().getDuplicates()).isEqualTo(3);
+      assertThat(enqueuer.getMetrics().getEnqueued()).isEqualTo(1);
+    }
+    assertThat(fake.calls.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void retriesUnavailable() throws Exception {
+    fake.failures.set(2);
+    try (TaskEnqueuer enqueuer =
+        new TaskEnqueuer(client, 8, 5, Duration.ofMillis(1), Duration.ofMillis(10))) {
+      Task task = enqueuer.enqueue(QUEUE_PATH, Task.getDefaultInstance()).get();
+      assertThat(task.getName()).isNotEmpty();
+      assertThat(enqueuer.getMetrics().getRetries()).isEqualTo(2);
+      assertThat(enqueuer.getMetrics().getEnqueued()).isEqualTo(1);
+    }
+    assertThat(fake.calls.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void countsTasksCreatedByALostAttemptAsEnqueued() throws Exception {
+    Task task = Task.newBuilder().setName(QUEUE_PATH + "/tasks/task-1").build();
+    // The first attempt creates the task, but its response is lost.
+    fake.lostResponses.set(1);
+    try (TaskEnqueuer enqueuer =
+        new TaskEnqueuer(client, 8, 5, Duration.ofMillis(1), Duration.ofMillis(10))) {
+      assertThat(enqueuer.enqueue(QUEUE_PATH, task).get()).isEqualTo(task);
+      assertThat(enqueuer.getMetrics().getRetries()).isEqualTo(1);
+      assertThat(enqueuer.getMetrics().getEnqueued()).isEqualTo(1);
+      assertThat(enqueuer.getMetrics().getDuplicates()).isEqualTo(0);
+      assertThat(enqueuer.getMetrics().getMaxLatencyMillis()).isGreaterThan(0.0);
+    }
+    assertThat(fake.calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void doesNotRetryInvalidRequests() throws Exception {
+    try (TaskEnqueuer enqueuer = new TaskEnqueuer(client, 8)) {
+      ApiFuture<Task> result = enqueuer.enqueue("", Task.getDefaultInstance());
+      ExecutionException e = assertThrows(ExecutionException.class, result::get);
+      assertThat(e).hasCauseThat().isInstanceOf(InvalidArgumentException.class);
+      enqueuer.flush();
+      assertThat(enqueuer.getMetrics().getFailed()).isEqualTo(1);
+    }
+    assertThat(fake.calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void failsTasksWhenCallCannotStart() throws Exception {
+    Task task = Task.newBuilder().setName(QUEUE_PATH + "/tasks/task-1").build();
+    try (CloudTasksClient failing = CloudTasksClient.create(new FailingStub());
+        TaskEnqueuer enqueuer = new TaskEnqueuer(failing, 1)) {
+      ApiFuture<Task> first = enqueuer.enqueue(QUEUE_PATH, task);
+      ExecutionException e = assertThrows(ExecutionException.class, first::get);
+      assertThat(e).hasCauseThat().isInstanceOf(IllegalStateException.class);
+      // The only slot in the window was given back, and the name can be enqueued again.
+      ApiFuture<Task> second = enqueuer.enqueue(QUEUE_PATH, task);
+      assertThat(second).isNotSameInstanceAs(first);
+      assertThrows(ExecutionException.class, second::get);
+      enqueuer.flush();
+      assertThat(enqueuer.getMetrics().getFailed()).isEqualTo(2);
+    }
+  }
+
+  /** A stub whose calls fail before they are sent, as those of a closed client do. */
+  private static class FailingStub extends CloudTasksStub {
+    @Override
+    public UnaryCallable<CreateTaskRequest, Task> createTaskCallable() {
+      return new UnaryCallable<CreateTaskRequest, Task>() {
+        @Override
+        public ApiFuture<Task> futureCall(CreateTaskRequest request, ApiCallContext context) {
+          throw new IllegalStateException("client is closed");
+        }
+      };
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public boolean isShutdown() {
+      return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return true;
+    }
+
+    @Override
+    public void shutdownNow() {}
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) {
+      return true;
+    }
+  }
+
+  /** Answers createTask after a short delay, and records how many calls overlapped. */
+  private static class FakeCloudTasks {
+    static final MethodDescriptor<CreateTaskRequest, Task> CREATE_TASK =
+        MethodDescriptor.<CreateTaskRequest, Task>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName("google.cloud.tasks.v2.CloudTasks/CreateTask")
+            .setRequestMarshaller(ProtoUtils.marshaller(CreateTaskRequest.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(Task.getDefaultInstance()))
+            .build();
+
+    final ScheduledExecutorService responses = Executors.newScheduledThreadPool(4);
+    final Set<String> existing = ConcurrentHashMap.newKeySet();
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicInteger lostResponses = new AtomicInteger();
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    ServerServiceDefinition service() {
+      return ServerServiceDefinition.builder("google.cloud.tasks.v2.CloudTasks")
+          .addMethod(CREATE_TASK, ServerCalls.asyncUnaryCall(this::createTask))
+          .build();
+    }
+
+    void createTask(CreateTaskRequest request, StreamObserver<Task> response) {
+      int id = calls.incrementAndGet();
+      maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+      responses.schedule(
+          () -> {
+            concurrent.decrementAndGet();
+            String name = request.getTask().getName();
+            if (request.getParent().isEmpty()) {
+              response.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+            } else if (failures.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+              response.onError(Status.UNAVAILABLE.asRuntimeException());
+            } else if (!name.isEmpty() && !existing.add(name)) {
+              response.onError(Status.ALREADY_EXISTS.asRuntimeException());
+            } else if (lostResponses.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+              response.onError(Status.UNAVAILABLE.asRuntimeException());
+            } else {
+              response.onNext(
+                  request.getTask().toBuilder()
+                      .setName(name.isEmpty() ? request.getParent() + "/tasks/" + id : name)
+                      .build());
+              response.onCompleted();
+            }
+          },
+          5,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.texttospeech;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.texttospeech.v1.AudioConfig;
+import com.google.cloud.texttospeech.v1.AudioEncoding;
+import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
+import com.google.cloud.texttospeech.v1.SynthesisInput;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechRequest;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
+import com.google.cloud.texttospeech.v1.TextToSpeechClient;
+import com.google.cloud.texttospeech.v1.VoiceSelectionParams;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthesizes documents longer than one request allows. The input is split at sentence boundaries
+ * into chunks that are synthesized concurrently, a bounded number ahead of the audio written so
+ * far, and the audio of each chunk is written to the output as soon as every chunk before it is
+ * written. Playback can start after the first chunk instead of after the whole document.
+ *
+ * <p>Synthesized chunks are cached by their input, voice and audio config, so a document that is
+ * synthesized again, or shares passages with another, only sends the chunks that changed.
+ */
+public class LongFormSynthesizer {
+
+  /** Sends one synthesis request; stub it in tests. */
+  public interface SpeechService {
+    ApiFuture<SynthesizeSpeechResponse> synthesize(SynthesizeSpeechRequest request);
+
+    /** Calls the service through a client. */
+    static SpeechService of(TextToSpeechClient client) {
+      return client.synthesizeSpeechCallable()::futureCall;
+    }
+  }
+
+  /** What a synthesis did and how long it took. */
+  public static class Result {
+    private final int chunks;
+    private final int cachedChunks;
+    private final long audioBytes;
+    private final long firstAudioMillis;
+    private final long totalMillis;
+
+    Result(int chunks, int cachedChunks, long audioBytes, long firstAudioMillis,
+        long totalMillis) {
+      this.chunks = chunks;
+      this.cachedChunks = cachedChunks;
+      this.audioBytes = audioBytes;
+      this.firstAudioMillis = firstAudioMillis;
+      this.totalMillis = totalMillis;
+    }
+
+    public int getChunks() {
+      return chunks;
+    }
+
+    /** Chunks whose audio came from the cache. */
+    public int getCachedChunks() {
+      return cachedChunks;
+    }
+
+    public long getAudioBytes() {
+      return audioBytes;
+    }
+
+    /** Time until the first audio was written. */
+    public long getFirstAudioMillis() {
+      return firstAudioMillis;
+    }
+
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d chunks (%d cached), %d bytes, first audio after %d ms, %d ms total",
+          chunks, cachedChunks, audioBytes, firstAudioMillis, totalMillis);
+    }
+  }
+
+  private final SpeechService service;
+  private int maxChunkBytes = 3000;
+  private int window = 4;
+  private long maxCacheBytes = 64 << 20;
+
+  // Guarded by itself; in least recently used order.
+  private final LinkedHashMap<HashCode, ByteString> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private long cacheBytes;
+
+  public LongFormSynthesizer(SpeechService service) {
+    this.service = service;
+  }
+
+  /**
+   * Limits each chunk, at most to {@link SpeechChunker#MAX_INPUT_BYTES}. Smaller chunks start
+   * playback sooner; larger chunks make fewer calls and have fewer seams.
+   */
+  public LongFormSynthesizer withMaxChunkBytes(int maxChunkBytes) {
+    if (maxChunkBytes < 1 || maxChunkBytes > SpeechChunker.MAX_INPUT_BYTES) {
+      throw new IllegalArgumentException("maxChunkBytes must be between 1 and "
+          + SpeechChunker.MAX_INPUT_BYTES + ": " + maxChunkBytes);
+    }
+    this.maxChunkBytes = maxChunkBytes;
+    return this;
+  }
+
+  /** Synthesizes at most this many chunks ahead of the next chunk to be written. */
+  public LongFormSynthesizer withWindow(int window) {
+    if (window < 1) {
+      throw new IllegalArgumentException("window must be positive: " + window);
+    }
+    this.window = window;
+    return this;
+  }
+
+  /** Keeps up to this many bytes of synthesized audio. */
+  public LongFormSynthesizer withCacheBytes(long maxCacheBytes) {
+    this.maxCacheBytes = maxCacheBytes;
+    return this;
+  }
+
+  /** Synthesizes plain text to {@code out}. */
+  public Result synthesizeText(String text, VoiceSelectionParams voice, AudioConfig audioConfig,
+      OutputStream out) throws IOException {
+    List<SynthesisInput> inputs = new ArrayList<>();
+    for (String chunk : SpeechChunker.splitText(text, maxChunkBytes, locale(voice))) {
+      inputs.add(SynthesisInput.newBuilder().setText(chunk).build());
+    }
+    return synthesize(inputs, voice, audioConfig, out);
+  }
+
+  /** Synthesizes an SSML document to {@code out}. */
+  public Result synthesizeSsml(String ssml, VoiceSelectionParams voice, AudioConfig audioConfig,
+      OutputStream out) throws IOException {
+    List<SynthesisInput> inputs = new ArrayList<>();
+    for (String chunk : SpeechChunker.splitSsml(ssml, maxChunkBytes, locale(voice))) {
+      inputs.add(SynthesisInput.newBuilder().setSsml(chunk).build());
+    }
+    return synthesize(inputs, voice, audioConfig, out);
+  }
+
+  private Result synthesize(List<SynthesisInput> inputs, VoiceSelectionParams voice,
+      AudioConfig audioConfig, OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    long firstAudio = -1;
+    long audioBytes = 0;
+    int cachedChunks = 0;
+    List<CompletableFuture<ByteString>> audio = new ArrayList<>();
+    for (int next = 0; next < inputs.size(); next++) {
+      while (audio.size() < inputs.size() && audio.size() < next + window) {
+        SynthesizeSpeechRequest request = SynthesizeSpeechRequest.newBuilder()
+            .setInput(inputs.get(audio.size()))
+            .setVoice(voice)
+            .setAudioConfig(audioConfig)
+            .build();
+        HashCode key = Hashing.sha256().hashBytes(request.toByteArray());
+        ByteString cached = cacheGet(key);
+        if (cached != null) {
+          cachedChunks++;
+          audio.add(CompletableFuture.completedFuture(cached));
+        } else {
+          audio.add(call(request, key));
+        }
+      }
+
+      ByteString chunk;
+      try {
+        chunk = audio.get(next).join();
+      } catch (CompletionException e) {
+        // Later chunks are still running, but their audio can't be used without this one.
+        for (CompletableFuture<ByteString> pending : audio.subList(next, audio.size())) {
+          pending.cancel(false);
+        }
+        throw new IOException("Chunk " + next + " failed", e.getCause());
+      }
+      // Free the audio of written chunks.
+      audio.set(next, null);
+      ByteString samples = stripHeader(chunk, audioConfig.getAudioEncoding());
+      samples.writeTo(out);
+      out.flush();
+      audioBytes += samples.size();
+      if (firstAudio < 0) {
+        firstAudio = System.nanoTime();
+      }
+    }
+    long end = System.nanoTime();
+    return new Result(inputs.size(), cachedChunks, audioBytes,
+        firstAudio < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(firstAudio - start),
+        TimeUnit.NANOSECONDS.toMillis(end - start));
+  }
+
+  private CompletableFuture<ByteString> call(SynthesizeSpeechRequest request, HashCode key) {
+    CompletableFuture<ByteString> audio = new CompletableFuture<>();
+    ApiFutures.addCallback(
+        service.synthesize(request),
+        new ApiFutureCallback<SynthesizeSpeechResponse>() {
+          @Override
+          public void onFailure(Throwable t) {
+            audio.completeExceptionally(t);
+          }
+
+          @Override
+          public void onSuccess(SynthesizeSpeechResponse response) {
+            cachePut(key, response.getAudioContent());
+            audio.complete(response.getAudioContent());
+          }
+        },
+        MoreExecutors.directExecutor());
+    return audio;
+  }
+
+  /**
+   * Returns the audio without its WAV header. LINEAR16, MULAW and ALAW responses are WAV files,
+   * and only one header can start a stream, so these encodings are written as bare samples. MP3
+   * frames and Ogg streams can be concatenated as they are.
+   */
+  static ByteString stripHeader(ByteString audio, AudioEncoding encoding) {
+    if (encoding != AudioEncoding.LINEAR16 && encoding != AudioEncoding.MULAW
+        && encoding != AudioEncoding.ALAW) {
+      return audio;
+    }
+    if (audio.size() < 12 || !audio.substring(0, 4).toStringUtf8().equals("RIFF")) {
+      return audio;
+    }
+    // Skip the chunks of the RIFF file up to the data chunk.
+    int position = 12;
+    while (position + 8 <= audio.size()) {
+      String id = audio.substring(position, position + 4).toString(StandardCharsets.US_ASCII);
+      int length = (audio.byteAt(position + 4) & 0xff)
+          | (audio.byteAt(position + 5) & 0xff) << 8
+          | (audio.byteAt(position + 6) & 0xff) << 16
+          | (audio.byteAt(position + 7) & 0xff) << 24;
+      if (id.equals("data")) {
+        return audio.substring(position + 8);
+      }
+      position += 8 + length + (length & 1);
+    }
+    return audio;
+  }
+
+  private ByteString cacheGet(HashCode key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  private void cachePut(HashCode key, ByteString audio) {
+    if (audio.size() > maxCacheBytes) {
+      return;
+    }
+    synchronized (cache) {
+      ByteString old = cache.put(key, audio);
+      cacheBytes += audio.size() - (old == null ? 0 : old.size());
+      Iterator<Map.Entry<HashCode, ByteString>> eldest = cache.entrySet().iterator();
+      while (cacheBytes > maxCacheBytes) {
+        cacheBytes -= eldest.next().getValue().size();
+        eldest.remove();
+      }
+    }
+  }
+
+  private static Locale locale(VoiceSelectionParams voice) {
+    return voice.getLanguageCode().isEmpty()
+        ? Locale.getDefault() : Locale.forLanguageTag(voice.getLanguageCode());
+  }
+
+  /**
+   * Synthesizes a long text file to output.mp3, writing the audio as it arrives. Example usage:
+   * mvn package exec:java -Dexec.mainClass='com.example.texttospeech.LongFormSynthesizer'
+   * -Dexec.args='resources/hello.txt'
+   */
+  public static void main(String[] args) throws Exception {
+    String textFile = args.length > 0 ? args[0] : "resources/hello.txt";
+    String contents = new String(Files.readAllBytes(Paths.get(textFile)), StandardCharsets.UTF_8);
+    VoiceSelectionParams voice = VoiceSelectionParams.newBuilder()
+        .setLanguageCode("en-US")
+        .setSsmlGender(SsmlVoiceGender.FEMALE)
+        .build();
+    AudioConfig audioConfig = AudioConfig.newBuilder().setAudioEncoding(AudioEncoding.MP3).build();
+
+    try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create();
+        OutputStream out = new FileOutputStream("output.mp3")) {
+      LongFormSynthesizer synthesizer =
+          new LongFormSynthesizer(SpeechService.of(textToSpeechClient));
+      Result result = textFile.endsWith(".ssml")
+          ? synthesizer.synthesizeSsml(contents, voice, audioConfig, out)
+          : synthesizer.synthesizeText(contents, voice, audioConfig, out);
+      System.out.println("Audio content written to file \"output.mp3\": " + result);
+    }
+  }
+}
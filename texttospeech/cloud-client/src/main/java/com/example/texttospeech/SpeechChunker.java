@@ -0,0 +1,360 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.texttospeech;
+
+import java.nio.charset.StandardCharsets;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits long text or SSML into chunks that each fit one synthesis request. Chunks end at sentence
+ * boundaries where possible, then at words, so each chunk is spoken with natural prosody.
+ */
+public class SpeechChunker {
+
+  /** The most bytes of text or SSML the Text-to-Speech API accepts in one request. */
+  public static final int MAX_INPUT_BYTES = 5000;
+
+  private static final Pattern TAG = Pattern.compile("<!--.*?-->|<[^>]*>", Pattern.DOTALL);
+  private static final Pattern SPEAK =
+      Pattern.compile("\\s*(<\\?xml[^>]*>)?\\s*(<speak\\b[^>]*>)(.*)</speak>\\s*", Pattern.DOTALL);
+  private static final String SPEAK_CLOSE = "</speak>";
+
+  /** A piece of input and whether a chunk may end after it without splitting a sentence. */
+  private static class Piece {
+    final String text;
+    final boolean boundary;
+
+    Piece(String text, boolean boundary) {
+      this.text = text;
+      this.boundary = boundary;
+    }
+  }
+
+  /** An SSML element with its children, or a run of text or a self-closing tag when childless. */
+  private static class Node {
+    final String open;
+    final String close;
+    final List<Node> children = new ArrayList<>();
+
+    Node(String open, String close) {
+      this.open = open;
+      this.close = close;
+    }
+
+    boolean isElement() {
+      return close != null;
+    }
+
+    void appendTo(StringBuilder out) {
+      out.append(open);
+      if (isElement()) {
+        children.forEach(child -> child.appendTo(out));
+        out.append(close);
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder out = new StringBuilder();
+      appendTo(out);
+      return out.toString();
+    }
+  }
+
+  private SpeechChunker() {}
+
+  /** Splits plain text into chunks of at most {@code maxBytes} UTF-8 bytes. */
+  public static List<String> splitText(String text, int maxBytes, Locale locale) {
+    List<String> chunks = new ArrayList<>();
+    for (String chunk : pack(splitRun(text, maxBytes, locale, false), maxBytes)) {
+      if (!chunk.trim().isEmpty()) {
+        chunks.add(chunk.trim());
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Splits an SSML document into SSML documents of at most {@code maxBytes} UTF-8 bytes. Each
+   * chunk keeps the attributes of the {@code <speak>} element, and an element that does not fit
+   * one chunk is split into several elements with the same tag.
+   */
+  public static List<String> splitSsml(String ssml, int maxBytes, Locale locale) {
+    Matcher speak = SPEAK.matcher(ssml);
+    String speakOpen = "<speak>";
+    String body = ssml;
+    if (speak.matches()) {
+      speakOpen = speak.group(2);
+      body = speak.group(3);
+    }
+    int budget = maxBytes - utf8Length(speakOpen) - utf8Length(SPEAK_CLOSE);
+    if (budget <= 0) {
+      throw new IllegalArgumentException("maxBytes is too small for " + speakOpen);
+    }
+    List<String> chunks = new ArrayList<>();
+    for (String chunk : pack(splitNodes(parse(body), budget, locale), budget)) {
+      if (!chunk.trim().isEmpty()) {
+        chunks.add(speakOpen + chunk.trim() + SPEAK_CLOSE);
+      }
+    }
+    return chunks;
+  }
+
+  /** Parses the content of a speak element into a tree, dropping comments. */
+  private static List<Node> parse(String body) {
+    Node root = new Node("", "");
+    List<Node> open = new ArrayList<>();
+    open.add(root);
+    Matcher tag = TAG.matcher(body);
+    int position = 0;
+    while (tag.find()) {
+      Node parent = open.get(open.size() - 1);
+      if (tag.start() > position) {
+        parent.children.add(new Node(body.substring(position, tag.start()), null));
+      }
+      position = tag.end();
+      String token = tag.group();
+      if (token.startsWith("<!--")) {
+        continue;
+      } else if (token.startsWith("</")) {
+        if (open.size() == 1) {
+          throw new IllegalArgumentException("Unbalanced SSML at " + tag.start() + ": " + token);
+        }
+        Node closed = open.remove(open.size() - 1);
+        Node element = new Node(closed.open, token);
+        element.children.addAll(closed.children);
+        List<Node> siblings = open.get(open.size() - 1).children;
+        siblings.set(siblings.size() - 1, element);
+      } else if (token.endsWith("/>")) {
+        parent.children.add(new Node(token, null));
+      } else {
+        // Added as a placeholder until its close tag is found.
+        Node element = new Node(token, null);
+        parent.children.add(element);
+        open.add(element);
+      }
+    }
+    if (open.size() > 1) {
+      throw new IllegalArgumentException("Unclosed SSML element " + open.get(1).open);
+    }
+    if (position < body.length()) {
+      root.children.add(new Node(body.substring(position), null));
+    }
+    return root.children;
+  }
+
+  private static List<Piece> splitNodes(List<Node> nodes, int maxBytes, Locale locale) {
+    List<Piece> pieces = new ArrayList<>();
+    for (Node node : nodes) {
+      String ssml = node.toString();
+      if (!node.isElement() && !ssml.startsWith("<")) {
+        pieces.addAll(splitRun(ssml, maxBytes, locale, true));
+      } else if (utf8Length(ssml) <= maxBytes) {
+        pieces.add(new Piece(ssml, isBlock(node.open)));
+      } else if (node.isElement()) {
+        int inner = maxBytes - utf8Length(node.open) - utf8Length(node.close);
+        if (inner <= 0) {
+          throw new IllegalArgumentException("Element too long to split: " + node.open);
+        }
+        for (String part : pack(splitNodes(node.children, inner, locale), inner)) {
+          pieces.add(new Piece(node.open + part + node.close, true));
+        }
+      } else {
+        throw new IllegalArgumentException("Tag longer than " + maxBytes + " bytes: " + ssml);
+      }
+    }
+    return pieces;
+  }
+
+  /** Returns whether a chunk may end after the element, matching its whole name. */
+  private static boolean isBlock(String tag) {
+    return isElement(tag, "p") || isElement(tag, "s") || isElement(tag, "break")
+        || isElement(tag, "par");
+  }
+
+  private static boolean isElement(String tag, String name) {
+    if (!tag.startsWith("<" + name) || tag.length() == name.length() + 1) {
+      return false;
+    }
+    char next = tag.charAt(name.length() + 1);
+    return next == '>' || next == '/' || Character.isWhitespace(next);
+  }
+
+  /**
+   * Splits a run of text into sentences, and sentences that are too long into words and then
+   * code points. Runs of SSML text are split on unescaped text so entities stay whole.
+   */
+  private static List<Piece> splitRun(String run, int maxBytes, Locale locale, boolean xml) {
+    String text = xml ? unescape(run) : run;
+    List<Piece> pieces = new ArrayList<>();
+    for (String sentence : segments(text, BreakIterator.getSentenceInstance(locale))) {
+      if (size(sentence, xml) <= maxBytes) {
+        pieces.add(new Piece(output(sentence, xml), true));
+        continue;
+      }
+      for (String word : segments(sentence, BreakIterator.getWordInstance(locale))) {
+        if (size(word, xml) <= maxBytes) {
+          pieces.add(new Piece(output(word, xml), false));
+          continue;
+        }
+        int start = 0;
+        while (start < word.length()) {
+          int end = start;
+          while (end < word.length()) {
+            int next = word.offsetByCodePoints(end, 1);
+            if (size(word.substring(start, next), xml) > maxBytes) {
+              break;
+            }
+            end = next;
+          }
+          if (end == start) {
+            throw new IllegalArgumentException("maxBytes is too small: " + maxBytes);
+          }
+          pieces.add(new Piece(output(word.substring(start, end), xml), false));
+          start = end;
+        }
+      }
+      pieces.set(pieces.size() - 1, new Piece(pieces.get(pieces.size() - 1).text, true));
+    }
+    return pieces;
+  }
+
+  private static List<String> segments(String text, BreakIterator boundaries) {
+    List<String> segments = new ArrayList<>();
+    boundaries.setText(text);
+    int start = boundaries.first();
+    for (int end = boundaries.next(); end != BreakIterator.DONE; end = boundaries.next()) {
+      segments.add(text.substring(start, end));
+      start = end;
+    }
+    return segments;
+  }
+
+  /**
+   * Joins consecutive pieces into chunks of at most {@code maxBytes}. A chunk that is full ends
+   * after its last sentence boundary, if it has one, rather than in the middle of a sentence.
+   */
+  private static List<String> pack(List<Piece> pieces, int maxBytes) {
+    List<String> chunks = new ArrayList<>();
+    List<Piece> current = new ArrayList<>();
+    int bytes = 0;
+    for (Piece piece : pieces) {
+      int pieceBytes = utf8Length(piece.text);
+      if (bytes + pieceBytes > maxBytes && !current.isEmpty()) {
+        int cut = current.size() - 1;
+        while (cut > 0 && !current.get(cut).boundary) {
+          cut--;
+        }
+        if (!current.get(cut).boundary) {
+          cut = current.size() - 1;
+        }
+        List<Piece> rest = new ArrayList<>(current.subList(cut + 1, current.size()));
+        chunks.add(join(current.subList(0, cut + 1)));
+        current = rest;
+        bytes = utf8Length(join(current));
+        if (bytes + pieceBytes > maxBytes) {
+          chunks.add(join(current));
+          current.clear();
+          bytes = 0;
+        }
+      }
+      current.add(piece);
+      bytes += pieceBytes;
+    }
+    if (!current.isEmpty()) {
+      chunks.add(join(current));
+    }
+    return chunks;
+  }
+
+  private static String join(List<Piece> pieces) {
+    StringBuilder out = new StringBuilder();
+    pieces.forEach(piece -> out.append(piece.text));
+    return out.toString();
+  }
+
+  private static int size(String text, boolean xml) {
+    return utf8Length(output(text, xml));
+  }
+
+  private static String output(String text, boolean xml) {
+    return xml ? escape(text) : text;
+  }
+
+  static int utf8Length(String text) {
+    return text.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static String escape(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  private static String unescape(String text) {
+    StringBuilder out = new StringBuilder(text.length());
+    int position = 0;
+    while (position < text.length()) {
+      int amp = text.indexOf('&', position);
+      int semicolon = amp < 0 ? -1 : text.indexOf(';', amp);
+      if (semicolon < 0) {
+        out.append(text, position, text.length());
+        break;
+      }
+      out.append(text, position, amp);
+      String value = entity(text.substring(amp + 1, semicolon));
+      if (value == null) {
+        // A bare ampersand, escaped again on output.
+        out.append('&');
+        position = amp + 1;
+      } else {
+        out.append(value);
+        position = semicolon + 1;
+      }
+    }
+    return out.toString();
+  }
+
+  private static String entity(String name) {
+    switch (name) {
+      case "amp":
+        return "&";
+      case "lt":
+        return "<";
+      case "gt":
+        return ">";
+      case "quot":
+        return "\"";
+      case "apos":
+        return "'";
+      default:
+        try {
+          if (name.startsWith("#x")) {
+            return new String(Character.toChars(Integer.parseInt(name.substring(2), 16)));
+          } else if (name.startsWith("#")) {
+            return new String(Character.toChars(Integer.parseInt(name.substring(1))));
+          }
+        } catch (IllegalArgumentException e) {
+          // Not an entity; kept as written.
+        }
+        return null;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.texttospeech;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.texttospeech.v1.AudioConfig;
+import com.google.cloud.texttospeech.v1.AudioEncoding;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
+import com.google.cloud.texttospeech.v1.VoiceSelectionParams;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for LongFormSynthesizer, with a fake service. */
+@RunWith(JUnit4.class)
+public class LongFormSynthesizerTest {
+
+  private static final VoiceSelectionParams VOICE =
+      VoiceSelectionParams.newBuilder().setLanguageCode("en-US").build();
+  private static final AudioConfig MP3 =
+      AudioConfig.newBuilder().setAudioEncoding(AudioEncoding.MP3).build();
+
+  private final ScheduledExecutorService latency = Executors.newScheduledThreadPool(8);
+  private final Random random = new Random(1);
+  private final AtomicInteger calls = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  /** "Speaks" each chunk as "[text]" after a random delay, so chunks finish out of order. */
+  private final LongFormSynthesizer.SpeechService service = request -> {
+    calls.incrementAndGet();
+    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    SettableApiFuture<SynthesizeSpeechResponse> response = SettableApiFuture.create();
+    String text = request.getInput().getText();
+    latency.schedule(() -> {
+      running.decrementAndGet();
+      if (text.contains("fail")) {
+        response.setException(new IllegalStateException("Synthesis failed"));
+      } else {
+        response.set(SynthesizeSpeechResponse.newBuilder()
+            .setAudioContent(ByteString.copyFromUtf8("[" + text + "]"))
+            .build());
+      }
+    }, 5 + nextInt(20), TimeUnit.MILLISECONDS);
+    return response;
+  };
+
+  private synchronized int nextInt(int bound) {
+    return random.nextInt(bound);
+  }
+
+  @After
+  public void tearDown() {
+    latency.shutdownNow();
+  }
+
+  private static String book(int sentences) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < sentences; i++) {
+      text.append("Sentence ").append(i).append(" of the book. ");
+    }
+    return text.toString();
+  }
+
+  @Test
+  public void testWritesChunksInOrderWithBoundedWindow() throws Exception {
+    LongFormSynthesizer synthesizer =
+        new LongFormSynthesizer(service).withMaxChunkBytes(100).withWindow(4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LongFormSynthesizer.Result result = synthesizer.synthesizeText(book(200), VOICE, MP3, out);
+
+    String audio = out.toString("UTF-8");
+    assertThat(result.getChunks()).isEqualTo(calls.get());
+    assertThat(result.getChunks()).isGreaterThan(50);
+    assertThat(result.getAudioBytes()).isEqualTo(out.size());
+    assertThat(maxRunning.get()).isAtMost(4);
+    assertThat(maxRunning.get()).isGreaterThan(1);
+    // Every chunk is whole sentences, and the chunks are in the order of the text.
+    assertThat(audio).startsWith("[Sentence 0 of the book.");
+    assertThat(audio).endsWith("Sentence 199 of the book.]");
+    assertThat(audio.replace("] [", " ").replace("][", " ")).isEqualTo(
+        "[" + book(200).trim() + "]");
+    // Sequential calls would take at least 5 ms each.
+    assertThat(result.getTotalMillis()).isLessThan(5L * result.getChunks());
+    assertThat(result.getFirstAudioMillis()).isLessThan(result.getTotalMillis());
+  }
+
+  @Test
+  public void testCachesChunks() throws Exception {
+    LongFormSynthesizer synthesizer = new LongFormSynthesizer(service).withMaxChunkBytes(100);
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    synthesizer.synthesizeText(book(40), VOICE, MP3, first);
+    int firstCalls = calls.get();
+
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    LongFormSynthesizer.Result result = synthesizer.synthesizeText(book(40), VOICE, MP3, second);
+    assertThat(calls.get()).isEqualTo(firstCalls);
+    assertThat(result.getCachedChunks()).isEqualTo(firstCalls);
+    assertThat(second.toByteArray()).isEqualTo(first.toByteArray());
+
+    // Another voice is another request.
+    VoiceSelectionParams voice = VOICE.toBuilder().setName("en-US-Standard-B").build();
+    synthesizer.synthesizeText(book(40), voice, MP3, new ByteArrayOutputStream());
+    assertThat(calls.get()).isEqualTo(2 * firstCalls);
+  }
+
+  @Test
+  public void testFailsAfterWritingPrefix() {
+    LongFormSynthesizer synthesizer =
+        new LongFormSynthesizer(service).withMaxChunkBytes(100).withWindow(2);
+    String text = book(10) + "Then it will fail. " + book(10);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    IOException e = assertThrows(IOException.class,
+        () -> synthesizer.synthesizeText(text, VOICE, MP3, out));
+    assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("Synthesis failed");
+    assertThat(new String(out.toByteArray())).startsWith("[Sentence 0 of the book.");
+    assertThat(new String(out.toByteArray())).doesNotContain("fail");
+  }
+
+  @Test
+  public void testStripsWavHeaders() throws Exception {
+    ByteArrayOutputStream wav = new ByteArrayOutputStream();
+    wav.write("RIFF\0\0\0\0WAVEfmt ".getBytes("US-ASCII"));
+    writeIntLe(wav, 16);
+    wav.write(new byte[16]);
+    wav.write("data".getBytes("US-ASCII"));
+    writeIntLe(wav, 4);
+    wav.write(new byte[] {1, 2, 3, 4});
+
+    ByteString audio = ByteString.copyFrom(wav.toByteArray());
+    assertThat(LongFormSynthesizer.stripHeader(audio, AudioEncoding.LINEAR16).toByteArray())
+        .isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(LongFormSynthesizer.stripHeader(audio, AudioEncoding.MP3)).isEqualTo(audio);
+  }
+
+  private static void writeIntLe(OutputStream out, int value) throws IOException {
+    for (int i = 0; i < 4; i++) {
+      out.write(value >>> (8 * i));
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.texttospeech;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.Locale;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for SpeechChunker. */
+@RunWith(JUnit4.class)
+public class SpeechChunkerTest {
+
+  @Test
+  public void testSplitsTextAtSentences() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      text.append("This is sentence number ").append(i).append(" of the chapter. ");
+    }
+    List<String> chunks = SpeechChunker.splitText(text.toString(), 200, Locale.US);
+
+    assertThat(chunks.size()).isGreaterThan(1);
+    for (String chunk : chunks) {
+      assertThat(SpeechChunker.utf8Length(chunk)).isAtMost(200);
+      assertThat(chunk).startsWith("This is sentence");
+      assertThat(chunk).endsWith("of the chapter.");
+    }
+    assertThat(String.join(" ", chunks)).isEqualTo(text.toString().trim());
+  }
+
+  @Test
+  public void testSplitsLongSentencesAtWords() {
+    String sentence = "word " + new String(new char[100]).replace("\0", "é ") + "end";
+    List<String> chunks = SpeechChunker.splitText(sentence, 50, Locale.FRENCH);
+
+    for (String chunk : chunks) {
+      assertThat(SpeechChunker.utf8Length(chunk)).isAtMost(50);
+      assertThat(chunk).doesNotContain("�");
+    }
+    assertThat(String.join(" ", chunks)).isEqualTo(sentence);
+  }
+
+  @Test
+  public void testSplitsSsmlInsideElements() {
+    StringBuilder ssml = new StringBuilder("<?xml version=\"1.0\"?><speak xml:lang=\"en-US\">");
+    ssml.append("<p>Tom &amp; Jerry.</p><break time=\"1s\"/><p>");
+    for (int i = 0; i < 20; i++) {
+      ssml.append("<s>Line ").append(i).append(" is <emphasis>loud</emphasis>.</s>");
+    }
+    ssml.append("</p></speak>");
+    List<String> chunks = SpeechChunker.splitSsml(ssml.toString(), 200, Locale.US);
+
+    assertThat(chunks.size()).isGreaterThan(2);
+    assertThat(chunks.get(0)).contains("<p>Tom &amp; Jerry.</p>");
+    StringBuilder sentences = new StringBuilder();
+    for (String chunk : chunks) {
+      assertThat(SpeechChunker.utf8Length(chunk)).isAtMost(200);
+      assertThat(chunk).startsWith("<speak xml:lang=\"en-US\">");
+      assertThat(chunk).endsWith("</speak>");
+      // The paragraph that did not fit is split into paragraphs of whole sentences.
+      assertThat(count(chunk, "<p>")).isEqualTo(count(chunk, "</p>"));
+      assertThat(count(chunk, "<s>")).isEqualTo(count(chunk, "</s>"));
+      sentences.append(chunk.replaceAll("<[^>]*>", ""));
+    }
+    assertThat(sentences.toString()).contains("Line 0 is loud.Line 1 is loud.");
+    assertThat(sentences.toString()).endsWith("Line 19 is loud.");
+  }
+
+  @Test
+  public void testDoesNotSplitAfterInlineElements() {
+    StringBuilder ssml = new StringBuilder("<speak>");
+    for (int i = 0; i < 10; i++) {
+      ssml.append("Sentence ").append(i).append(" is <prosody rate=\"slow\">slow</prosody> and ")
+          .append("<phoneme alphabet=\"ipa\" ph=\"təˈmɑtoʊ\">tomato</phoneme> too. ");
+    }
+    ssml.append("</speak>");
+    List<String> chunks = SpeechChunker.splitSsml(ssml.toString(), 300, Locale.US);
+
+    assertThat(chunks.size()).isGreaterThan(1);
+    for (String chunk : chunks) {
+      assertThat(SpeechChunker.utf8Length(chunk)).isAtMost(300);
+      // Prosody and phoneme are inline, so no chunk ends right after one.
+      assertThat(chunk).doesNotContain("</prosody></speak>");
+      assertThat(chunk).doesNotContain("</phoneme></speak>");
+    }
+  }
+
+  private static int count(String text, String token) {
+    return text.split(token, -1).length - 1;
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.translate;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.translate.v3.LocationName;
+import com.google.cloud.translate.v3.TranslateTextGlossaryConfig;
+import com.google.cloud.translate.v3.TranslateTextRequest;
+import com.google.cloud.translate.v3.TranslateTextResponse;
+import com.google.cloud.translate.v3.Translation;
+import com.google.cloud.translate.v3.TranslationServiceClient;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translates text for many concurrent callers with as few {@code translateText} calls as possible.
+ * Segments with the same source and target language, model and glossary are collected into one
+ * request until it reaches the segment or code point limit, or its first segment has waited for
+ * the linger time.
+ *
+ * <p>Every translation is kept in a {@link TranslationMemory}, so a segment that was translated
+ * before is answered without a call, and a segment that is being translated is sent only once.
+ */
+public class CoalescingTranslator implements AutoCloseable {
+
+  /** The most segments the Translation API accepts in one translateText call. */
+  public static final int MAX_SEGMENTS_PER_CALL = 1024;
+  /** The recommended largest total length of the segments in one call, in code points. */
+  public static final int MAX_CODE_POINTS_PER_CALL = 30_000;
+
+  /** Counts of how segments were answered. */
+  public static class Stats {
+    private final long calls;
+    private final long segmentsSent;
+    private final long memoryHits;
+    private final long sharedSegments;
+
+    Stats(long calls, long segmentsSent, long memoryHits, long sharedSegments) {
+      this.calls = calls;
+      this.segmentsSent = segmentsSent;
+      this.memoryHits = memoryHits;
+      this.sharedSegments = sharedSegments;
+    }
+
+    public long getCalls() {
+      return calls;
+    }
+
+    public long getSegmentsSent() {
+      return segmentsSent;
+    }
+
+    /** Segments answered from the translation memory. */
+    public long getMemoryHits() {
+      return memoryHits;
+    }
+
+    /** Segments that waited for an identical segment already being translated. */
+    public long getSharedSegments() {
+      return sharedSegments;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("calls=%d, segments sent=%d, memory hits=%d, shared segments=%d",
+          calls, segmentsSent, memoryHits, sharedSegments);
+    }
+  }
+
+  /** The settings that segments must share to be sent in the same request. */
+  private static class BatchKey {
+    final String sourceLanguage;
+    final String targetLanguage;
+    final String model;
+    final String glossary;
+
+    BatchKey(String sourceLanguage, String targetLanguage, String model, String glossary) {
+      this.sourceLanguage = Objects.toString(sourceLanguage, "");
+      this.targetLanguage = Objects.requireNonNull(targetLanguage, "targetLanguage");
+      this.model = Objects.toString(model, "");
+      this.glossary = Objects.toString(glossary, "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof BatchKey)) {
+        return false;
+      }
+      BatchKey other = (BatchKey) o;
+      return sourceLanguage.equals(other.sourceLanguage)
+          && targetLanguage.equals(other.targetLanguage)
+          && model.equals(other.model)
+          && glossary.equals(other.glossary);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sourceLanguage, targetLanguage, model, glossary);
+    }
+  }
+
+  private static class Pending {
+    final String text;
+    final HashCode key;
+    final CompletableFuture<String> translation = new CompletableFuture<>();
+
+    Pending(String text, HashCode key) {
+      this.text = text;
+      this.key = key;
+    }
+  }
+
+  private static class Batch {
+    final List<Pending> segments = new ArrayList<>();
+    int codePoints;
+    ScheduledFuture<?> lingerTimer;
+  }
+
+  private final TranslationServiceClient client;
+  private final String parent;
+  private final TranslationMemory memory;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private int maxSegments = MAX_SEGMENTS_PER_CALL;
+  private int maxCodePoints = MAX_CODE_POINTS_PER_CALL;
+  private long lingerMillis = 20;
+
+  // Guarded by this.
+  private final Map<BatchKey, Batch> batches = new HashMap<>();
+  private final Map<HashCode, CompletableFuture<String>> inFlight = new HashMap<>();
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder segmentsSent = new LongAdder();
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder sharedSegments = new LongAdder();
+
+  /**
+   * Creates a translator that sends requests to {@code parent}, such as {@code
+   * projects/my-project/locations/global}, and keeps translations in {@code memory}.
+   */
+  public CoalescingTranslator(
+      TranslationServiceClient client, String parent, TranslationMemory memory) {
+    this.client = client;
+    this.parent = parent;
+    this.memory = memory;
+  }
+
+  /** Limits each request, at most to the limits of the API. */
+  public CoalescingTranslator withRequestLimits(int maxSegments, int maxCodePoints) {
+    if (maxSegments < 1 || maxSegments > MAX_SEGMENTS_PER_CALL) {
+      throw new IllegalArgumentException("maxSegments must be between 1 and "
+          + MAX_SEGMENTS_PER_CALL + ": " + maxSegments);
+    }
+    this.maxSegments = maxSegments;
+    this.maxCodePoints = maxCodePoints;
+    return this;
+  }
+
+  /** Sends a request this long after its first segment arrived, even if it is not full. */
+  public CoalescingTranslator withLinger(long lingerMillis) {
+    this.lingerMillis = lingerMillis;
+    return this;
+  }
+
+  /** Translates plain text with the default model, detecting its language. */
+  public CompletableFuture<String> translate(String text, String targetLanguage) {
+    return translate(text, null, targetLanguage, null, null);
+  }
+
+  /**
+   * Adds a segment to the next request for its settings, or answers it from the translation
+   * memory.
+   *
+   * @param sourceLanguage the language of the text, or null to detect it
+   * @param model the full name of the model, or null for the default model
+   * @param glossary the full name of a glossary, or null for none
+   */
+  public CompletableFuture<String> translate(String text, String sourceLanguage,
+      String targetLanguage, String model, String glossary) {
+    BatchKey batchKey = new BatchKey(sourceLanguage, targetLanguage, model, glossary);
+    HashCode key = segmentKey(batchKey, text);
+    String remembered = memory.get(key);
+    if (remembered != null) {
+      memoryHits.increment();
+      return CompletableFuture.completedFuture(remembered);
+    }
+
+    int codePoints = text.codePointCount(0, text.length());
+    List<Pending> full = null;
+    List<Pending> overflow = null;
+    Pending pending;
+    synchronized (this) {
+      CompletableFuture<String> running = inFlight.get(key);
+      if (running != null) {
+        sharedSegments.increment();
+        return running;
+      }
+      // The segment may have been translated since the memory was read.
+      remembered = memory.get(key);
+      if (remembered != null) {
+        memoryHits.increment();
+        return CompletableFuture.completedFuture(remembered);
+      }
+      pending = new Pending(text, key);
+      inFlight.put(key, pending.translation);
+
+      Batch batch = batches.get(batchKey);
+      if (batch != null && batch.codePoints + codePoints > maxCodePoints) {
+        // A segment longer than the limit on its own still gets a request of its own.
+        overflow = take(batchKey);
+        batch = null;
+      }
+      if (batch == null) {
+        batch = new Batch();
+        batches.put(batchKey, batch);
+        Batch scheduled = batch;
+        batch.lingerTimer = scheduler.schedule(
+            () -> flush(batchKey, scheduled), lingerMillis, TimeUnit.MILLISECONDS);
+      }
+      batch.segments.add(pending);
+      batch.codePoints += codePoints;
+      if (batch.segments.size() >= maxSegments || batch.codePoints >= maxCodePoints) {
+        full = take(batchKey);
+      }
+    }
+    if (overflow != null) {
+      send(batchKey, overflow);
+    }
+    if (full != null) {
+      send(batchKey, full);
+    }
+    return pending.translation;
+  }
+
+  /** Sends every pending request now, without waiting for it to fill or linger. */
+  public void flush() {
+    Map<BatchKey, List<Pending>> requests = new HashMap<>();
+    synchronized (this) {
+      for (BatchKey batchKey : new ArrayList<>(batches.keySet())) {
+        requests.put(batchKey, take(batchKey));
+      }
+    }
+    requests.forEach(this::send);
+  }
+
+  private void flush(BatchKey batchKey, Batch batch) {
+    List<Pending> segments;
+    synchronized (this) {
+      if (batches.get(batchKey) != batch) {
+        // The batch was sent when it filled up.
+        return;
+      }
+      segments = take(batchKey);
+    }
+    send(batchKey, segments);
+  }
+
+  private List<Pending> take(BatchKey batchKey) {
+    Batch batch = batches.remove(batchKey);
+    batch.lingerTimer.cancel(false);
+    return batch.segments;
+  }
+
+  private void send(BatchKey batchKey, List<Pending> segments) {
+    TranslateTextRequest.Builder request = TranslateTextRequest.newBuilder()
+        .setParent(parent)
+        .setMimeType("text/plain")
+        .setSourceLanguageCode(batchKey.sourceLanguage)
+        .setTargetLanguageCode(batchKey.targetLanguage)
+        .setModel(batchKey.model);
+    if (!batchKey.glossary.isEmpty()) {
+      request.setGlossaryConfig(
+          TranslateTextGlossaryConfig.newBuilder().setGlossary(batchKey.glossary));
+    }
+    for (Pending pending : segments) {
+      request.addContents(pending.text);
+    }
+    calls.increment();
+    segmentsSent.add(segments.size());
+    ApiFuture<TranslateTextResponse> response;
+    try {
+      response = client.translateTextCallable().futureCall(request.build());
+    } catch (RuntimeException e) {
+      // The call failed before it was sent, for example because the client is closed.
+      response = ApiFutures.immediateFailedFuture(e);
+    }
+    ApiFutures.addCallback(
+        response,
+        new ApiFutureCallback<TranslateTextResponse>() {
+          @Override
+          public void onFailure(Throwable t) {
+            for (Pending pending : segments) {
+              complete(pending, null, t);
+            }
+          }
+
+          @Override
+          public void onSuccess(TranslateTextResponse response) {
+            // The translations are in the order of the contents.
+            List<Translation> translations = batchKey.glossary.isEmpty()
+                ? response.getTranslationsList() : response.getGlossaryTranslationsList();
+            for (int i = 0; i < segments.size(); i++) {
+              Pending pending = segments.get(i);
+              if (i >= translations.size()) {
+                complete(pending, null, new IllegalStateException("No translation for " + i));
+              } else {
+                complete(pending, translations.get(i).getTranslatedText(), null);
+              }
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void complete(Pending pending, String translation, Throwable t) {
+    if (translation != null) {
+      memory.put(pending.key, translation);
+    }
+    // Only after the translation is in memory, so later requests find it there.
+    synchronized (this) {
+      inFlight.remove(pending.key, pending.translation);
+    }
+    if (translation != null) {
+      pending.translation.complete(translation);
+    } else {
+      pending.translation.completeExceptionally(t);
+    }
+  }
+
+  public Stats stats() {
+    return new Stats(calls.sum(), segmentsSent.sum(), memoryHits.sum(), sharedSegments.sum());
+  }
+
+  /** Sends the pending requests and stops the linger timer. */
+  @Override
+  public void close() {
+    flush();
+    scheduler.shutdown();
+  }
+
+  private static HashCode segmentKey(BatchKey batchKey, String text) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String part : new String[] {batchKey.sourceLanguage, batchKey.targetLanguage,
+        batchKey.model, batchKey.glossary, text}) {
+      // Length-prefixed, so no two different requests hash the same parts.
+      hasher.putInt(part.length()).putString(part, StandardCharsets.UTF_8);
+    }
+    return hasher.hash();
+  }
+
+  /** Translates every line of the command line into the target language. */
+  public static void main(String[] args) throws Exception {
+    // TODO(developer): Replace these variables before running the sample.
+    String projectId = "YOUR-PROJECT-ID";
+    String targetLanguage = "your-target-language";
+    String memoryFile = "translations.tm";
+
+    // Initialize client that will be used to send requests. This client only needs to be created
+    // once, and can be reused for multiple requests. After completing all of your requests, call
+    // the "close" method on the client to safely clean up any remaining background resources.
+    try (TranslationServiceClient client = TranslationServiceClient.create();
+        TranslationMemory memory =
+            new TranslationMemory(100_000).withStore(Paths.get(memoryFile));
+        CoalescingTranslator translator = new CoalescingTranslator(
+            client, LocationName.of(projectId, "global").toString(), memory)) {
+      List<CompletableFuture<String>> translations = new ArrayList<>();
+      for (String text : args) {
+        translations.add(translator.translate(text, targetLanguage));
+      }
+      translator.flush();
+      for (int i = 0; i < args.length; i++) {
+        System.out.printf("%s: %s%n", args[i], translations.get(i).get());
+      }
+      System.out.println(translator.stats());
+    }
+  }
+}
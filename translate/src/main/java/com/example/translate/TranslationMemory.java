@@ -0,0 +1,194 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.translate;
+
+import com.google.common.hash.HashCode;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Translated segments keyed by a digest of the segment and the settings it was translated with.
+ * The most recently used translations are kept in memory. With a store, every translation is also
+ * appended to a local file, so it is never requested again, even after a restart.
+ */
+public class TranslationMemory implements Closeable {
+
+  private static final int KEY_BYTES = 32;
+
+  private final int maxEntries;
+  // Guarded by this; in least recently used order.
+  private final Map<HashCode, String> recent;
+  private Store store;
+
+  /** Keeps up to {@code maxEntries} translations in memory. */
+  public TranslationMemory(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.recent = new LinkedHashMap<HashCode, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<HashCode, String> eldest) {
+        return size() > TranslationMemory.this.maxEntries;
+      }
+    };
+  }
+
+  /** Also keeps every translation in {@code file}, reading those a previous run left there. */
+  public TranslationMemory withStore(Path file) throws IOException {
+    this.store = new Store(file);
+    return this;
+  }
+
+  /**
+   * Returns the translation for a SHA-256 key, or null if it was never stored.
+   */
+  public synchronized String get(HashCode key) {
+    String translation = recent.get(key);
+    if (translation == null && store != null) {
+      translation = store.get(key);
+      if (translation != null) {
+        recent.put(key, translation);
+      }
+    }
+    return translation;
+  }
+
+  public synchronized void put(HashCode key, String translation) {
+    recent.put(key, translation);
+    if (store != null) {
+      store.put(key, translation);
+    }
+  }
+
+  /** The number of translations in the store, or in memory if there is no store. */
+  public synchronized int size() {
+    return store != null ? store.offsets.size() : recent.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  /**
+   * The translations of earlier runs, as a log of records that each hold the key, the length and
+   * CRC-32 of the translation, and the UTF-8 translation. Only the position of every record is
+   * kept in memory; translations are read back from the file when they are looked up.
+   *
+   * <p>Opening the log keeps the records up to the first one that is cut short or does not match
+   * its checksum, which is where a process that died mid-append stopped writing.
+   */
+  private static class Store implements Closeable {
+    private static final int HEADER_BYTES = KEY_BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final Map<HashCode, Long> offsets = new HashMap<>();
+    // Where the next record is appended.
+    private long end;
+
+    Store(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      long length = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (end + HEADER_BYTES <= length) {
+        header.clear();
+        readFully(header, end);
+        int translationBytes = header.getInt(KEY_BYTES);
+        if (translationBytes < 0 || end + HEADER_BYTES + translationBytes > length) {
+          break;
+        }
+        ByteBuffer translation = ByteBuffer.allocate(translationBytes);
+        readFully(translation, end + HEADER_BYTES);
+        if (checksum(translation.array()) != header.getInt(KEY_BYTES + Integer.BYTES)) {
+          break;
+        }
+        byte[] key = new byte[KEY_BYTES];
+        header.position(0);
+        header.get(key);
+        offsets.put(HashCode.fromBytes(key), end);
+        end += HEADER_BYTES + translationBytes;
+      }
+      channel.truncate(end);
+    }
+
+    String get(HashCode key) {
+      Long offset = offsets.get(key);
+      if (offset == null) {
+        return null;
+      }
+      try {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset + KEY_BYTES);
+        ByteBuffer translation = ByteBuffer.allocate(length.getInt(0));
+        readFully(translation, offset + HEADER_BYTES);
+        return new String(translation.array(), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        // Translate the segment again rather than fail the caller.
+        return null;
+      }
+    }
+
+    void put(HashCode key, String translation) {
+      if (offsets.containsKey(key)) {
+        return;
+      }
+      byte[] bytes = translation.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bytes.length);
+      record.put(key.asBytes()).putInt(bytes.length).putInt(checksum(bytes)).put(bytes).flip();
+      try {
+        while (record.hasRemaining()) {
+          channel.write(record, end + record.position());
+        }
+      } catch (IOException e) {
+        // The translation stays in the in-memory cache; only a later run has to request it again.
+        // The next record overwrites whatever part of this one was written.
+        return;
+      }
+      offsets.put(key, end);
+      end += record.capacity();
+    }
+
+    private static int checksum(byte[] bytes) {
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length);
+      return (int) crc.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of file");
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
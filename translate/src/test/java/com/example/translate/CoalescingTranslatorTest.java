@@ -0,0 +1,351 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.translate;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.translate.v3.TranslateTextRequest;
+import com.google.cloud.translate.v3.TranslateTextResponse;
+import com.google.cloud.translate.v3.Translation;
+import com.google.cloud.translate.v3.TranslationServiceClient;
+import com.google.cloud.translate.v3.TranslationServiceSettings;
+import com.google.cloud.translate.v3.stub.TranslationServiceStub;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CoalescingTranslatorTest {
+  private static final Logger logger =
+      Logger.getLogger(CoalescingTranslatorTest.class.getName());
+
+  private static final MethodDescriptor<TranslateTextRequest, TranslateTextResponse>
+      TRANSLATE_TEXT =
+          MethodDescriptor.<TranslateTextRequest, TranslateTextResponse>newBuilder()
+              .setType(MethodDescriptor.MethodType.UNARY)
+              .setFullMethodName("google.cloud.translation.v3.TranslationService/TranslateText")
+              .setRequestMarshaller(
+                  ProtoUtils.marshaller(TranslateTextRequest.getDefaultInstance()))
+              .setResponseMarshaller(
+                  ProtoUtils.marshaller(TranslateTextResponse.getDefaultInstance()))
+              .build();
+
+  private static final String PARENT = "projects/test-project/locations/global";
+  // Every call takes this long, however many segments it holds.
+  private static final long CALL_MILLIS = 10;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<TranslateTextRequest> calls =
+      Collections.synchronizedList(new ArrayList<>());
+  private final ScheduledExecutorService latency = Executors.newScheduledThreadPool(4);
+  private Server server;
+  private ManagedChannel channel;
+  private TranslationServiceClient client;
+
+  /** Translates every segment to "target:segment", and fails requests for "unavailable". */
+  private void translateText(
+      TranslateTextRequest request, StreamObserver<TranslateTextResponse> response) {
+    calls.add(request);
+    if (request.getContents(0).equals("unavailable")) {
+      response.onError(Status.UNAVAILABLE.asRuntimeException());
+      return;
+    }
+    TranslateTextResponse.Builder translations = TranslateTextResponse.newBuilder();
+    for (String content : request.getContentsList()) {
+      Translation translation = Translation.newBuilder()
+          .setTranslatedText(request.getTargetLanguageCode() + ":" + content)
+          .build();
+      if (request.hasGlossaryConfig()) {
+        translations.addGlossaryTranslations(translation);
+      } else {
+        translations.addTranslations(translation);
+      }
+    }
+    latency.schedule(() -> {
+      response.onNext(translations.build());
+      response.onCompleted();
+    }, CALL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+        .addService(
+            ServerServiceDefinition.builder("google.cloud.translation.v3.TranslationService")
+                .addMethod(TRANSLATE_TEXT, ServerCalls.asyncUnaryCall(this::translateText))
+                .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    client = TranslationServiceClient.create(TranslationServiceSettings.newBuilder()
+        .setTransportChannelProvider(
+            FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+    latency.shutdownNow();
+  }
+
+  @Test
+  public void testCoalescesRepetitiveTraffic() throws Exception {
+    int callers = 32;
+    int segmentsPerCaller = 200;
+    // UI strings repeat: every caller asks for the same few hundred labels.
+    int distinct = 300;
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    List<Future<?>> results = new ArrayList<>();
+    long start = System.nanoTime();
+    try (CoalescingTranslator translator =
+        new CoalescingTranslator(client, PARENT, new TranslationMemory(10_000)).withLinger(5)) {
+      for (int c = 0; c < callers; c++) {
+        int caller = c;
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < segmentsPerCaller; i++) {
+            String label = "label-" + ((caller * 7 + i) % distinct);
+            String language = i % 2 == 0 ? "fr" : "de";
+            assertThat(translator.translate(label, language).get()).isEqualTo(
+                language + ":" + label);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      CoalescingTranslator.Stats stats = translator.stats();
+      int segments = 0;
+      for (TranslateTextRequest call : calls) {
+        assertThat(call.getContentsCount()).isAtMost(CoalescingTranslator.MAX_SEGMENTS_PER_CALL);
+        segments += call.getContentsCount();
+      }
+      // Each label and language pair is translated once.
+      assertThat(segments).isEqualTo((int) stats.getSegmentsSent());
+      assertThat(segments).isAtMost(2 * distinct);
+      assertThat(stats.getMemoryHits() + stats.getSharedSegments() + segments)
+          .isEqualTo((long) callers * segmentsPerCaller);
+      // One call per request would make callers * segmentsPerCaller calls.
+      assertThat(calls.size()).isLessThan(segments / 2);
+      assertThat(calls.size()).isLessThan(callers * segmentsPerCaller / 20);
+      logger.info(String.format("%d segments in %d calls, %d ms, %.0f segments/s, %s",
+          callers * segmentsPerCaller, calls.size(), elapsedMillis,
+          callers * segmentsPerCaller * 1000.0 / elapsedMillis, stats));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSplitsRequestsBySettingsAndLimits() throws Exception {
+    try (CoalescingTranslator translator =
+        new CoalescingTranslator(client, PARENT, new TranslationMemory(100))
+            .withRequestLimits(3, 10)
+            .withLinger(1000)) {
+      CompletableFuture<String> a = translator.translate("aaaa", "fr");
+      CompletableFuture<String> b = translator.translate("bbbb", "fr");
+      // Over the 10 code points of a request, so the first two are sent without it.
+      CompletableFuture<String> c = translator.translate("cccc", "fr");
+      CompletableFuture<String> glossary =
+          translator.translate("aaaa", "en", "fr", null, PARENT + "/glossaries/ui");
+      assertThat(a.get(5, TimeUnit.SECONDS)).isEqualTo("fr:aaaa");
+      assertThat(b.get(5, TimeUnit.SECONDS)).isEqualTo("fr:bbbb");
+      assertThat(calls).hasSize(1);
+      assertThat(calls.get(0).getContentsList()).containsExactly("aaaa", "bbbb").inOrder();
+
+      translator.flush();
+      assertThat(c.get(5, TimeUnit.SECONDS)).isEqualTo("fr:cccc");
+      assertThat(glossary.get(5, TimeUnit.SECONDS)).isEqualTo("fr:aaaa");
+      assertThat(calls).hasSize(3);
+      for (TranslateTextRequest call : calls) {
+        if (call.hasGlossaryConfig()) {
+          assertThat(call.getSourceLanguageCode()).isEqualTo("en");
+          assertThat(call.getContentsList()).containsExactly("aaaa");
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRemembersTranslationsAcrossRuns() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("translations.tm");
+    try (TranslationMemory memory = new TranslationMemory(2).withStore(file);
+        CoalescingTranslator translator = new CoalescingTranslator(client, PARENT, memory)) {
+      for (int i = 0; i < 5; i++) {
+        translator.translate("Save " + i, "fr");
+      }
+      translator.flush();
+      for (int i = 0; i < 5; i++) {
+        // Older than the two in memory, but still in the store.
+        assertThat(translator.translate("Save " + i, "fr").get(5, TimeUnit.SECONDS))
+            .isEqualTo("fr:Save " + i);
+      }
+      assertThat(memory.size()).isEqualTo(5);
+    }
+    assertThat(calls).hasSize(1);
+
+    try (TranslationMemory memory = new TranslationMemory(100).withStore(file);
+        CoalescingTranslator translator = new CoalescingTranslator(client, PARENT, memory)) {
+      for (int i = 0; i < 5; i++) {
+        assertThat(translator.translate("Save " + i, "fr").get(5, TimeUnit.SECONDS))
+            .isEqualTo("fr:Save " + i);
+      }
+      assertThat(translator.stats().getMemoryHits()).isEqualTo(5);
+    }
+    assertThat(calls).hasSize(1);
+  }
+
+  @Test
+  public void testDropsTornRecordWhenReopened() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("translations.tm");
+    try (TranslationMemory memory = new TranslationMemory(100).withStore(file);
+        CoalescingTranslator translator = new CoalescingTranslator(client, PARENT, memory)) {
+      translator.translate("Save", "fr");
+      translator.translate("Open", "fr");
+      translator.flush();
+      translator.translate("Open", "fr").get(5, TimeUnit.SECONDS);
+    }
+    // Corrupt the last byte of the last record, as a crash during the append could.
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'?'}), channel.size() - 1);
+    }
+
+    try (TranslationMemory memory = new TranslationMemory(100).withStore(file)) {
+      assertThat(memory.size()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testFailsSegmentsWhenCallCannotStart() throws Exception {
+    try (TranslationServiceClient failing = TranslationServiceClient.create(new FailingStub());
+        CoalescingTranslator translator =
+            new CoalescingTranslator(failing, PARENT, new TranslationMemory(100))) {
+      CompletableFuture<String> first = translator.translate("Save", "fr");
+      translator.flush();
+      try {
+        first.get(5, TimeUnit.SECONDS);
+        throw new AssertionError("Expected the call to fail");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+      }
+      // The failed segment is no longer in flight, so it is sent again.
+      CompletableFuture<String> second = translator.translate("Save", "fr");
+      assertThat(second).isNotSameInstanceAs(first);
+      translator.flush();
+      assertThat(second.isCompletedExceptionally()).isTrue();
+    }
+  }
+
+  /** A stub whose calls fail before they are sent, as those of a closed client do. */
+  private static class FailingStub extends TranslationServiceStub {
+    @Override
+    public UnaryCallable<TranslateTextRequest, TranslateTextResponse> translateTextCallable() {
+      return new UnaryCallable<TranslateTextRequest, TranslateTextResponse>() {
+        @Override
+        public ApiFuture<TranslateTextResponse> futureCall(
+            TranslateTextRequest request, ApiCallContext context) {
+          throw new IllegalStateException("client is closed");
+        }
+      };
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public boolean isShutdown() {
+      return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return true;
+    }
+
+    @Override
+    public void shutdownNow() {}
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testDoesNotRememberFailures() throws Exception {
+    try (CoalescingTranslator translator =
+        new CoalescingTranslator(client, PARENT, new TranslationMemory(100))) {
+      for (int attempt = 0; attempt < 2; attempt++) {
+        CompletableFuture<String> failed = translator.translate("unavailable", "fr");
+        translator.flush();
+        try {
+          failed.get(5, TimeUnit.SECONDS);
+          throw new AssertionError("Expected the call to fail");
+        } catch (ExecutionException e) {
+          // Expected.
+        }
+      }
+      assertThat(calls).hasSize(2);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package video;
+
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.videointelligence.v1.AnnotateVideoRequest;
+import com.google.cloud.videointelligence.v1.AnnotateVideoResponse;
+import com.google.cloud.videointelligence.v1.Feature;
+import com.google.cloud.videointelligence.v1.VideoAnnotationResults;
+import com.google.cloud.videointelligence.v1.VideoIntelligenceServiceClient;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Annotates videos with several features at once. Each feature is requested as its own operation,
+ * all of them concurrently, and their results are merged into one {@link VideoAnnotationIndex}.
+ *
+ * <p>A local video is either streamed to a Cloud Storage staging bucket in fixed-size chunks, so it
+ * is never held in memory, or, without a staging bucket, sent inline. The API takes inline content
+ * in the request itself, so it is read into memory once and shared by all requests, and videos
+ * larger than {@value #MAX_INLINE_BYTES} bytes need a staging bucket.
+ */
+public class AnnotateVideoPipeline {
+
+  private static final int UPLOAD_CHUNK_BYTES = 8 << 20;
+  static final long MAX_INLINE_BYTES = 32 << 20;
+
+  private final VideoIntelligenceServiceClient client;
+  private Storage storage;
+  private String stagingBucket;
+  private Semaphore operations = new Semaphore(Integer.MAX_VALUE);
+
+  public AnnotateVideoPipeline(VideoIntelligenceServiceClient client) {
+    this.client = client;
+  }
+
+  /** Streams local videos to {@code bucket} instead of sending their content inline. */
+  public AnnotateVideoPipeline withStagingBucket(Storage storage, String bucket) {
+    this.storage = storage;
+    this.stagingBucket = bucket;
+    return this;
+  }
+
+  /**
+   * Limits the operations that run at the same time, across all videos. Starting an annotation
+   * blocks until enough operations have finished.
+   */
+  public AnnotateVideoPipeline withMaxConcurrentOperations(int maxConcurrentOperations) {
+    this.operations = new Semaphore(maxConcurrentOperations);
+    return this;
+  }
+
+  /**
+   * Annotates a video on Cloud Storage.
+   *
+   * @param gcsUri the path to the video file to analyze, as "gs://bucket-name/..."
+   */
+  public CompletableFuture<VideoAnnotationIndex> annotate(
+      String gcsUri, Collection<Feature> features) throws InterruptedException {
+    return annotate(AnnotateVideoRequest.newBuilder().setInputUri(gcsUri).build(), features);
+  }
+
+  /** Annotates a local video, staging it on Cloud Storage if a staging bucket is set. */
+  public CompletableFuture<VideoAnnotationIndex> annotateFile(
+      Path path, Collection<Feature> features) throws IOException, InterruptedException {
+    if (storage == null) {
+      long size = Files.size(path);
+      if (size > MAX_INLINE_BYTES) {
+        throw new IllegalArgumentException(String.format(
+            "%s has %d bytes, set a staging bucket to annotate videos over %d bytes",
+            path, size, MAX_INLINE_BYTES));
+      }
+      ByteString content;
+      try (InputStream in = Files.newInputStream(path)) {
+        content = ByteString.readFrom(in);
+      }
+      return annotate(AnnotateVideoRequest.newBuilder().setInputContent(content).build(), features);
+    }
+
+    BlobId blob =
+        BlobId.of(stagingBucket, "staging/" + UUID.randomUUID() + "/" + path.getFileName());
+    upload(path, blob);
+    CompletableFuture<VideoAnnotationIndex> index = annotate(
+        String.format("gs://%s/%s", blob.getBucket(), blob.getName()), features);
+    return index.whenComplete((result, t) -> storage.delete(blob));
+  }
+
+  /** Copies the file to Cloud Storage a chunk at a time. */
+  private void upload(Path path, BlobId blob) throws IOException {
+    try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+        WriteChannel out = storage.writer(BlobInfo.newBuilder(blob).build())) {
+      out.setChunkSize(UPLOAD_CHUNK_BYTES);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(UPLOAD_CHUNK_BYTES);
+      while (in.read(buffer) >= 0 || buffer.position() > 0) {
+        buffer.flip();
+        out.write(buffer);
+        buffer.compact();
+      }
+    }
+  }
+
+  private CompletableFuture<VideoAnnotationIndex> annotate(
+      AnnotateVideoRequest input, Collection<Feature> features) throws InterruptedException {
+    List<CompletableFuture<AnnotateVideoResponse>> responses = new ArrayList<>();
+    for (Feature feature : features) {
+      operations.acquire();
+      CompletableFuture<AnnotateVideoResponse> response = new CompletableFuture<>();
+      response.whenComplete((result, t) -> operations.release());
+      responses.add(response);
+      try {
+        ApiFutures.addCallback(
+            client.annotateVideoAsync(input.toBuilder().addFeatures(feature).build()),
+            new ApiFutureCallback<AnnotateVideoResponse>() {
+              @Override
+              public void onFailure(Throwable t) {
+                response.completeExceptionally(t);
+              }
+
+              @Override
+              public void onSuccess(AnnotateVideoResponse result) {
+                response.complete(result);
+              }
+            },
+            MoreExecutors.directExecutor());
+      } catch (RuntimeException e) {
+        // Failing the response releases the permit; the features that are left are not started.
+        response.completeExceptionally(e);
+        break;
+      }
+    }
+
+    return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+        .thenApply(done -> {
+          List<VideoAnnotationIndex.Annotation> annotations = new ArrayList<>();
+          for (CompletableFuture<AnnotateVideoResponse> response : responses) {
+            for (VideoAnnotationResults results : response.join().getAnnotationResultsList()) {
+              annotations.addAll(VideoAnnotationIndex.extract(results));
+            }
+          }
+          return VideoAnnotationIndex.of(annotations);
+        });
+  }
+
+  /**
+   * Annotates a video with labels, shots and text, and prints the annotations of a time range.
+   *
+   * @param args the video, as a local path or "gs://bucket-name/...", an optional staging bucket
+   *     for local videos, and an optional range in seconds, such as "10:20".
+   */
+  public static void main(String[] args) throws Exception {
+    String video = args[0];
+    String stagingBucket = args.length > 1 ? args[1] : null;
+    String[] range = (args.length > 2 ? args[2] : "0:" + Long.MAX_VALUE / 1000).split(":");
+    List<Feature> features = Arrays.asList(
+        Feature.LABEL_DETECTION, Feature.SHOT_CHANGE_DETECTION, Feature.TEXT_DETECTION);
+
+    try (VideoIntelligenceServiceClient client = VideoIntelligenceServiceClient.create()) {
+      AnnotateVideoPipeline pipeline = new AnnotateVideoPipeline(client);
+      if (stagingBucket != null) {
+        pipeline.withStagingBucket(StorageOptions.getDefaultInstance().getService(), stagingBucket);
+      }
+      System.out.println("Waiting for operations to complete...");
+      VideoAnnotationIndex index = video.startsWith("gs://")
+          ? pipeline.annotate(video, features).get()
+          : pipeline.annotateFile(Paths.get(video), features).get();
+      System.out.printf("%d annotations%n", index.size());
+      long from = Long.parseLong(range[0]) * 1000;
+      long to = Long.parseLong(range[1]) * 1000;
+      for (VideoAnnotationIndex.Annotation annotation : index.query(from, to)) {
+        System.out.println(annotation);
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package video;
+
+import com.google.cloud.videointelligence.v1.ExplicitContentFrame;
+import com.google.cloud.videointelligence.v1.FaceDetectionAnnotation;
+import com.google.cloud.videointelligence.v1.Feature;
+import com.google.cloud.videointelligence.v1.LabelAnnotation;
+import com.google.cloud.videointelligence.v1.LabelFrame;
+import com.google.cloud.videointelligence.v1.LabelSegment;
+import com.google.cloud.videointelligence.v1.LogoRecognitionAnnotation;
+import com.google.cloud.videointelligence.v1.ObjectTrackingAnnotation;
+import com.google.cloud.videointelligence.v1.PersonDetectionAnnotation;
+import com.google.cloud.videointelligence.v1.SpeechRecognitionAlternative;
+import com.google.cloud.videointelligence.v1.SpeechTranscription;
+import com.google.cloud.videointelligence.v1.TextAnnotation;
+import com.google.cloud.videointelligence.v1.TextSegment;
+import com.google.cloud.videointelligence.v1.Track;
+import com.google.cloud.videointelligence.v1.VideoAnnotationResults;
+import com.google.cloud.videointelligence.v1.VideoSegment;
+import com.google.cloud.videointelligence.v1.WordInfo;
+import com.google.protobuf.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The annotations of one video, from any number of features, indexed by time. The index is an
+ * interval tree over the annotations' segments, so the annotations that overlap a time range are
+ * found without scanning all of them.
+ */
+public class VideoAnnotationIndex {
+
+  /** An annotation of one feature over a segment of the video; frames have equal start and end. */
+  public static class Annotation {
+    private final Feature feature;
+    private final String description;
+    private final long startMillis;
+    private final long endMillis;
+    private final float confidence;
+
+    public Annotation(
+        Feature feature, String description, long startMillis, long endMillis, float confidence) {
+      this.feature = feature;
+      this.description = description;
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+      this.confidence = confidence;
+    }
+
+    public Feature getFeature() {
+      return feature;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public long getStartMillis() {
+      return startMillis;
+    }
+
+    public long getEndMillis() {
+      return endMillis;
+    }
+
+    public float getConfidence() {
+      return confidence;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%.3f:%.3f %s %s (%.2f)",
+          startMillis / 1e3, endMillis / 1e3, feature, description, confidence);
+    }
+  }
+
+  // The annotations sorted by start time. The tree is implicit: the root of the range [lo, hi] is
+  // at its middle, and maxEnd holds the latest end time of the subtree rooted at each position.
+  private final Annotation[] annotations;
+  private final long[] maxEnd;
+
+  private VideoAnnotationIndex(List<Annotation> sorted) {
+    this.annotations = sorted.toArray(new Annotation[0]);
+    this.maxEnd = new long[annotations.length];
+    build(0, annotations.length - 1);
+  }
+
+  public static VideoAnnotationIndex of(Collection<Annotation> annotations) {
+    List<Annotation> sorted = new ArrayList<>(annotations);
+    sorted.sort(Comparator.comparingLong(Annotation::getStartMillis)
+        .thenComparingLong(Annotation::getEndMillis));
+    return new VideoAnnotationIndex(sorted);
+  }
+
+  private long build(int lo, int hi) {
+    if (lo > hi) {
+      return Long.MIN_VALUE;
+    }
+    int mid = (lo + hi) >>> 1;
+    maxEnd[mid] = Math.max(annotations[mid].endMillis, Math.max(build(lo, mid - 1),
+        build(mid + 1, hi)));
+    return maxEnd[mid];
+  }
+
+  public int size() {
+    return annotations.length;
+  }
+
+  /** Returns the annotations that overlap {@code [fromMillis, toMillis]}, by start time. */
+  public List<Annotation> query(long fromMillis, long toMillis) {
+    List<Annotation> result = new ArrayList<>();
+    query(0, annotations.length - 1, fromMillis, toMillis, result);
+    return result;
+  }
+
+  private void query(int lo, int hi, long fromMillis, long toMillis, List<Annotation> result) {
+    if (lo > hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    // Everything in this subtree ends before the range starts.
+    if (maxEnd[mid] < fromMillis) {
+      return;
+    }
+    query(lo, mid - 1, fromMillis, toMillis, result);
+    Annotation annotation = annotations[mid];
+    // The rest of the subtree starts after the range ends.
+    if (annotation.startMillis > toMillis) {
+      return;
+    }
+    if (annotation.endMillis >= fromMillis) {
+      result.add(annotation);
+    }
+    query(mid + 1, hi, fromMillis, toMillis, result);
+  }
+
+  /** Returns the timed annotations of every feature in {@code results}. */
+  public static List<Annotation> extract(VideoAnnotationResults results) {
+    List<Annotation> annotations = new ArrayList<>();
+    List<LabelAnnotation> labels = new ArrayList<>(results.getSegmentLabelAnnotationsList());
+    labels.addAll(results.getShotLabelAnnotationsList());
+    for (LabelAnnotation label : labels) {
+      for (LabelSegment segment : label.getSegmentsList()) {
+        annotations.add(segment(Feature.LABEL_DETECTION, label.getEntity().getDescription(),
+            segment.getSegment(), segment.getConfidence()));
+      }
+    }
+    for (LabelAnnotation label : results.getFrameLabelAnnotationsList()) {
+      for (LabelFrame frame : label.getFramesList()) {
+        long millis = millis(frame.getTimeOffset());
+        annotations.add(new Annotation(Feature.LABEL_DETECTION,
+            label.getEntity().getDescription(), millis, millis, frame.getConfidence()));
+      }
+    }
+    for (VideoSegment shot : results.getShotAnnotationsList()) {
+      annotations.add(segment(Feature.SHOT_CHANGE_DETECTION, "shot", shot, 1));
+    }
+    for (ExplicitContentFrame frame : results.getExplicitAnnotation().getFramesList()) {
+      long millis = millis(frame.getTimeOffset());
+      annotations.add(new Annotation(Feature.EXPLICIT_CONTENT_DETECTION,
+          frame.getPornographyLikelihood().name(), millis, millis, 1));
+    }
+    for (SpeechTranscription transcription : results.getSpeechTranscriptionsList()) {
+      for (SpeechRecognitionAlternative alternative : transcription.getAlternativesList()) {
+        for (WordInfo word : alternative.getWordsList()) {
+          annotations.add(new Annotation(Feature.SPEECH_TRANSCRIPTION, word.getWord(),
+              millis(word.getStartTime()), millis(word.getEndTime()), word.getConfidence()));
+        }
+      }
+    }
+    for (TextAnnotation text : results.getTextAnnotationsList()) {
+      for (TextSegment segment : text.getSegmentsList()) {
+        annotations.add(segment(Feature.TEXT_DETECTION, text.getText(), segment.getSegment(),
+            segment.getConfidence()));
+      }
+    }
+    for (ObjectTrackingAnnotation object : results.getObjectAnnotationsList()) {
+      annotations.add(segment(Feature.OBJECT_TRACKING, object.getEntity().getDescription(),
+          object.getSegment(), object.getConfidence()));
+    }
+    for (FaceDetectionAnnotation face : results.getFaceDetectionAnnotationsList()) {
+      for (Track track : face.getTracksList()) {
+        annotations.add(segment(Feature.FACE_DETECTION, "face", track.getSegment(),
+            track.getConfidence()));
+      }
+    }
+    for (PersonDetectionAnnotation person : results.getPersonDetectionAnnotationsList()) {
+      for (Track track : person.getTracksList()) {
+        annotations.add(segment(Feature.PERSON_DETECTION, "person", track.getSegment(),
+            track.getConfidence()));
+      }
+    }
+    for (LogoRecognitionAnnotation logo : results.getLogoRecognitionAnnotationsList()) {
+      for (Track track : logo.getTracksList()) {
+        annotations.add(segment(Feature.LOGO_RECOGNITION, logo.getEntity().getDescription(),
+            track.getSegment(), track.getConfidence()));
+      }
+    }
+    return annotations;
+  }
+
+  private static Annotation segment(
+      Feature feature, String description, VideoSegment segment, float confidence) {
+    return new Annotation(feature, description, millis(segment.getStartTimeOffset()),
+        millis(segment.getEndTimeOffset()), confidence);
+  }
+
+  private static long millis(Duration duration) {
+    return duration.getSeconds() * 1000 + duration.getNanos() / 1000000;
+  }
+}
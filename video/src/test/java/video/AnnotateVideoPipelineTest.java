@@ -0,0 +1,326 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package video;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.longrunning.OperationFuture;
+import com.google.api.gax.longrunning.OperationTimedPollAlgorithm;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.OperationCallable;
+import com.google.cloud.videointelligence.v1.AnnotateVideoProgress;
+import com.google.cloud.videointelligence.v1.AnnotateVideoRequest;
+import com.google.cloud.videointelligence.v1.AnnotateVideoResponse;
+import com.google.cloud.videointelligence.v1.Entity;
+import com.google.cloud.videointelligence.v1.Feature;
+import com.google.cloud.videointelligence.v1.LabelAnnotation;
+import com.google.cloud.videointelligence.v1.LabelSegment;
+import com.google.cloud.videointelligence.v1.TextAnnotation;
+import com.google.cloud.videointelligence.v1.TextSegment;
+import com.google.cloud.videointelligence.v1.VideoAnnotationResults;
+import com.google.cloud.videointelligence.v1.VideoIntelligenceServiceClient;
+import com.google.cloud.videointelligence.v1.VideoIntelligenceServiceSettings;
+import com.google.cloud.videointelligence.v1.VideoSegment;
+import com.google.cloud.videointelligence.v1.stub.VideoIntelligenceServiceStub;
+import com.google.longrunning.GetOperationRequest;
+import com.google.longrunning.Operation;
+import com.google.protobuf.Any;
+import com.google.protobuf.Duration;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class AnnotateVideoPipelineTest {
+
+  private static final MethodDescriptor<AnnotateVideoRequest, Operation> ANNOTATE_VIDEO =
+      MethodDescriptor.<AnnotateVideoRequest, Operation>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName(
+              "google.cloud.videointelligence.v1.VideoIntelligenceService/AnnotateVideo")
+          .setRequestMarshaller(ProtoUtils.marshaller(AnnotateVideoRequest.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(Operation.getDefaultInstance()))
+          .build();
+
+  private static final MethodDescriptor<GetOperationRequest, Operation> GET_OPERATION =
+      MethodDescriptor.<GetOperationRequest, Operation>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName("google.longrunning.Operations/GetOperation")
+          .setRequestMarshaller(ProtoUtils.marshaller(GetOperationRequest.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(Operation.getDefaultInstance()))
+          .build();
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, AnnotateVideoRequest> operations = new ConcurrentHashMap<>();
+  private volatile int expectedOperations;
+  private Server server;
+  private ManagedChannel channel;
+  private VideoIntelligenceServiceClient client;
+
+  private void annotateVideo(AnnotateVideoRequest request, StreamObserver<Operation> response) {
+    String name = "operations/" + request.getFeatures(0);
+    operations.put(name, request);
+    response.onNext(Operation.newBuilder().setName(name).build());
+    response.onCompleted();
+  }
+
+  /**
+   * Finishes the operations only once all of them have been started, so a client that waits for
+   * one feature before it requests the next never gets a result.
+   */
+  private void getOperation(GetOperationRequest request, StreamObserver<Operation> response) {
+    Operation.Builder operation = Operation.newBuilder().setName(request.getName());
+    if (operations.size() >= expectedOperations) {
+      operation.setDone(true).setResponse(Any.pack(AnnotateVideoResponse.newBuilder()
+          .addAnnotationResults(results(operations.get(request.getName()).getFeatures(0)))
+          .build()));
+    }
+    response.onNext(operation.build());
+    response.onCompleted();
+  }
+
+  private static VideoSegment segment(long startSeconds, long endSeconds) {
+    return VideoSegment.newBuilder()
+        .setStartTimeOffset(Duration.newBuilder().setSeconds(startSeconds))
+        .setEndTimeOffset(Duration.newBuilder().setSeconds(endSeconds))
+        .build();
+  }
+
+  private static VideoAnnotationResults results(Feature feature) {
+    VideoAnnotationResults.Builder results = VideoAnnotationResults.newBuilder();
+    switch (feature) {
+      case LABEL_DETECTION:
+        results.addSegmentLabelAnnotations(LabelAnnotation.newBuilder()
+            .setEntity(Entity.newBuilder().setDescription("dog"))
+            .addSegments(LabelSegment.newBuilder().setSegment(segment(0, 30)).setConfidence(1)));
+        break;
+      case SHOT_CHANGE_DETECTION:
+        results.addShotAnnotations(segment(0, 10))
+            .addShotAnnotations(segment(10, 20))
+            .addShotAnnotations(segment(20, 30));
+        break;
+      case TEXT_DETECTION:
+        results.addTextAnnotations(TextAnnotation.newBuilder()
+            .setText("EXIT")
+            .addSegments(TextSegment.newBuilder().setSegment(segment(12, 14))));
+        break;
+      default:
+        break;
+    }
+    return results.build();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerServiceDefinition.builder(
+                "google.cloud.videointelligence.v1.VideoIntelligenceService")
+            .addMethod(ANNOTATE_VIDEO, ServerCalls.asyncUnaryCall(this::annotateVideo))
+            .build())
+        .addService(ServerServiceDefinition.builder("google.longrunning.Operations")
+            .addMethod(GET_OPERATION, ServerCalls.asyncUnaryCall(this::getOperation))
+            .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+
+    VideoIntelligenceServiceSettings.Builder settings = VideoIntelligenceServiceSettings
+        .newBuilder()
+        .setTransportChannelProvider(
+            FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+        .setCredentialsProvider(NoCredentialsProvider.create());
+    settings.annotateVideoOperationSettings().setPollingAlgorithm(
+        OperationTimedPollAlgorithm.create(RetrySettings.newBuilder()
+            .setInitialRetryDelay(org.threeten.bp.Duration.ofMillis(5))
+            .setRetryDelayMultiplier(1.0)
+            .setMaxRetryDelay(org.threeten.bp.Duration.ofMillis(5))
+            .setInitialRpcTimeout(org.threeten.bp.Duration.ofSeconds(5))
+            .setRpcTimeoutMultiplier(1.0)
+            .setMaxRpcTimeout(org.threeten.bp.Duration.ofSeconds(5))
+            .setTotalTimeout(org.threeten.bp.Duration.ofSeconds(10))
+            .build()));
+    client = VideoIntelligenceServiceClient.create(settings.build());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void testRequestsFeaturesConcurrentlyAndMergesResults() throws Exception {
+    List<Feature> features = Arrays.asList(
+        Feature.LABEL_DETECTION, Feature.SHOT_CHANGE_DETECTION, Feature.TEXT_DETECTION);
+    expectedOperations = features.size();
+    Path video = folder.newFile("video.mp4").toPath();
+    Files.write(video, new byte[] {1, 2, 3});
+
+    VideoAnnotationIndex index = new AnnotateVideoPipeline(client)
+        .annotateFile(video, features)
+        .get(10, TimeUnit.SECONDS);
+
+    assertThat(index.size()).isEqualTo(5);
+    List<String> descriptions = new ArrayList<>();
+    for (VideoAnnotationIndex.Annotation annotation : index.query(11000, 13000)) {
+      descriptions.add(annotation.getFeature() + " " + annotation.getDescription());
+    }
+    assertThat(descriptions).containsExactly(
+        "LABEL_DETECTION dog", "SHOT_CHANGE_DETECTION shot", "TEXT_DETECTION EXIT").inOrder();
+    for (AnnotateVideoRequest request : operations.values()) {
+      assertThat(request.getInputContent().size()).isEqualTo(3);
+    }
+  }
+
+  /** A stub that fails every call before it is sent, as a client that is shut down does. */
+  private static class FailingStub extends VideoIntelligenceServiceStub {
+    @Override
+    public OperationCallable<AnnotateVideoRequest, AnnotateVideoResponse, AnnotateVideoProgress>
+        annotateVideoOperationCallable() {
+      return new OperationCallable<
+          AnnotateVideoRequest, AnnotateVideoResponse, AnnotateVideoProgress>() {
+        @Override
+        public OperationFuture<AnnotateVideoResponse, AnnotateVideoProgress> futureCall(
+            AnnotateVideoRequest request, ApiCallContext context) {
+          throw new IllegalStateException("client is shut down");
+        }
+
+        @Override
+        public OperationFuture<AnnotateVideoResponse, AnnotateVideoProgress> resumeFutureCall(
+            String operationName, ApiCallContext context) {
+          throw new IllegalStateException("client is shut down");
+        }
+
+        @Override
+        public ApiFuture<Void> cancel(String operationName, ApiCallContext context) {
+          throw new IllegalStateException("client is shut down");
+        }
+      };
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public boolean isShutdown() {
+      return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return true;
+    }
+
+    @Override
+    public void shutdownNow() {}
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) {
+      return true;
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testReleasesOperationWhenRequestFailsToStart() throws Exception {
+    VideoIntelligenceServiceClient failing =
+        VideoIntelligenceServiceClient.create(new FailingStub());
+    AnnotateVideoPipeline pipeline = new AnnotateVideoPipeline(failing)
+        .withMaxConcurrentOperations(1);
+
+    // With a leaked operation, the second call would block forever.
+    for (int i = 0; i < 2; i++) {
+      CompletableFuture<VideoAnnotationIndex> index =
+          pipeline.annotate("gs://bucket/video.mp4", Arrays.asList(Feature.LABEL_DETECTION));
+      assertThat(index.isCompletedExceptionally()).isTrue();
+    }
+    failing.close();
+  }
+
+  @Test
+  public void testLargeVideoNeedsStagingBucket() throws Exception {
+    Path video = folder.newFile("large.mp4").toPath();
+    try (RandomAccessFile file = new RandomAccessFile(video.toFile(), "rw")) {
+      file.setLength(AnnotateVideoPipeline.MAX_INLINE_BYTES + 1);
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> new AnnotateVideoPipeline(client)
+        .annotateFile(video, Arrays.asList(Feature.LABEL_DETECTION)));
+    assertThat(operations).isEmpty();
+  }
+
+  @Test
+  public void testIndexQueryMatchesScan() {
+    Random random = new Random(42);
+    List<VideoAnnotationIndex.Annotation> annotations = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      long start = random.nextInt(100000);
+      long end = start + (random.nextInt(10) == 0 ? 0 : random.nextInt(5000));
+      annotations.add(new VideoAnnotationIndex.Annotation(
+          Feature.OBJECT_TRACKING, "object " + i, start, end, 1));
+    }
+    VideoAnnotationIndex index = VideoAnnotationIndex.of(annotations);
+
+    for (int i = 0; i < 200; i++) {
+      long from = random.nextInt(110000) - 5000;
+      long to = from + random.nextInt(3000);
+      List<VideoAnnotationIndex.Annotation> expected = new ArrayList<>();
+      for (VideoAnnotationIndex.Annotation annotation : annotations) {
+        if (annotation.getStartMillis() <= to && annotation.getEndMillis() >= from) {
+          expected.add(annotation);
+        }
+      }
+      assertThat(index.query(from, to)).containsExactlyElementsIn(expected);
+    }
+    assertThat(VideoAnnotationIndex.of(new ArrayList<>()).query(0, 1000)).isEmpty();
+  }
+}
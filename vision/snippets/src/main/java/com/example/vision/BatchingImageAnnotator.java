@@ -0,0 +1,261 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.vision;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesRequest;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.EntityAnnotation;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Image;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotates images for many concurrent callers with as few {@code batchAnnotateImages} calls as
+ * possible. Requests are collected into one batch until it holds {@link #MAX_IMAGES_PER_CALL}
+ * images or the oldest request has waited for the linger time, whichever comes first.
+ *
+ * <p>Identical requests, with the same image content and features, are sent once: callers share
+ * the result of a request in flight, and recent results are kept in a bounded cache.
+ */
+public class BatchingImageAnnotator implements AutoCloseable {
+
+  /** The most images the Vision API accepts in one batchAnnotateImages call. */
+  public static final int MAX_IMAGES_PER_CALL = 16;
+
+  private static class Pending {
+    final AnnotateImageRequest request;
+    final HashCode key;
+    final CompletableFuture<AnnotateImageResponse> response = new CompletableFuture<>();
+
+    Pending(AnnotateImageRequest request, HashCode key) {
+      this.request = request;
+      this.key = key;
+    }
+  }
+
+  private final ImageAnnotatorClient client;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private int maxBatchSize = MAX_IMAGES_PER_CALL;
+  private long lingerMillis = 20;
+  private int cacheSize = 10000;
+
+  // Guarded by this.
+  private List<Pending> batch = new ArrayList<>();
+  private ScheduledFuture<?> lingerTimer;
+  private final Map<HashCode, CompletableFuture<AnnotateImageResponse>> cache =
+      new LinkedHashMap<HashCode, CompletableFuture<AnnotateImageResponse>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<HashCode, CompletableFuture<AnnotateImageResponse>> eldest) {
+          return size() > cacheSize;
+        }
+      };
+
+  public BatchingImageAnnotator(ImageAnnotatorClient client) {
+    this.client = client;
+  }
+
+  /** Sends a batch once it holds this many images, at most {@link #MAX_IMAGES_PER_CALL}. */
+  public BatchingImageAnnotator withMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1 || maxBatchSize > MAX_IMAGES_PER_CALL) {
+      throw new IllegalArgumentException("maxBatchSize must be between 1 and "
+          + MAX_IMAGES_PER_CALL + ": " + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  /** Sends a batch this long after its first request arrived, even if it is not full. */
+  public BatchingImageAnnotator withLinger(long lingerMillis) {
+    this.lingerMillis = lingerMillis;
+    return this;
+  }
+
+  /** Keeps the results of up to this many distinct requests. */
+  public BatchingImageAnnotator withCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+    return this;
+  }
+
+  /** Annotates a local image file. */
+  public CompletableFuture<AnnotateImageResponse> annotate(Path path, Feature.Type... types)
+      throws IOException {
+    ByteString content;
+    try (InputStream in = Files.newInputStream(path)) {
+      content = ByteString.readFrom(in);
+    }
+    AnnotateImageRequest.Builder request = AnnotateImageRequest.newBuilder()
+        .setImage(Image.newBuilder().setContent(content));
+    for (Feature.Type type : types) {
+      request.addFeatures(Feature.newBuilder().setType(type));
+    }
+    return annotate(request.build());
+  }
+
+  /**
+   * Adds a request to the next batch, or returns the cached result of an identical request. The
+   * future completes with the image's response, which may hold a per-image error.
+   */
+  public CompletableFuture<AnnotateImageResponse> annotate(AnnotateImageRequest request) {
+    HashCode key = Hashing.sha256().hashBytes(request.toByteArray());
+    List<Pending> full = null;
+    Pending pending;
+    synchronized (this) {
+      CompletableFuture<AnnotateImageResponse> cached = cache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      pending = new Pending(request, key);
+      cache.put(key, pending.response);
+      batch.add(pending);
+      if (batch.size() >= maxBatchSize) {
+        full = takeBatch();
+      } else if (batch.size() == 1) {
+        lingerTimer = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (full != null) {
+      send(full);
+    }
+    return pending.response;
+  }
+
+  /** Sends the current batch now, without waiting for it to fill or linger. */
+  public void flush() {
+    List<Pending> requests;
+    synchronized (this) {
+      requests = takeBatch();
+    }
+    if (!requests.isEmpty()) {
+      send(requests);
+    }
+  }
+
+  private List<Pending> takeBatch() {
+    List<Pending> requests = batch;
+    batch = new ArrayList<>();
+    if (lingerTimer != null) {
+      lingerTimer.cancel(false);
+      lingerTimer = null;
+    }
+    return requests;
+  }
+
+  private void send(List<Pending> requests) {
+    BatchAnnotateImagesRequest.Builder batchRequest = BatchAnnotateImagesRequest.newBuilder();
+    for (Pending pending : requests) {
+      batchRequest.addRequests(pending.request);
+    }
+    ApiFuture<BatchAnnotateImagesResponse> response;
+    try {
+      response = client.batchAnnotateImagesCallable().futureCall(batchRequest.build());
+    } catch (RuntimeException e) {
+      // The call failed before it was sent, for example because the client is closed.
+      response = ApiFutures.immediateFailedFuture(e);
+    }
+    ApiFutures.addCallback(
+        response,
+        new ApiFutureCallback<BatchAnnotateImagesResponse>() {
+          @Override
+          public void onFailure(Throwable t) {
+            for (Pending pending : requests) {
+              fail(pending, t);
+            }
+          }
+
+          @Override
+          public void onSuccess(BatchAnnotateImagesResponse result) {
+            // The responses are in the order of the requests.
+            for (int i = 0; i < requests.size(); i++) {
+              Pending pending = requests.get(i);
+              if (i >= result.getResponsesCount()) {
+                fail(pending, new IllegalStateException("No response for image " + i));
+                continue;
+              }
+              AnnotateImageResponse response = result.getResponses(i);
+              if (response.hasError()) {
+                // Let the next identical request try again.
+                uncache(pending);
+              }
+              pending.response.complete(response);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void fail(Pending pending, Throwable t) {
+    uncache(pending);
+    pending.response.completeExceptionally(t);
+  }
+
+  private synchronized void uncache(Pending pending) {
+    cache.remove(pending.key, pending.response);
+  }
+
+  /** Sends the pending requests and stops the linger timer. */
+  @Override
+  public void close() {
+    flush();
+    scheduler.shutdown();
+  }
+
+  /** Labels every image given on the command line, sharing batches between them. */
+  public static void main(String[] args) throws Exception {
+    try (ImageAnnotatorClient client = ImageAnnotatorClient.create();
+        BatchingImageAnnotator annotator = new BatchingImageAnnotator(client)) {
+      List<CompletableFuture<AnnotateImageResponse>> responses = new ArrayList<>();
+      for (String path : args) {
+        responses.add(annotator.annotate(Paths.get(path), Feature.Type.LABEL_DETECTION));
+      }
+      annotator.flush();
+      for (int i = 0; i < args.length; i++) {
+        AnnotateImageResponse response = responses.get(i).get();
+        if (response.hasError()) {
+          System.out.format("%s: Error: %s%n", args[i], response.getError().getMessage());
+          continue;
+        }
+        for (EntityAnnotation label : response.getLabelAnnotationsList()) {
+          System.out.format("%s: %s (%.2f)%n", args[i], label.getDescription(), label.getScore());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2026 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesRequest;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.EntityAnnotation;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Image;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.cloud.vision.v1.ImageAnnotatorSettings;
+import com.google.cloud.vision.v1.stub.ImageAnnotatorStub;
+import com.google.protobuf.ByteString;
+import com.google.rpc.Status;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BatchingImageAnnotatorTest {
+  private static final Logger logger =
+      Logger.getLogger(BatchingImageAnnotatorTest.class.getName());
+
+  private static final MethodDescriptor<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse>
+      BATCH_ANNOTATE_IMAGES =
+          MethodDescriptor.<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse>newBuilder()
+              .setType(MethodDescriptor.MethodType.UNARY)
+              .setFullMethodName("google.cloud.vision.v1.ImageAnnotator/BatchAnnotateImages")
+              .setRequestMarshaller(
+                  ProtoUtils.marshaller(BatchAnnotateImagesRequest.getDefaultInstance()))
+              .setResponseMarshaller(
+                  ProtoUtils.marshaller(BatchAnnotateImagesResponse.getDefaultInstance()))
+              .build();
+
+  // Every call takes this long, however many images it holds.
+  private static final long CALL_MILLIS = 10;
+
+  private final List<BatchAnnotateImagesRequest> calls =
+      Collections.synchronizedList(new ArrayList<>());
+  private final ScheduledExecutorService latency = Executors.newScheduledThreadPool(4);
+  private Server server;
+  private ManagedChannel channel;
+  private ImageAnnotatorClient client;
+
+  /** Labels every image with its own content, and fails the images that say "bad". */
+  private void batchAnnotateImages(
+      BatchAnnotateImagesRequest request, StreamObserver<BatchAnnotateImagesResponse> response) {
+    calls.add(request);
+    if (request.getRequests(0).getImage().getContent().toStringUtf8().equals("unavailable")) {
+      response.onError(io.grpc.Status.INVALID_ARGUMENT.asRuntimeException());
+      return;
+    }
+    BatchAnnotateImagesResponse.Builder responses = BatchAnnotateImagesResponse.newBuilder();
+    for (AnnotateImageRequest image : request.getRequestsList()) {
+      String content = image.getImage().getContent().toStringUtf8();
+      AnnotateImageResponse.Builder result = AnnotateImageResponse.newBuilder();
+      if (content.equals("bad")) {
+        result.setError(Status.newBuilder().setCode(3).setMessage("Bad image"));
+      } else {
+        result.addLabelAnnotations(EntityAnnotation.newBuilder().setDescription(content));
+      }
+      responses.addResponses(result);
+    }
+    latency.schedule(() -> {
+      response.onNext(responses.build());
+      response.onCompleted();
+    }, CALL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+        .addService(ServerServiceDefinition.builder("google.cloud.vision.v1.ImageAnnotator")
+            .addMethod(BATCH_ANNOTATE_IMAGES, ServerCalls.asyncUnaryCall(this::batchAnnotateImages))
+            .build())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    client = ImageAnnotatorClient.create(ImageAnnotatorSettings.newBuilder()
+        .setTransportChannelProvider(
+            FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+        .setCredentialsProvider(NoCredentialsProvider.create())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    channel.shutdownNow();
+    server.shutdownNow();
+    latency.shutdownNow();
+  }
+
+  private static AnnotateImageRequest request(String content) {
+    return AnnotateImageRequest.newBuilder()
+        .setImage(Image.newBuilder().setContent(ByteString.copyFromUtf8(content)))
+        .addFeatures(Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION))
+        .build();
+  }
+
+  @Test
+  public void testBatchesConcurrentCallers() throws Exception {
+    int callers = 32;
+    int imagesPerCaller = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    List<Future<?>> results = new ArrayList<>();
+    long start = System.nanoTime();
+    try (BatchingImageAnnotator annotator = new BatchingImageAnnotator(client).withLinger(5)) {
+      for (int c = 0; c < callers; c++) {
+        int caller = c;
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < imagesPerCaller; i++) {
+            // Every image is requested by two callers.
+            String image = "image-" + (caller / 2) + "-" + i;
+            AnnotateImageResponse response = annotator.annotate(request(image)).get();
+            assertThat(response.getLabelAnnotations(0).getDescription()).isEqualTo(image);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    int distinct = callers / 2 * imagesPerCaller;
+    int images = 0;
+    for (BatchAnnotateImagesRequest call : calls) {
+      assertThat(call.getRequestsCount()).isAtMost(BatchingImageAnnotator.MAX_IMAGES_PER_CALL);
+      images += call.getRequestsCount();
+    }
+    assertThat(images).isEqualTo(distinct);
+    // One call per image would take distinct * CALL_MILLIS / callers even with every caller busy.
+    assertThat(calls.size()).isLessThan(distinct / 4);
+    logger.info(String.format("%d requests in %d calls, %d ms, %.0f requests/s",
+        callers * imagesPerCaller, calls.size(), elapsedMillis,
+        callers * imagesPerCaller * 1000.0 / elapsedMillis));
+  }
+
+  @Test
+  public void testSendsPartialBatchAfterLinger() throws Exception {
+    try (BatchingImageAnnotator annotator = new BatchingImageAnnotator(client).withLinger(20)) {
+      CompletableFuture<AnnotateImageResponse> first = annotator.annotate(request("a"));
+      CompletableFuture<AnnotateImageResponse> second = annotator.annotate(request("b"));
+      CompletableFuture<AnnotateImageResponse> again = annotator.annotate(request("a"));
+
+      assertThat(again).isSameInstanceAs(first);
+      assertThat(second.get(5, TimeUnit.SECONDS).getLabelAnnotations(0).getDescription())
+          .isEqualTo("b");
+      assertThat(calls).hasSize(1);
+      assertThat(calls.get(0).getRequestsCount()).isEqualTo(2);
+
+      // The cached result needs no call.
+      annotator.annotate(request("b")).get(5, TimeUnit.SECONDS);
+      assertThat(calls).hasSize(1);
+    }
+  }
+
+  @Test
+  public void testDoesNotCacheErrors() throws Exception {
+    try (BatchingImageAnnotator annotator =
+        new BatchingImageAnnotator(client).withMaxBatchSize(1)) {
+      assertThat(annotator.annotate(request("bad")).get(5, TimeUnit.SECONDS).hasError()).isTrue();
+      assertThat(annotator.annotate(request("bad")).get(5, TimeUnit.SECONDS).hasError()).isTrue();
+      assertThat(calls).hasSize(2);
+
+      CompletableFuture<AnnotateImageResponse> failed = annotator.annotate(request("unavailable"));
+      try {
+        failed.get(5, TimeUnit.SECONDS);
+        throw new AssertionError("Expected the call to fail");
+      } catch (ExecutionException e) {
+        assertThat(annotator.annotate(request("unavailable"))).isNotSameInstanceAs(failed);
+      }
+    }
+  }
+
+  @Test
+  public void testFailsBatchWhenCallCannotStart() throws Exception {
+    try (ImageAnnotatorClient failing = ImageAnnotatorClient.create(new FailingStub());
+        BatchingImageAnnotator annotator =
+            new BatchingImageAnnotator(failing).withMaxBatchSize(2).withLinger(5)) {
+      // A full batch is sent by the caller, a partial one by the linger timer.
+      CompletableFuture<AnnotateImageResponse> first = annotator.annotate(request("a"));
+      CompletableFuture<AnnotateImageResponse> second = annotator.annotate(request("b"));
+      CompletableFuture<AnnotateImageResponse> lingering = annotator.annotate(request("c"));
+      for (CompletableFuture<AnnotateImageResponse> response :
+          Arrays.asList(first, second, lingering)) {
+        try {
+          response.get(5, TimeUnit.SECONDS);
+          throw new AssertionError("Expected the call to fail");
+        } catch (ExecutionException e) {
+          assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+      }
+      // The failed requests are not cached, so they are sent again.
+      assertThat(annotator.annotate(request("a"))).isNotSameInstanceAs(first);
+    }
+  }
+
+  /** A stub whose calls fail before they are sent, as those of a closed client do. */
+  private static class FailingStub extends ImageAnnotatorStub {
+    @Override
+    public UnaryCallable<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse>
+        batchAnnotateImagesCallable() {
+      return new UnaryCallable<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse>() {
+        @Override
+        public ApiFuture<BatchAnnotateImagesResponse> futureCall(
+            BatchAnnotateImagesRequest request, ApiCallContext context) {
+          throw new IllegalStateException("client is closed");
+        }
+      };
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public boolean isShutdown() {
+      return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return true;
+    }
+
+    @Override
+    public void shutdownNow() {}
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) {
+      return true;
+    }
+  }
+}